@@ -0,0 +1,78 @@
+package com.mycompany.app.benchmarks;
+
+import com.mycompany.app.AofPersistence;
+import com.mycompany.app.AppendFsync;
+import com.mycompany.app.ServerConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class AofPersistenceBenchmark {
+
+    @Param({"no", "everysec", "always"})
+    public String fsync;
+
+    @Param({"16", "1024"})
+    public int valueSize;
+
+    private Path directory;
+    private AofPersistence aofPersistence;
+    private Object[] command;
+
+    /**
+     * Opens a throwaway AOF with the fsync policy under test and the server's default writer queue
+     * limit, so the score is the rate the log sustains rather than how fast the queue fills up
+     * @throws IOException Throws if the temporary directory cannot be created
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("aof-benchmark");
+        aofPersistence = new AofPersistence(directory.resolve("benchmark.aof").toString(), AppendFsync.fromName(fsync));
+        aofPersistence.setWriterQueueLimit(new ServerConfig().getAofWriterQueueLimit());
+        command = new Object[]{"SET", "key", "v".repeat(valueSize)};
+    }
+
+    /**
+     * Flushes what is still queued, closes the AOF and removes it, so the flush is part of the trial
+     * rather than left to the next one
+     * @throws IOException Throws if the files cannot be removed
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        aofPersistence.close();
+        TempFiles.delete(directory);
+    }
+
+    /**
+     * Logs one write from every benchmark thread at once, as the executor does after each write
+     * command. With always the call waits for the fsync; otherwise it hands the command to the
+     * writer thread, which makes it wait once the queue is full.
+     */
+    @Benchmark
+    public void logCommand() {
+        aofPersistence.logCommand(command);
+    }
+}
@@ -0,0 +1,97 @@
+package com.mycompany.app.benchmarks;
+
+import com.mycompany.app.AofPersistence;
+import com.mycompany.app.AppendFsync;
+import com.mycompany.app.CommandExecutor;
+import com.mycompany.app.HeapKeyspace;
+import com.mycompany.app.RdbPersistence;
+import com.mycompany.app.ServerConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class CommandExecutorBenchmark {
+
+    // a handful of hot keys, where writers queue on the same stripe locks, and a spread-out keyspace
+    @Param({"16", "100000"})
+    public int keyCount;
+
+    @Param({"90", "50"})
+    public int readPercent;
+
+    private Path directory;
+    private AofPersistence aofPersistence;
+    private CommandExecutor executor;
+    private String[] keys;
+    private String value;
+
+    /**
+     * Creates an executor logging to a throwaway AOF with the default fsync policy and writer queue
+     * limit, and fills the keyspace
+     * @throws IOException Throws if the temporary directory cannot be created
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("executor-benchmark");
+        aofPersistence = new AofPersistence(directory.resolve("benchmark.aof").toString(), AppendFsync.EVERYSEC);
+        aofPersistence.setWriterQueueLimit(new ServerConfig().getAofWriterQueueLimit());
+        executor = new CommandExecutor(new HeapKeyspace(), aofPersistence,
+                new RdbPersistence(directory.resolve("benchmark.rdb").toString()));
+        value = "v".repeat(64);
+        keys = new String[keyCount];
+        for (int i = 0; i < keyCount; i++) {
+            keys[i] = "key:" + i;
+            executor.execute(new Object[]{"SET", keys[i], value});
+        }
+    }
+
+    /**
+     * Closes the AOF and removes the throwaway files
+     * @throws IOException Throws if the files cannot be removed
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        aofPersistence.close();
+        TempFiles.delete(directory);
+    }
+
+    /**
+     * Runs one GET or SET of a random key, reads making up the configured share, from every benchmark
+     * thread at once. A SET waits in the AOF writer's queue once it is full, so the score is the
+     * rate the server sustains rather than how fast the log queue fills up.
+     * @return The reply
+     */
+    @Benchmark
+    public Object getSetMix() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String key = keys[random.nextInt(keys.length)];
+        if (random.nextInt(100) < readPercent) {
+            return executor.execute(new Object[]{"GET", key});
+        }
+        return executor.execute(new Object[]{"SET", key, value});
+    }
+}
@@ -0,0 +1,115 @@
+package com.mycompany.app.benchmarks;
+
+import com.mycompany.app.RESPParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+@State(Scope.Thread)
+public class LoopbackBenchmark {
+
+    // the number of commands written before their replies are read; each benchmark call sends one
+    // such batch, so the score is batches per second and commands per second is the score times the depth
+    @Param({"1", "16", "100"})
+    public int pipelineDepth;
+
+    private Socket socket;
+    private OutputStream out;
+    private InputStream in;
+    private byte[] getBatch;
+    private byte[] setBatch;
+
+    /**
+     * Opens this thread's connection and encodes its batches up front, so the benchmark measures the
+     * round trip rather than the client's encoding
+     * @param server The running server
+     * @throws IOException Throws if the server cannot be reached
+     */
+    @Setup(Level.Trial)
+    public void setUp(LoopbackServer server) throws IOException {
+        socket = server.connect();
+        out = socket.getOutputStream();
+        in = new BufferedInputStream(socket.getInputStream());
+        String value = "v".repeat(LoopbackServer.VALUE_SIZE);
+        int offset = (int) (Thread.currentThread().threadId() % LoopbackServer.KEY_COUNT);
+        ByteArrayOutputStream gets = new ByteArrayOutputStream();
+        ByteArrayOutputStream sets = new ByteArrayOutputStream();
+        for (int i = 0; i < pipelineDepth; i++) {
+            String key = LoopbackServer.key((offset + i) % LoopbackServer.KEY_COUNT);
+            gets.writeBytes(RESPParser.encodeCommand(new Object[]{"GET", key}));
+            sets.writeBytes(RESPParser.encodeCommand(new Object[]{"SET", key, value}));
+        }
+        getBatch = gets.toByteArray();
+        setBatch = sets.toByteArray();
+    }
+
+    /**
+     * Closes this thread's connection
+     * @throws IOException Throws if the socket cannot be closed
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        socket.close();
+    }
+
+    /**
+     * Sends a batch of GETs in one write and reads every reply
+     * @return The last reply
+     * @throws IOException Throws if the connection fails
+     */
+    @Benchmark
+    public Object pipelinedGets() throws IOException {
+        return roundTrip(getBatch);
+    }
+
+    /**
+     * Sends a batch of SETs in one write and reads every reply
+     * @return The last reply
+     * @throws IOException Throws if the connection fails
+     */
+    @Benchmark
+    public Object pipelinedSets() throws IOException {
+        return roundTrip(setBatch);
+    }
+
+    /**
+     * Writes a batch of pipelined commands and waits for all of their replies
+     * @param batch The encoded commands
+     * @return The last reply
+     * @throws IOException Throws if the connection fails
+     */
+    private Object roundTrip(byte[] batch) throws IOException {
+        out.write(batch);
+        out.flush();
+        Object reply = null;
+        for (int i = 0; i < pipelineDepth; i++) {
+            reply = RESPParser.decode(in);
+        }
+        return reply;
+    }
+}
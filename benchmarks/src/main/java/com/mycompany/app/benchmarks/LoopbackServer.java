@@ -0,0 +1,100 @@
+package com.mycompany.app.benchmarks;
+
+import com.mycompany.app.AppendFsync;
+import com.mycompany.app.RESPParser;
+import com.mycompany.app.RedisServer;
+import com.mycompany.app.ServerConfig;
+import com.mycompany.app.ServerMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+public class LoopbackServer {
+
+    static final int KEY_COUNT = 1000;
+    static final int VALUE_SIZE = 64;
+
+    @Param({"NIO", "VIRTUAL"})
+    public String mode;
+
+    private Path directory;
+    private RedisServer server;
+    private int port;
+
+    /**
+     * Starts a server on a free port with a throwaway AOF and snapshot, and stores the keys the
+     * benchmarks read
+     * @throws Exception Throws if the server does not start or the keys cannot be stored
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("loopback-benchmark");
+        ServerConfig config = new ServerConfig()
+                .setPort(0)
+                .setMode(ServerMode.fromName(mode))
+                .setAppendFsync(AppendFsync.EVERYSEC)
+                .setAofFile(directory.resolve("benchmark.aof").toString())
+                .setRdbFile(directory.resolve("benchmark.rdb").toString());
+        server = new RedisServer(config);
+        Thread serverThread = new Thread(server::start, "benchmark-server");
+        serverThread.setDaemon(true);
+        serverThread.start();
+        port = server.awaitStarted(10, TimeUnit.SECONDS);
+        try (Socket socket = connect()) {
+            OutputStream out = socket.getOutputStream();
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            String value = "v".repeat(VALUE_SIZE);
+            for (int i = 0; i < KEY_COUNT; i++) {
+                out.write(RESPParser.encodeCommand(new Object[]{"SET", key(i), value}));
+            }
+            out.flush();
+            for (int i = 0; i < KEY_COUNT; i++) {
+                RESPParser.decode(in);
+            }
+        }
+    }
+
+    /**
+     * Stops the server and removes its files
+     * @throws IOException Throws if the files cannot be removed
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        server.stop();
+        TempFiles.delete(directory);
+    }
+
+    /**
+     * Opens a new connection to the server
+     * @return The connected socket, with Nagle's algorithm off as any Redis client has it
+     * @throws IOException Throws if the server cannot be reached
+     */
+    public Socket connect() throws IOException {
+        Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+        socket.setTcpNoDelay(true);
+        return socket;
+    }
+
+    /**
+     * Gets the name of one of the stored keys
+     * @param index The key's number, below KEY_COUNT
+     * @return The key
+     */
+    static String key(int index) {
+        return "key:" + index;
+    }
+}
@@ -0,0 +1,99 @@
+package com.mycompany.app.benchmarks;
+
+import com.mycompany.app.RESPParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class MultiKeyBenchmark {
+
+    private static final int KEYS = 100;
+
+    private Socket socket;
+    private OutputStream out;
+    private InputStream in;
+    private byte[] mget;
+    private byte[] gets;
+
+    /**
+     * Opens a connection and encodes one MGET of a hundred keys and a hundred GETs of the same keys
+     * @param server The running server
+     * @throws IOException Throws if the server cannot be reached
+     */
+    @Setup(Level.Trial)
+    public void setUp(LoopbackServer server) throws IOException {
+        socket = server.connect();
+        out = socket.getOutputStream();
+        in = new BufferedInputStream(socket.getInputStream());
+        Object[] mgetCommand = new Object[KEYS + 1];
+        mgetCommand[0] = "MGET";
+        ByteArrayOutputStream pipeline = new ByteArrayOutputStream();
+        for (int i = 0; i < KEYS; i++) {
+            String key = LoopbackServer.key(i);
+            mgetCommand[i + 1] = key;
+            pipeline.writeBytes(RESPParser.encodeCommand(new Object[]{"GET", key}));
+        }
+        mget = RESPParser.encodeCommand(mgetCommand);
+        gets = pipeline.toByteArray();
+    }
+
+    /**
+     * Closes the connection
+     * @throws IOException Throws if the socket cannot be closed
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        socket.close();
+    }
+
+    /**
+     * Reads the hundred keys with one MGET
+     * @return The reply
+     * @throws IOException Throws if the connection fails
+     */
+    @Benchmark
+    public Object mget() throws IOException {
+        out.write(mget);
+        out.flush();
+        return RESPParser.decode(in);
+    }
+
+    /**
+     * Reads the same hundred keys with a hundred GETs sent in one write
+     * @return The last reply
+     * @throws IOException Throws if the connection fails
+     */
+    @Benchmark
+    public Object pipelinedGets() throws IOException {
+        out.write(gets);
+        out.flush();
+        Object reply = null;
+        for (int i = 0; i < KEYS; i++) {
+            reply = RESPParser.decode(in);
+        }
+        return reply;
+    }
+}
@@ -0,0 +1,100 @@
+package com.mycompany.app.benchmarks;
+
+import com.mycompany.app.RESPParser;
+import com.mycompany.app.ReplyBuffer;
+import com.mycompany.app.RespDecoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RespParserBenchmark {
+
+    // a short value such as a counter or a flag, and one large enough to span many socket reads
+    @Param({"16", "65536"})
+    public int valueSize;
+
+    private String value;
+    private Object[] command;
+    private byte[] encodedCommand;
+    private final RespDecoder decoder = new RespDecoder();
+    private final ReplyBuffer replies = new ReplyBuffer();
+
+    /**
+     * Builds a SET command with a value of the benchmarked size, and its encoding
+     */
+    @Setup
+    public void setUp() {
+        value = "x".repeat(valueSize);
+        command = new Object[]{"SET", "benchmark:key", value};
+        encodedCommand = RESPParser.encodeCommand(command);
+    }
+
+    /**
+     * Decodes a command from a stream, as the blocking client path and the AOF loader do
+     * @return The decoded command
+     * @throws IOException Never, the bytes are valid
+     */
+    @Benchmark
+    public Object decodeStream() throws IOException {
+        return RESPParser.decode(new ByteArrayInputStream(encodedCommand));
+    }
+
+    /**
+     * Decodes a command straight from a buffer into the arguments the executor takes, as every
+     * server mode's connections do
+     * @return The decoded command
+     * @throws IOException Never, the bytes are valid
+     */
+    @Benchmark
+    public Object[] decodeBuffer() throws IOException {
+        return decoder.decode(ByteBuffer.wrap(encodedCommand)).toArray();
+    }
+
+    /**
+     * Encodes a bulk string reply to text, as RESPParser.encode callers get it
+     * @return The encoded reply
+     */
+    @Benchmark
+    public String encodeReply() {
+        return RESPParser.encode(value);
+    }
+
+    /**
+     * Encodes a bulk string reply into a reused connection buffer, as connections do
+     * @return The number of bytes encoded
+     */
+    @Benchmark
+    public int writeReply() {
+        replies.clear();
+        replies.write(value);
+        return replies.pending();
+    }
+
+    /**
+     * Encodes a command, as it is for the AOF and the replication stream
+     * @return The encoded command
+     */
+    @Benchmark
+    public byte[] encodeCommand() {
+        return RESPParser.encodeCommand(command);
+    }
+}
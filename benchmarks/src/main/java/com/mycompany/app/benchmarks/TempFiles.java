@@ -0,0 +1,28 @@
+package com.mycompany.app.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+final class TempFiles {
+
+    /**
+     * Not instantiated, only holds helpers
+     */
+    private TempFiles() {
+    }
+
+    /**
+     * Deletes a directory made for a benchmark's AOF and snapshot, and the files in it
+     * @param directory The directory
+     * @throws IOException Throws if a file cannot be deleted
+     */
+    static void delete(Path directory) throws IOException {
+        try (var files = Files.list(directory)) {
+            for (Path file : files.toList()) {
+                Files.deleteIfExists(file);
+            }
+        }
+        Files.deleteIfExists(directory);
+    }
+}
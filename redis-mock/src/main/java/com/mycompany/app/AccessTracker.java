@@ -0,0 +1,134 @@
+package com.mycompany.app;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+public class AccessTracker {
+
+    private static final int CLOCK_BITS = 24;
+    private static final int CLOCK_MAX = (1 << CLOCK_BITS) - 1;
+    private static final long CLOCK_RESOLUTION_MILLIS = 1000;
+    private static final int LFU_INIT_VAL = 5;
+    private static final int LFU_LOG_FACTOR = 10;
+    private static final int LFU_COUNTER_MAX = 255;
+    private static final long LFU_DECAY_MINUTES = 1;
+
+    // one word per slot rather than per key: keys hashing to the same slot share their history
+    private final int[] slots;
+    private final int mask;
+    private final boolean frequency;
+
+    /**
+     * Keeps compact access history for eviction in a fixed table indexed by a hash of the key, so
+     * tracking costs the same however many keys there are. For LRU each slot holds a 24 bit clock
+     * of the last access in seconds; for LFU it holds the last decrement time in minutes (16 bits)
+     * and a logarithmic Morris counter (8 bits), as Redis packs its 24 bit lru field. Updates are
+     * plain unsynchronised writes: a lost update only makes the approximation slightly coarser.
+     * @param slotCount The table size, rounded up to a power of two
+     * @param frequency True to track access frequency (LFU), false for recency (LRU)
+     */
+    public AccessTracker(int slotCount, boolean frequency) {
+        int size = Integer.highestOneBit(Math.max(slotCount - 1, 1)) << 1;
+        this.slots = new int[size];
+        this.mask = size - 1;
+        this.frequency = frequency;
+    }
+
+    /**
+     * Records a new key, giving it a fresh clock or the initial LFU count so it is not evicted at once
+     * @param key The key
+     */
+    public void created(String key) {
+        int now = frequency ? (minutes() << 8) | LFU_INIT_VAL : clock();
+        slots[slot(key)] = now;
+    }
+
+    /**
+     * Records an access to a key
+     * @param key The key
+     */
+    public void touch(String key) {
+        int slot = slot(key);
+        if (!frequency) {
+            slots[slot] = clock();
+            return;
+        }
+        int counter = logIncrement(decayedCounter(slots[slot]));
+        slots[slot] = (minutes() << 8) | counter;
+    }
+
+    /**
+     * Scores a key for eviction; the higher the score the better a candidate it is
+     * @param key The key
+     * @return The time since the last access in milliseconds for LRU, or 255 minus the decayed
+     *         access counter for LFU
+     */
+    public long evictionScore(String key) {
+        int value = slots[slot(key)];
+        if (frequency) {
+            return LFU_COUNTER_MAX - decayedCounter(value);
+        }
+        return ((clock() - value) & CLOCK_MAX) * CLOCK_RESOLUTION_MILLIS;
+    }
+
+    /**
+     * Gets a key's access counter after decay, for LFU
+     * @param key The key
+     * @return The counter, 0 to 255
+     */
+    public int frequency(String key) {
+        return decayedCounter(slots[slot(key)]);
+    }
+
+    /**
+     * Lowers a counter by one for every decay period since it was last changed
+     * @param value The packed minutes and counter
+     * @return The decayed counter
+     */
+    private static int decayedCounter(int value) {
+        int counter = value & 0xFF;
+        long elapsed = (minutes() - (value >>> 8)) & 0xFFFF;
+        long periods = elapsed / LFU_DECAY_MINUTES;
+        return periods > counter ? 0 : counter - (int) periods;
+    }
+
+    /**
+     * Increments a Morris counter with a probability that falls as it grows, so 8 bits cover
+     * about a million accesses
+     * @param counter The counter
+     * @return The counter, possibly incremented
+     */
+    private static int logIncrement(int counter) {
+        if (counter == LFU_COUNTER_MAX) {
+            return counter;
+        }
+        int base = Math.max(counter - LFU_INIT_VAL, 0);
+        double probability = 1.0 / (base * LFU_LOG_FACTOR + 1);
+        return ThreadLocalRandom.current().nextDouble() < probability ? counter + 1 : counter;
+    }
+
+    /**
+     * Gets the LRU clock
+     * @return The current time in seconds, wrapped to 24 bits
+     */
+    private static int clock() {
+        return (int) ((System.currentTimeMillis() / CLOCK_RESOLUTION_MILLIS) & CLOCK_MAX);
+    }
+
+    /**
+     * Gets the LFU decay clock
+     * @return The current time in minutes, wrapped to 16 bits
+     */
+    private static int minutes() {
+        return (int) ((System.currentTimeMillis() / 60_000) & 0xFFFF);
+    }
+
+    /**
+     * Maps a key to its slot
+     * @param key The key
+     * @return The slot index
+     */
+    private int slot(String key) {
+        int hash = key.hashCode();
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+}
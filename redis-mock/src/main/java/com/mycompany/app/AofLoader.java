@@ -0,0 +1,157 @@
+package com.mycompany.app;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+public class AofLoader {
+
+    private static final long DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+    private static final long PROGRESS_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * Receives each command along with the raw bytes it was decoded from
+     */
+    public interface FrameConsumer {
+
+        /**
+         * Handles one decoded command
+         * @param command The decoded command, only valid until this returns
+         * @param window The mapped part of the file holding the command
+         * @param start Where the command's bytes start in the window
+         * @param end Where the command's bytes end in the window
+         */
+        void accept(RespCommand command, ByteBuffer window, int start, int end);
+    }
+
+    private final Path path;
+    private final boolean reportProgress;
+    private final long initialWindowSize;
+    private long commandsLoaded;
+    private long validLength;
+    private boolean truncated;
+
+    /**
+     * Streams the commands of an append only file without holding more than one window of it
+     * @param path The file to read
+     * @param reportProgress Whether to print how far loading has got about once a second
+     */
+    public AofLoader(Path path, boolean reportProgress) {
+        this(path, reportProgress, DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * Streams the commands of an append only file with a given mapping window
+     * @param path The file to read
+     * @param reportProgress Whether to print how far loading has got about once a second
+     * @param windowSize How much of the file is mapped at a time, grown for larger commands
+     */
+    AofLoader(Path path, boolean reportProgress, long windowSize) {
+        this.path = path;
+        this.reportProgress = reportProgress;
+        this.initialWindowSize = windowSize;
+    }
+
+    /**
+     * Decodes the file a memory-mapped window at a time, handing each command to the consumer as it
+     * is decoded. A command cut short by the end of the file is not handed over; it is reported by
+     * isTruncated, with getValidLength giving where the last complete command ends.
+     * @param consumer Receives each command, which is only valid until the consumer returns
+     * @return The number of commands handed to the consumer
+     * @throws IOException Throws if the file cannot be read or holds something other than commands
+     */
+    public long load(Consumer<RespCommand> consumer) throws IOException {
+        return load((command, window, start, end) -> consumer.accept(command));
+    }
+
+    /**
+     * Decodes the file like load, also handing over where each command's bytes are, so they can be
+     * passed on without being encoded again
+     * @param consumer Receives each command and its bytes, only valid until the consumer returns
+     * @return The number of commands handed to the consumer
+     * @throws IOException Throws if the file cannot be read or holds something other than commands
+     */
+    public long load(FrameConsumer consumer) throws IOException {
+        commandsLoaded = 0;
+        validLength = 0;
+        truncated = false;
+        if (!Files.exists(path)) {
+            return 0;
+        }
+        long start = System.nanoTime();
+        long lastReport = start;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            RespDecoder decoder = new RespDecoder();
+            long windowSize = initialWindowSize;
+            long position = 0;
+            while (position < size) {
+                long length = Math.min(windowSize, size - position);
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                RespCommand command;
+                try {
+                    int commandStart = window.position();
+                    while ((command = decoder.decode(window)) != null) {
+                        consumer.accept(command, window, commandStart, window.position());
+                        commandsLoaded++;
+                        commandStart = window.position();
+                    }
+                } catch (IOException e) {
+                    throw new IOException("Bad file format reading the append only file at offset " + (position + window.position()), e);
+                }
+                long frameStart = position + window.position();
+                if (frameStart < size && position + length == size) {
+                    // the rest of the file is the start of a command that was never finished
+                    truncated = true;
+                    position = frameStart;
+                    break;
+                }
+                if (frameStart == position) {
+                    // a single command is bigger than the window; the decoder resumes where it stopped
+                    windowSize = Math.min(windowSize * 2, Integer.MAX_VALUE);
+                }
+                position = frameStart;
+                if (reportProgress && System.nanoTime() - lastReport >= PROGRESS_INTERVAL_NANOS) {
+                    lastReport = System.nanoTime();
+                    System.out.printf("Loading AOF: %d%% (%d commands)%n", position * 100 / size, commandsLoaded);
+                }
+            }
+            validLength = position;
+        }
+        if (reportProgress) {
+            System.out.printf("AOF loaded: %d commands, %d bytes in %d ms%n", commandsLoaded, validLength,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        }
+        return commandsLoaded;
+    }
+
+    /**
+     * Gets the number of commands handed over by the last load
+     * @return The command count
+     */
+    public long getCommandsLoaded() {
+        return commandsLoaded;
+    }
+
+    /**
+     * Gets where the last complete command read by the last load ends
+     * @return The offset in bytes, the file size if it was not truncated
+     */
+    public long getValidLength() {
+        return validLength;
+    }
+
+    /**
+     * Reports whether the last load found an incomplete command at the end of the file
+     * @return True if the file ends part way through a command
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+}
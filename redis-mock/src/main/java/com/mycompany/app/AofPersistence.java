@@ -1,61 +1,323 @@
 package com.mycompany.app;
 
-import java.io.BufferedWriter;
-import java.io.FileInputStream;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.InputStream;
-import java.nio.file.Files;
-import java.nio.file.Path;
+import java.io.UncheckedIOException;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 public class AofPersistence {
 
+    /**
+     * One way of reading the command log, which may fail with an IOException
+     */
+    private interface LoadStep {
+
+        /**
+         * Reads the file
+         * @param loader The loader for the command log
+         * @throws IOException Throws if the file cannot be read or is corrupt
+         */
+        void run(AofLoader loader) throws IOException;
+    }
+
     private final String aofFile;
+    private final AofWriter writer;
+    private final AtomicBoolean rewriting = new AtomicBoolean();
+    private volatile long baseSize;
+    private volatile long rewrites;
+    private volatile boolean lastRewriteOk = true;
+    private volatile int autoRewritePercentage = 100;
+    private volatile long autoRewriteMinSize = 64L * 1024 * 1024;
+    private boolean loadTruncated = true;
 
     /**
-     * Creates a log of all the set calls to the database
+     * Creates a log of all the set calls to the database, fsyncing every write before it returns
      * @param aofFile The file to be read and written to
      */
     public AofPersistence(String aofFile) {
+        this(aofFile, AppendFsync.ALWAYS);
+    }
+
+    /**
+     * Creates a log of all the set calls to the database
+     * @param aofFile The file to be read and written to
+     * @param fsyncPolicy How often written commands are forced to disk
+     * @throws UncheckedIOException Throws if the file cannot be opened for appending
+     */
+    public AofPersistence(String aofFile, AppendFsync fsyncPolicy) {
         this.aofFile = aofFile;
+        try {
+            this.writer = AofWriter.open(Paths.get(aofFile), fsyncPolicy);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open AOF file " + aofFile, e);
+        }
+        this.baseSize = writer.getFileSize();
     }
 
     /**
-     * Writes the command to the log
+     * Sets when a rewrite is started automatically, as with Redis's auto-aof-rewrite options
+     * @param percentage How much the file must have grown since the last rewrite, 0 disables it
+     * @param minSize The size the file must reach before it is rewritten automatically
+     */
+    public void setAutoRewrite(int percentage, long minSize) {
+        if (percentage < 0 || minSize < 0) {
+            throw new IllegalArgumentException("auto-aof-rewrite settings must not be negative");
+        }
+        this.autoRewritePercentage = percentage;
+        this.autoRewriteMinSize = minSize;
+    }
+
+    /**
+     * Writes the command to the log. The command is handed to the AOF writer thread; under
+     * appendfsync always this returns once it is on disk, otherwise as soon as it is queued.
      * @param command the set command that was called
+     * @throws java.io.UncheckedIOException Throws if the command could not be written
      */
-    public synchronized void logCommand(Object[] command) {
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(aofFile, true))) {
-            writer.write(RESPParser.encode(command));
-        } catch (IOException e) {
-            e.printStackTrace();
+    public void logCommand(Object[] command) {
+        writer.append(RESPParser.encodeCommand(command));
+    }
+
+    /**
+     * Describes why commands cannot be logged at the moment
+     * @return The error of the last failed write to the file, null if the file is being written
+     */
+    public String getLastWriteError() {
+        return writer.getLastWriteError();
+    }
+
+    /**
+     * Caps the bytes of logged commands that may wait for the writer thread, past which logCommand
+     * waits for the writer to catch up
+     * @param queueLimit The most bytes that may be queued, 0 for no limit
+     */
+    public void setWriterQueueLimit(long queueLimit) {
+        writer.setQueueLimit(queueLimit);
+    }
+
+    /**
+     * Marks a rewrite as running and tells the writer to start copying commands into a new file.
+     * Every command logged after this call is in the new file as well as the current one.
+     * @return False if a rewrite is already running
+     */
+    public boolean tryBeginRewrite() {
+        if (!rewriting.compareAndSet(false, true)) {
+            return false;
+        }
+        try {
+            writer.beginRewrite();
+        } catch (IllegalStateException e) {
+            rewriting.set(false);
+            throw e;
+        }
+        return true;
+    }
+
+    /**
+     * Writes a command recreating a key to the new file only
+     * @param command The command that recreates the key's current value
+     */
+    public void appendRewriteCommand(Object[] command) {
+        writer.appendRewriteRecord(RESPParser.encodeCommand(command));
+    }
+
+    /**
+     * Swaps the rewritten file in once every command queued so far is in it, and waits for the swap
+     * @return True if the rewritten file replaced the old one
+     */
+    public boolean finishRewrite() {
+        boolean ok = writer.finishRewrite().join();
+        if (ok) {
+            baseSize = writer.getFileSize();
+            rewrites++;
         }
+        lastRewriteOk = ok;
+        rewriting.set(false);
+        return ok;
+    }
+
+    /**
+     * Gives up on a running rewrite, deleting the partial file
+     */
+    public void abortRewrite() {
+        try {
+            writer.abortRewrite();
+        } catch (IllegalStateException e) {
+            // the writer is closed, which already discarded the partial file
+        }
+        lastRewriteOk = false;
+        rewriting.set(false);
+    }
+
+    /**
+     * Reports whether a rewrite is running
+     * @return True between tryBeginRewrite and finishRewrite or abortRewrite
+     */
+    public boolean isRewriting() {
+        return rewriting.get();
     }
 
     /**
-     * Load the data from the command log
+     * Checks the file against the auto rewrite settings
+     * @return True if no rewrite is running and the file has grown enough since the last one
+     */
+    public boolean shouldAutoRewrite() {
+        int percentage = autoRewritePercentage;
+        if (percentage == 0 || rewriting.get()) {
+            return false;
+        }
+        long size = writer.getFileSize();
+        long base = baseSize;
+        return size >= autoRewriteMinSize && (size - base) * 100 >= base * percentage;
+    }
+
+    /**
+     * Gets the number of commands queued for the writer thread, used to pace a rewrite
+     * @return The writer's queue depth
+     */
+    public int getWriterQueueDepth() {
+        return writer.getQueueDepth();
+    }
+
+    /**
+     * Load the data from the command log. Commands are streamed off the file, so this only holds
+     * the list itself; an unfinished command at the end of the file is left out.
      * @return A list of commands to load into the CommandExecutor
      */
     public List<Object[]> loadData() {
         List<Object[]> commands = new ArrayList<>();
-        Path path = Paths.get(aofFile);
-        if (!Files.exists(path)) {
-            return commands;
+        try {
+            new AofLoader(Paths.get(aofFile), false).load(command -> commands.add(command.toArray()));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return commands;
+    }
+
+    /**
+     * Replays the command log at startup, streaming each command to the consumer as it is decoded
+     * so memory use does not grow with the file. If the file ends part way through a command, as
+     * after a crash mid-write, the partial command is cut off the file when aof-load-truncated is
+     * on, otherwise loading fails. Must be called before anything is logged.
+     * @param consumer Receives each command in the order it was logged
+     * @return The number of commands replayed
+     * @throws UncheckedIOException Throws if the file cannot be read, is corrupt, or is truncated
+     *         and truncated files are not to be loaded
+     */
+    public long replay(Consumer<Object[]> consumer) {
+        return replayWith(loader -> loader.load(command -> consumer.accept(command.toArray())));
+    }
+
+    /**
+     * Replays the command log at startup as replay(Consumer) does, keeping the string values of the
+     * commands the registry knows as the exact bytes logged
+     * @param registry Says which arguments of each command are values
+     * @param consumer Receives each command in the order it was logged
+     * @return The number of commands replayed
+     * @throws UncheckedIOException Throws as replay(Consumer) does
+     */
+    public long replay(CommandRegistry registry, Consumer<Object[]> consumer) {
+        return replayWith(loader -> loader.load(command -> consumer.accept(command.toArray(registry.lookup(command)))));
+    }
+
+    /**
+     * Replays the command log at startup through the executor, on several threads when asked to.
+     * With more than one thread commands are spread over them by key, so only writes to the same
+     * key keep their relative order, which is all that the logged commands depend on.
+     * @param commandExecutor The executor to apply the commands through, already set to loading
+     * @param threads The number of threads to replay on, 1 to replay on the calling thread
+     * @return The number of commands replayed
+     * @throws UncheckedIOException Throws as replay(Consumer) does
+     */
+    public long replay(CommandExecutor commandExecutor, int threads) {
+        if (threads <= 1) {
+            return replay(commandExecutor.getRegistry(), commandExecutor::execute);
         }
+        return replayWith(new ParallelAofReplayer(commandExecutor, threads)::replay);
+    }
 
-        try (InputStream is = new FileInputStream(aofFile)) {
-            while (is.available() > 0) {
-                Object decoded = RESPParser.decode(is);
-                if (decoded instanceof Object[]) {
-                    commands.add((Object[]) decoded);
-                }
+    /**
+     * Runs a load of the command log, repairing or refusing a truncated tail afterwards
+     * @param load Reads the file through the loader it is given
+     * @return The number of commands replayed
+     * @throws UncheckedIOException Throws if the file cannot be read, is corrupt, or is truncated
+     *         and truncated files are not to be loaded
+     */
+    private long replayWith(LoadStep load) {
+        AofLoader loader = new AofLoader(Paths.get(aofFile), true);
+        try {
+            load.run(loader);
+            if (loader.isTruncated()) {
+                repairTruncatedTail(loader.getValidLength());
             }
         } catch (IOException e) {
-            e.printStackTrace();
+            throw new UncheckedIOException("Cannot load AOF file " + aofFile, e);
         }
-        return commands;
+        return loader.getCommandsLoaded();
+    }
+
+    /**
+     * Cuts an unfinished command off the end of the file, or refuses to, per aof-load-truncated
+     * @param validLength Where the last complete command ends
+     * @throws IOException Throws if the file is truncated and truncated files are not to be loaded,
+     *         or cannot be truncated
+     */
+    private void repairTruncatedTail(long validLength) throws IOException {
+        if (!loadTruncated) {
+            throw new IOException("Unexpected end of file at offset " + validLength + ", start with --aof-load-truncated yes to load it");
+        }
+        System.out.println("!!! Warning: short read while loading the AOF. Truncating the AOF at offset " + validLength + " !!!");
+        writer.truncate(validLength);
+        baseSize = writer.getFileSize();
+    }
+
+    /**
+     * Sets whether a file ending part way through a command is repaired and loaded, as with
+     * Redis's aof-load-truncated option
+     * @param loadTruncated True to cut off the partial command and carry on
+     */
+    public void setLoadTruncated(boolean loadTruncated) {
+        this.loadTruncated = loadTruncated;
+    }
+
+    /**
+     * Reports whether the log holds anything to replay
+     * @return True if the file is not empty
+     */
+    public boolean hasData() {
+        return writer.getFileSize() > 0;
+    }
+
+    /**
+     * Describes the state of the AOF writer in the format of the INFO persistence section
+     * @return The persistence section, one field per line
+     */
+    public String info() {
+        return "# Persistence\r\n"
+                + "aof_enabled:1\r\n"
+                + "aof_fsync_policy:" + writer.getFsyncPolicy().name().toLowerCase() + "\r\n"
+                + "aof_queue_depth:" + writer.getQueueDepth() + "\r\n"
+                + "aof_queued_bytes:" + writer.getQueuedBytes() + "\r\n"
+                + "aof_writer_stalls:" + writer.getStallCount() + "\r\n"
+                + "aof_bytes_written:" + writer.getBytesWritten() + "\r\n"
+                + "aof_last_write_status:" + (writer.isLastWriteOk() ? "ok" : "err") + "\r\n"
+                + "aof_fsync_count:" + writer.getFsyncCount() + "\r\n"
+                + "aof_last_fsync_latency_us:" + writer.getLastFsyncMicros() + "\r\n"
+                + "aof_avg_fsync_latency_us:" + writer.getAverageFsyncMicros() + "\r\n"
+                + "aof_max_fsync_latency_us:" + writer.getMaxFsyncMicros() + "\r\n"
+                + "aof_rewrite_in_progress:" + (rewriting.get() ? 1 : 0) + "\r\n"
+                + "aof_rewrites:" + rewrites + "\r\n"
+                + "aof_last_bgrewrite_status:" + (lastRewriteOk ? "ok" : "err") + "\r\n"
+                + "aof_current_size:" + writer.getFileSize() + "\r\n"
+                + "aof_base_size:" + baseSize + "\r\n";
+    }
+
+    /**
+     * Writes out every queued command and closes the file
+     */
+    public void close() {
+        writer.close();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,122 @@
+package com.mycompany.app;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class AofRewriter implements Runnable {
+
+    // past this many queued entries the rewrite backs off so it does not starve live writes of the writer thread
+    private static final int MAX_QUEUE_DEPTH = 10_000;
+    private static final long BACKOFF_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    // large collections are split over several commands, as Redis does, so no one command is huge
+    private static final int ITEMS_PER_COMMAND = 64;
+
+    private final Keyspace dataStore;
+    private final Expires expires;
+    private final KeyLocks keyLocks;
+    private final AofPersistence aofPersistence;
+
+    /**
+     * Writes the current contents of the database to a new append only file, one command per key.
+     * The rewrite must already have been started with AofPersistence.tryBeginRewrite.
+     * @param dataStore The database to dump
+     * @param expires The expiry times of the database's keys
+     * @param keyLocks The locks writers hold while applying and logging a write
+     * @param aofPersistence The log being rewritten
+     */
+    public AofRewriter(Keyspace dataStore, Expires expires, KeyLocks keyLocks, AofPersistence aofPersistence) {
+        this.dataStore = dataStore;
+        this.expires = expires;
+        this.keyLocks = keyLocks;
+        this.aofPersistence = aofPersistence;
+    }
+
+    /**
+     * Dumps every key, with its expiry time as an absolute PXAT and leaving out keys that have
+     * already expired, and swaps the new file in. Each key is read under its lock, so its record is
+     * queued between the writes applied before and after it and the new file replays to the same state.
+     */
+    @Override
+    public void run() {
+        try {
+            for (String key : dataStore.keys()) {
+                while (aofPersistence.getWriterQueueDepth() > MAX_QUEUE_DEPTH) {
+                    LockSupport.parkNanos(BACKOFF_NANOS);
+                }
+                ReentrantLock lock = keyLocks.lockFor(key);
+                lock.lock();
+                try {
+                    dumpKey(key);
+                } finally {
+                    lock.unlock();
+                }
+            }
+            aofPersistence.finishRewrite();
+        } catch (RuntimeException e) {
+            aofPersistence.abortRewrite();
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Appends the commands that recreate one key, unless it is gone or has expired. Called with the
+     * key locked.
+     * @param key The key
+     */
+    private void dumpKey(String key) {
+        Object value = dataStore.get(key);
+        long deadline = expires.get(key);
+        if (value == null || (deadline >= 0 && deadline <= System.currentTimeMillis())) {
+            return;
+        }
+        if (value instanceof RedisHash hash) {
+            Object[] fields = hash.toArray();
+            for (int start = 0; start < fields.length; start += ITEMS_PER_COMMAND * 2) {
+                int end = Math.min(start + ITEMS_PER_COMMAND * 2, fields.length);
+                Object[] command = new Object[end - start + 2];
+                command[0] = "HSET";
+                command[1] = key;
+                System.arraycopy(fields, start, command, 2, end - start);
+                aofPersistence.appendRewriteCommand(command);
+            }
+            if (deadline >= 0) {
+                aofPersistence.appendRewriteCommand(new Object[]{"PEXPIREAT", key, String.valueOf(deadline)});
+            }
+        } else if (value instanceof RedisList list) {
+            Object[] elements = list.toArray();
+            for (int start = 0; start < elements.length; start += ITEMS_PER_COMMAND) {
+                int end = Math.min(start + ITEMS_PER_COMMAND, elements.length);
+                Object[] command = new Object[end - start + 2];
+                command[0] = "RPUSH";
+                command[1] = key;
+                System.arraycopy(elements, start, command, 2, end - start);
+                aofPersistence.appendRewriteCommand(command);
+            }
+            if (deadline >= 0) {
+                aofPersistence.appendRewriteCommand(new Object[]{"PEXPIREAT", key, String.valueOf(deadline)});
+            }
+        } else if (value instanceof RedisSortedSet zset) {
+            List<RedisSortedSet.Entry> entries = zset.rangeByRank(0, zset.size() - 1, false);
+            for (int start = 0; start < entries.size(); start += ITEMS_PER_COMMAND) {
+                int end = Math.min(start + ITEMS_PER_COMMAND, entries.size());
+                Object[] command = new Object[(end - start) * 2 + 2];
+                command[0] = "ZADD";
+                command[1] = key;
+                for (int i = start; i < end; i++) {
+                    command[(i - start) * 2 + 2] = SortedSetCommands.formatScore(entries.get(i).score());
+                    command[(i - start) * 2 + 3] = entries.get(i).member();
+                }
+                aofPersistence.appendRewriteCommand(command);
+            }
+            if (deadline >= 0) {
+                aofPersistence.appendRewriteCommand(new Object[]{"PEXPIREAT", key, String.valueOf(deadline)});
+            }
+        } else if (deadline >= 0) {
+            aofPersistence.appendRewriteCommand(new Object[]{"SET", key, value, "PXAT", String.valueOf(deadline)});
+        } else {
+            aofPersistence.appendRewriteCommand(new Object[]{"SET", key, value});
+        }
+    }
+}
@@ -0,0 +1,747 @@
+package com.mycompany.app;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+public class AofWriter implements Closeable {
+
+    private static final int BATCH_SIZE = 64 * 1024;
+    // bounds one group commit so a steady stream of writers cannot postpone the fsync indefinitely
+    private static final long MAX_GROUP_BYTES = 4 * 1024 * 1024;
+    private static final long FSYNC_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    /**
+     * What the writer thread does with an entry
+     */
+    private enum Kind {
+        COMMAND, REWRITE_RECORD, REWRITE_START, REWRITE_FINISH, REWRITE_ABORT
+    }
+
+    /**
+     * A command or rewrite control message handed from another thread to the writer thread
+     */
+    private static final class Entry {
+        final Kind kind;
+        final byte[] data;
+        final Thread waiter;
+        final CompletableFuture<Boolean> done;
+        // set before released, when the entry's batch could not be written or forced to disk
+        volatile IOException error;
+        volatile boolean released;
+
+        Entry(Kind kind, byte[] data, Thread waiter, CompletableFuture<Boolean> done) {
+            this.kind = kind;
+            this.data = data;
+            this.waiter = waiter;
+            this.done = done;
+        }
+    }
+
+    private final Path path;
+    private final Path rewritePath;
+    private final AppendFsync fsyncPolicy;
+    private final ConcurrentLinkedQueue<Entry> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queueDepth = new AtomicInteger();
+    // bytes of commands and rewrite records handed over but not yet written, held under the queue limit
+    private final AtomicLong queuedBytes = new AtomicLong();
+    private final ConcurrentLinkedQueue<Thread> stalled = new ConcurrentLinkedQueue<>();
+    private final AtomicLong stallCount = new AtomicLong();
+    private volatile long queueLimit;
+    private final ByteBuffer batch = ByteBuffer.allocateDirect(BATCH_SIZE);
+    private final ByteBuffer rewriteBatch = ByteBuffer.allocateDirect(BATCH_SIZE);
+    private final List<Entry> batchWaiters = new ArrayList<>();
+    // set by open before the writer is handed out
+    private Thread thread;
+    private volatile boolean running = true;
+    private volatile boolean parked;
+    private FileChannel channel;
+    private FileChannel rewriteChannel;
+
+    // only written by the writer thread, volatile so INFO can read them from executor threads
+    private volatile long fsyncCount;
+    private volatile long totalFsyncNanos;
+    private volatile long lastFsyncNanos;
+    private volatile long maxFsyncNanos;
+    private volatile long bytesWritten;
+    private volatile long fileSize;
+    // the failure that stopped the file being appended to, null while writes are going through
+    private volatile IOException lastWriteError;
+    private long lastFsyncTime = System.nanoTime();
+    private boolean dirty;
+    // end of the last batch known to be whole in the file, where a failed batch is cut back to
+    private long goodSize;
+    private long nextRecoveryTime;
+    private boolean rewriteFailed;
+
+    /**
+     * Opens the append only file and starts the thread that writes to it. Executor threads only
+     * hand commands over through a lock-free queue; the writer thread writes whatever has queued up
+     * in one go and fsyncs it according to the policy, so concurrent writers share one fsync.
+     * @param path The file to append to, created if missing
+     * @param fsyncPolicy When written data is forced to disk
+     * @return The writer, already running
+     * @throws IOException Throws if the file cannot be opened
+     */
+    public static AofWriter open(Path path, AppendFsync fsyncPolicy) throws IOException {
+        return open(path, FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND),
+                fsyncPolicy);
+    }
+
+    /**
+     * Starts the thread that writes to an append only file that is already open
+     * @param path The file's location, next to which rewrites are made
+     * @param channel The file, open for appending
+     * @param fsyncPolicy When written data is forced to disk
+     * @return The writer, already running
+     * @throws IOException Throws if the file's size cannot be read
+     */
+    static AofWriter open(Path path, FileChannel channel, AppendFsync fsyncPolicy) throws IOException {
+        AofWriter writer = new AofWriter(path, channel, fsyncPolicy);
+        writer.start();
+        return writer;
+    }
+
+    /**
+     * Holds the state of a writer for an open file. The thread is started once the writer is fully
+     * built, by open, so it never sees a half constructed writer.
+     * @param path The file's location, next to which rewrites are made
+     * @param channel The file, open for appending
+     * @param fsyncPolicy When written data is forced to disk
+     * @throws IOException Throws if the file's size cannot be read
+     */
+    private AofWriter(Path path, FileChannel channel, AppendFsync fsyncPolicy) throws IOException {
+        this.path = path;
+        this.rewritePath = path.resolveSibling(path.getFileName() + ".rewrite.tmp");
+        this.channel = channel;
+        this.fileSize = channel.size();
+        this.goodSize = fileSize;
+        this.fsyncPolicy = fsyncPolicy;
+    }
+
+    /**
+     * Starts the thread that writes to the file
+     */
+    private void start() {
+        thread = new Thread(this::run, "aof-writer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Queues an encoded command for writing. Under appendfsync always this waits until the batch
+     * holding the command has been fsynced; otherwise it returns straight away. While the last
+     * write has failed nothing is queued, as Redis refuses writes until the AOF can be written again.
+     * @param data The RESP encoded command
+     * @throws UncheckedIOException Throws if the file cannot be written, or under appendfsync always
+     * if the batch holding the command did not reach the disk
+     */
+    public void append(byte[] data) {
+        IOException error = lastWriteError;
+        if (error != null) {
+            throw new UncheckedIOException("The last write to the AOF failed", error);
+        }
+        reserve(data.length);
+        boolean await = fsyncPolicy == AppendFsync.ALWAYS;
+        Entry entry = enqueue(new Entry(Kind.COMMAND, data, await ? Thread.currentThread() : null, null));
+        if (await) {
+            while (!entry.released) {
+                LockSupport.park(this);
+            }
+            if (entry.error != null) {
+                throw new UncheckedIOException("Writing to the AOF failed", entry.error);
+            }
+        }
+    }
+
+    /**
+     * Starts a rewrite: from this point in the queue on, commands are written to the current file
+     * and to the new one, and rewrite records only to the new one
+     */
+    public void beginRewrite() {
+        enqueue(new Entry(Kind.REWRITE_START, null, null, null));
+    }
+
+    /**
+     * Queues a record describing the current value of a key for the new file only. It lands in the
+     * new file after every command queued before it, which is what makes the rewrite consistent.
+     * @param data The RESP encoded command recreating the key
+     */
+    public void appendRewriteRecord(byte[] data) {
+        reserve(data.length);
+        enqueue(new Entry(Kind.REWRITE_RECORD, data, null, null));
+    }
+
+    /**
+     * Ends a rewrite: once every queued entry is written, the new file is fsynced and atomically
+     * renamed over the current one, and writing carries on in it
+     * @return Completes with true once the switch has happened, false if it failed
+     */
+    public CompletableFuture<Boolean> finishRewrite() {
+        CompletableFuture<Boolean> done = new CompletableFuture<>();
+        enqueue(new Entry(Kind.REWRITE_FINISH, null, null, done));
+        return done;
+    }
+
+    /**
+     * Abandons a rewrite and deletes the partial new file, the current file is left untouched
+     */
+    public void abortRewrite() {
+        enqueue(new Entry(Kind.REWRITE_ABORT, null, null, null));
+    }
+
+    /**
+     * Cuts the file down to a given length, used to drop an unfinished command found at startup.
+     * Only safe before anything has been appended.
+     * @param length The new file length
+     * @throws IOException Throws if the file cannot be truncated
+     */
+    public void truncate(long length) throws IOException {
+        channel.truncate(length);
+        channel.force(true);
+        fileSize = channel.size();
+        goodSize = fileSize;
+    }
+
+    /**
+     * Gets the number of commands handed over but not yet written
+     * @return The queue depth
+     */
+    public int getQueueDepth() {
+        return queueDepth.get();
+    }
+
+    /**
+     * Caps the bytes that may wait for the writer thread. Past the cap, callers of append and
+     * appendRewriteRecord wait until the writer has caught up, so a disk slower than the writes
+     * slows the writers down instead of filling the heap.
+     * @param queueLimit The most bytes that may be queued, 0 for no limit
+     */
+    public void setQueueLimit(long queueLimit) {
+        if (queueLimit < 0) {
+            throw new IllegalArgumentException("The AOF writer queue limit must not be negative");
+        }
+        this.queueLimit = queueLimit;
+        wakeStalled();
+    }
+
+    /**
+     * Gets the number of bytes handed over but not yet written
+     * @return The queued byte count
+     */
+    public long getQueuedBytes() {
+        return queuedBytes.get();
+    }
+
+    /**
+     * Gets the number of times a caller had to wait for the writer to catch up with the queue limit
+     * @return The stall count
+     */
+    public long getStallCount() {
+        return stallCount.get();
+    }
+
+    /**
+     * Gets the policy this writer fsyncs by
+     * @return The fsync policy
+     */
+    public AppendFsync getFsyncPolicy() {
+        return fsyncPolicy;
+    }
+
+    /**
+     * Gets the number of fsyncs performed so far
+     * @return The fsync count
+     */
+    public long getFsyncCount() {
+        return fsyncCount;
+    }
+
+    /**
+     * Gets how long the most recent fsync took
+     * @return The latency in microseconds
+     */
+    public long getLastFsyncMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(lastFsyncNanos);
+    }
+
+    /**
+     * Gets the slowest fsync so far
+     * @return The latency in microseconds
+     */
+    public long getMaxFsyncMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(maxFsyncNanos);
+    }
+
+    /**
+     * Gets the mean fsync latency so far
+     * @return The latency in microseconds, 0 before the first fsync
+     */
+    public long getAverageFsyncMicros() {
+        long count = fsyncCount;
+        return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(totalFsyncNanos / count);
+    }
+
+    /**
+     * Gets the number of bytes written to the file by this writer
+     * @return The byte count
+     */
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * Gets the size of the append only file as last written by this writer
+     * @return The file size in bytes
+     */
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    /**
+     * Reports whether the last write or fsync succeeded
+     * @return True if the file is being written without errors
+     */
+    public boolean isLastWriteOk() {
+        return lastWriteError == null;
+    }
+
+    /**
+     * Describes why the file is not being written to
+     * @return The error of the last failed write or fsync, null if writes are going through
+     */
+    public String getLastWriteError() {
+        IOException error = lastWriteError;
+        if (error == null) {
+            return null;
+        }
+        return error.getMessage() != null ? error.getMessage() : error.getClass().getSimpleName();
+    }
+
+    /**
+     * Writes and fsyncs everything still queued, then stops the writer thread and closes the file
+     */
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(thread);
+        wakeStalled();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // anything that raced past the running check is not written, but must not leave its caller waiting
+        Entry entry;
+        while ((entry = queue.poll()) != null) {
+            release(entry, false, new ClosedChannelException());
+        }
+    }
+
+    /**
+     * Counts an entry's bytes against the queue limit, parking the calling thread while the writer
+     * is that far behind. An entry larger than the whole limit still goes through once the queue is
+     * empty, and nothing waits once the writer is closing.
+     * @param length The entry's size in bytes
+     */
+    private void reserve(int length) {
+        boolean counted = false;
+        while (true) {
+            long limit = queueLimit;
+            long current = queuedBytes.get();
+            if (limit <= 0 || current == 0 || current + length <= limit || !running) {
+                if (queuedBytes.compareAndSet(current, current + length)) {
+                    return;
+                }
+                continue;
+            }
+            if (!counted) {
+                stallCount.incrementAndGet();
+                counted = true;
+            }
+            Thread waiting = Thread.currentThread();
+            stalled.add(waiting);
+            // registered before looking again, so the writer either sees this thread or the count has moved
+            if (queuedBytes.get() == current && running) {
+                if (parked) {
+                    LockSupport.unpark(thread);
+                }
+                LockSupport.park(this);
+            }
+            stalled.remove(waiting);
+        }
+    }
+
+    /**
+     * Wakes every caller waiting for room in the queue, to look at the queued byte count again
+     */
+    private void wakeStalled() {
+        for (Thread waiting : stalled) {
+            LockSupport.unpark(waiting);
+        }
+    }
+
+    /**
+     * Hands an entry to the writer thread, waking it if it is idle
+     * @param entry The entry to queue
+     * @return The queued entry
+     */
+    private Entry enqueue(Entry entry) {
+        if (!running) {
+            throw new IllegalStateException("AOF writer is closed");
+        }
+        queue.add(entry);
+        queueDepth.incrementAndGet();
+        if (parked) {
+            LockSupport.unpark(thread);
+        }
+        return entry;
+    }
+
+    /**
+     * The writer loop: drain the queue into batches, write them, fsync per policy and release waiters
+     */
+    private void run() {
+        try {
+            while (running || !queue.isEmpty()) {
+                boolean wrote = writeBatch();
+                if (wrote && fsyncPolicy == AppendFsync.ALWAYS && lastWriteError == null) {
+                    fsync();
+                }
+                // read before recovering, so a batch that failed is failed even if the file is whole again
+                IOException error = lastWriteError;
+                if (error == null) {
+                    goodSize = fileSize;
+                } else if (System.nanoTime() - nextRecoveryTime >= 0) {
+                    recover();
+                }
+                if (wrote) {
+                    releaseWaiters(error);
+                }
+                if (!stalled.isEmpty()) {
+                    wakeStalled();
+                }
+                if (fsyncPolicy == AppendFsync.EVERYSEC && dirty && System.nanoTime() - lastFsyncTime >= FSYNC_INTERVAL_NANOS) {
+                    fsync();
+                }
+                if (queue.isEmpty() && running) {
+                    parked = true;
+                    if (queue.isEmpty() && running) {
+                        LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                    }
+                    parked = false;
+                }
+            }
+            abandonRewrite();
+            if (dirty && fsyncPolicy != AppendFsync.NO && lastWriteError == null) {
+                fsync();
+            }
+        } finally {
+            // only a writer stopped by an unexpected error gets here with waiters left
+            releaseWaiters(new IOException("AOF writer stopped"));
+            closeQuietly(channel);
+        }
+    }
+
+    /**
+     * Writes the queued entries, a buffer at a time, up to one group commit's worth
+     * @return True if any command was taken off the queue
+     */
+    private boolean writeBatch() {
+        Entry entry;
+        boolean wrote = false;
+        long groupBytes = 0;
+        while (groupBytes < MAX_GROUP_BYTES && (entry = queue.poll()) != null) {
+            queueDepth.decrementAndGet();
+            if (entry.data != null) {
+                queuedBytes.addAndGet(-entry.data.length);
+            }
+            switch (entry.kind) {
+                case COMMAND -> {
+                    groupBytes += entry.data.length;
+                    if (entry.waiter != null) {
+                        batchWaiters.add(entry);
+                    }
+                    wrote = true;
+                    if (lastWriteError != null) {
+                        // queued before the failure, it is dropped and its waiter told so
+                        continue;
+                    }
+                    buffer(batch, channel, entry.data);
+                    if (rewriteChannel != null) {
+                        buffer(rewriteBatch, rewriteChannel, entry.data);
+                    }
+                }
+                case REWRITE_RECORD -> {
+                    if (rewriteChannel != null) {
+                        buffer(rewriteBatch, rewriteChannel, entry.data);
+                    }
+                }
+                case REWRITE_START -> startRewrite();
+                case REWRITE_FINISH -> entry.done.complete(switchToRewrittenFile());
+                case REWRITE_ABORT -> abandonRewrite();
+            }
+        }
+        flush(batch, channel);
+        if (rewriteChannel != null) {
+            flush(rewriteBatch, rewriteChannel);
+        }
+        return wrote;
+    }
+
+    /**
+     * Opens a fresh temporary file for the rewrite next to the append only file
+     */
+    private void startRewrite() {
+        abandonRewrite();
+        rewriteFailed = false;
+        try {
+            rewriteChannel = FileChannel.open(rewritePath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Makes the rewritten file the append only file: flush and fsync it, rename it over the old file
+     * and keep appending to it. The rename is atomic, so a crash leaves either the old or the new
+     * file, and the directory is fsynced after it so the new file is the one that survives.
+     * A rewritten file that could not be written completely is thrown away instead.
+     * @return True if the switch happened
+     */
+    private boolean switchToRewrittenFile() {
+        if (rewriteChannel == null) {
+            return false;
+        }
+        flush(batch, channel);
+        flush(rewriteBatch, rewriteChannel);
+        if (rewriteFailed) {
+            abandonRewrite();
+            return false;
+        }
+        try {
+            rewriteChannel.force(true);
+            Files.move(rewritePath, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            e.printStackTrace();
+            abandonRewrite();
+            return false;
+        }
+        fsyncDirectory();
+        closeQuietly(channel);
+        channel = rewriteChannel;
+        rewriteChannel = null;
+        try {
+            fileSize = channel.size();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        goodSize = fileSize;
+        dirty = false;
+        return true;
+    }
+
+    /**
+     * Forces the directory holding the append only file to disk, so a rename into it survives a crash.
+     * The rename has already happened, so a failure is reported and writing carries on in the new file.
+     */
+    private void fsyncDirectory() {
+        Path directory = path.toAbsolutePath().getParent();
+        if (directory == null) {
+            return;
+        }
+        try (FileChannel directoryChannel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            directoryChannel.force(true);
+        } catch (IOException e) {
+            // some platforms, Windows among them, cannot open a directory as a file
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Closes and deletes the temporary rewrite file, if a rewrite is under way
+     */
+    private void abandonRewrite() {
+        if (rewriteChannel == null) {
+            return;
+        }
+        closeQuietly(rewriteChannel);
+        rewriteChannel = null;
+        rewriteBatch.clear();
+        try {
+            Files.deleteIfExists(rewritePath);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Adds bytes to a batch buffer, writing the buffer out first if they do not fit
+     * @param buffer The batch buffer of the target file
+     * @param target The file the buffer is written to
+     * @param data The bytes to add
+     */
+    private void buffer(ByteBuffer buffer, FileChannel target, byte[] data) {
+        if (buffer.remaining() < data.length) {
+            flush(buffer, target);
+        }
+        if (data.length > buffer.capacity()) {
+            write(target, ByteBuffer.wrap(data));
+        } else {
+            buffer.put(data);
+        }
+    }
+
+    /**
+     * Writes a batch buffer to its file and empties it
+     * @param buffer The batch buffer
+     * @param target The file it belongs to
+     */
+    private void flush(ByteBuffer buffer, FileChannel target) {
+        buffer.flip();
+        write(target, buffer);
+        buffer.clear();
+    }
+
+    /**
+     * Writes a buffer to a file completely. After a failure nothing more is written to that file,
+     * so the partial record the failure left stays the last thing in it until it is cut off.
+     * @param target The file to write to
+     * @param buffer The bytes to write
+     */
+    private void write(FileChannel target, ByteBuffer buffer) {
+        if (target == channel ? lastWriteError != null : rewriteFailed) {
+            buffer.position(buffer.limit());
+            return;
+        }
+        try {
+            while (buffer.hasRemaining()) {
+                int written = target.write(buffer);
+                if (target == channel) {
+                    bytesWritten += written;
+                    fileSize += written;
+                }
+            }
+            if (target == channel) {
+                dirty = true;
+            }
+        } catch (IOException e) {
+            if (target == channel) {
+                fail(e);
+            } else {
+                // only the rewrite is lost, the current file is still whole
+                rewriteFailed = true;
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Forces written data to disk and records how long it took
+     */
+    private void fsync() {
+        long start = System.nanoTime();
+        try {
+            channel.force(false);
+            dirty = false;
+        } catch (IOException e) {
+            fail(e);
+        }
+        long elapsed = System.nanoTime() - start;
+        lastFsyncTime = start + elapsed;
+        lastFsyncNanos = elapsed;
+        maxFsyncNanos = Math.max(maxFsyncNanos, elapsed);
+        totalFsyncNanos += elapsed;
+        fsyncCount++;
+    }
+
+    /**
+     * Records a failed write or fsync. Appends are refused from here on, and the batch being written
+     * is failed, until the file has been cut back to its last whole batch and forced to disk again.
+     * @param e The failure
+     */
+    private void fail(IOException e) {
+        e.printStackTrace();
+        if (lastWriteError == null) {
+            nextRecoveryTime = System.nanoTime();
+        }
+        lastWriteError = e;
+    }
+
+    /**
+     * Cuts the file back to the end of the last batch that was written whole, dropping whatever part
+     * of a failed batch reached it, and accepts appends again once that has reached the disk. A
+     * failed attempt is retried a second later, as Redis retries a failed AOF write from its cron.
+     */
+    private void recover() {
+        batch.clear();
+        try {
+            channel.truncate(goodSize);
+            channel.force(true);
+        } catch (IOException e) {
+            e.printStackTrace();
+            nextRecoveryTime = System.nanoTime() + FSYNC_INTERVAL_NANOS;
+            return;
+        }
+        fileSize = goodSize;
+        dirty = false;
+        lastWriteError = null;
+    }
+
+    /**
+     * Wakes every executor thread waiting for the batch just written
+     * @param error Why the batch did not reach the disk, which fails every waiter, null if it did
+     */
+    private void releaseWaiters(IOException error) {
+        for (Entry entry : batchWaiters) {
+            release(entry, true, error);
+        }
+        batchWaiters.clear();
+    }
+
+    /**
+     * Lets whoever is waiting on an entry carry on
+     * @param entry The entry that has been dealt with
+     * @param written Whether a rewrite control entry took effect
+     * @param error Why the entry did not reach the disk, null if it did
+     */
+    private static void release(Entry entry, boolean written, IOException error) {
+        entry.error = error;
+        entry.released = true;
+        if (entry.waiter != null) {
+            LockSupport.unpark(entry.waiter);
+        }
+        if (entry.done != null) {
+            entry.done.complete(written);
+        }
+    }
+
+    /**
+     * Closes a file, ignoring errors as it is being discarded anyway
+     * @param target The file to close
+     */
+    private static void closeQuietly(FileChannel target) {
+        try {
+            target.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.mycompany.app;
+
+public enum AppendFsync {
+
+    /**
+     * Every write is fsynced before the command returns; concurrent writers share one fsync per batch
+     */
+    ALWAYS,
+
+    /**
+     * The file is fsynced at most once a second, so up to a second of writes can be lost on a crash
+     */
+    EVERYSEC,
+
+    /**
+     * The file is never explicitly fsynced and the operating system decides when data reaches disk
+     */
+    NO;
+
+    /**
+     * Resolves a policy from its redis.conf name, ignoring case
+     * @param name The name given on the command line (e.g. "everysec")
+     * @return The matching policy
+     * @throws IllegalArgumentException If no policy has the given name
+     */
+    public static AppendFsync fromName(String name) {
+        for (AppendFsync policy : values()) {
+            if (policy.name().equalsIgnoreCase(name)) {
+                return policy;
+            }
+        }
+        throw new IllegalArgumentException("Unknown appendfsync policy: " + name);
+    }
+}
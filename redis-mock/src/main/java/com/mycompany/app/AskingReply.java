@@ -0,0 +1,13 @@
+package com.mycompany.app;
+
+public final class AskingReply {
+
+    public static final AskingReply INSTANCE = new AskingReply();
+
+    /**
+     * The reply to ASKING. The connection answers OK and sends its next command through
+     * executeAsking, so a node importing the command's slot serves it instead of redirecting it.
+     */
+    private AskingReply() {
+    }
+}
@@ -0,0 +1,129 @@
+package com.mycompany.app;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class BlockedClients {
+
+    // one timer thread for every executor's timeouts; cancelled timeouts are removed at once, as
+    // most blocked pops are served long before they time out
+    private static final ScheduledThreadPoolExecutor TIMEOUTS = createTimer();
+
+    /**
+     * A client blocked on one or more keys
+     * @param keys The keys, in the order they were given
+     * @param popFirst True to pop from the head of the list, false for the tail
+     * @param reply The reply the client is waiting for
+     */
+    public record Waiter(String[] keys, boolean popFirst, DeferredReply reply) {
+    }
+
+    private final ConcurrentHashMap<String, ArrayDeque<Waiter>> waiters = new ConcurrentHashMap<>();
+    private final AtomicInteger blocked = new AtomicInteger();
+
+    /**
+     * The clients blocked on keys of one executor, each waiting in a first come first served queue
+     * per key. A blocked client is only a registration: no thread waits for it. Waiters are added
+     * under the locks of their keys and served under the lock of the key that was pushed to, so a
+     * push cannot slip in between a blocking pop finding its keys empty and registering.
+     */
+    public BlockedClients() {
+    }
+
+    /**
+     * Blocks a client on keys that are all empty. Called with the keys locked.
+     * @param keys The keys
+     * @param popFirst True to pop from the head of the list, false for the tail
+     * @param timeoutMillis How long to wait before replying null, 0 to wait forever
+     * @return The reply, completed when a key is pushed to or the timeout passes
+     */
+    public DeferredReply block(String[] keys, boolean popFirst, long timeoutMillis) {
+        Waiter waiter = new Waiter(keys, popFirst, new DeferredReply());
+        for (String key : keys) {
+            waiters.compute(key, (k, queue) -> {
+                ArrayDeque<Waiter> waiting = queue == null ? new ArrayDeque<>() : queue;
+                waiting.add(waiter);
+                return waiting;
+            });
+        }
+        blocked.incrementAndGet();
+        ScheduledFuture<?> timeout = timeoutMillis > 0
+                ? TIMEOUTS.schedule(() -> waiter.reply().complete(null), timeoutMillis, TimeUnit.MILLISECONDS)
+                : null;
+        waiter.reply().onComplete(() -> {
+            if (timeout != null) {
+                timeout.cancel(false);
+            }
+            for (String key : keys) {
+                waiters.computeIfPresent(key, (k, queue) -> {
+                    queue.remove(waiter);
+                    return queue.isEmpty() ? null : queue;
+                });
+            }
+            blocked.decrementAndGet();
+        });
+        return waiter.reply();
+    }
+
+    /**
+     * Reports whether any client is blocked, so writes can skip looking for waiters
+     * @return True if a client is blocked
+     */
+    public boolean isEmpty() {
+        return waiters.isEmpty();
+    }
+
+    /**
+     * Reports whether any client is blocked on a key
+     * @param key The key
+     * @return True if a client is waiting on it
+     */
+    public boolean hasWaiters(String key) {
+        return waiters.containsKey(key);
+    }
+
+    /**
+     * Takes the longest waiting client off a key's queue. It may still be completed by its timeout
+     * or another key before the caller completes it. Called with the key locked.
+     * @param key The key
+     * @return The waiter, null if none is left
+     */
+    public Waiter nextWaiter(String key) {
+        Waiter[] next = new Waiter[1];
+        waiters.computeIfPresent(key, (k, queue) -> {
+            Waiter waiter;
+            while ((waiter = queue.poll()) != null && waiter.reply().isDone()) {
+                // completed by its timeout or by another of its keys, dropped as it is passed over
+            }
+            next[0] = waiter;
+            return queue.isEmpty() ? null : queue;
+        });
+        return next[0];
+    }
+
+    /**
+     * Counts the blocked clients
+     * @return The number of clients waiting on a key
+     */
+    public int getBlockedCount() {
+        return blocked.get();
+    }
+
+    /**
+     * Creates the daemon thread that times blocked clients out
+     * @return The timer
+     */
+    private static ScheduledThreadPoolExecutor createTimer() {
+        ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "blocked-timeouts");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.setRemoveOnCancelPolicy(true);
+        return timer;
+    }
+}
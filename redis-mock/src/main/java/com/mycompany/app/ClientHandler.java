@@ -2,38 +2,206 @@ package com.mycompany.app;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
-import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.concurrent.locks.LockSupport;
 
 public class ClientHandler implements Runnable {
 
+    private static final int INITIAL_BUFFER_SIZE = 16 * 1024;
+
     private final InputStream in;
     private final OutputStream out;
-    private final CommandExecutor commandExecutor;
+    private final CommandDispatcher commandExecutor;
+    private final RespDecoder decoder = new RespDecoder();
+    private ByteBuffer readBuffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+    private final ReplyBuffer replies = new ReplyBuffer();
+    private final PubSub pubSub;
+    private final Subscriber subscriber;
+    // set by ASKING for the next command only
+    private boolean asking;
+    // sends queued output once the client has subscribed, so publishers never wait on this socket
+    private volatile Thread writer;
+    private volatile boolean finished;
+
+    /**
+     * Sets up a designated handler to deal with a single individual client
+     * @param in The stream being passed by the client to the server
+     * @param out The stream being outputted by the server to the client
+     * @param commandExecutor The executor in charge of the commands and persistence of data within the server
+     */
+    public ClientHandler(InputStream in, OutputStream out, CommandDispatcher commandExecutor) {
+        this(in, out, commandExecutor, new PubSub());
+    }
 
     /**
      * Sets up a designated handler to deal with a single individual client
      * @param in The stream being passed by the client to the server
      * @param out The stream being outputted by the server to the client
      * @param commandExecutor The executor in charge of the commands and persistence of data within the server
+     * @param pubSub The channels shared by every connection of the server
      */
-    public ClientHandler(InputStream in, OutputStream out, CommandExecutor commandExecutor) {
+    public ClientHandler(InputStream in, OutputStream out, CommandDispatcher commandExecutor, PubSub pubSub) {
         this.in = in;
         this.out = out;
         this.commandExecutor = commandExecutor;
+        this.pubSub = pubSub;
+        this.subscriber = pubSub.newSubscriber(this::onPushed);
     }
 
+    /**
+     * Serves the connection until the client closes it. Each read executes every command that has
+     * fully arrived, in order, and the replies to all of them are sent back in a single write. Once
+     * the client subscribes, replies and messages are sent by a writer thread of their own instead.
+     */
     @Override
     public void run() {
         try {
-            Object decoded = RESPParser.decode(in);
-            if (decoded instanceof Object[] decodedArray) {
-                Object result = commandExecutor.execute(decodedArray);
-                String encoded = RESPParser.encode(result);
-                out.write(encoded.getBytes());
+            while (fillReadBuffer() != -1) {
+                readBuffer.flip();
+                try {
+                    executeBufferedCommands();
+                } finally {
+                    readBuffer.compact();
+                }
+                flushReplies();
+            }
+        } catch (IOException e) {
+            // a client cut off for falling behind has its socket closed under the reader
+            if (!subscriber.isOverLimit()) {
+                e.printStackTrace();
+            }
+        } finally {
+            pubSub.unsubscribeAll(subscriber);
+            subscriber.close();
+            finished = true;
+            Thread pushWriter = writer;
+            if (pushWriter != null) {
+                LockSupport.unpark(pushWriter);
+            }
+        }
+    }
+
+    /**
+     * Reads whatever the client has sent so far straight into the read buffer, growing it when a
+     * command is larger than the space left
+     * @return The number of bytes read, or -1 once the client has closed its side
+     * @throws IOException Throws if the stream cannot be read
+     */
+    private int fillReadBuffer() throws IOException {
+        if (!readBuffer.hasRemaining()) {
+            ByteBuffer bigger = ByteBuffer.allocate(readBuffer.capacity() * 2);
+            readBuffer.flip();
+            bigger.put(readBuffer);
+            readBuffer = bigger;
+        }
+        int read = in.read(readBuffer.array(), readBuffer.arrayOffset() + readBuffer.position(), readBuffer.remaining());
+        if (read > 0) {
+            readBuffer.position(readBuffer.position() + read);
+        }
+        return read;
+    }
+
+    /**
+     * Executes every complete command in the read buffer and queues their replies, leaving any
+     * partial command in place until the rest of it arrives. A blocked command's reply is waited
+     * for before the next command runs, after sending the replies queued ahead of it; this
+     * connection's thread parks until then, which is free on a virtual thread.
+     * @throws IOException Throws if the buffered bytes are not valid RESP, or if interrupted while blocked
+     */
+    private void executeBufferedCommands() throws IOException {
+        RespCommand command;
+        while ((command = decoder.decode(readBuffer)) != null) {
+            CommandSpec spec = commandExecutor.lookup(command);
+            Object[] arguments = command.toArray(spec);
+            if (pubSub.execute(subscriber, arguments, replies)) {
+                continue;
+            }
+            Object reply = commandExecutor.execute(spec, arguments, asking);
+            asking = false;
+            if (reply instanceof AskingReply) {
+                asking = true;
+                reply = "OK";
+            }
+            if (reply instanceof SyncReply sync) {
+                // the connection becomes a replica link, fed through its push queue from here on
+                subscriber.enterPushMode();
+                subscriber.pushReplies(replies);
+                sync.attach(subscriber);
+                continue;
+            }
+            if (reply instanceof DeferredReply deferred) {
+                flushReplies();
+                try {
+                    reply = deferred.await();
+                } catch (InterruptedException e) {
+                    deferred.cancel();
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while blocked");
+                }
+            }
+            replies.write(reply);
+        }
+    }
+
+    /**
+     * Sends every queued reply to the client in one write, or once the client has subscribed hands
+     * them to the writer thread, behind the messages already waiting
+     * @throws IOException Throws if the stream cannot be written
+     */
+    private void flushReplies() throws IOException {
+        if (!subscriber.isPushMode()) {
+            replies.flushTo(out);
+            return;
+        }
+        subscriber.pushReplies(replies);
+        if (writer == null) {
+            writer = Thread.ofVirtual().name("pubsub-writer").start(this::writePushed);
+        }
+    }
+
+    /**
+     * Sends queued output as it arrives until the connection ends, parking while there is none
+     */
+    private void writePushed() {
+        try {
+            while (true) {
+                subscriber.flushTo(out);
+                if (!subscriber.hasOutput()) {
+                    if (finished) {
+                        return;
+                    }
+                    LockSupport.park(this);
+                }
             }
         } catch (IOException e) {
-            e.printStackTrace();
+            closeOutput();
+        }
+    }
+
+    /**
+     * Wakes the writer thread when a publisher has queued output. A client that has fallen past the
+     * output limit has its stream closed here instead, which also frees a writer stuck sending to it.
+     */
+    private void onPushed() {
+        if (subscriber.isOverLimit()) {
+            closeOutput();
+        }
+        Thread pushWriter = writer;
+        if (pushWriter != null) {
+            LockSupport.unpark(pushWriter);
+        }
+    }
+
+    /**
+     * Closes the stream to the client, ignoring errors as the connection is being dropped anyway
+     */
+    private void closeOutput() {
+        try {
+            out.close();
+        } catch (IOException ignored) {
+            // the connection is gone either way
         }
     }
 }
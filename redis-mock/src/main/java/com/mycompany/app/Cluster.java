@@ -0,0 +1,580 @@
+package com.mycompany.app;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Supplier;
+
+public class Cluster {
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+    private static final int HANDSHAKE_TIMEOUT_MILLIS = 5000;
+    // the cluster bus port Redis would listen on, shown in CLUSTER NODES for tools that parse it
+    private static final int BUS_PORT_OFFSET = 10000;
+
+    private final CommandExecutor executor;
+    private final String myId = newNodeId();
+    private volatile boolean enabled;
+    private final Map<String, ClusterNode> nodes = new ConcurrentHashMap<>();
+    // the ID of the node serving each slot, and of the node a slot is being moved to or from
+    private final AtomicReferenceArray<String> owners = new AtomicReferenceArray<>(HashSlots.SLOTS);
+    private final AtomicReferenceArray<String> migrating = new AtomicReferenceArray<>(HashSlots.SLOTS);
+    private final AtomicReferenceArray<String> importing = new AtomicReferenceArray<>(HashSlots.SLOTS);
+
+    /**
+     * The cluster state of one node: which node serves each of the 16384 hash slots, and which slots
+     * are being moved to or from this node. There is no cluster bus; nodes learn of each other
+     * through CLUSTER MEET, which reads the other node's slots, and an operator moving a slot tells
+     * every node the new owner with CLUSTER SETSLOT NODE, as redis-cli does.
+     * @param executor The executor whose database holds this node's slots
+     */
+    public Cluster(CommandExecutor executor) {
+        this.executor = executor;
+        nodes.put(myId, new ClusterNode(myId, "127.0.0.1", 0));
+    }
+
+    /**
+     * Adds the cluster commands to a registry
+     * @param registry The registry
+     */
+    public void register(CommandRegistry registry) {
+        registry.register(new CommandSpec("CLUSTER", -2, EnumSet.of(CommandFlag.ADMIN), 0, 0, 0, this::cluster));
+        registry.register(new CommandSpec("ASKING", 1, EnumSet.of(CommandFlag.FAST), 0, 0, 0, this::asking));
+    }
+
+    /**
+     * Turns cluster mode on, so keyed commands are only served for this node's slots
+     * @param enabled True for cluster mode
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Checks if the node is in cluster mode
+     * @return True in cluster mode
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Sets the address other nodes and redirected clients reach this node on, once it is listening
+     * @param host The host
+     * @param port The port
+     */
+    public void setAddress(String host, int port) {
+        nodes.put(myId, new ClusterNode(myId, host, port));
+    }
+
+    /**
+     * Gets this node's ID
+     * @return 40 hex digits
+     */
+    public String getMyId() {
+        return myId;
+    }
+
+    /**
+     * Runs a keyed command if this node serves its slot, or redirects it. A slot being migrated away
+     * is served while its keys are still here: the command runs under their locks, so MIGRATE cannot
+     * move them half way through, and is sent on with ASK if they have already gone. A slot being
+     * imported is only served for a command sent after ASKING.
+     * @param keys The command's keys
+     * @param asking True if the command came after ASKING, or is a restore sent by MIGRATE
+     * @param run Runs the command here
+     * @return The command's reply, or a CROSSSLOT, MOVED, ASK, TRYAGAIN or CLUSTERDOWN error
+     */
+    Object route(String[] keys, boolean asking, Supplier<Object> run) {
+        int slot = HashSlots.slotOf(keys[0]);
+        for (int i = 1; i < keys.length; i++) {
+            if (HashSlots.slotOf(keys[i]) != slot) {
+                return new Exception("CROSSSLOT Keys in request don't hash to the same slot");
+            }
+        }
+        String owner = owners.get(slot);
+        if (myId.equals(owner)) {
+            String target = migrating.get(slot);
+            if (target == null) {
+                return run.get();
+            }
+            return executor.readLocked(keys, () -> {
+                int missing = 0;
+                for (String key : keys) {
+                    if (executor.lookupKey(key) == null) {
+                        missing++;
+                    }
+                }
+                if (missing == 0) {
+                    return run.get();
+                }
+                if (missing == keys.length) {
+                    return redirect("ASK", slot, target);
+                }
+                return new Exception("TRYAGAIN Multiple keys request during rehashing of slot");
+            });
+        }
+        if (asking && importing.get(slot) != null) {
+            return run.get();
+        }
+        if (owner == null) {
+            return new Exception("CLUSTERDOWN Hash slot not served");
+        }
+        return redirect("MOVED", slot, owner);
+    }
+
+    /**
+     * Builds a redirection error
+     * @param kind MOVED or ASK
+     * @param slot The slot
+     * @param nodeId The node to go to
+     * @return The error
+     */
+    private Exception redirect(String kind, int slot, String nodeId) {
+        ClusterNode node = nodes.get(nodeId);
+        if (node == null) {
+            return new Exception("CLUSTERDOWN Hash slot not served");
+        }
+        return new Exception(kind + " " + slot + " " + node.address());
+    }
+
+    /**
+     * Handles ASKING, which lets the connection's next command be served for a slot being imported
+     * @param command The command
+     * @return The marker the connection acts on, or an error outside cluster mode
+     */
+    private Object asking(Object[] command) {
+        if (!enabled) {
+            return new Exception("ERR This instance has cluster support disabled");
+        }
+        return AskingReply.INSTANCE;
+    }
+
+    /**
+     * Handles the CLUSTER subcommands
+     * @param command The command, its subcommand and the subcommand's arguments
+     * @return The subcommand's reply
+     */
+    private Object cluster(Object[] command) {
+        if (!enabled) {
+            return new Exception("ERR This instance has cluster support disabled");
+        }
+        String subcommand = ((String) command[1]).toUpperCase();
+        return switch (subcommand) {
+            case "MYID" -> command.length == 2 ? myId : wrongArity(subcommand);
+            case "KEYSLOT" -> command.length == 3 ? (Object) (long) HashSlots.slotOf((String) command[2]) : wrongArity(subcommand);
+            case "NODES" -> command.length == 2 ? nodesDescription() : wrongArity(subcommand);
+            case "SLOTS" -> command.length == 2 ? slotRanges() : wrongArity(subcommand);
+            case "INFO" -> command.length == 2 ? info() : wrongArity(subcommand);
+            case "ADDSLOTS", "DELSLOTS" -> command.length >= 3 ? assignSlots(command, false) : wrongArity(subcommand);
+            case "ADDSLOTSRANGE", "DELSLOTSRANGE" -> command.length >= 4 && command.length % 2 == 0
+                    ? assignSlots(command, true) : wrongArity(subcommand);
+            case "SETSLOT" -> command.length >= 4 ? setSlot(command) : wrongArity(subcommand);
+            case "MEET" -> command.length == 4 ? meet((String) command[2], (String) command[3]) : wrongArity(subcommand);
+            case "COUNTKEYSINSLOT" -> command.length == 3 ? countKeysInSlot((String) command[2]) : wrongArity(subcommand);
+            case "GETKEYSINSLOT" -> command.length == 4
+                    ? getKeysInSlot((String) command[2], (String) command[3]) : wrongArity(subcommand);
+            default -> new Exception("ERR unknown subcommand '" + command[1] + "'. Try CLUSTER HELP.");
+        };
+    }
+
+    /**
+     * Builds the error for a subcommand given the wrong number of arguments
+     * @param subcommand The subcommand
+     * @return The error
+     */
+    private static Exception wrongArity(String subcommand) {
+        return new Exception("ERR wrong number of arguments for 'cluster|" + subcommand.toLowerCase() + "' command");
+    }
+
+    /**
+     * Parses a slot number
+     * @param value The argument
+     * @return The slot, -1 if it is not a number from 0 to 16383
+     */
+    private static int parseSlot(String value) {
+        try {
+            int slot = Integer.parseInt(value);
+            return slot >= 0 && slot < HashSlots.SLOTS ? slot : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Claims slots for this node or gives them up (ADDSLOTS slot [slot ...], DELSLOTS slot [slot ...],
+     * ADDSLOTSRANGE start end [start end ...] and DELSLOTSRANGE start end [start end ...]). Every
+     * slot is checked before any is changed.
+     * @param command The command, its subcommand and the slots
+     * @param ranges True if the slots are given as ranges
+     * @return OK, or an error naming the first slot that cannot be changed
+     */
+    private Object assignSlots(Object[] command, boolean ranges) {
+        boolean add = ((String) command[1]).toUpperCase().startsWith("ADD");
+        BitSet slots = new BitSet(HashSlots.SLOTS);
+        for (int i = 2; i < command.length; i += ranges ? 2 : 1) {
+            int start = parseSlot((String) command[i]);
+            int end = ranges ? parseSlot((String) command[i + 1]) : start;
+            if (start < 0 || end < 0) {
+                return new Exception("ERR Invalid or out of range slot");
+            }
+            if (end < start) {
+                return new Exception("ERR start slot number " + start + " is greater than end slot number " + end);
+            }
+            slots.set(start, end + 1);
+        }
+        for (int slot = slots.nextSetBit(0); slot >= 0; slot = slots.nextSetBit(slot + 1)) {
+            if (add && owners.get(slot) != null) {
+                return new Exception("ERR Slot " + slot + " is already busy");
+            }
+            if (!add && owners.get(slot) == null) {
+                return new Exception("ERR Slot " + slot + " is already unassigned");
+            }
+        }
+        for (int slot = slots.nextSetBit(0); slot >= 0; slot = slots.nextSetBit(slot + 1)) {
+            owners.set(slot, add ? myId : null);
+            migrating.set(slot, null);
+            importing.set(slot, null);
+        }
+        return "OK";
+    }
+
+    /**
+     * Changes the state of one slot while it is moved between nodes (SETSLOT slot IMPORTING node-id,
+     * MIGRATING node-id, STABLE or NODE node-id). NODE ends a move, and is sent to every node so
+     * they all redirect to the new owner.
+     * @param command The command, its subcommand, the slot, the new state and the node
+     * @return OK, or an error if the state does not apply to this node
+     */
+    private Object setSlot(Object[] command) {
+        int slot = parseSlot((String) command[2]);
+        if (slot < 0) {
+            return new Exception("ERR Invalid or out of range slot");
+        }
+        String state = ((String) command[3]).toUpperCase();
+        if (state.equals("STABLE")) {
+            if (command.length != 4) {
+                return new Exception("ERR syntax error");
+            }
+            migrating.set(slot, null);
+            importing.set(slot, null);
+            return "OK";
+        }
+        if (command.length != 5) {
+            return new Exception("ERR syntax error");
+        }
+        String nodeId = (String) command[4];
+        if (!nodes.containsKey(nodeId)) {
+            return new Exception("ERR I don't know about node " + nodeId);
+        }
+        switch (state) {
+            case "MIGRATING" -> {
+                if (!myId.equals(owners.get(slot))) {
+                    return new Exception("ERR I'm not the owner of hash slot " + slot);
+                }
+                migrating.set(slot, nodeId);
+            }
+            case "IMPORTING" -> {
+                if (myId.equals(owners.get(slot))) {
+                    return new Exception("ERR I'm already the owner of hash slot " + slot);
+                }
+                importing.set(slot, nodeId);
+            }
+            case "NODE" -> {
+                owners.set(slot, nodeId);
+                migrating.set(slot, null);
+                importing.set(slot, null);
+            }
+            default -> {
+                return new Exception("ERR Invalid CLUSTER SETSLOT action or number of arguments. Try CLUSTER HELP");
+            }
+        }
+        return "OK";
+    }
+
+    /**
+     * Joins another node (MEET ip port). The handshake runs in the background, as in Redis: this
+     * node learns the other's ID and slots, and introduces itself to the other if it is new to it.
+     * Meeting a known node again refreshes what this node knows of its slots.
+     * @param host The other node's host
+     * @param port The other node's port
+     * @return OK, or an error for a bad port
+     */
+    private Object meet(String host, String port) {
+        int portNumber;
+        try {
+            portNumber = Integer.parseInt(port);
+        } catch (NumberFormatException e) {
+            return new Exception("ERR Invalid base port specified: " + port);
+        }
+        Thread thread = new Thread(() -> handshake(host, portNumber), "cluster-meet");
+        thread.setDaemon(true);
+        thread.start();
+        return "OK";
+    }
+
+    /**
+     * Connects to another node, reads its ID and the slots it serves, and sends it a MEET back if
+     * it does not know this node yet
+     * @param host The other node's host
+     * @param port The other node's port
+     */
+    private void handshake(String host, int port) {
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress(host, port), HANDSHAKE_TIMEOUT_MILLIS);
+            socket.setSoTimeout(HANDSHAKE_TIMEOUT_MILLIS);
+            OutputStream out = socket.getOutputStream();
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            if (!(call(out, in, "CLUSTER", "MYID") instanceof String peerId)
+                    || !(call(out, in, "CLUSTER", "NODES") instanceof String description)) {
+                throw new IOException("the node is not in cluster mode");
+            }
+            nodes.put(peerId, new ClusterNode(peerId, host, port));
+            boolean knowsMe = false;
+            for (String line : description.split("\n")) {
+                String[] fields = line.trim().split(" ");
+                if (fields.length < 8) {
+                    continue;
+                }
+                knowsMe |= fields[0].equals(myId);
+                if (fields[0].equals(peerId) && fields[2].contains("myself")) {
+                    adoptClaims(peerId, fields);
+                }
+            }
+            if (!knowsMe) {
+                ClusterNode me = nodes.get(myId);
+                call(out, in, "CLUSTER", "MEET", me.host(), Integer.toString(me.port()));
+            }
+        } catch (IOException e) {
+            System.out.println("Cluster handshake with " + host + ":" + port + " failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Sends one command to another node and reads its reply
+     * @param out The connection's output
+     * @param in The connection's input
+     * @param command The command and its arguments
+     * @return The reply
+     * @throws IOException Throws if the connection fails
+     */
+    private static Object call(OutputStream out, InputStream in, Object... command) throws IOException {
+        out.write(RESPParser.encodeCommand(command));
+        out.flush();
+        return RESPParser.decode(in);
+    }
+
+    /**
+     * Records the slots another node says it serves, from its own line of CLUSTER NODES. Slots this
+     * node serves are left alone, and slots the other node no longer claims become unassigned.
+     * @param peerId The other node's ID
+     * @param fields The fields of its line
+     */
+    private void adoptClaims(String peerId, String[] fields) {
+        BitSet claimed = new BitSet(HashSlots.SLOTS);
+        for (int i = 8; i < fields.length; i++) {
+            if (fields[i].startsWith("[")) {
+                // a slot the other node is moving, which it still serves or does not serve yet
+                continue;
+            }
+            int dash = fields[i].indexOf('-');
+            int start = parseSlot(dash < 0 ? fields[i] : fields[i].substring(0, dash));
+            int end = dash < 0 ? start : parseSlot(fields[i].substring(dash + 1));
+            if (start >= 0 && end >= start) {
+                claimed.set(start, end + 1);
+            }
+        }
+        for (int slot = 0; slot < HashSlots.SLOTS; slot++) {
+            String owner = owners.get(slot);
+            if (myId.equals(owner)) {
+                continue;
+            }
+            if (claimed.get(slot)) {
+                owners.set(slot, peerId);
+            } else if (peerId.equals(owner)) {
+                owners.set(slot, null);
+            }
+        }
+    }
+
+    /**
+     * Groups the slots into runs served by the same node
+     * @return Each run's first slot, last slot and node ID, in slot order
+     */
+    private List<Object[]> ownedRanges() {
+        List<Object[]> ranges = new ArrayList<>();
+        int start = 0;
+        for (int slot = 1; slot <= HashSlots.SLOTS; slot++) {
+            String owner = owners.get(start);
+            if (slot < HashSlots.SLOTS && Objects.equals(owners.get(slot), owner)) {
+                continue;
+            }
+            if (owner != null) {
+                ranges.add(new Object[]{start, slot - 1, owner});
+            }
+            start = slot;
+        }
+        return ranges;
+    }
+
+    /**
+     * Describes every known node in the format of CLUSTER NODES, this node first
+     * @return One line per node
+     */
+    private String nodesDescription() {
+        Map<String, StringBuilder> slotsByNode = new LinkedHashMap<>();
+        for (Object[] range : ownedRanges()) {
+            StringBuilder slots = slotsByNode.computeIfAbsent((String) range[2], id -> new StringBuilder());
+            slots.append(' ').append(range[0]);
+            if (!range[0].equals(range[1])) {
+                slots.append('-').append(range[1]);
+            }
+        }
+        StringBuilder mine = slotsByNode.computeIfAbsent(myId, id -> new StringBuilder());
+        for (int slot = 0; slot < HashSlots.SLOTS; slot++) {
+            String target = migrating.get(slot);
+            if (target != null) {
+                mine.append(" [").append(slot).append("->-").append(target).append(']');
+            }
+            String source = importing.get(slot);
+            if (source != null) {
+                mine.append(" [").append(slot).append("-<-").append(source).append(']');
+            }
+        }
+        StringBuilder description = new StringBuilder();
+        List<ClusterNode> ordered = new ArrayList<>();
+        ordered.add(nodes.get(myId));
+        for (ClusterNode node : nodes.values()) {
+            if (!node.id().equals(myId)) {
+                ordered.add(node);
+            }
+        }
+        for (ClusterNode node : ordered) {
+            description.append(node.id()).append(' ')
+                    .append(node.address()).append('@').append(node.port() + BUS_PORT_OFFSET).append(' ')
+                    .append(node.id().equals(myId) ? "myself,master" : "master")
+                    .append(" - 0 0 0 connected")
+                    .append(slotsByNode.getOrDefault(node.id(), new StringBuilder()))
+                    .append('\n');
+        }
+        return description.toString();
+    }
+
+    /**
+     * Lists the runs of slots and the node serving each, in the format of CLUSTER SLOTS
+     * @return One entry per run: its first and last slot, then the node's host, port and ID
+     */
+    private Object slotRanges() {
+        List<Object> reply = new ArrayList<>();
+        for (Object[] range : ownedRanges()) {
+            ClusterNode node = nodes.get((String) range[2]);
+            if (node != null) {
+                reply.add(new Object[]{(long) (int) range[0], (long) (int) range[1],
+                        new Object[]{node.host(), (long) node.port(), node.id()}});
+            }
+        }
+        return reply.toArray();
+    }
+
+    /**
+     * Describes the cluster in the format of CLUSTER INFO
+     * @return The fields, one per line
+     */
+    private String info() {
+        int assigned = 0;
+        Set<String> serving = new HashSet<>();
+        for (int slot = 0; slot < HashSlots.SLOTS; slot++) {
+            String owner = owners.get(slot);
+            if (owner != null) {
+                assigned++;
+                serving.add(owner);
+            }
+        }
+        return "cluster_enabled:1\r\n"
+                + "cluster_state:" + (assigned == HashSlots.SLOTS ? "ok" : "fail") + "\r\n"
+                + "cluster_slots_assigned:" + assigned + "\r\n"
+                + "cluster_slots_ok:" + assigned + "\r\n"
+                + "cluster_slots_pfail:0\r\n"
+                + "cluster_slots_fail:0\r\n"
+                + "cluster_known_nodes:" + nodes.size() + "\r\n"
+                + "cluster_size:" + serving.size() + "\r\n";
+    }
+
+    /**
+     * Counts the keys held here in a slot (COUNTKEYSINSLOT slot). Walks the whole keyspace, as the
+     * keyspace keeps no index by slot.
+     * @param slotArgument The slot
+     * @return The count, or an error for a bad slot
+     */
+    private Object countKeysInSlot(String slotArgument) {
+        int slot = parseSlot(slotArgument);
+        if (slot < 0) {
+            return new Exception("ERR Invalid slot");
+        }
+        long count = 0;
+        for (String key : executor.getKeyspace().keys()) {
+            if (HashSlots.slotOf(key) == slot) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Lists keys held here in a slot (GETKEYSINSLOT slot count), which a slot move passes to MIGRATE
+     * @param slotArgument The slot
+     * @param countArgument The most keys to return
+     * @return The keys, or an error for a bad slot or count
+     */
+    private Object getKeysInSlot(String slotArgument, String countArgument) {
+        int slot = parseSlot(slotArgument);
+        if (slot < 0) {
+            return new Exception("ERR Invalid slot");
+        }
+        int count;
+        try {
+            count = Integer.parseInt(countArgument);
+        } catch (NumberFormatException e) {
+            count = -1;
+        }
+        if (count < 0) {
+            return new Exception("ERR Invalid number of keys");
+        }
+        List<String> keys = new ArrayList<>();
+        for (String key : executor.getKeyspace().keys()) {
+            if (keys.size() >= count) {
+                break;
+            }
+            if (HashSlots.slotOf(key) == slot) {
+                keys.add(key);
+            }
+        }
+        return keys.toArray();
+    }
+
+    /**
+     * Makes up a node ID
+     * @return 40 random hex digits
+     */
+    private static String newNodeId() {
+        byte[] bytes = new byte[20];
+        RANDOM.nextBytes(bytes);
+        return HexFormat.of().formatHex(bytes);
+    }
+}
@@ -0,0 +1,18 @@
+package com.mycompany.app;
+
+/**
+ * A node of the cluster, as clients are redirected to it
+ * @param id The node's ID, 40 hex digits
+ * @param host The host clients reach it on
+ * @param port The port clients reach it on
+ */
+public record ClusterNode(String id, String host, int port) {
+
+    /**
+     * Gets the address clients are redirected to
+     * @return host:port
+     */
+    public String address() {
+        return host + ":" + port;
+    }
+}
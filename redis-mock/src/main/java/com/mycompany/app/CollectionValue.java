@@ -0,0 +1,28 @@
+package com.mycompany.app;
+
+public interface CollectionValue {
+
+    /**
+     * Copies the value, so a snapshot can keep it while the original is changed in place
+     * @return An independent copy
+     */
+    CollectionValue copy();
+
+    /**
+     * Estimates the heap taken by the value, kept up to date as it changes so it costs nothing to read
+     * @return The estimated size in bytes
+     */
+    long estimatedSize();
+
+    /**
+     * Names the value's current internal representation, as OBJECT ENCODING reports it
+     * @return The encoding name
+     */
+    String encoding();
+
+    /**
+     * Gets the number of elements in the value
+     * @return The element count
+     */
+    int size();
+}
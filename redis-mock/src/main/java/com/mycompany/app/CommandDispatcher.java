@@ -0,0 +1,42 @@
+package com.mycompany.app;
+
+@FunctionalInterface
+public interface CommandDispatcher {
+
+    /**
+     * Runs a decoded command on whichever executor owns its keys
+     * @param command The decoded command, its name first
+     * @return The reply, an Exception for an error reply
+     */
+    Object execute(Object[] command);
+
+    /**
+     * Runs a command sent straight after ASKING, which a cluster node serves for a slot it is
+     * importing instead of redirecting it
+     * @param command The decoded command, its name first
+     * @return The reply, an Exception for an error reply
+     */
+    default Object executeAsking(Object[] command) {
+        return execute(command);
+    }
+
+    /**
+     * Finds the command a connection has decoded, straight from the bytes of its name
+     * @param command The decoded command
+     * @return The command, or null if there is none by that name or the dispatcher has no registry
+     */
+    default CommandSpec lookup(RespCommand command) {
+        return null;
+    }
+
+    /**
+     * Runs a command the connection has already looked up, so it is not looked up again by name
+     * @param spec The command found by lookup, null if there was none
+     * @param command The decoded command, its name first
+     * @param asking True if the client sent ASKING before the command
+     * @return The reply, an Exception for an error reply
+     */
+    default Object execute(CommandSpec spec, Object[] command, boolean asking) {
+        return asking ? executeAsking(command) : execute(command);
+    }
+}
@@ -1,11 +1,51 @@
 package com.mycompany.app;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
 
-public class CommandExecutor {
+public final class CommandExecutor implements CommandDispatcher {
 
-    private final ConcurrentHashMap<String, Object> dataStore;
+    // sentinels returned by parseDeadline, never valid deadlines as those are clamped to zero or more
+    private static final long NOT_AN_INTEGER = -1;
+    private static final long INVALID_EXPIRE = -2;
+    static final String WRONGTYPE = "WRONGTYPE Operation against a key holding the wrong kind of value";
+    // strings up to this length fit Redis's embedded string encoding
+    private static final int EMBSTR_MAX_LENGTH = 44;
+
+    private final Keyspace dataStore;
     private final AofPersistence aofPersistence;
+    private final RdbPersistence rdbPersistence;
+    private final KeyLocks keyLocks = new KeyLocks();
+    private final CommandRegistry registry = new CommandRegistry();
+    private final Expires expires = new Expires();
+    private final EncodingLimits encodingLimits = new EncodingLimits();
+    private final HashCommands hashCommands;
+    private final SortedSetCommands sortedSetCommands;
+    private final BlockedClients blockedClients = new BlockedClients();
+    private final ListCommands listCommands;
+    private final ScanCommands scanCommands;
+    private final Replication replication;
+    private final Cluster cluster;
+    private final MigrateCommands migrateCommands;
+    private final LongAdder expiredKeys = new LongAdder();
+    private final LongAdder usedMemory = new LongAdder();
+    private final LongAdder evictedKeys = new LongAdder();
+    private volatile long maxMemory;
+    private volatile EvictionPolicy maxMemoryPolicy = EvictionPolicy.NOEVICTION;
+    private volatile Evictor evictor;
+    private volatile boolean loading;
 
     /**
      * Responsible for handling all the executable commands within the server and ensuring 
@@ -13,55 +53,1217 @@ public class CommandExecutor {
      * @param aofPersistence This is the file which the data is saved to in order to maintain persistence
      */
     public CommandExecutor(ConcurrentHashMap<String, Object> dataStore, AofPersistence aofPersistence) {
+        this(dataStore, aofPersistence, new RdbPersistence("dump.rdb"));
+    }
+
+    /**
+     * Responsible for handling all the executable commands within the server and ensuring
+     * persistence through both the AOF and point-in-time snapshots
+     * @param dataStore The database the commands act on
+     * @param aofPersistence This is the file which the data is saved to in order to maintain persistence
+     * @param rdbPersistence The snapshot file written by SAVE and BGSAVE
+     */
+    public CommandExecutor(ConcurrentHashMap<String, Object> dataStore, AofPersistence aofPersistence, RdbPersistence rdbPersistence) {
+        this(new HeapKeyspace(dataStore), aofPersistence, rdbPersistence);
+    }
+
+    /**
+     * Responsible for handling all the executable commands within the server and ensuring
+     * persistence through both the AOF and point-in-time snapshots
+     * @param dataStore The database the commands act on, on or off the heap
+     * @param aofPersistence This is the file which the data is saved to in order to maintain persistence
+     * @param rdbPersistence The snapshot file written by SAVE and BGSAVE
+     */
+    public CommandExecutor(Keyspace dataStore, AofPersistence aofPersistence, RdbPersistence rdbPersistence) {
         this.dataStore = dataStore;
         this.aofPersistence = aofPersistence;
+        this.rdbPersistence = rdbPersistence;
+        this.hashCommands = new HashCommands(this);
+        this.sortedSetCommands = new SortedSetCommands(this);
+        this.listCommands = new ListCommands(this, blockedClients);
+        this.scanCommands = new ScanCommands(this);
+        this.replication = new Replication(this);
+        this.cluster = new Cluster(this);
+        this.migrateCommands = new MigrateCommands(this);
+        registerCommands();
+        recalculateUsedMemory();
+    }
+
+    /**
+     * Marks whether commands are being replayed from the AOF at startup, in which case writes are
+     * applied without being logged again
+     * @param loading True while the AOF is being replayed
+     */
+    public void setLoading(boolean loading) {
+        this.loading = loading;
+    }
+
+    /**
+     * Reports whether commands are being replayed from the AOF at startup
+     * @return True while the AOF is being replayed
+     */
+    boolean isLoading() {
+        return loading;
+    }
+
+    /**
+     * Caps the estimated memory used by the database. Once it is over the limit, every write first
+     * evicts keys by the policy until it is back under, and writes that add data are refused if
+     * nothing can be evicted.
+     * @param maxMemory The limit in bytes, 0 for none
+     * @param policy Which keys are evicted
+     * @param samples How many keys each eviction round samples
+     */
+    public void setMaxMemory(long maxMemory, EvictionPolicy policy, int samples) {
+        this.evictor = maxMemory > 0 ? new Evictor(dataStore, expires, policy, samples) : null;
+        this.maxMemory = maxMemory;
+        this.maxMemoryPolicy = policy;
     }
 
     /**
-     * Executes a given decoded RESP command (choices or PING, SET and GET)
+     * Gets the database the commands act on
+     * @return The keyspace
+     */
+    public Keyspace getKeyspace() {
+        return dataStore;
+    }
+
+    /**
+     * Gets the limits on the compact encodings of collection values, which can be changed at any time
+     * @return The limits
+     */
+    public EncodingLimits getEncodingLimits() {
+        return encodingLimits;
+    }
+
+    /**
+     * Gets the estimated memory used by the database
+     * @return The estimate in bytes
+     */
+    public long getUsedMemory() {
+        return usedMemory.sum();
+    }
+
+    /**
+     * Estimates the memory used by the database from scratch, for data put in the store directly
+     * such as a loaded snapshot
+     */
+    public void recalculateUsedMemory() {
+        long total = 0;
+        for (String key : dataStore.keys()) {
+            Object value = dataStore.get(key);
+            if (value != null) {
+                total += MemoryEstimator.entrySize(key, value);
+            }
+        }
+        usedMemory.reset();
+        usedMemory.add(total);
+    }
+
+    /**
+     * Gets the table of commands this executor runs, for layers that treat commands generically
+     * @return The command registry
+     */
+    public CommandRegistry getRegistry() {
+        return registry;
+    }
+
+    /**
+     * Executes a given decoded RESP command, looked up in the command registry. Write commands run
+     * under the locks of their keys and are logged to the AOF unless they fail.
      * @param command The decoded instruction passed by the client
      * @return The servers reaction to the command, this could be validation or a value itself
      */
+    @Override
     public Object execute(Object[] command) {
-        String commandName = (String) command[0];
-        return switch (commandName.toUpperCase()) {
-            case "PING" -> ping(command);
-            case "SET" -> {
-                if (command.length != 3) {
-                    yield new Exception("ERR wrong number of arguments for 'SET' command");
+        return execute(command, false, false);
+    }
+
+    /**
+     * Executes a command sent straight after ASKING, which a cluster node serves for a slot it is importing
+     * @param command The decoded command
+     * @return The command's reply
+     */
+    @Override
+    public Object executeAsking(Object[] command) {
+        return execute(command, false, true);
+    }
+
+    /**
+     * Finds a command straight from the bytes of its name, as the connections do before running it
+     * @param command The decoded command
+     * @return The command, or null if there is none by that name
+     */
+    @Override
+    public CommandSpec lookup(RespCommand command) {
+        return registry.lookup(command);
+    }
+
+    /**
+     * Executes a command the connection has already looked up
+     * @param spec The command, null if there is none by the name sent
+     * @param command The decoded command
+     * @param asking True if the client sent ASKING before the command
+     * @return The command's reply
+     */
+    @Override
+    public Object execute(CommandSpec spec, Object[] command, boolean asking) {
+        return execute(spec, command, false, asking);
+    }
+
+    /**
+     * Executes a write streamed by this replica's master, which is applied even though the
+     * replica's own clients may not write
+     * @param command The decoded command
+     * @return The command's reply
+     */
+    Object executeFromMaster(Object[] command) {
+        return execute(command, true, false);
+    }
+
+    /**
+     * Looks a command up by the name it was given and executes it
+     * @param command The decoded command
+     * @param fromMaster True if the command was streamed by the master
+     * @param asking True if the client sent ASKING before the command
+     * @return The command's reply
+     */
+    private Object execute(Object[] command, boolean fromMaster, boolean asking) {
+        return execute(registry.lookup((String) command[0]), command, fromMaster, asking);
+    }
+
+    /**
+     * Executes a command that has been looked up, refusing writes on a replica unless they come
+     * from its master, and in cluster mode redirecting commands for keys in slots this node does not serve
+     * @param spec The command, null if there is none by the name sent
+     * @param command The decoded command
+     * @param fromMaster True if the command was streamed by the master
+     * @param asking True if the client sent ASKING before the command
+     * @return The command's reply
+     */
+    private Object execute(CommandSpec spec, Object[] command, boolean fromMaster, boolean asking) {
+        if (spec == null) {
+            return new Exception("ERR unknown command '" + command[0] + "'");
+        }
+        if (!spec.acceptsArgCount(command.length)) {
+            return new Exception("ERR wrong number of arguments for '" + spec.getName() + "' command");
+        }
+        if (spec.isWrite() && !fromMaster && replication.isReplica()) {
+            return new Exception("READONLY You can't write against a read only replica.");
+        }
+        if (spec.isWrite() && !fromMaster && !loading) {
+            String aofError = aofPersistence.getLastWriteError();
+            if (aofError != null) {
+                return new Exception("MISCONF Errors writing to the AOF file: " + aofError);
+            }
+        }
+        Evictor currentEvictor = evictor;
+        if (currentEvictor != null) {
+            touchKeys(currentEvictor, spec, command);
+            if (spec.isWrite() && !loading && !freeMemoryIfNeeded(currentEvictor) && spec.hasFlag(CommandFlag.DENYOOM)) {
+                return new Exception("OOM command not allowed when used memory > 'maxmemory'.");
+            }
+        }
+        // the master has routed what it streams, and the files hold only this node's keys
+        if (cluster.isEnabled() && !fromMaster && !loading && spec.getFirstKey() > 0 && command.length > spec.getFirstKey()) {
+            return cluster.route(keysOf(spec, command), asking || spec.hasFlag(CommandFlag.ASKING), () -> run(spec, command));
+        }
+        return run(spec, command);
+    }
+
+    /**
+     * Runs a command that is to be served here
+     * @param spec The command
+     * @param command The decoded command
+     * @return The command's reply
+     */
+    private Object run(CommandSpec spec, Object[] command) {
+        if (!spec.isWrite()) {
+            return spec.getHandler().handle(command);
+        }
+        return executeWrite(spec, command);
+    }
+
+    /**
+     * Records an access to each key of a command for the eviction policy
+     * @param currentEvictor The evictor
+     * @param spec The command
+     * @param command The decoded command
+     */
+    private static void touchKeys(Evictor currentEvictor, CommandSpec spec, Object[] command) {
+        if (spec.getFirstKey() <= 0) {
+            return;
+        }
+        int last = Math.min(spec.getLastKey(command.length), command.length - 1);
+        for (int i = spec.getFirstKey(); i <= last; i += spec.getKeyStep()) {
+            currentEvictor.touch((String) command[i]);
+        }
+    }
+
+    /**
+     * Evicts keys until the database is back under maxmemory. Each eviction is logged to the AOF
+     * as a DEL, since replay could not otherwise know which keys were evicted.
+     * @param currentEvictor The evictor
+     * @return True if the database is under maxmemory, false if the policy ran out of keys to evict
+     */
+    private boolean freeMemoryIfNeeded(Evictor currentEvictor) {
+        while (usedMemory.sum() > maxMemory) {
+            String victim = currentEvictor.nextVictim();
+            if (victim == null) {
+                return false;
+            }
+            ReentrantLock lock = keyLocks.lockFor(victim);
+            lock.lock();
+            try {
+                if (!currentEvictor.isEvictable(victim)) {
+                    continue;
                 }
-                yield set((String) command[1], (String) command[2], command);
+                deleteKey(victim);
+                propagate(new Object[]{"DEL", victim});
+            } finally {
+                lock.unlock();
+            }
+            evictedKeys.increment();
+        }
+        return true;
+    }
+
+    /**
+     * Runs a write command and logs it. The store update and the AOF hand-off happen under the
+     * locks of the command's keys so the AOF holds writes to a key in the order they were applied.
+     * @param spec The command
+     * @param command The decoded command
+     * @return The command's reply
+     */
+    private Object executeWrite(CommandSpec spec, Object[] command) {
+        Object result;
+        if (spec.isSingleKey()) {
+            ReentrantLock lock = keyLocks.lockFor((String) command[spec.getFirstKey()]);
+            lock.lock();
+            try {
+                result = applyAndLog(spec, command);
+            } finally {
+                lock.unlock();
+            }
+        } else {
+            ReentrantLock[] locks = keyLocks.locksFor(keysOf(spec, command));
+            for (ReentrantLock lock : locks) {
+                lock.lock();
             }
-            case "GET" -> {
-                if (command.length != 2) {
-                    yield new Exception("ERR wrong number of arguments for 'GET' command");
+            try {
+                result = applyAndLog(spec, command);
+            } finally {
+                for (int i = locks.length - 1; i >= 0; i--) {
+                    locks[i].unlock();
                 }
-                yield get((String) command[1]);
             }
-            default -> new Exception("ERR unknown command '" + commandName + "'");
-        };
+        }
+        if (!loading && aofPersistence.shouldAutoRewrite()) {
+            startRewrite();
+        }
+        return result;
+    }
+
+    /**
+     * Runs a write command and, if it succeeded, hands it to the AOF, or whatever the command asked
+     * to be logged in its place, then serves any clients blocked on its keys. Called with the keys locked.
+     * A write the AOF could not take stays applied, but is answered with the AOF's error.
+     * @param spec The command
+     * @param command The decoded command
+     * @return The command's reply
+     */
+    private Object applyAndLog(CommandSpec spec, Object[] command) {
+        Object result = spec.getHandler().handle(command);
+        Exception unlogged = null;
+        if (result instanceof PropagatedReply propagated) {
+            if (!loading && propagated.getCommand() != null) {
+                unlogged = propagate(propagated.getCommand());
+            }
+            result = propagated.getReply();
+        } else if (!loading && !(result instanceof Exception)) {
+            unlogged = propagate(command);
+        }
+        if (!blockedClients.isEmpty() && !(result instanceof Exception)) {
+            for (String key : keysOf(spec, command)) {
+                if (blockedClients.hasWaiters(key)) {
+                    listCommands.serveBlockedClients(key);
+                }
+            }
+        }
+        return unlogged != null ? unlogged : result;
+    }
+
+    /**
+     * Logs a command to the AOF on behalf of another, such as the pop that serves a blocked client
+     * after a push. Called with the command's keys locked.
+     * @param command The command to log
+     */
+    void logCommand(Object[] command) {
+        if (!loading) {
+            propagate(command);
+        }
+    }
+
+    /**
+     * Hands a write to the AOF and streams it to any replicas, from the one path every logged
+     * write takes. Called with the write's keys locked. The write has already been applied, so
+     * replicas get it even when the AOF could not take it, and the client is told it is not on disk.
+     * @param command The write as logged
+     * @return The error to reply with if the AOF could not take the write, otherwise null
+     */
+    private Exception propagate(Object[] command) {
+        Exception failed = null;
+        try {
+            aofPersistence.logCommand(command);
+        } catch (UncheckedIOException e) {
+            IOException cause = e.getCause();
+            failed = new Exception("MISCONF Errors writing to the AOF file: "
+                    + (cause.getMessage() != null ? cause.getMessage() : cause.getClass().getSimpleName()));
+        }
+        replication.feed(command);
+        return failed;
+    }
+
+    /**
+     * Runs one active expiry cycle, removing keys whose expiry time has passed. Skipped while the
+     * AOF is being replayed, for the same reason as lazy expiry.
+     * @param budgetNanos How long the cycle may run for
+     * @return The number of keys removed
+     */
+    public long activeExpireCycle(long budgetNanos) {
+        if (loading) {
+            return 0;
+        }
+        return expires.expireCycle(System.currentTimeMillis(), budgetNanos, this::expireIfDue);
+    }
+
+    /**
+     * Gets the replication state, as a master and as a replica
+     * @return The replication state
+     */
+    public Replication getReplication() {
+        return replication;
+    }
+
+    /**
+     * Gets the cluster state of this node
+     * @return The cluster state
+     */
+    public Cluster getCluster() {
+        return cluster;
+    }
+
+    /**
+     * Gets the locks writers hold while applying a write
+     * @return The key locks
+     */
+    KeyLocks getKeyLocks() {
+        return keyLocks;
+    }
+
+    /**
+     * Gets the expiry times of the keys in the database
+     * @return The expiry table
+     */
+    public Expires getExpires() {
+        return expires;
+    }
+
+    /**
+     * Removes a key on access if its expiry time has passed. Nothing expires while the AOF is being
+     * replayed: a later command in the log may have given the key a new expiry time or removed it,
+     * so as in Redis expired keys are left for the active expiry cycle once loading is over.
+     * @param key The key being accessed
+     * @return True if the key had expired and is gone
+     */
+    boolean expireIfNeeded(String key) {
+        if (loading) {
+            return false;
+        }
+        long deadline = expires.expiredDeadline(key, System.currentTimeMillis());
+        if (deadline < 0) {
+            return false;
+        }
+        expireIfDue(key, deadline);
+        return true;
+    }
+
+    /**
+     * Removes a key if it still has the given, past, expiry time. Expiry is not logged: the AOF
+     * holds the absolute expiry time, so replaying it expires the key the same way.
+     * @param key The key
+     * @param deadline The expiry time it was found with
+     * @return True if the key was removed
+     */
+    private boolean expireIfDue(String key, long deadline) {
+        ReentrantLock lock = keyLocks.lockFor(key);
+        lock.lock();
+        try {
+            if (expires.get(key) != deadline || deadline > System.currentTimeMillis()) {
+                return false;
+            }
+            deleteKey(key);
+        } finally {
+            lock.unlock();
+        }
+        expiredKeys.increment();
+        return true;
+    }
+
+    /**
+     * Looks up a key for a command, removing it first if it has expired
+     * @param key The key
+     * @return The value, null if there is no such key
+     */
+    Object lookupKey(String key) {
+        Object value = dataStore.get(key);
+        if (value != null && expireIfNeeded(key)) {
+            return null;
+        }
+        return value;
+    }
+
+    /**
+     * Runs a read of a value that writers change in place under the key's lock, so the read never
+     * sees a write half done
+     * @param key The key
+     * @param read The read
+     * @return The read's result
+     */
+    Object readLocked(String key, Supplier<Object> read) {
+        ReentrantLock lock = keyLocks.lockFor(key);
+        lock.lock();
+        try {
+            return read.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Runs a read of several keys under all of their locks, so it sees every multi-key write to
+     * them either wholly applied or not at all
+     * @param keys The keys
+     * @param read The read
+     * @return The read's result
+     */
+    Object readLocked(String[] keys, Supplier<Object> read) {
+        ReentrantLock[] locks = keyLocks.locksFor(keys);
+        for (ReentrantLock lock : locks) {
+            lock.lock();
+        }
+        try {
+            return read.get();
+        } finally {
+            for (int i = locks.length - 1; i >= 0; i--) {
+                locks[i].unlock();
+            }
+        }
     }
 
     /**
-     * Sets a value in the database
-     * @param key A unique string to store the location of the data
-     * @param value The data to be stored
-     * @param command The command that was used to store the data
-     * @return Validates that the data was stored correctly
+     * Accounts for a value that was changed in place
+     * @param delta The change in its estimated size in bytes
      */
-    private String set(String key, String value, Object[] command) {
-        dataStore.put(key, value);
-        aofPersistence.logCommand(command);
+    void adjustUsedMemory(long delta) {
+        usedMemory.add(delta);
+    }
+
+    /**
+     * Removes a key and its expiry time. Called with the key locked.
+     * @param key The key
+     * @return True if the key existed
+     */
+    boolean deleteKey(String key) {
+        preserveForSnapshot(key);
+        expires.remove(key);
+        Object previous = dataStore.remove(key);
+        if (previous == null) {
+            return false;
+        }
+        usedMemory.add(-MemoryEstimator.entrySize(key, previous));
+        return true;
+    }
+
+    /**
+     * Puts a value in the database, keeping the memory estimate up to date. Called with the key
+     * locked, after preserveForSnapshot.
+     * @param key The key
+     * @param value The new value
+     */
+    void store(String key, Object value) {
+        Object previous = dataStore.put(key, value);
+        long size = MemoryEstimator.entrySize(key, value);
+        if (previous == null) {
+            Evictor currentEvictor = evictor;
+            if (currentEvictor != null) {
+                currentEvictor.created(key);
+            }
+        } else {
+            size -= MemoryEstimator.entrySize(key, previous);
+        }
+        usedMemory.add(size);
+    }
+
+    /**
+     * Deletes keys (DEL key [key ...] and UNLINK key [key ...]). Called with the keys locked.
+     * UNLINK is the same as DEL here, since a removed value is freed by the garbage collector and
+     * never on the calling thread.
+     * @param command The command and its keys
+     * @return The number of keys that existed
+     */
+    private Object del(Object[] command) {
+        long deleted = 0;
+        for (int i = 1; i < command.length; i++) {
+            String key = (String) command[i];
+            if (!expireIfNeeded(key) && deleteKey(key)) {
+                deleted++;
+            }
+        }
+        return deleted > 0 ? deleted : new PropagatedReply(0L, null);
+    }
+
+    /**
+     * Gets the values of several keys in one reply (MGET key [key ...]). The keys are read under
+     * their locks, so an MSET to them is seen whole or not at all.
+     * @param command The command and its keys
+     * @return The values in key order, null for a missing key or one that is not a string
+     */
+    private Object mget(Object[] command) {
+        String[] keys = new String[command.length - 1];
+        for (int i = 1; i < command.length; i++) {
+            keys[i - 1] = (String) command[i];
+        }
+        return readLocked(keys, () -> {
+            Object[] values = new Object[keys.length];
+            for (int i = 0; i < keys.length; i++) {
+                Object value = lookupKey(keys[i]);
+                values[i] = isString(value) ? value : null;
+            }
+            return values;
+        });
+    }
+
+    /**
+     * Counts how many of the given keys exist, a key given twice counting twice
+     * (EXISTS key [key ...])
+     * @param command The command and its keys
+     * @return The count
+     */
+    private Object exists(Object[] command) {
+        String[] keys = new String[command.length - 1];
+        for (int i = 1; i < command.length; i++) {
+            keys[i - 1] = (String) command[i];
+        }
+        return readLocked(keys, () -> {
+            long count = 0;
+            for (String key : keys) {
+                if (lookupKey(key) != null) {
+                    count++;
+                }
+            }
+            return count;
+        });
+    }
+
+    /**
+     * Sets several keys at once, dropping their expiry times (MSET key value [key value ...]).
+     * Called with the keys locked, so readers of the keys see all of the values or none, and
+     * logged as one record.
+     * @param command The command and its key value pairs
+     * @return OK, or an error if a key is missing its value
+     */
+    private Object mset(Object[] command) {
+        if (command.length % 2 == 0) {
+            return new Exception("ERR wrong number of arguments for 'MSET' command");
+        }
+        storeAll(command);
+        return "OK";
+    }
+
+    /**
+     * Sets several keys at once only if none of them exists (MSETNX key value [key value ...]).
+     * Called with the keys locked.
+     * @param command The command and its key value pairs
+     * @return 1 if the keys were set, 0 if any of them already existed
+     */
+    private Object msetnx(Object[] command) {
+        if (command.length % 2 == 0) {
+            return new Exception("ERR wrong number of arguments for 'MSETNX' command");
+        }
+        for (int i = 1; i < command.length; i += 2) {
+            String key = (String) command[i];
+            if (!expireIfNeeded(key) && dataStore.containsKey(key)) {
+                return new PropagatedReply(0L, null);
+            }
+        }
+        storeAll(command);
+        return 1L;
+    }
+
+    /**
+     * Stores each key value pair of an MSET or MSETNX, without expiry times. Called with the keys
+     * locked.
+     * @param command The command and its key value pairs
+     */
+    private void storeAll(Object[] command) {
+        for (int i = 1; i < command.length; i += 2) {
+            String key = (String) command[i];
+            preserveForSnapshot(key);
+            store(key, IntegerValue.encode(command[i + 1]));
+            expires.remove(key);
+        }
+    }
+
+    /**
+     * Hands a key's current value and expiry time to a running snapshot before they change.
+     * Called with the key locked.
+     * @param key The key about to be written
+     */
+    void preserveForSnapshot(String key) {
+        if (rdbPersistence.isSaving()) {
+            rdbPersistence.preserve(key, dataStore.get(key), expires.get(key));
+        }
+        RdbPersistence syncSnapshot = replication.getSyncSnapshot();
+        if (syncSnapshot.isSaving()) {
+            syncSnapshot.preserve(key, dataStore.get(key), expires.get(key));
+        }
+    }
+
+    /**
+     * Replaces the whole database with a snapshot sent by a master. Called with every key locked.
+     * @param snapshot The snapshot
+     */
+    void replaceDataset(byte[] snapshot) {
+        List<String> keys = new ArrayList<>();
+        dataStore.keys().forEach(keys::add);
+        for (String key : keys) {
+            deleteKey(key);
+        }
+        RdbPersistence.loadFrom(new ByteArrayInputStream(snapshot), dataStore, expires, encodingLimits);
+        recalculateUsedMemory();
+    }
+
+    /**
+     * Picks the key arguments out of a command using its key positions
+     * @param spec The command
+     * @param command The decoded command
+     * @return The keys, empty if the command takes none
+     */
+    private static String[] keysOf(CommandSpec spec, Object[] command) {
+        if (spec.getFirstKey() <= 0) {
+            return new String[0];
+        }
+        int last = spec.getLastKey(command.length);
+        int step = spec.getKeyStep();
+        String[] keys = new String[(last - spec.getFirstKey()) / step + 1];
+        for (int i = 0, index = spec.getFirstKey(); index <= last; i++, index += step) {
+            keys[i] = (String) command[index];
+        }
+        return keys;
+    }
+
+    /**
+     * Fills the registry with the commands this server supports
+     */
+    private void registerCommands() {
+        Set<CommandFlag> none = EnumSet.noneOf(CommandFlag.class);
+        registry.register(new CommandSpec("PING", -1, EnumSet.of(CommandFlag.FAST), 0, 0, 0, this::ping));
+        registry.register(new CommandSpec("SET", -3, EnumSet.of(CommandFlag.WRITE, CommandFlag.DENYOOM), 1, 1, 1, 2, 2, 1, this::set));
+        for (String name : new String[]{"INCR", "DECR"}) {
+            registry.register(new CommandSpec(name, 2, EnumSet.of(CommandFlag.WRITE, CommandFlag.DENYOOM, CommandFlag.FAST), 1, 1, 1,
+                    command -> incrBy(command, name.startsWith("DECR"))));
+        }
+        for (String name : new String[]{"INCRBY", "DECRBY"}) {
+            registry.register(new CommandSpec(name, 3, EnumSet.of(CommandFlag.WRITE, CommandFlag.DENYOOM, CommandFlag.FAST), 1, 1, 1,
+                    command -> incrBy(command, name.startsWith("DECR"))));
+        }
+        registry.register(new CommandSpec("INCRBYFLOAT", 3, EnumSet.of(CommandFlag.WRITE, CommandFlag.DENYOOM, CommandFlag.FAST), 1, 1, 1, this::incrByFloat));
+        registry.register(new CommandSpec("DEL", -2, EnumSet.of(CommandFlag.WRITE), 1, -1, 1, this::del));
+        registry.register(new CommandSpec("UNLINK", -2, EnumSet.of(CommandFlag.WRITE, CommandFlag.FAST), 1, -1, 1, this::del));
+        registry.register(new CommandSpec("EXISTS", -2, EnumSet.of(CommandFlag.READONLY, CommandFlag.FAST), 1, -1, 1, this::exists));
+        registry.register(new CommandSpec("MGET", -2, EnumSet.of(CommandFlag.READONLY, CommandFlag.FAST), 1, -1, 1, this::mget));
+        registry.register(new CommandSpec("MSET", -3, EnumSet.of(CommandFlag.WRITE, CommandFlag.DENYOOM), 1, -1, 2, 2, -1, 2, this::mset));
+        registry.register(new CommandSpec("MSETNX", -3, EnumSet.of(CommandFlag.WRITE, CommandFlag.DENYOOM), 1, -1, 2, 2, -1, 2, this::msetnx));
+        registry.register(new CommandSpec("GET", 2, EnumSet.of(CommandFlag.READONLY, CommandFlag.FAST), 1, 1, 1,
+                command -> get((String) command[1])));
+        for (String name : new String[]{"EXPIRE", "PEXPIRE", "EXPIREAT", "PEXPIREAT"}) {
+            registry.register(new CommandSpec(name, 3, EnumSet.of(CommandFlag.WRITE, CommandFlag.FAST), 1, 1, 1,
+                    command -> expire(command, name)));
+        }
+        registry.register(new CommandSpec("PERSIST", 2, EnumSet.of(CommandFlag.WRITE, CommandFlag.FAST), 1, 1, 1, this::persist));
+        registry.register(new CommandSpec("TTL", 2, EnumSet.of(CommandFlag.READONLY, CommandFlag.FAST), 1, 1, 1,
+                command -> ttl((String) command[1], false)));
+        registry.register(new CommandSpec("PTTL", 2, EnumSet.of(CommandFlag.READONLY, CommandFlag.FAST), 1, 1, 1,
+                command -> ttl((String) command[1], true)));
+        hashCommands.register(registry);
+        sortedSetCommands.register(registry);
+        listCommands.register(registry);
+        scanCommands.register(registry);
+        replication.register(registry);
+        cluster.register(registry);
+        migrateCommands.register(registry);
+        registry.register(new CommandSpec("OBJECT", -2, EnumSet.of(CommandFlag.READONLY), 2, 2, 1, this::object));
+        registry.register(new CommandSpec("INFO", -1, none, 0, 0, 0, command -> info()));
+        registry.register(new CommandSpec("SAVE", 1, EnumSet.of(CommandFlag.ADMIN), 0, 0, 0, command -> save()));
+        registry.register(new CommandSpec("BGSAVE", -1, EnumSet.of(CommandFlag.ADMIN), 0, 0, 0, command -> {
+            if (!startBackgroundSave()) {
+                return new Exception("ERR Background save already in progress");
+            }
+            return "Background saving started";
+        }));
+        registry.register(new CommandSpec("LASTSAVE", 1, EnumSet.of(CommandFlag.FAST), 0, 0, 0,
+                command -> rdbPersistence.getLastSaveTime()));
+        registry.register(new CommandSpec("BGREWRITEAOF", 1, EnumSet.of(CommandFlag.ADMIN), 0, 0, 0, command -> {
+            if (!startRewrite()) {
+                return new Exception("ERR Background append only file rewriting already in progress");
+            }
+            return "Background append only file rewriting started";
+        }));
+        registry.register(new CommandSpec("COMMAND", -1, none, 0, 0, 0, this::command));
+    }
+
+    /**
+     * Describes the registered commands (COMMAND, COMMAND COUNT and COMMAND INFO name...)
+     * @param parts The command and its subcommand
+     * @return The descriptions, the count, or an error for an unknown subcommand
+     */
+    private Object command(Object[] parts) {
+        if (parts.length == 1) {
+            List<CommandSpec> commands = registry.commands();
+            Object[] reply = new Object[commands.size()];
+            for (int i = 0; i < reply.length; i++) {
+                reply[i] = commands.get(i).toInfo();
+            }
+            return reply;
+        }
+        String subcommand = (String) parts[1];
+        if (subcommand.equalsIgnoreCase("COUNT") && parts.length == 2) {
+            return (long) registry.size();
+        }
+        if (subcommand.equalsIgnoreCase("INFO")) {
+            Object[] reply = new Object[parts.length - 2];
+            for (int i = 2; i < parts.length; i++) {
+                CommandSpec spec = registry.lookup((String) parts[i]);
+                reply[i - 2] = spec == null ? null : spec.toInfo();
+            }
+            return reply;
+        }
+        return new Exception("ERR unknown subcommand '" + subcommand + "'. Try COMMAND HELP.");
+    }
+
+    /**
+     * Describes the server in the format of INFO
+     * @return The persistence, replication, memory, stats and keyspace sections
+     */
+    private String info() {
+        return aofPersistence.info() + rdbPersistence.info() + replication.info()
+                + "\r\n# Memory\r\n"
+                + "used_memory:" + usedMemory.sum() + "\r\n"
+                + "maxmemory:" + maxMemory + "\r\n"
+                + "maxmemory_policy:" + maxMemoryPolicy.getConfigName() + "\r\n"
+                + (dataStore instanceof OffHeapKeyspace offHeap
+                        ? "used_memory_offheap:" + offHeap.getReservedBytes() + "\r\n" : "")
+                + "\r\n# Stats\r\n"
+                + "expired_keys:" + expiredKeys.sum() + "\r\n"
+                + "evicted_keys:" + evictedKeys.sum() + "\r\n"
+                + "hash_encoding_conversions:" + hashCommands.getConversions() + "\r\n"
+                + "zset_encoding_conversions:" + sortedSetCommands.getConversions() + "\r\n"
+                + "blocked_clients:" + blockedClients.getBlockedCount() + "\r\n"
+                + "\r\n# Keyspace\r\n"
+                + "db0:keys=" + dataStore.size() + ",expires=" + expires.size() + "\r\n";
+    }
+
+    /**
+     * Writes a snapshot on the calling thread
+     * @return OK once written, or an error
+     */
+    private Object save() {
+        if (!rdbPersistence.tryBeginSave()) {
+            return new Exception("ERR Background save already in progress");
+        }
+        return rdbPersistence.save(dataStore, expires, keyLocks) ? "OK" : new Exception("ERR snapshot could not be written");
+    }
+
+    /**
+     * Sets a value in the database (SET key value [NX|XX] [EX s|PX ms|EXAT s|PXAT ms|KEEPTTL]).
+     * Called with the key locked. A relative expiry time is logged as an absolute PXAT.
+     * @param command The command and its options
+     * @return Validates that the data was stored correctly, null if NX or XX stopped the write
+     */
+    private Object set(Object[] command) {
+        String key = (String) command[1];
+        Object value = command[2];
+        boolean nx = false;
+        boolean xx = false;
+        boolean keepTtl = false;
+        long deadline = -1;
+        long now = System.currentTimeMillis();
+        for (int i = 3; i < command.length; i++) {
+            String option = (String) command[i];
+            if (option.equalsIgnoreCase("NX") && !xx) {
+                nx = true;
+            } else if (option.equalsIgnoreCase("XX") && !nx) {
+                xx = true;
+            } else if (option.equalsIgnoreCase("KEEPTTL") && deadline < 0) {
+                keepTtl = true;
+            } else if (isExpiryOption(option) && !keepTtl && deadline < 0 && i + 1 < command.length) {
+                deadline = parseDeadline(option, (String) command[++i], now, true);
+                if (deadline == INVALID_EXPIRE) {
+                    return new Exception("ERR invalid expire time in 'set' command");
+                }
+                if (deadline == NOT_AN_INTEGER) {
+                    return new Exception("ERR value is not an integer or out of range");
+                }
+            } else {
+                return new Exception("ERR syntax error");
+            }
+        }
+        expireIfNeeded(key);
+        if ((nx || xx) && dataStore.containsKey(key) == nx) {
+            return new PropagatedReply(null, null);
+        }
+        preserveForSnapshot(key);
+        store(key, IntegerValue.encode(value));
+        if (deadline >= 0) {
+            expires.set(key, deadline);
+            return new PropagatedReply("OK", new Object[]{"SET", key, value, "PXAT", String.valueOf(deadline)});
+        }
+        if (!keepTtl) {
+            expires.remove(key);
+        }
         return "OK";
     }
 
+    /**
+     * Checks whether a SET option sets an expiry time
+     * @param option The option
+     * @return True for EX, PX, EXAT and PXAT
+     */
+    private static boolean isExpiryOption(String option) {
+        return option.equalsIgnoreCase("EX") || option.equalsIgnoreCase("PX")
+                || option.equalsIgnoreCase("EXAT") || option.equalsIgnoreCase("PXAT");
+    }
+
+    /**
+     * Turns an expiry option and its argument into an absolute time
+     * @param unit EX or EXPIRE for relative seconds, PX or PEXPIRE for relative milliseconds,
+     *             EXAT or EXPIREAT for absolute seconds, PXAT or PEXPIREAT for absolute milliseconds
+     * @param amount The argument
+     * @param now The current time in milliseconds since the epoch
+     * @param positiveOnly True to refuse a zero or negative argument, as SET does
+     * @return The deadline in milliseconds since the epoch, NOT_AN_INTEGER if the argument is not a
+     *         number, or INVALID_EXPIRE if it is refused or overflows
+     */
+    private static long parseDeadline(String unit, String amount, long now, boolean positiveOnly) {
+        long value;
+        try {
+            value = Long.parseLong(amount);
+        } catch (NumberFormatException e) {
+            return NOT_AN_INTEGER;
+        }
+        boolean seconds = unit.equalsIgnoreCase("EX") || unit.equalsIgnoreCase("EXAT")
+                || unit.equalsIgnoreCase("EXPIRE") || unit.equalsIgnoreCase("EXPIREAT");
+        boolean absolute = unit.regionMatches(true, unit.length() - 2, "AT", 0, 2);
+        if (positiveOnly && value <= 0) {
+            return INVALID_EXPIRE;
+        }
+        try {
+            long millis = seconds ? Math.multiplyExact(value, 1000L) : value;
+            long deadline = absolute ? millis : Math.addExact(now, millis);
+            // a time already in the past still expires the key, but never as a negative marker value
+            return Math.max(deadline, 0);
+        } catch (ArithmeticException e) {
+            return INVALID_EXPIRE;
+        }
+    }
+
+    /**
+     * Sets a key's expiry time (EXPIRE, PEXPIRE, EXPIREAT and PEXPIREAT). Called with the key locked.
+     * Logged as PEXPIREAT so replay gives the key the same absolute expiry time.
+     * @param command The command, its key and the time
+     * @param name The name the command is registered under, which gives the unit of the time
+     * @return 1 if the key exists and now expires, 0 if there is no such key
+     */
+    private Object expire(Object[] command, String name) {
+        String key = (String) command[1];
+        long deadline = parseDeadline(name, (String) command[2], System.currentTimeMillis(), false);
+        if (deadline == NOT_AN_INTEGER) {
+            return new Exception("ERR value is not an integer or out of range");
+        }
+        if (deadline == INVALID_EXPIRE) {
+            return new Exception("ERR invalid expire time in '" + name.toLowerCase() + "' command");
+        }
+        if (expireIfNeeded(key) || !dataStore.containsKey(key)) {
+            return new PropagatedReply(0L, null);
+        }
+        preserveForSnapshot(key);
+        expires.set(key, deadline);
+        return new PropagatedReply(1L, new Object[]{"PEXPIREAT", key, String.valueOf(deadline)});
+    }
+
+    /**
+     * Removes a key's expiry time. Called with the key locked.
+     * @param command The command and its key
+     * @return 1 if the key had an expiry time, otherwise 0
+     */
+    private Object persist(Object[] command) {
+        String key = (String) command[1];
+        expireIfNeeded(key);
+        if (expires.get(key) < 0) {
+            return new PropagatedReply(0L, null);
+        }
+        preserveForSnapshot(key);
+        expires.remove(key);
+        return 1L;
+    }
+
+    /**
+     * Gets how long a key has left (TTL in seconds, PTTL in milliseconds)
+     * @param key The key
+     * @param millis True for milliseconds
+     * @return The time left, -1 if the key does not expire, -2 if there is no such key
+     */
+    private Object ttl(String key, boolean millis) {
+        if (expireIfNeeded(key) || !dataStore.containsKey(key)) {
+            return -2L;
+        }
+        long deadline = expires.get(key);
+        if (deadline < 0) {
+            return -1L;
+        }
+        long left = Math.max(deadline - System.currentTimeMillis(), 0);
+        return millis ? left : (left + 500) / 1000;
+    }
+
+    /**
+     * Starts rewriting the AOF from the current contents of the database on a background thread
+     * @return False if a rewrite is already running
+     */
+    private boolean startRewrite() {
+        if (!aofPersistence.tryBeginRewrite()) {
+            return false;
+        }
+        Thread rewriter = new Thread(new AofRewriter(dataStore, expires, keyLocks, aofPersistence), "aof-rewriter");
+        rewriter.setDaemon(true);
+        rewriter.start();
+        return true;
+    }
+
+    /**
+     * Rewrites the AOF from the current contents of the database and waits for it to finish
+     * @return False if a rewrite was already running
+     */
+    public boolean rewriteAof() {
+        if (!aofPersistence.tryBeginRewrite()) {
+            return false;
+        }
+        new AofRewriter(dataStore, expires, keyLocks, aofPersistence).run();
+        return true;
+    }
+
+    /**
+     * Writes a snapshot on a background thread; writers carry on while it runs
+     * @return False if a snapshot is already being written
+     */
+    private boolean startBackgroundSave() {
+        if (!rdbPersistence.tryBeginSave()) {
+            return false;
+        }
+        Thread saver = new Thread(() -> rdbPersistence.save(dataStore, expires, keyLocks), "rdb-bgsave");
+        saver.setDaemon(true);
+        saver.start();
+        return true;
+    }
+
+    /**
+     * Checks whether a value is of the string type, in any of its encodings
+     * @param value The value
+     * @return True for a String, a byte array or an IntegerValue
+     */
+    static boolean isString(Object value) {
+        return value instanceof String || value instanceof byte[] || value instanceof IntegerValue;
+    }
+
+    /**
+     * Picks how to hold a string value that arrived as bytes: as a String if the bytes are
+     * well-formed UTF-8, which encodes back to the same bytes, otherwise as the bytes themselves
+     * so nothing is replaced by U+FFFD
+     * @param bytes The value's bytes
+     * @return A String or the byte array
+     */
+    static Object stringValue(byte[] bytes) {
+        String text = new String(bytes, StandardCharsets.UTF_8);
+        for (byte b : bytes) {
+            if (b < 0) {
+                return Arrays.equals(text.getBytes(StandardCharsets.UTF_8), bytes) ? text : bytes;
+            }
+        }
+        return text;
+    }
+
+    /**
+     * Adds to the integer stored at a key, treating a missing key as 0 (INCR key, DECR key,
+     * INCRBY key increment and DECRBY key decrement). Called with the key locked. The key keeps its
+     * expiry time, and the result is logged as SET key result KEEPTTL so replaying it twice does no harm.
+     * @param command The command, its key and for INCRBY and DECRBY the amount
+     * @param decrement True for DECR and DECRBY
+     * @return The new value
+     */
+    private Object incrBy(Object[] command, boolean decrement) {
+        String key = (String) command[1];
+        long increment = 1;
+        if (command.length > 2) {
+            try {
+                increment = Long.parseLong((String) command[2]);
+            } catch (NumberFormatException e) {
+                return new Exception("ERR value is not an integer or out of range");
+            }
+        }
+        if (decrement) {
+            if (increment == Long.MIN_VALUE) {
+                return new Exception("ERR decrement would overflow");
+            }
+            increment = -increment;
+        }
+        Object value = lookupKey(key);
+        long current;
+        if (value == null) {
+            current = 0;
+        } else if (value instanceof IntegerValue integer) {
+            current = integer.get();
+        } else if (value instanceof String string) {
+            long[] parsed = new long[1];
+            if (!IntegerValue.parseStrict(string, parsed)) {
+                return new Exception("ERR value is not an integer or out of range");
+            }
+            current = parsed[0];
+        } else if (value instanceof byte[]) {
+            return new Exception("ERR value is not an integer or out of range");
+        } else {
+            return new Exception(WRONGTYPE);
+        }
+        long result;
+        try {
+            result = Math.addExact(current, increment);
+        } catch (ArithmeticException e) {
+            return new Exception("ERR increment or decrement would overflow");
+        }
+        preserveForSnapshot(key);
+        IntegerValue stored = IntegerValue.of(result);
+        store(key, stored);
+        return new PropagatedReply(IntegerValue.reply(result), new Object[]{"SET", key, stored.toString(), "KEEPTTL"});
+    }
+
+    /**
+     * Adds a floating point amount to the number stored at a key, treating a missing key as 0
+     * (INCRBYFLOAT key increment). Called with the key locked. Logged as SET key result KEEPTTL,
+     * so replay does not depend on floating point rounding.
+     * @param command The command, its key and the amount
+     * @return The new value as a string
+     */
+    private Object incrByFloat(Object[] command) {
+        String key = (String) command[1];
+        double increment;
+        try {
+            increment = parseFloat((String) command[2]);
+        } catch (NumberFormatException e) {
+            return new Exception("ERR value is not a valid float");
+        }
+        Object value = lookupKey(key);
+        double current;
+        if (value == null) {
+            current = 0;
+        } else if (value instanceof IntegerValue integer) {
+            current = integer.get();
+        } else if (value instanceof String string) {
+            try {
+                current = parseFloat(string);
+            } catch (NumberFormatException e) {
+                return new Exception("ERR value is not a valid float");
+            }
+        } else if (value instanceof byte[]) {
+            return new Exception("ERR value is not a valid float");
+        } else {
+            return new Exception(WRONGTYPE);
+        }
+        double result = current + increment;
+        if (Double.isNaN(result) || Double.isInfinite(result)) {
+            return new Exception("ERR increment would produce NaN or Infinity");
+        }
+        String formatted = formatFloat(result);
+        preserveForSnapshot(key);
+        store(key, IntegerValue.encode(formatted));
+        return new PropagatedReply(formatted, new Object[]{"SET", key, formatted, "KEEPTTL"});
+    }
+
+    /**
+     * Parses a float argument or value the way Redis does, refusing NaN, infinities and spaces
+     * @param text The text
+     * @return The number
+     * @throws NumberFormatException If the text is not a finite number
+     */
+    static double parseFloat(String text) {
+        if (text.isEmpty() || Character.isWhitespace(text.charAt(0)) || Character.isWhitespace(text.charAt(text.length() - 1))) {
+            throw new NumberFormatException(text);
+        }
+        double number = Double.parseDouble(text);
+        if (Double.isNaN(number) || Double.isInfinite(number)) {
+            throw new NumberFormatException(text);
+        }
+        return number;
+    }
+
+    /**
+     * Formats a float result as INCRBYFLOAT does: plain digits, no exponent and no trailing zeros
+     * @param number The number
+     * @return The text
+     */
+    static String formatFloat(double number) {
+        String text = new BigDecimal(Double.toString(number)).stripTrailingZeros().toPlainString();
+        return text.equals("-0") ? "0" : text;
+    }
+
     /**
      * Gets a value corresponding to the given key
      * @param key A unique string giving the location of the data 
      * @return The data present at the keys position
      */
     private Object get(String key) {
-        return dataStore.get(key);
+        Object value = lookupKey(key);
+        if (value != null && !isString(value)) {
+            return new Exception(WRONGTYPE);
+        }
+        return value;
+    }
+
+    /**
+     * Describes how a key's value is stored (OBJECT ENCODING key)
+     * @param command The command, its subcommand and the key
+     * @return The encoding name, null if there is no such key, or an error for another subcommand
+     */
+    private Object object(Object[] command) {
+        String subcommand = (String) command[1];
+        if (!subcommand.equalsIgnoreCase("ENCODING") || command.length != 3) {
+            return new Exception("ERR unknown subcommand '" + subcommand + "'. Try OBJECT HELP.");
+        }
+        String key = (String) command[2];
+        return readLocked(key, () -> {
+            Object value = lookupKey(key);
+            if (value instanceof CollectionValue collection) {
+                return collection.encoding();
+            }
+            if (value instanceof IntegerValue) {
+                return "int";
+            }
+            if (value instanceof String string) {
+                return string.length() <= EMBSTR_MAX_LENGTH ? "embstr" : "raw";
+            }
+            if (value instanceof byte[] bytes) {
+                return bytes.length <= EMBSTR_MAX_LENGTH ? "embstr" : "raw";
+            }
+            return null;
+        });
     }
 
     /**
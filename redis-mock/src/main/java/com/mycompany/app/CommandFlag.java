@@ -0,0 +1,40 @@
+package com.mycompany.app;
+
+public enum CommandFlag {
+
+    /**
+     * The command may change the database, so it is logged to the AOF
+     */
+    WRITE,
+
+    /**
+     * The command may add data, so it is refused once maxmemory is reached and nothing can be evicted
+     */
+    DENYOOM,
+
+    /**
+     * The command only reads data
+     */
+    READONLY,
+
+    /**
+     * The command runs in constant or near constant time
+     */
+    FAST,
+
+    /**
+     * The command may park the client until another client's write, rather than reply at once
+     */
+    BLOCKING,
+
+    /**
+     * The command administers the server rather than touching data
+     */
+    ADMIN,
+
+    /**
+     * The command is served by a cluster node for a slot it is importing as if ASKING had been sent
+     * first, as the restores MIGRATE sends are
+     */
+    ASKING
+}
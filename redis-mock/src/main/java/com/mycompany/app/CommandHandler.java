@@ -0,0 +1,12 @@
+package com.mycompany.app;
+
+@FunctionalInterface
+public interface CommandHandler {
+
+    /**
+     * Runs a command whose name and argument count have already been checked
+     * @param command The decoded command, its name first
+     * @return The reply, an Exception for an error reply
+     */
+    Object handle(Object[] command);
+}
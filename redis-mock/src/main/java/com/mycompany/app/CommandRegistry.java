@@ -0,0 +1,143 @@
+package com.mycompany.app;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class CommandRegistry {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    // open addressing on a case-folded hash, replaced wholesale on register so lookups need no lock
+    private volatile CommandSpec[] table = new CommandSpec[INITIAL_CAPACITY];
+    private int size;
+
+    /**
+     * Adds a command, replacing any command of the same name
+     * @param spec The command to add
+     */
+    public synchronized void register(CommandSpec spec) {
+        CommandSpec[] current = table;
+        int capacity = current.length;
+        while ((size + 1) * 2 > capacity) {
+            capacity *= 2;
+        }
+        CommandSpec[] next = new CommandSpec[capacity];
+        int count = 0;
+        for (CommandSpec existing : current) {
+            if (existing != null && !existing.getName().equals(spec.getName())) {
+                insert(next, existing);
+                count++;
+            }
+        }
+        insert(next, spec);
+        size = count + 1;
+        table = next;
+    }
+
+    /**
+     * Finds a command by name, ignoring case, without allocating
+     * @param name The command name as sent by the client
+     * @return The command, or null if there is none by that name
+     */
+    public CommandSpec lookup(String name) {
+        CommandSpec[] current = table;
+        int mask = current.length - 1;
+        for (int i = hash(name) & mask; ; i = (i + 1) & mask) {
+            CommandSpec spec = current[i];
+            if (spec == null || spec.getName().equalsIgnoreCase(name)) {
+                return spec;
+            }
+        }
+    }
+
+    /**
+     * Finds the command named by the first argument of a decoded command, straight from its bytes
+     * @param command The decoded command
+     * @return The command, or null if there is none by that name or no arguments at all
+     */
+    public CommandSpec lookup(RespCommand command) {
+        if (command.argCount() == 0) {
+            return null;
+        }
+        int length = command.argLength(0);
+        int hash = 0;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + upper(command.argByte(0, i));
+        }
+        CommandSpec[] current = table;
+        int mask = current.length - 1;
+        for (int i = spread(hash) & mask; ; i = (i + 1) & mask) {
+            CommandSpec spec = current[i];
+            if (spec == null || command.argEqualsIgnoreCase(0, spec.getName())) {
+                return spec;
+            }
+        }
+    }
+
+    /**
+     * Lists every registered command
+     * @return The commands, in no particular order
+     */
+    public List<CommandSpec> commands() {
+        List<CommandSpec> commands = new ArrayList<>();
+        for (CommandSpec spec : table) {
+            if (spec != null) {
+                commands.add(spec);
+            }
+        }
+        return commands;
+    }
+
+    /**
+     * Gets the number of registered commands
+     * @return The command count
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Places a command in a table known to have room for it
+     * @param target The table
+     * @param spec The command
+     */
+    private static void insert(CommandSpec[] target, CommandSpec spec) {
+        int mask = target.length - 1;
+        int i = hash(spec.getName()) & mask;
+        while (target[i] != null) {
+            i = (i + 1) & mask;
+        }
+        target[i] = spec;
+    }
+
+    /**
+     * Hashes a name as if it were upper case
+     * @param name The name
+     * @return The hash
+     */
+    private static int hash(String name) {
+        int hash = 0;
+        for (int i = 0; i < name.length(); i++) {
+            hash = 31 * hash + upper(name.charAt(i));
+        }
+        return spread(hash);
+    }
+
+    /**
+     * Upper-cases an ASCII letter
+     * @param c The character or byte
+     * @return The upper case letter, or c unchanged if it is not a lower case letter
+     */
+    private static int upper(int c) {
+        return c >= 'a' && c <= 'z' ? c - ('a' - 'A') : c;
+    }
+
+    /**
+     * Mixes the high bits of a hash into the low bits used for the table index
+     * @param hash The hash
+     * @return The spread hash
+     */
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,172 @@
+package com.mycompany.app;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+public final class CommandSpec {
+
+    private final String name;
+    private final int arity;
+    private final Set<CommandFlag> flags;
+    private final int firstKey;
+    private final int lastKey;
+    private final int keyStep;
+    private final int firstValue;
+    private final int lastValue;
+    private final int valueStep;
+    private final CommandHandler handler;
+
+    /**
+     * Describes a command the way Redis's COMMAND does, together with the code that runs it
+     * @param name The command name, matched ignoring case
+     * @param arity The exact number of arguments including the name, or minus the minimum if variable
+     * @param flags What kind of command it is
+     * @param firstKey The index of the first key argument, 0 if the command takes no keys
+     * @param lastKey The index of the last key argument, negative to count back from the end
+     * @param keyStep The distance between key arguments
+     * @param handler Runs the command
+     */
+    public CommandSpec(String name, int arity, Set<CommandFlag> flags, int firstKey, int lastKey, int keyStep,
+                       CommandHandler handler) {
+        this(name, arity, flags, firstKey, lastKey, keyStep, 0, 0, 0, handler);
+    }
+
+    /**
+     * Describes a command that stores some of its arguments as string values, which are kept as the
+     * exact bytes the client sent rather than decoded as text
+     * @param name The command name, matched ignoring case
+     * @param arity The exact number of arguments including the name, or minus the minimum if variable
+     * @param flags What kind of command it is
+     * @param firstKey The index of the first key argument, 0 if the command takes no keys
+     * @param lastKey The index of the last key argument, negative to count back from the end
+     * @param keyStep The distance between key arguments
+     * @param firstValue The index of the first value argument, 0 if the command stores no values
+     * @param lastValue The index of the last value argument, negative to count back from the end
+     * @param valueStep The distance between value arguments
+     * @param handler Runs the command
+     */
+    public CommandSpec(String name, int arity, Set<CommandFlag> flags, int firstKey, int lastKey, int keyStep,
+                       int firstValue, int lastValue, int valueStep, CommandHandler handler) {
+        this.name = name.toUpperCase();
+        this.arity = arity;
+        this.flags = flags.isEmpty() ? Collections.emptySet() : Collections.unmodifiableSet(EnumSet.copyOf(flags));
+        this.firstKey = firstKey;
+        this.lastKey = lastKey;
+        this.keyStep = keyStep;
+        this.firstValue = firstValue;
+        this.lastValue = lastValue;
+        this.valueStep = valueStep;
+        this.handler = handler;
+    }
+
+    /**
+     * Gets the command name
+     * @return The name in upper case
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Gets the arity in Redis's convention
+     * @return The exact argument count, or minus the minimum argument count
+     */
+    public int getArity() {
+        return arity;
+    }
+
+    /**
+     * Checks an argument count against the arity
+     * @param argCount The number of arguments including the name
+     * @return True if the command can be run with that many arguments
+     */
+    public boolean acceptsArgCount(int argCount) {
+        return arity >= 0 ? argCount == arity : argCount >= -arity;
+    }
+
+    /**
+     * Checks whether the command has a flag
+     * @param flag The flag to look for
+     * @return True if the command is flagged with it
+     */
+    public boolean hasFlag(CommandFlag flag) {
+        return flags.contains(flag);
+    }
+
+    /**
+     * Reports whether the command can change the database
+     * @return True for write commands
+     */
+    public boolean isWrite() {
+        return flags.contains(CommandFlag.WRITE);
+    }
+
+    /**
+     * Gets the index of the first key argument
+     * @return The index, 0 if the command takes no keys
+     */
+    public int getFirstKey() {
+        return firstKey;
+    }
+
+    /**
+     * Gets the index of the last key argument for a given argument count
+     * @param argCount The number of arguments including the name
+     * @return The index, resolved against the end of the arguments if negative in the spec
+     */
+    public int getLastKey(int argCount) {
+        return lastKey < 0 ? argCount + lastKey : lastKey;
+    }
+
+    /**
+     * Gets the distance between key arguments
+     * @return The step
+     */
+    public int getKeyStep() {
+        return keyStep;
+    }
+
+    /**
+     * Checks whether an argument is a string value the command stores
+     * @param index The argument position
+     * @param argCount The number of arguments including the name
+     * @return True if the argument should keep its exact bytes
+     */
+    public boolean isValue(int index, int argCount) {
+        if (firstValue <= 0 || index < firstValue) {
+            return false;
+        }
+        int last = lastValue < 0 ? argCount + lastValue : lastValue;
+        return index <= last && (index - firstValue) % valueStep == 0;
+    }
+
+    /**
+     * Reports whether the command always acts on exactly one key
+     * @return True if the first and last key are the same argument
+     */
+    public boolean isSingleKey() {
+        return firstKey > 0 && firstKey == lastKey;
+    }
+
+    /**
+     * Gets the code that runs the command
+     * @return The handler
+     */
+    public CommandHandler getHandler() {
+        return handler;
+    }
+
+    /**
+     * Describes the command in the reply format of COMMAND INFO
+     * @return The name, arity, flags, first key, last key and key step
+     */
+    public Object[] toInfo() {
+        Object[] flagNames = new Object[flags.size()];
+        int i = 0;
+        for (CommandFlag flag : flags) {
+            flagNames[i++] = flag.name().toLowerCase();
+        }
+        return new Object[]{name.toLowerCase(), (long) arity, flagNames, (long) firstKey, (long) lastKey, (long) keyStep};
+    }
+}
@@ -0,0 +1,75 @@
+package com.mycompany.app;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+public final class DeferredReply {
+
+    private final CompletableFuture<Object> reply = new CompletableFuture<>();
+
+    /**
+     * A reply that is not ready when the command returns, such as that of a blocking pop waiting
+     * for a push. The connection holds it instead of a thread, sends it once it completes, and
+     * does not run the client's next command until then.
+     */
+    public DeferredReply() {
+    }
+
+    /**
+     * Completes the reply, unless it was already completed or cancelled
+     * @param value The reply to send
+     * @return True if this call completed it
+     */
+    public boolean complete(Object value) {
+        return reply.complete(value);
+    }
+
+    /**
+     * Cancels the reply because the client has gone, so nothing is handed to it any more
+     */
+    public void cancel() {
+        reply.complete(null);
+    }
+
+    /**
+     * Reports whether the reply has completed
+     * @return True once complete or cancelled
+     */
+    public boolean isDone() {
+        return reply.isDone();
+    }
+
+    /**
+     * Gets the reply once it has completed
+     * @return The reply
+     * @throws IllegalStateException If the reply has not completed yet
+     */
+    public Object getNow() {
+        if (!reply.isDone()) {
+            throw new IllegalStateException("Reply is not ready");
+        }
+        return reply.join();
+    }
+
+    /**
+     * Parks the calling thread until the reply completes
+     * @return The reply
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public Object await() throws InterruptedException {
+        try {
+            return reply.get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Runs a callback once the reply completes, straight away if it already has. The callback runs
+     * on the thread that completes the reply, so it must be quick.
+     * @param callback The callback
+     */
+    public void onComplete(Runnable callback) {
+        reply.whenComplete((value, error) -> callback.run());
+    }
+}
@@ -0,0 +1,238 @@
+package com.mycompany.app;
+
+import java.util.function.BiConsumer;
+
+public final class Dict<V> {
+
+    private static final int MIN_CAPACITY = 16;
+    // the table halves once it is this many times larger than its entries
+    private static final int SHRINK_RATIO = 8;
+
+    /**
+     * One entry, chained to the others in its bucket
+     */
+    private static final class Node<V> {
+
+        final String key;
+        final int hash;
+        V value;
+        Node<V> next;
+
+        /**
+         * Creates an entry
+         * @param key The key
+         * @param hash Its hash
+         * @param value The value
+         * @param next The next entry in the bucket
+         */
+        Node(String key, int hash, V value, Node<V> next) {
+            this.key = key;
+            this.hash = hash;
+            this.value = value;
+            this.next = next;
+        }
+    }
+
+    private Node<V>[] table;
+    private int size;
+
+    /**
+     * A hash table of chained buckets whose size is a power of two, so a key's bucket is the low
+     * bits of its hash. Unlike a HashMap it can be walked with a cursor that holds no state, see
+     * scan. It is not thread safe: it is changed and read under its key's lock.
+     * @param expected How many entries to size the table for
+     */
+    public Dict(int expected) {
+        this.table = newTable(capacityFor(expected));
+    }
+
+    /**
+     * Gets the value of a key
+     * @param key The key
+     * @return The value, null if there is no such key
+     */
+    public V get(String key) {
+        int hash = hash(key);
+        for (Node<V> node = table[hash & (table.length - 1)]; node != null; node = node.next) {
+            if (node.hash == hash && node.key.equals(key)) {
+                return node.value;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Sets the value of a key, doubling the table once it has more entries than buckets
+     * @param key The key
+     * @param value The value
+     * @return The value it replaced, null if the key is new
+     */
+    public V put(String key, V value) {
+        int hash = hash(key);
+        int bucket = hash & (table.length - 1);
+        for (Node<V> node = table[bucket]; node != null; node = node.next) {
+            if (node.hash == hash && node.key.equals(key)) {
+                V previous = node.value;
+                node.value = value;
+                return previous;
+            }
+        }
+        table[bucket] = new Node<>(key, hash, value, table[bucket]);
+        if (++size > table.length) {
+            resize(table.length * 2);
+        }
+        return null;
+    }
+
+    /**
+     * Removes a key, halving the table once it is mostly empty
+     * @param key The key
+     * @return The value it had, null if there was no such key
+     */
+    public V remove(String key) {
+        int hash = hash(key);
+        int bucket = hash & (table.length - 1);
+        Node<V> previous = null;
+        for (Node<V> node = table[bucket]; node != null; previous = node, node = node.next) {
+            if (node.hash == hash && node.key.equals(key)) {
+                if (previous == null) {
+                    table[bucket] = node.next;
+                } else {
+                    previous.next = node.next;
+                }
+                if (--size * SHRINK_RATIO < table.length && table.length > MIN_CAPACITY) {
+                    resize(table.length / 2);
+                }
+                return node.value;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Counts the entries
+     * @return The number of keys
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Calls an action for every key and value
+     * @param action The action
+     */
+    public void forEach(BiConsumer<String, V> action) {
+        for (Node<V> head : table) {
+            for (Node<V> node = head; node != null; node = node.next) {
+                action.accept(node.key, node.value);
+            }
+        }
+    }
+
+    /**
+     * Walks some of the buckets, resuming from a cursor, and calls an action for each of their
+     * entries. The cursor counts through the bucket indexes with their bits reversed, so after the
+     * table doubles or halves the buckets still to come hold exactly the keys of the buckets that
+     * were still to come before: every key present for the whole walk is visited, some maybe
+     * twice if the table shrank, with no state kept between calls.
+     * @param cursor 0 to start, or the cursor the previous call returned
+     * @param count Roughly how many entries to visit; whole buckets are always visited
+     * @param action The action, which must not change the table
+     * @return The cursor to resume from, 0 once every bucket has been walked
+     */
+    public long scan(long cursor, int count, BiConsumer<String, V> action) {
+        int mask = table.length - 1;
+        int bucket = (int) cursor;
+        int visited = 0;
+        // empty buckets count for a little so a sparse table still returns in bounded time
+        int budget = Math.max(count, 1) * 10;
+        do {
+            for (Node<V> node = table[bucket & mask]; node != null; node = node.next) {
+                action.accept(node.key, node.value);
+                visited++;
+            }
+            bucket = nextCursor(bucket, mask);
+        } while (bucket != 0 && visited < count && --budget > 0);
+        return bucket & 0xFFFFFFFFL;
+    }
+
+    /**
+     * Copies the table; the keys and values themselves are shared
+     * @return The copy
+     */
+    public Dict<V> copy() {
+        Dict<V> copy = new Dict<>(0);
+        copy.table = newTable(table.length);
+        for (int i = 0; i < table.length; i++) {
+            for (Node<V> node = table[i]; node != null; node = node.next) {
+                copy.table[i] = new Node<>(node.key, node.hash, node.value, copy.table[i]);
+            }
+        }
+        copy.size = size;
+        return copy;
+    }
+
+    /**
+     * Advances a reverse binary cursor: the bits above the mask are set so the increment carries
+     * out of them, then the cursor is incremented from its top bit down
+     * @param cursor The cursor
+     * @param mask The table size less one
+     * @return The next cursor, 0 after the last bucket
+     */
+    static int nextCursor(int cursor, int mask) {
+        int next = Integer.reverse(cursor | ~mask);
+        return Integer.reverse(next + 1);
+    }
+
+    /**
+     * Moves every entry into a table of another size
+     * @param capacity The new number of buckets, a power of two
+     */
+    private void resize(int capacity) {
+        Node<V>[] old = table;
+        table = newTable(capacity);
+        for (Node<V> head : old) {
+            Node<V> node = head;
+            while (node != null) {
+                Node<V> next = node.next;
+                int bucket = node.hash & (capacity - 1);
+                node.next = table[bucket];
+                table[bucket] = node;
+                node = next;
+            }
+        }
+    }
+
+    /**
+     * Spreads a key's hash so its high bits also pick the bucket
+     * @param key The key
+     * @return The hash
+     */
+    private static int hash(String key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Picks the table size for a number of entries
+     * @param expected The number of entries
+     * @return A power of two, at least MIN_CAPACITY
+     */
+    private static int capacityFor(int expected) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < expected) {
+            capacity *= 2;
+        }
+        return capacity;
+    }
+
+    /**
+     * Allocates an empty table
+     * @param capacity The number of buckets
+     * @return The table
+     */
+    @SuppressWarnings("unchecked")
+    private static <V> Node<V>[] newTable(int capacity) {
+        return (Node<V>[]) new Node<?>[capacity];
+    }
+}
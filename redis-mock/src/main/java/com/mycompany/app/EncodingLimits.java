@@ -0,0 +1,81 @@
+package com.mycompany.app;
+
+public class EncodingLimits {
+
+    private volatile int hashMaxListpackEntries = 128;
+    private volatile int hashMaxListpackValue = 64;
+    private volatile int zsetMaxListpackEntries = 128;
+    private volatile int zsetMaxListpackValue = 64;
+
+    /**
+     * Gets the most fields a hash can have and still be stored packed
+     * @return The field count
+     */
+    public int getHashMaxListpackEntries() {
+        return hashMaxListpackEntries;
+    }
+
+    /**
+     * Sets the most fields a hash can have and still be stored packed
+     * @param hashMaxListpackEntries The field count
+     * @return These limits
+     */
+    public EncodingLimits setHashMaxListpackEntries(int hashMaxListpackEntries) {
+        this.hashMaxListpackEntries = hashMaxListpackEntries;
+        return this;
+    }
+
+    /**
+     * Gets the longest field or value a hash can hold and still be stored packed
+     * @return The length in characters
+     */
+    public int getHashMaxListpackValue() {
+        return hashMaxListpackValue;
+    }
+
+    /**
+     * Sets the longest field or value a hash can hold and still be stored packed
+     * @param hashMaxListpackValue The length in characters
+     * @return These limits
+     */
+    public EncodingLimits setHashMaxListpackValue(int hashMaxListpackValue) {
+        this.hashMaxListpackValue = hashMaxListpackValue;
+        return this;
+    }
+
+    /**
+     * Gets the most members a sorted set can have and still be stored packed
+     * @return The member count
+     */
+    public int getZsetMaxListpackEntries() {
+        return zsetMaxListpackEntries;
+    }
+
+    /**
+     * Sets the most members a sorted set can have and still be stored packed
+     * @param zsetMaxListpackEntries The member count
+     * @return These limits
+     */
+    public EncodingLimits setZsetMaxListpackEntries(int zsetMaxListpackEntries) {
+        this.zsetMaxListpackEntries = zsetMaxListpackEntries;
+        return this;
+    }
+
+    /**
+     * Gets the longest member a sorted set can hold and still be stored packed
+     * @return The length in characters
+     */
+    public int getZsetMaxListpackValue() {
+        return zsetMaxListpackValue;
+    }
+
+    /**
+     * Sets the longest member a sorted set can hold and still be stored packed
+     * @param zsetMaxListpackValue The length in characters
+     * @return These limits
+     */
+    public EncodingLimits setZsetMaxListpackValue(int zsetMaxListpackValue) {
+        this.zsetMaxListpackValue = zsetMaxListpackValue;
+        return this;
+    }
+}
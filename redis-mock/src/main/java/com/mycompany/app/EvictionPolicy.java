@@ -0,0 +1,47 @@
+package com.mycompany.app;
+
+public enum EvictionPolicy {
+
+    /**
+     * Nothing is evicted; once memory is full, commands that add data are refused
+     */
+    NOEVICTION,
+
+    /**
+     * Any key may be evicted, least recently used first
+     */
+    ALLKEYS_LRU,
+
+    /**
+     * Any key may be evicted, least frequently used first
+     */
+    ALLKEYS_LFU,
+
+    /**
+     * Only keys with an expiry time are evicted, soonest to expire first
+     */
+    VOLATILE_TTL;
+
+    /**
+     * Resolves a policy from its redis.conf name, ignoring case
+     * @param name The name given on the command line (e.g. "allkeys-lru")
+     * @return The matching policy
+     * @throws IllegalArgumentException If no policy has the given name
+     */
+    public static EvictionPolicy fromName(String name) {
+        for (EvictionPolicy policy : values()) {
+            if (policy.getConfigName().equalsIgnoreCase(name)) {
+                return policy;
+            }
+        }
+        throw new IllegalArgumentException("Unknown maxmemory-policy: " + name);
+    }
+
+    /**
+     * Gets the policy's redis.conf name
+     * @return The name in lower case with dashes (e.g. "allkeys-lru")
+     */
+    public String getConfigName() {
+        return name().toLowerCase().replace('_', '-');
+    }
+}
@@ -0,0 +1,170 @@
+package com.mycompany.app;
+
+import java.util.Iterator;
+
+public class Evictor {
+
+    private static final int POOL_SIZE = 16;
+    private static final int TRACKER_SLOTS = 1 << 20;
+
+    /**
+     * A sampled key and how good a candidate for eviction it was when sampled
+     */
+    private record Candidate(String key, long score) {
+    }
+
+    private final Keyspace dataStore;
+    private final Expires expires;
+    private final EvictionPolicy policy;
+    private final int samples;
+    private final AccessTracker accessTracker;
+    // best candidates seen so far, lowest score first
+    private final Candidate[] pool = new Candidate[POOL_SIZE];
+    private int poolSize;
+    private Iterator<String> cursor;
+
+    /**
+     * Picks keys to evict by sampling, as Redis does: each round looks at a few keys and keeps the
+     * best candidates seen across rounds in a small pool, which approximates the exact policy
+     * closely without ordering every key. Keys are sampled by a cursor that keeps walking the
+     * table between rounds, so every key is looked at in turn.
+     * @param dataStore The database
+     * @param expires The expiry times of the database's keys
+     * @param policy Which keys may be evicted and in what order
+     * @param samples How many keys each round looks at
+     */
+    public Evictor(Keyspace dataStore, Expires expires, EvictionPolicy policy, int samples) {
+        this.dataStore = dataStore;
+        this.expires = expires;
+        this.policy = policy;
+        this.samples = samples;
+        this.accessTracker = switch (policy) {
+            case ALLKEYS_LRU -> new AccessTracker(TRACKER_SLOTS, false);
+            case ALLKEYS_LFU -> new AccessTracker(TRACKER_SLOTS, true);
+            default -> null;
+        };
+    }
+
+    /**
+     * Gets the eviction policy
+     * @return The policy
+     */
+    public EvictionPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Records an access to a key, for the LRU and LFU policies
+     * @param key The key
+     */
+    public void touch(String key) {
+        if (accessTracker != null) {
+            accessTracker.touch(key);
+        }
+    }
+
+    /**
+     * Records that a key was added, for the LRU and LFU policies
+     * @param key The key
+     */
+    public void created(String key) {
+        if (accessTracker != null) {
+            accessTracker.created(key);
+        }
+    }
+
+    /**
+     * Samples another round of keys and hands over the best candidate. The key may have been
+     * deleted or changed since it was sampled, so the caller checks it again under its lock.
+     * @return The key to evict, or null if the policy allows nothing to be evicted
+     */
+    public synchronized String nextVictim() {
+        if (policy == EvictionPolicy.NOEVICTION) {
+            return null;
+        }
+        sample();
+        if (poolSize == 0) {
+            return null;
+        }
+        Candidate best = pool[--poolSize];
+        pool[poolSize] = null;
+        return best.key();
+    }
+
+    /**
+     * Checks whether the policy still allows a key to be evicted. Called with the key locked.
+     * @param key The key
+     * @return True if the key exists and, for volatile-ttl, still has an expiry time
+     */
+    public boolean isEvictable(String key) {
+        if (!dataStore.containsKey(key)) {
+            return false;
+        }
+        return policy != EvictionPolicy.VOLATILE_TTL || expires.get(key) >= 0;
+    }
+
+    /**
+     * Looks at the next keys under the cursor and adds them to the pool
+     */
+    private void sample() {
+        Iterable<String> keys = policy == EvictionPolicy.VOLATILE_TTL ? expires.keys() : dataStore.keys();
+        boolean restarted = false;
+        for (int i = 0; i < samples; i++) {
+            if (cursor == null || !cursor.hasNext()) {
+                if (restarted) {
+                    return;
+                }
+                cursor = keys.iterator();
+                restarted = true;
+                if (!cursor.hasNext()) {
+                    return;
+                }
+            }
+            String key = cursor.next();
+            long score = score(key);
+            if (score >= 0) {
+                offer(new Candidate(key, score));
+            }
+        }
+    }
+
+    /**
+     * Scores a key under the policy
+     * @param key The key
+     * @return The score, higher for better candidates, or -1 if the key cannot be evicted
+     */
+    private long score(String key) {
+        if (policy == EvictionPolicy.VOLATILE_TTL) {
+            long deadline = expires.get(key);
+            return deadline < 0 ? -1 : Long.MAX_VALUE - deadline;
+        }
+        return accessTracker.evictionScore(key);
+    }
+
+    /**
+     * Adds a candidate to the pool if it beats the worst one there, keeping the pool in score order
+     * @param candidate The sampled key
+     */
+    private void offer(Candidate candidate) {
+        for (int i = 0; i < poolSize; i++) {
+            if (pool[i].key().equals(candidate.key())) {
+                System.arraycopy(pool, i + 1, pool, i, poolSize - i - 1);
+                pool[--poolSize] = null;
+                break;
+            }
+        }
+        if (poolSize == POOL_SIZE) {
+            if (candidate.score() <= pool[0].score()) {
+                return;
+            }
+            System.arraycopy(pool, 1, pool, 0, --poolSize);
+        }
+        int index = poolSize;
+        while (index > 0 && pool[index - 1].score() > candidate.score()) {
+            pool[index] = pool[index - 1];
+            index--;
+        }
+        pool[index] = candidate;
+        poolSize++;
+    }
+}
@@ -0,0 +1,179 @@
+package com.mycompany.app;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+public class Expires {
+
+    private static final long TICK_MILLIS = 100;
+    private static final int WHEEL_SIZE = 4096;
+    private static final int BUDGET_CHECK_INTERVAL = 64;
+
+    /**
+     * A key's deadline as scheduled on the wheel, dropped when it no longer matches the key's deadline
+     */
+    private record Timer(String key, long deadline) {
+    }
+
+    /**
+     * Called by the expiry cycle for a key whose deadline has passed
+     */
+    @FunctionalInterface
+    public interface ExpiredKeyHandler {
+
+        /**
+         * Removes a key if it still has the given deadline
+         * @param key The key
+         * @param deadline The deadline it was scheduled with
+         * @return True if the key was removed
+         */
+        boolean expire(String key, long deadline);
+    }
+
+    private final ConcurrentHashMap<String, Long> deadlines = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<Timer>[] wheel;
+    private long cursorTick = -1;
+
+    /**
+     * Holds the expiry times of keys that have one, beside the data store, and a hashed timing wheel
+     * of them so expired keys can be found without scanning every key. Callers must hold the key's
+     * lock when changing its deadline.
+     */
+    public Expires() {
+        wheel = newWheel();
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            wheel[i] = new ConcurrentLinkedQueue<>();
+        }
+    }
+
+    /**
+     * Gives a key an expiry time, replacing any it had
+     * @param key The key
+     * @param deadline When the key expires, in milliseconds since the epoch
+     */
+    public void set(String key, long deadline) {
+        deadlines.put(key, deadline);
+        wheel[slot(deadline / TICK_MILLIS)].add(new Timer(key, deadline));
+    }
+
+    /**
+     * Takes a key's expiry time away; its timer is dropped when the wheel reaches it
+     * @param key The key
+     * @return True if the key had an expiry time
+     */
+    public boolean remove(String key) {
+        return deadlines.remove(key) != null;
+    }
+
+    /**
+     * Gets a key's expiry time
+     * @param key The key
+     * @return The deadline in milliseconds since the epoch, or -1 if the key does not expire
+     */
+    public long get(String key) {
+        Long deadline = deadlines.get(key);
+        return deadline == null ? -1 : deadline;
+    }
+
+    /**
+     * Checks whether a key's expiry time has passed
+     * @param key The key
+     * @param now The current time in milliseconds since the epoch
+     * @return The deadline if it has passed, otherwise -1
+     */
+    public long expiredDeadline(String key, long now) {
+        if (deadlines.isEmpty()) {
+            return -1;
+        }
+        Long deadline = deadlines.get(key);
+        return deadline != null && deadline <= now ? deadline : -1;
+    }
+
+    /**
+     * Gets the keys that have an expiry time, as a live view
+     * @return The keys
+     */
+    public Set<String> keys() {
+        return deadlines.keySet();
+    }
+
+    /**
+     * Gets the number of keys with an expiry time
+     * @return The count
+     */
+    public int size() {
+        return deadlines.size();
+    }
+
+    /**
+     * Runs one active expiry cycle: moves the wheel up to the current tick and hands every due key
+     * to the handler, stopping early when the time budget runs out so a burst of expiring keys is
+     * spread over several cycles. Timers for later laps of the wheel are put back, timers whose key
+     * has since got another deadline or none are dropped.
+     * @param now The current time in milliseconds since the epoch
+     * @param budgetNanos How long the cycle may run for
+     * @param handler Removes a key whose deadline has passed
+     * @return The number of keys removed
+     */
+    public synchronized long expireCycle(long now, long budgetNanos, ExpiredKeyHandler handler) {
+        long start = System.nanoTime();
+        long nowTick = now / TICK_MILLIS;
+        if (cursorTick < 0 || nowTick - cursorTick >= WHEEL_SIZE) {
+            // first cycle or a long stall: go round the whole wheel once
+            cursorTick = nowTick - WHEEL_SIZE + 1;
+        }
+        long expired = 0;
+        int checked = 0;
+        List<Timer> later = new ArrayList<>();
+        // only ticks wholly in the past are drained, so nothing put back belongs to them
+        while (cursorTick < nowTick) {
+            ConcurrentLinkedQueue<Timer> slot = wheel[slot(cursorTick)];
+            Timer timer;
+            boolean outOfTime = false;
+            while ((timer = slot.poll()) != null) {
+                Long current = deadlines.get(timer.key());
+                if (current != null && current == timer.deadline()) {
+                    if (timer.deadline() <= now) {
+                        if (handler.expire(timer.key(), timer.deadline())) {
+                            expired++;
+                        }
+                    } else {
+                        later.add(timer);
+                    }
+                }
+                if (++checked % BUDGET_CHECK_INTERVAL == 0 && System.nanoTime() - start > budgetNanos) {
+                    outOfTime = true;
+                    break;
+                }
+            }
+            slot.addAll(later);
+            later.clear();
+            if (outOfTime) {
+                break;
+            }
+            cursorTick++;
+        }
+        return expired;
+    }
+
+    /**
+     * Maps a tick to its slot on the wheel
+     * @param tick The tick
+     * @return The slot index
+     */
+    private static int slot(long tick) {
+        return (int) (tick & (WHEEL_SIZE - 1));
+    }
+
+    /**
+     * Allocates the slots of the timing wheel
+     * @return The array, every slot still null
+     */
+    @SuppressWarnings("unchecked")
+    private static ConcurrentLinkedQueue<Timer>[] newWheel() {
+        return (ConcurrentLinkedQueue<Timer>[]) new ConcurrentLinkedQueue<?>[WHEEL_SIZE];
+    }
+}
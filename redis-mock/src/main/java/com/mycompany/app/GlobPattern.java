@@ -0,0 +1,95 @@
+package com.mycompany.app;
+
+public final class GlobPattern {
+
+    /**
+     * Glob-style patterns, as used by KEYS, SCAN MATCH and the other commands that filter by name
+     */
+    private GlobPattern() {
+    }
+
+    /**
+     * Matches a string against a pattern the way Redis does: * matches any run of characters, ?
+     * any one, [abc], [a-z] and [^abc] one of a set or not, and \ makes the next character plain.
+     * A star backtracks to the latest star only, so matching takes time proportional to the pattern
+     * length times the string length at worst.
+     * @param pattern The pattern
+     * @param text The string
+     * @return True if the whole string matches
+     */
+    public static boolean matches(String pattern, String text) {
+        int p = 0;
+        int t = 0;
+        // where to carry on after the latest star: the pattern after it and the text it has taken up to
+        int starPattern = -1;
+        int starText = -1;
+        while (t < text.length()) {
+            if (p < pattern.length()) {
+                if (pattern.charAt(p) == '*') {
+                    starPattern = ++p;
+                    starText = t;
+                    continue;
+                }
+                int next = matchOne(pattern, p, text.charAt(t));
+                if (next >= 0) {
+                    p = next;
+                    t++;
+                    continue;
+                }
+            }
+            if (starPattern < 0) {
+                return false;
+            }
+            // let the star take one more character and try the rest again
+            p = starPattern;
+            t = ++starText;
+        }
+        while (p < pattern.length() && pattern.charAt(p) == '*') {
+            p++;
+        }
+        return p == pattern.length();
+    }
+
+    /**
+     * Matches one character against the element of a pattern at an index, other than a star
+     * @param pattern The pattern
+     * @param p The index of the element
+     * @param c The character
+     * @return The index after the element if it matches, -1 if not
+     */
+    private static int matchOne(String pattern, int p, char c) {
+        char element = pattern.charAt(p);
+        if (element == '?') {
+            return p + 1;
+        }
+        if (element == '\\' && p + 1 < pattern.length()) {
+            return pattern.charAt(p + 1) == c ? p + 2 : -1;
+        }
+        if (element != '[') {
+            return element == c ? p + 1 : -1;
+        }
+        int i = p + 1;
+        boolean negate = i < pattern.length() && pattern.charAt(i) == '^';
+        if (negate) {
+            i++;
+        }
+        boolean matched = false;
+        while (i < pattern.length() && pattern.charAt(i) != ']') {
+            char first = pattern.charAt(i);
+            if (first == '\\' && i + 1 < pattern.length()) {
+                matched |= pattern.charAt(i + 1) == c;
+                i += 2;
+            } else if (i + 2 < pattern.length() && pattern.charAt(i + 1) == '-' && pattern.charAt(i + 2) != ']') {
+                char low = (char) Math.min(first, pattern.charAt(i + 2));
+                char high = (char) Math.max(first, pattern.charAt(i + 2));
+                matched |= c >= low && c <= high;
+                i += 3;
+            } else {
+                matched |= first == c;
+                i++;
+            }
+        }
+        // a set left open runs to the end of the pattern
+        return matched != negate ? Math.min(i + 1, pattern.length()) : -1;
+    }
+}
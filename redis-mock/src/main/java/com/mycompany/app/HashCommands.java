@@ -0,0 +1,237 @@
+package com.mycompany.app;
+
+import java.util.EnumSet;
+import java.util.concurrent.atomic.LongAdder;
+
+public class HashCommands {
+
+    private final CommandExecutor executor;
+    private final LongAdder conversions = new LongAdder();
+
+    /**
+     * The hash commands. Hashes are changed in place, so writes run under the key's lock like every
+     * write and reads take the lock too.
+     * @param executor The executor whose database the commands act on
+     */
+    public HashCommands(CommandExecutor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Adds the hash commands to a registry
+     * @param registry The registry
+     */
+    public void register(CommandRegistry registry) {
+        registry.register(new CommandSpec("HSET", -4, EnumSet.of(CommandFlag.WRITE, CommandFlag.DENYOOM, CommandFlag.FAST), 1, 1, 1, this::hset));
+        registry.register(new CommandSpec("HGET", 3, EnumSet.of(CommandFlag.READONLY, CommandFlag.FAST), 1, 1, 1, this::hget));
+        registry.register(new CommandSpec("HMGET", -3, EnumSet.of(CommandFlag.READONLY, CommandFlag.FAST), 1, 1, 1, this::hmget));
+        registry.register(new CommandSpec("HDEL", -3, EnumSet.of(CommandFlag.WRITE, CommandFlag.FAST), 1, 1, 1, this::hdel));
+        registry.register(new CommandSpec("HGETALL", 2, EnumSet.of(CommandFlag.READONLY), 1, 1, 1, this::hgetall));
+        registry.register(new CommandSpec("HLEN", 2, EnumSet.of(CommandFlag.READONLY, CommandFlag.FAST), 1, 1, 1, this::hlen));
+        registry.register(new CommandSpec("HINCRBY", 4, EnumSet.of(CommandFlag.WRITE, CommandFlag.DENYOOM, CommandFlag.FAST), 1, 1, 1, this::hincrby));
+    }
+
+    /**
+     * Gets how many hashes have outgrown the packed encoding
+     * @return The conversion count
+     */
+    public long getConversions() {
+        return conversions.sum();
+    }
+
+    /**
+     * Sets fields of a hash, creating it if needed (HSET key field value [field value ...]).
+     * Called with the key locked.
+     * @param command The command, its key and the field value pairs
+     * @return The number of fields that were new
+     */
+    private Object hset(Object[] command) {
+        if (command.length % 2 != 0) {
+            return new Exception("ERR wrong number of arguments for 'HSET' command");
+        }
+        String key = (String) command[1];
+        Object value = executor.lookupKey(key);
+        if (value != null && !(value instanceof RedisHash)) {
+            return new Exception(CommandExecutor.WRONGTYPE);
+        }
+        executor.preserveForSnapshot(key);
+        RedisHash hash = value == null ? new RedisHash() : (RedisHash) value;
+        long before = hash.estimatedSize();
+        boolean packed = hash.isPacked();
+        long added = 0;
+        for (int i = 2; i < command.length; i += 2) {
+            if (hash.put((String) command[i], (String) command[i + 1], executor.getEncodingLimits())) {
+                added++;
+            }
+        }
+        countConversion(packed, hash);
+        if (value == null) {
+            executor.store(key, hash);
+        } else {
+            executor.adjustUsedMemory(hash.estimatedSize() - before);
+        }
+        return added;
+    }
+
+    /**
+     * Gets the value of a field (HGET key field)
+     * @param command The command, its key and the field
+     * @return The value, null if there is no such key or field
+     */
+    private Object hget(Object[] command) {
+        String key = (String) command[1];
+        return executor.readLocked(key, () -> {
+            Object value = executor.lookupKey(key);
+            if (value == null) {
+                return null;
+            }
+            if (!(value instanceof RedisHash hash)) {
+                return new Exception(CommandExecutor.WRONGTYPE);
+            }
+            return hash.get((String) command[2]);
+        });
+    }
+
+    /**
+     * Gets the values of several fields (HMGET key field [field ...])
+     * @param command The command, its key and the fields
+     * @return The values in field order, null for each field that is missing
+     */
+    private Object hmget(Object[] command) {
+        String key = (String) command[1];
+        return executor.readLocked(key, () -> {
+            Object value = executor.lookupKey(key);
+            if (value != null && !(value instanceof RedisHash)) {
+                return new Exception(CommandExecutor.WRONGTYPE);
+            }
+            Object[] reply = new Object[command.length - 2];
+            if (value instanceof RedisHash hash) {
+                for (int i = 2; i < command.length; i++) {
+                    reply[i - 2] = hash.get((String) command[i]);
+                }
+            }
+            return reply;
+        });
+    }
+
+    /**
+     * Removes fields from a hash, and the hash once it is empty (HDEL key field [field ...]).
+     * Called with the key locked.
+     * @param command The command, its key and the fields
+     * @return The number of fields removed
+     */
+    private Object hdel(Object[] command) {
+        String key = (String) command[1];
+        Object value = executor.lookupKey(key);
+        if (value == null) {
+            return new PropagatedReply(0L, null);
+        }
+        if (!(value instanceof RedisHash hash)) {
+            return new Exception(CommandExecutor.WRONGTYPE);
+        }
+        executor.preserveForSnapshot(key);
+        long before = hash.estimatedSize();
+        long removed = 0;
+        for (int i = 2; i < command.length; i++) {
+            if (hash.remove((String) command[i])) {
+                removed++;
+            }
+        }
+        executor.adjustUsedMemory(hash.estimatedSize() - before);
+        if (hash.size() == 0) {
+            executor.deleteKey(key);
+        }
+        return removed > 0 ? removed : new PropagatedReply(0L, null);
+    }
+
+    /**
+     * Gets every field and value of a hash (HGETALL key)
+     * @param command The command and its key
+     * @return Each field followed by its value, empty if there is no such key
+     */
+    private Object hgetall(Object[] command) {
+        String key = (String) command[1];
+        return executor.readLocked(key, () -> {
+            Object value = executor.lookupKey(key);
+            if (value == null) {
+                return new Object[0];
+            }
+            if (!(value instanceof RedisHash hash)) {
+                return new Exception(CommandExecutor.WRONGTYPE);
+            }
+            return hash.toArray();
+        });
+    }
+
+    /**
+     * Counts the fields of a hash (HLEN key)
+     * @param command The command and its key
+     * @return The field count, 0 if there is no such key
+     */
+    private Object hlen(Object[] command) {
+        String key = (String) command[1];
+        return executor.readLocked(key, () -> {
+            Object value = executor.lookupKey(key);
+            if (value == null) {
+                return 0L;
+            }
+            if (!(value instanceof RedisHash hash)) {
+                return new Exception(CommandExecutor.WRONGTYPE);
+            }
+            return (long) hash.size();
+        });
+    }
+
+    /**
+     * Adds to the integer in a field, treating a missing field as 0 (HINCRBY key field increment).
+     * Called with the key locked.
+     * @param command The command, its key, the field and the increment
+     * @return The new value
+     */
+    private Object hincrby(Object[] command) {
+        String key = (String) command[1];
+        String field = (String) command[2];
+        long increment;
+        try {
+            increment = Long.parseLong((String) command[3]);
+        } catch (NumberFormatException e) {
+            return new Exception("ERR value is not an integer or out of range");
+        }
+        Object value = executor.lookupKey(key);
+        if (value != null && !(value instanceof RedisHash)) {
+            return new Exception(CommandExecutor.WRONGTYPE);
+        }
+        RedisHash hash = value == null ? new RedisHash() : (RedisHash) value;
+        String current = hash.get(field);
+        long result;
+        try {
+            result = Math.addExact(current == null ? 0 : Long.parseLong(current), increment);
+        } catch (NumberFormatException e) {
+            return new Exception("ERR hash value is not an integer");
+        } catch (ArithmeticException e) {
+            return new Exception("ERR increment or decrement would overflow");
+        }
+        executor.preserveForSnapshot(key);
+        long before = hash.estimatedSize();
+        boolean packed = hash.isPacked();
+        hash.put(field, Long.toString(result), executor.getEncodingLimits());
+        countConversion(packed, hash);
+        if (value == null) {
+            executor.store(key, hash);
+        } else {
+            executor.adjustUsedMemory(hash.estimatedSize() - before);
+        }
+        return result;
+    }
+
+    /**
+     * Counts a hash that left the packed encoding during a write
+     * @param wasPacked Whether it was packed before the write
+     * @param hash The hash after the write
+     */
+    private void countConversion(boolean wasPacked, RedisHash hash) {
+        if (wasPacked && !hash.isPacked()) {
+            conversions.increment();
+        }
+    }
+}
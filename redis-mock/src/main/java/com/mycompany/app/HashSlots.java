@@ -0,0 +1,69 @@
+package com.mycompany.app;
+
+import java.nio.charset.StandardCharsets;
+
+public final class HashSlots {
+
+    public static final int SLOTS = 16384;
+
+    // CRC-16/XMODEM, polynomial 0x1021, one entry per byte value
+    private static final int[] CRC16_TABLE = new int[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int crc = i << 8;
+            for (int bit = 0; bit < 8; bit++) {
+                crc = (crc & 0x8000) != 0 ? (crc << 1) ^ 0x1021 : crc << 1;
+            }
+            CRC16_TABLE[i] = crc & 0xFFFF;
+        }
+    }
+
+    /**
+     * The mapping of keys to the 16384 hash slots a cluster is split into, the same as Redis Cluster's
+     */
+    private HashSlots() {
+    }
+
+    /**
+     * Gets the slot of a key: CRC16 of the key modulo 16384. If the key has a hash tag, a non-empty
+     * part between the first { and the first } after it, only the tag is hashed, so keys sharing a
+     * tag share a slot and can be used together in multi-key commands.
+     * @param key The key
+     * @return The slot, from 0 to 16383
+     */
+    public static int slotOf(String key) {
+        byte[] bytes = hashTag(key).getBytes(StandardCharsets.UTF_8);
+        return crc16(bytes, 0, bytes.length) & (SLOTS - 1);
+    }
+
+    /**
+     * Gets the part of a key that decides where it is kept: its hash tag, the non-empty part
+     * between the first { and the first } after it, or the whole key if it has none
+     * @param key The key
+     * @return The hash tag, or the key itself
+     */
+    public static String hashTag(String key) {
+        int open = key.indexOf('{');
+        if (open < 0) {
+            return key;
+        }
+        int close = key.indexOf('}', open + 1);
+        return close > open + 1 ? key.substring(open + 1, close) : key;
+    }
+
+    /**
+     * Computes the CRC-16/XMODEM checksum of part of an array
+     * @param bytes The array
+     * @param from The index of the first byte
+     * @param to The index after the last byte
+     * @return The checksum
+     */
+    public static int crc16(byte[] bytes, int from, int to) {
+        int crc = 0;
+        for (int i = from; i < to; i++) {
+            crc = ((crc << 8) ^ CRC16_TABLE[((crc >>> 8) ^ bytes[i]) & 0xFF]) & 0xFFFF;
+        }
+        return crc;
+    }
+}
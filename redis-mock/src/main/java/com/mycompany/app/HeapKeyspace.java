@@ -0,0 +1,117 @@
+package com.mycompany.app;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+public class HeapKeyspace implements Keyspace {
+
+    private static final int PARTITION_BITS = 12;
+
+    private final Map<String, Object>[] partitions;
+
+    /**
+     * Keeps every key and value as objects on the heap, in a fixed number of concurrent maps picked
+     * by key hash. A key never changes map, so a scan can walk the keyspace a map at a time with
+     * the map's number as its cursor.
+     */
+    public HeapKeyspace() {
+        this.partitions = newPartitions(1 << PARTITION_BITS);
+        for (int i = 0; i < partitions.length; i++) {
+            partitions[i] = new ConcurrentHashMap<>();
+        }
+    }
+
+    /**
+     * Keeps every key and value as objects in a map on the heap. A scan returns the whole map in
+     * one call.
+     * @param map The map to keep them in, a concurrent map if the keyspace is shared between threads
+     */
+    public HeapKeyspace(Map<String, Object> map) {
+        this.partitions = newPartitions(1);
+        partitions[0] = map;
+    }
+
+    @Override
+    public Object get(String key) {
+        return partitionFor(key).get(key);
+    }
+
+    @Override
+    public Object put(String key, Object value) {
+        return partitionFor(key).put(key, value);
+    }
+
+    @Override
+    public Object remove(String key) {
+        return partitionFor(key).remove(key);
+    }
+
+    @Override
+    public boolean containsKey(String key) {
+        return partitionFor(key).containsKey(key);
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (Map<String, Object> partition : partitions) {
+            size += partition.size();
+        }
+        return size;
+    }
+
+    @Override
+    public Iterable<String> keys() {
+        if (partitions.length == 1) {
+            return partitions[0].keySet();
+        }
+        return () -> Arrays.stream(partitions).flatMap(partition -> partition.keySet().stream()).iterator();
+    }
+
+    /**
+     * Lists the keys of whole maps until enough are found. Each map is iterated weakly
+     * consistently, without blocking its writers.
+     * @param cursor 0 to start, or the cursor the previous call returned
+     * @param count Roughly how many keys to return
+     * @param action Called with each key
+     * @return The number of the next map to walk, 0 once every map has been walked
+     */
+    @Override
+    public long scan(long cursor, int count, Consumer<String> action) {
+        int partition = (int) Math.min(cursor, partitions.length);
+        int found = 0;
+        while (partition < partitions.length && found < count) {
+            for (String key : partitions[partition].keySet()) {
+                action.accept(key);
+                found++;
+            }
+            partition++;
+        }
+        return partition == partitions.length ? 0 : partition;
+    }
+
+    /**
+     * Picks the map a key is kept in
+     * @param key The key
+     * @return The map
+     */
+    private Map<String, Object> partitionFor(String key) {
+        if (partitions.length == 1) {
+            return partitions[0];
+        }
+        // the high bits of a multiplicative hash, as the maps use the low bits of theirs
+        return partitions[(key.hashCode() * 0x9E3779B9) >>> (Integer.SIZE - PARTITION_BITS)];
+    }
+
+    /**
+     * Allocates the array of maps
+     * @param count The number of maps
+     * @return The array, every map still null
+     */
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object>[] newPartitions(int count) {
+        return (Map<String, Object>[]) new Map<?, ?>[count];
+    }
+}
@@ -0,0 +1,128 @@
+package com.mycompany.app;
+
+public final class IntegerValue {
+
+    // as Redis's shared integers: small values are one preallocated object each, never allocated again
+    private static final int SHARED_COUNT = 10000;
+    private static final IntegerValue[] SHARED = new IntegerValue[SHARED_COUNT];
+    private static final Long[] SHARED_REPLIES = new Long[SHARED_COUNT];
+    private static final int MAX_DIGITS = 20;
+
+    static {
+        for (int i = 0; i < SHARED_COUNT; i++) {
+            SHARED[i] = new IntegerValue(i);
+            SHARED_REPLIES[i] = (long) i;
+        }
+    }
+
+    private final long value;
+
+    /**
+     * A string value that is a canonical decimal integer, stored as the number so counters are
+     * updated without parsing and formatting text. Immutable.
+     * @param value The number
+     */
+    private IntegerValue(long value) {
+        this.value = value;
+    }
+
+    /**
+     * Gets the value for a number, shared for small non-negative numbers
+     * @param value The number
+     * @return The value
+     */
+    public static IntegerValue of(long value) {
+        return value >= 0 && value < SHARED_COUNT ? SHARED[(int) value] : new IntegerValue(value);
+    }
+
+    /**
+     * Boxes a number for an integer reply, without allocating for small non-negative numbers
+     * @param value The number
+     * @return The boxed number
+     */
+    public static Long reply(long value) {
+        return value >= 0 && value < SHARED_COUNT ? SHARED_REPLIES[(int) value] : Long.valueOf(value);
+    }
+
+    /**
+     * Picks the storage for a string written by a client: the number if the string is exactly how
+     * that number is written, so it reads back unchanged, otherwise the string itself
+     * @param value The string, or the bytes of one that is not valid UTF-8 and so is never a number
+     * @return An IntegerValue or the value itself
+     */
+    public static Object encode(Object value) {
+        long[] parsed = new long[1];
+        return value instanceof String string && parseStrict(string, parsed) ? of(parsed[0]) : value;
+    }
+
+    /**
+     * Reads a string value as a number, accepting only the canonical form (no sign other than a
+     * leading minus, no leading zeros, no spaces), as Redis does for INCR
+     * @param value The string
+     * @param result Receives the number in its first element
+     * @return True if the string is a number in range
+     */
+    public static boolean parseStrict(String value, long[] result) {
+        int length = value.length();
+        if (length == 0 || length > MAX_DIGITS) {
+            return false;
+        }
+        boolean negative = value.charAt(0) == '-';
+        int start = negative ? 1 : 0;
+        if (start == length || (value.charAt(start) == '0' && (length > start + 1 || negative))) {
+            return false;
+        }
+        long number = 0;
+        for (int i = start; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+            // accumulate negatively so Long.MIN_VALUE fits
+            long next = number * 10 - (c - '0');
+            if (number < Long.MIN_VALUE / 10 || next > number) {
+                return false;
+            }
+            number = next;
+        }
+        if (!negative) {
+            if (number == Long.MIN_VALUE) {
+                return false;
+            }
+            number = -number;
+        }
+        result[0] = number;
+        return true;
+    }
+
+    /**
+     * Gets the number
+     * @return The number
+     */
+    public long get() {
+        return value;
+    }
+
+    /**
+     * Reports whether this is one of the preallocated small values
+     * @return True if shared
+     */
+    public boolean isShared() {
+        return value >= 0 && value < SHARED_COUNT;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof IntegerValue integer && integer.value == value;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(value);
+    }
+
+    @Override
+    public String toString() {
+        return Long.toString(value);
+    }
+}
@@ -0,0 +1,81 @@
+package com.mycompany.app;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class KeyLocks {
+
+    private static final int STRIPES = 1024;
+
+    private final ReentrantLock[] locks = new ReentrantLock[STRIPES];
+
+    /**
+     * Creates a fixed set of locks that keys are spread over by hash, so writes to one key are
+     * serialised without a global lock. ReentrantLock is used so a virtual thread waiting on the
+     * AOF while holding one does not pin its carrier.
+     */
+    public KeyLocks() {
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Gets the lock guarding a key
+     * @param key The key about to be written
+     * @return The lock shared by every key in the same stripe
+     */
+    public ReentrantLock lockFor(String key) {
+        return locks[stripe(key)];
+    }
+
+    /**
+     * Gets the locks guarding several keys, each once and always in stripe order, so two writers
+     * locking overlapping keys cannot deadlock
+     * @param keys The keys about to be written
+     * @return The distinct locks to take, in the order to take them
+     */
+    public ReentrantLock[] locksFor(String[] keys) {
+        int[] stripes = new int[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            stripes[i] = stripe(keys[i]);
+        }
+        Arrays.sort(stripes);
+        ReentrantLock[] ordered = new ReentrantLock[stripes.length];
+        int count = 0;
+        for (int i = 0; i < stripes.length; i++) {
+            if (i == 0 || stripes[i] != stripes[i - 1]) {
+                ordered[count++] = locks[stripes[i]];
+            }
+        }
+        return count == ordered.length ? ordered : Arrays.copyOf(ordered, count);
+    }
+
+    /**
+     * Takes every lock, in stripe order like locksFor, holding off all writers until unlockAll
+     */
+    public void lockAll() {
+        for (ReentrantLock lock : locks) {
+            lock.lock();
+        }
+    }
+
+    /**
+     * Releases every lock taken by lockAll
+     */
+    public void unlockAll() {
+        for (int i = STRIPES - 1; i >= 0; i--) {
+            locks[i].unlock();
+        }
+    }
+
+    /**
+     * Picks the stripe a key belongs to
+     * @param key The key
+     * @return The stripe index
+     */
+    private static int stripe(String key) {
+        int h = key.hashCode();
+        return (h ^ (h >>> 16)) & (STRIPES - 1);
+    }
+}
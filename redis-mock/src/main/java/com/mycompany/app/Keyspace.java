@@ -0,0 +1,61 @@
+package com.mycompany.app;
+
+import java.util.function.Consumer;
+
+public interface Keyspace {
+
+    /**
+     * Gets the value stored at a key
+     * @param key The key
+     * @return The value, null if there is no such key
+     */
+    Object get(String key);
+
+    /**
+     * Stores a value at a key, replacing any value it had
+     * @param key The key
+     * @param value The value: a String, an IntegerValue or a collection
+     * @return The value it replaced, null if the key is new
+     */
+    Object put(String key, Object value);
+
+    /**
+     * Removes a key
+     * @param key The key
+     * @return The value it had, null if there was no such key
+     */
+    Object remove(String key);
+
+    /**
+     * Checks whether a key exists
+     * @param key The key
+     * @return True if the key has a value
+     */
+    boolean containsKey(String key);
+
+    /**
+     * Counts the keys
+     * @return The number of keys
+     */
+    int size();
+
+    /**
+     * Lists the keys, weakly consistently: every key present for the whole iteration is returned
+     * at least once, keys added or removed meanwhile may or may not be
+     * @return The keys
+     */
+    Iterable<String> keys();
+
+    /**
+     * Lists some of the keys, resuming from a cursor that holds no state between calls, so a walk
+     * of the whole keyspace is done in small steps and never copies it. Every key present for the
+     * whole walk is returned at least once, however the keyspace grows or shrinks meanwhile; keys
+     * added or removed meanwhile may or may not be.
+     * @param cursor 0 to start, or the cursor the previous call returned
+     * @param count Roughly how many keys to return, at least 1
+     * @param action Called with each key; it may be called under the keyspace's own locks, so it
+     *               must not use the keyspace
+     * @return The cursor to resume from, 0 once every key has been returned
+     */
+    long scan(long cursor, int count, Consumer<String> action);
+}
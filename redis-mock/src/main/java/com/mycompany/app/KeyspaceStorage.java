@@ -0,0 +1,30 @@
+package com.mycompany.app;
+
+public enum KeyspaceStorage {
+
+    /**
+     * Keys and values are ordinary heap objects in a concurrent hash map
+     */
+    HEAP,
+
+    /**
+     * Keys and string values are kept as bytes in direct memory slabs, so the heap and GC pauses do
+     * not grow with the number of keys
+     */
+    OFFHEAP;
+
+    /**
+     * Resolves a storage option from its name, ignoring case
+     * @param name The name given on the command line (e.g. "offheap")
+     * @return The matching storage
+     * @throws IllegalArgumentException If no storage has the given name
+     */
+    public static KeyspaceStorage fromName(String name) {
+        for (KeyspaceStorage storage : values()) {
+            if (storage.name().equalsIgnoreCase(name)) {
+                return storage;
+            }
+        }
+        throw new IllegalArgumentException("Unknown keyspace storage: " + name);
+    }
+}
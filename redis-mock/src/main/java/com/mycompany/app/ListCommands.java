@@ -0,0 +1,300 @@
+package com.mycompany.app;
+
+import java.util.EnumSet;
+
+public class ListCommands {
+
+    private static final String NOT_AN_INTEGER = "ERR value is not an integer or out of range";
+
+    private final CommandExecutor executor;
+    private final BlockedClients blockedClients;
+
+    /**
+     * The list commands. Lists are changed in place, so writes run under the key's lock like every
+     * write and reads take the lock too. BLPOP and BRPOP on empty lists park the client as a
+     * waiter, which the next push to one of its keys serves.
+     * @param executor The executor whose database the commands act on
+     * @param blockedClients The clients blocked on the executor's keys
+     */
+    public ListCommands(CommandExecutor executor, BlockedClients blockedClients) {
+        this.executor = executor;
+        this.blockedClients = blockedClients;
+    }
+
+    /**
+     * Adds the list commands to a registry
+     * @param registry The registry
+     */
+    public void register(CommandRegistry registry) {
+        registry.register(new CommandSpec("LPUSH", -3, EnumSet.of(CommandFlag.WRITE, CommandFlag.DENYOOM, CommandFlag.FAST), 1, 1, 1,
+                command -> push(command, true)));
+        registry.register(new CommandSpec("RPUSH", -3, EnumSet.of(CommandFlag.WRITE, CommandFlag.DENYOOM, CommandFlag.FAST), 1, 1, 1,
+                command -> push(command, false)));
+        registry.register(new CommandSpec("LPOP", -2, EnumSet.of(CommandFlag.WRITE, CommandFlag.FAST), 1, 1, 1,
+                command -> pop(command, true)));
+        registry.register(new CommandSpec("RPOP", -2, EnumSet.of(CommandFlag.WRITE, CommandFlag.FAST), 1, 1, 1,
+                command -> pop(command, false)));
+        registry.register(new CommandSpec("LLEN", 2, EnumSet.of(CommandFlag.READONLY, CommandFlag.FAST), 1, 1, 1, this::llen));
+        registry.register(new CommandSpec("LRANGE", 4, EnumSet.of(CommandFlag.READONLY), 1, 1, 1, this::lrange));
+        registry.register(new CommandSpec("LTRIM", 4, EnumSet.of(CommandFlag.WRITE), 1, 1, 1, this::ltrim));
+        registry.register(new CommandSpec("BLPOP", -3, EnumSet.of(CommandFlag.WRITE, CommandFlag.BLOCKING), 1, -2, 1,
+                command -> blockingPop(command, true)));
+        registry.register(new CommandSpec("BRPOP", -3, EnumSet.of(CommandFlag.WRITE, CommandFlag.BLOCKING), 1, -2, 1,
+                command -> blockingPop(command, false)));
+    }
+
+    /**
+     * Pushes elements onto a list, creating it if needed (LPUSH or RPUSH key element [element ...]).
+     * Called with the key locked. Clients blocked on the key are served after the push is logged.
+     * @param command The command, its key and the elements
+     * @param first True to push at the head, each element ending up before the one pushed before it
+     * @return The length of the list after the push
+     */
+    private Object push(Object[] command, boolean first) {
+        String key = (String) command[1];
+        Object value = executor.lookupKey(key);
+        if (value != null && !(value instanceof RedisList)) {
+            return new Exception(CommandExecutor.WRONGTYPE);
+        }
+        executor.preserveForSnapshot(key);
+        RedisList list = value == null ? new RedisList() : (RedisList) value;
+        long before = list.estimatedSize();
+        for (int i = 2; i < command.length; i++) {
+            if (first) {
+                list.pushFirst((String) command[i]);
+            } else {
+                list.pushLast((String) command[i]);
+            }
+        }
+        if (value == null) {
+            executor.store(key, list);
+        } else {
+            executor.adjustUsedMemory(list.estimatedSize() - before);
+        }
+        return (long) list.size();
+    }
+
+    /**
+     * Removes elements from one end of a list, and the list once it is empty (LPOP or RPOP key [count]).
+     * Called with the key locked.
+     * @param command The command, its key and optionally how many to pop
+     * @param first True to pop from the head
+     * @return The element, or with a count an array of up to that many; null if there is no such key
+     */
+    private Object pop(Object[] command, boolean first) {
+        if (command.length > 3) {
+            return new Exception("ERR syntax error");
+        }
+        String key = (String) command[1];
+        long count = 1;
+        if (command.length == 3) {
+            try {
+                count = Long.parseLong((String) command[2]);
+            } catch (NumberFormatException e) {
+                return new Exception(NOT_AN_INTEGER);
+            }
+            if (count < 0) {
+                return new Exception("ERR value is out of range, must be positive");
+            }
+        }
+        Object value = executor.lookupKey(key);
+        if (value == null) {
+            return new PropagatedReply(null, null);
+        }
+        if (!(value instanceof RedisList list)) {
+            return new Exception(CommandExecutor.WRONGTYPE);
+        }
+        if (command.length == 2) {
+            return popOne(key, list, first);
+        }
+        Object[] popped = new Object[(int) Math.min(count, list.size())];
+        if (popped.length == 0) {
+            return new PropagatedReply(popped, null);
+        }
+        executor.preserveForSnapshot(key);
+        long before = list.estimatedSize();
+        for (int i = 0; i < popped.length; i++) {
+            popped[i] = first ? list.popFirst() : list.popLast();
+        }
+        afterPop(key, list, before);
+        return popped;
+    }
+
+    /**
+     * Counts the elements of a list (LLEN key)
+     * @param command The command and its key
+     * @return The length, 0 if there is no such key
+     */
+    private Object llen(Object[] command) {
+        String key = (String) command[1];
+        return executor.readLocked(key, () -> {
+            Object value = executor.lookupKey(key);
+            if (value == null) {
+                return 0L;
+            }
+            if (!(value instanceof RedisList list)) {
+                return new Exception(CommandExecutor.WRONGTYPE);
+            }
+            return (long) list.size();
+        });
+    }
+
+    /**
+     * Lists the elements between two indexes, negative ones counting back from the tail
+     * (LRANGE key start stop)
+     * @param command The command, its key and the indexes
+     * @return The elements, empty if there is no such key or the range is empty
+     */
+    private Object lrange(Object[] command) {
+        String key = (String) command[1];
+        long start;
+        long stop;
+        try {
+            start = Long.parseLong((String) command[2]);
+            stop = Long.parseLong((String) command[3]);
+        } catch (NumberFormatException e) {
+            return new Exception(NOT_AN_INTEGER);
+        }
+        return executor.readLocked(key, () -> {
+            Object value = executor.lookupKey(key);
+            if (value == null) {
+                return new Object[0];
+            }
+            if (!(value instanceof RedisList list)) {
+                return new Exception(CommandExecutor.WRONGTYPE);
+            }
+            long size = list.size();
+            long first = start < 0 ? Math.max(size + start, 0) : start;
+            long last = Math.min(stop < 0 ? size + stop : stop, size - 1);
+            if (first > last || first >= size) {
+                return new Object[0];
+            }
+            return list.range(first, last);
+        });
+    }
+
+    /**
+     * Keeps only the elements between two indexes, negative ones counting back from the tail, and
+     * removes the list if none are left (LTRIM key start stop). Called with the key locked.
+     * @param command The command, its key and the indexes
+     * @return OK
+     */
+    private Object ltrim(Object[] command) {
+        String key = (String) command[1];
+        long start;
+        long stop;
+        try {
+            start = Long.parseLong((String) command[2]);
+            stop = Long.parseLong((String) command[3]);
+        } catch (NumberFormatException e) {
+            return new Exception(NOT_AN_INTEGER);
+        }
+        Object value = executor.lookupKey(key);
+        if (value == null) {
+            return new PropagatedReply("OK", null);
+        }
+        if (!(value instanceof RedisList list)) {
+            return new Exception(CommandExecutor.WRONGTYPE);
+        }
+        long size = list.size();
+        long first = start < 0 ? Math.max(size + start, 0) : start;
+        long last = Math.min(stop < 0 ? size + stop : stop, size - 1);
+        if (first == 0 && last == size - 1) {
+            return new PropagatedReply("OK", null);
+        }
+        executor.preserveForSnapshot(key);
+        long before = list.estimatedSize();
+        list.trim(Math.min(first, size), last);
+        afterPop(key, list, before);
+        return "OK";
+    }
+
+    /**
+     * Pops from the first non-empty list among several keys, or blocks until one is pushed to or
+     * the timeout passes (BLPOP or BRPOP key [key ...] timeout). Called with the keys locked. A pop
+     * is logged as LPOP or RPOP of the key it came from; blocking logs nothing.
+     * @param command The command, its keys and the timeout in seconds, 0 for none
+     * @param first True to pop from the head
+     * @return The key and the element, or a DeferredReply completed with them, or null on timeout
+     */
+    private Object blockingPop(Object[] command, boolean first) {
+        double timeout;
+        try {
+            timeout = CommandExecutor.parseFloat((String) command[command.length - 1]);
+        } catch (NumberFormatException e) {
+            return new Exception("ERR timeout is not a float or out of range");
+        }
+        if (timeout < 0) {
+            return new Exception("ERR timeout is negative");
+        }
+        String[] keys = new String[command.length - 2];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = (String) command[i + 1];
+        }
+        for (String key : keys) {
+            Object value = executor.lookupKey(key);
+            if (value == null) {
+                continue;
+            }
+            if (!(value instanceof RedisList list)) {
+                return new Exception(CommandExecutor.WRONGTYPE);
+            }
+            Object element = popOne(key, list, first);
+            return new PropagatedReply(new Object[]{key, element}, new Object[]{first ? "LPOP" : "RPOP", key});
+        }
+        if (executor.isLoading()) {
+            return new PropagatedReply(null, null);
+        }
+        long timeoutMillis = (long) Math.ceil(timeout * 1000);
+        return new PropagatedReply(blockedClients.block(keys, first, timeoutMillis), null);
+    }
+
+    /**
+     * Hands elements pushed to a key to the clients blocked on it, oldest first, for as long as
+     * both last. Each pop is logged after the write that made it possible. Called with the key locked.
+     * @param key The key that was written to
+     */
+    public void serveBlockedClients(String key) {
+        while (executor.lookupKey(key) instanceof RedisList list && list.size() > 0) {
+            BlockedClients.Waiter waiter = blockedClients.nextWaiter(key);
+            if (waiter == null) {
+                return;
+            }
+            String element = waiter.popFirst() ? list.peekFirst() : list.peekLast();
+            if (!waiter.reply().complete(new Object[]{key, element})) {
+                continue;
+            }
+            popOne(key, list, waiter.popFirst());
+            executor.logCommand(new Object[]{waiter.popFirst() ? "LPOP" : "RPOP", key});
+        }
+    }
+
+    /**
+     * Pops one element from a non-empty list, removing the list once it is empty. Called with the
+     * key locked.
+     * @param key The key
+     * @param list The list
+     * @param first True to pop from the head
+     * @return The element
+     */
+    private String popOne(String key, RedisList list, boolean first) {
+        executor.preserveForSnapshot(key);
+        long before = list.estimatedSize();
+        String element = first ? list.popFirst() : list.popLast();
+        afterPop(key, list, before);
+        return element;
+    }
+
+    /**
+     * Accounts for elements removed from a list, and removes the list if it is now empty
+     * @param key The key
+     * @param list The list
+     * @param before The list's estimated size before the removal
+     */
+    private void afterPop(String key, RedisList list, long before) {
+        executor.adjustUsedMemory(list.estimatedSize() - before);
+        if (list.size() == 0) {
+            executor.deleteKey(key);
+        }
+    }
+}
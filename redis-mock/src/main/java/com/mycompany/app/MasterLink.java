@@ -0,0 +1,218 @@
+package com.mycompany.app;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+
+public class MasterLink implements Runnable {
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 5000;
+    private static final long MIN_RETRY_MILLIS = 100;
+    private static final long MAX_RETRY_MILLIS = 2000;
+    private static final int INITIAL_BUFFER_SIZE = 16 * 1024;
+
+    private final Replication replication;
+    private final String host;
+    private final int port;
+    private volatile boolean running = true;
+    private volatile boolean up;
+    private volatile Socket socket;
+
+    /**
+     * The connection of a replica to its master. It asks for the stream with PSYNC, loads the
+     * snapshot of a full resync, then applies every write the master streams, and on losing the
+     * connection keeps reconnecting, asking to carry on from where it stopped.
+     * @param replication The replica's replication state
+     * @param host The master's host
+     * @param port The master's port
+     */
+    public MasterLink(Replication replication, String host, int port) {
+        this.replication = replication;
+        this.host = host;
+        this.port = port;
+    }
+
+    /**
+     * Follows the master until stopped, reconnecting with a growing delay whenever the link drops
+     */
+    @Override
+    public void run() {
+        long retryMillis = MIN_RETRY_MILLIS;
+        while (running) {
+            try {
+                follow();
+            } catch (IOException | RuntimeException e) {
+                if (!running) {
+                    return;
+                }
+            }
+            // a link that got as far as syncing starts over with the shortest delay
+            if (up) {
+                retryMillis = MIN_RETRY_MILLIS;
+                up = false;
+            }
+            try {
+                Thread.sleep(retryMillis);
+            } catch (InterruptedException e) {
+                return;
+            }
+            retryMillis = Math.min(retryMillis * 2, MAX_RETRY_MILLIS);
+        }
+    }
+
+    /**
+     * Stops following the master and closes the connection to it
+     */
+    public void stop() {
+        running = false;
+        dropConnection();
+    }
+
+    /**
+     * Closes the connection to the master, which the link notices and reconnects from
+     */
+    void dropConnection() {
+        Socket current = socket;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (IOException ignored) {
+                // the connection is gone either way
+            }
+        }
+    }
+
+    /**
+     * Checks if the link has synced and is receiving the stream
+     * @return True while connected and in sync
+     */
+    public boolean isUp() {
+        return up;
+    }
+
+    /**
+     * Checks if this link follows a given master
+     * @param otherHost The host
+     * @param otherPort The port
+     * @return True if it is this link's master
+     */
+    public boolean isFollowing(String otherHost, int otherPort) {
+        return host.equalsIgnoreCase(otherHost) && port == otherPort;
+    }
+
+    /**
+     * Gets the master's host
+     * @return The host
+     */
+    public String getHost() {
+        return host;
+    }
+
+    /**
+     * Gets the master's port
+     * @return The port
+     */
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * Connects to the master, syncs, and applies the stream until the connection drops
+     * @throws IOException Throws when the connection drops or the master replies with something unexpected
+     */
+    private void follow() throws IOException {
+        try (Socket connection = new Socket()) {
+            socket = connection;
+            if (!running) {
+                return;
+            }
+            connection.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MILLIS);
+            connection.setTcpNoDelay(true);
+            OutputStream out = connection.getOutputStream();
+            InputStream in = new BufferedInputStream(connection.getInputStream(), INITIAL_BUFFER_SIZE);
+            Object[] resumePoint = replication.resumePoint();
+            out.write(RESPParser.encodeCommand(new Object[]{"PSYNC", resumePoint[0], resumePoint[1]}));
+            out.flush();
+            String reply = readLine(in);
+            if (reply.startsWith("+FULLRESYNC ")) {
+                String[] parts = reply.split(" ");
+                String length = readLine(in);
+                if (parts.length != 3 || !length.startsWith("$")) {
+                    throw new IOException("Unexpected full resync header: " + reply + " " + length);
+                }
+                int size = Integer.parseInt(length.substring(1));
+                byte[] snapshot = in.readNBytes(size);
+                if (snapshot.length < size) {
+                    throw new EOFException("Master closed the connection during the snapshot");
+                }
+                replication.loadFullSync(parts[1], Long.parseLong(parts[2]), snapshot);
+            } else if (reply.startsWith("+CONTINUE")) {
+                String[] parts = reply.split(" ");
+                replication.continueSync(parts.length > 1 ? parts[1] : null);
+            } else {
+                throw new IOException("Unexpected reply to PSYNC: " + reply);
+            }
+            up = true;
+            applyStream(in);
+        }
+    }
+
+    /**
+     * Applies each write as it fully arrives, until the connection drops
+     * @param in The stream from the master, positioned after the sync
+     * @throws IOException Throws when the connection drops or the stream is not valid RESP
+     */
+    private void applyStream(InputStream in) throws IOException {
+        RespDecoder decoder = new RespDecoder();
+        ByteBuffer buffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+        while (running) {
+            if (!buffer.hasRemaining()) {
+                ByteBuffer bigger = ByteBuffer.allocate(buffer.capacity() * 2);
+                buffer.flip();
+                bigger.put(buffer);
+                buffer = bigger;
+            }
+            int read = in.read(buffer.array(), buffer.position(), buffer.remaining());
+            if (read < 0) {
+                throw new EOFException("Master closed the connection");
+            }
+            buffer.position(buffer.position() + read);
+            buffer.flip();
+            try {
+                int start = buffer.position();
+                RespCommand command;
+                while ((command = decoder.decode(buffer)) != null) {
+                    replication.applyFromMaster(replication.arguments(command), buffer.array(), start, buffer.position() - start);
+                    start = buffer.position();
+                }
+            } finally {
+                buffer.compact();
+            }
+        }
+    }
+
+    /**
+     * Reads one protocol line
+     * @param in The stream from the master
+     * @return The line without its CRLF
+     * @throws IOException Throws if the connection drops first
+     */
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = in.read()) != '\n') {
+            if (c < 0) {
+                throw new EOFException("Master closed the connection");
+            }
+            if (c != '\r') {
+                line.append((char) c);
+            }
+        }
+        return line.toString();
+    }
+}
@@ -0,0 +1,59 @@
+package com.mycompany.app;
+
+public final class MemoryEstimator {
+
+    // a ConcurrentHashMap node plus its share of the table, with compressed references
+    private static final long ENTRY_OVERHEAD = 48;
+    // String object header and fields, then the byte[] header
+    private static final long STRING_OVERHEAD = 24;
+    private static final long ARRAY_HEADER = 16;
+    // an object header and a long, for integers outside the shared range
+    private static final long INTEGER_VALUE_SIZE = 16;
+    // used for value types without an estimate of their own
+    private static final long UNKNOWN_VALUE_SIZE = 64;
+
+    private MemoryEstimator() {
+    }
+
+    /**
+     * Estimates the heap taken by one entry of the data store: the map node, the key and the value.
+     * The estimate assumes compressed references and Latin-1 strings; it is meant for comparing
+     * against maxmemory, not for exact accounting.
+     * @param key The key
+     * @param value The value
+     * @return The estimated size in bytes
+     */
+    public static long entrySize(String key, Object value) {
+        return ENTRY_OVERHEAD + sizeOf(key) + sizeOf(value);
+    }
+
+    /**
+     * Estimates the heap taken by a value
+     * @param value The value
+     * @return The estimated size in bytes
+     */
+    public static long sizeOf(Object value) {
+        if (value instanceof String string) {
+            return STRING_OVERHEAD + align(ARRAY_HEADER + string.length());
+        }
+        if (value instanceof byte[] bytes) {
+            return align(ARRAY_HEADER + bytes.length);
+        }
+        if (value instanceof IntegerValue integer) {
+            return integer.isShared() ? 0 : INTEGER_VALUE_SIZE;
+        }
+        if (value instanceof CollectionValue collection) {
+            return collection.estimatedSize();
+        }
+        return UNKNOWN_VALUE_SIZE;
+    }
+
+    /**
+     * Rounds a size up to the 8 byte alignment of objects on the heap
+     * @param size The size in bytes
+     * @return The aligned size
+     */
+    static long align(long size) {
+        return (size + 7) & ~7L;
+    }
+}
@@ -0,0 +1,245 @@
+package com.mycompany.app;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+
+public class MigrateCommands {
+
+    private static final int DEFAULT_MIGRATE_TIMEOUT_MILLIS = 1000;
+
+    private final CommandExecutor executor;
+
+    /**
+     * The commands that move keys between servers: DUMP and RESTORE, and MIGRATE, which restores
+     * keys on another server and deletes them here, as a cluster slot move does key by key. A dumped
+     * value is the snapshot record of the value carried as a string of one character per byte, which
+     * the UTF-8 protocol strings pass through unchanged.
+     * @param executor The executor whose database the commands act on
+     */
+    public MigrateCommands(CommandExecutor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Adds the migration commands to a registry
+     * @param registry The registry
+     */
+    public void register(CommandRegistry registry) {
+        registry.register(new CommandSpec("DUMP", 2, EnumSet.of(CommandFlag.READONLY), 1, 1, 1, this::dump));
+        registry.register(new CommandSpec("RESTORE", -4, EnumSet.of(CommandFlag.WRITE, CommandFlag.DENYOOM), 1, 1, 1, this::restore));
+        registry.register(new CommandSpec("RESTORE-ASKING", -4,
+                EnumSet.of(CommandFlag.WRITE, CommandFlag.DENYOOM, CommandFlag.ASKING), 1, 1, 1, this::restore));
+        // the keys are locked and their deletion logged by the command itself
+        registry.register(new CommandSpec("MIGRATE", -6, EnumSet.of(CommandFlag.WRITE), 0, 0, 0, this::migrate));
+    }
+
+    /**
+     * Serializes a key's value (DUMP key)
+     * @param command The command and its key
+     * @return The serialized value, null if there is no such key
+     */
+    private Object dump(Object[] command) {
+        String key = (String) command[1];
+        return executor.readLocked(key, () -> {
+            Object value = executor.lookupKey(key);
+            return value == null ? null : new String(RdbPersistence.serializeValue(value), StandardCharsets.ISO_8859_1);
+        });
+    }
+
+    /**
+     * Creates a key from a serialized value (RESTORE key ttl serialized-value [REPLACE] [ABSTTL]
+     * [IDLETIME seconds] [FREQ frequency]). Called with the key locked. Logged with an absolute
+     * expiry time, so replay gives the key the same one; IDLETIME and FREQ are accepted and ignored.
+     * @param command The command, the key, the time to live in milliseconds, 0 for none, the value and the options
+     * @return OK, or an error if the key exists without REPLACE or the value is not valid
+     */
+    private Object restore(Object[] command) {
+        String key = (String) command[1];
+        long ttl;
+        try {
+            ttl = Long.parseLong((String) command[2]);
+        } catch (NumberFormatException e) {
+            return new Exception("ERR value is not an integer or out of range");
+        }
+        boolean replace = false;
+        boolean absoluteTtl = false;
+        for (int i = 4; i < command.length; i++) {
+            String option = ((String) command[i]).toUpperCase();
+            switch (option) {
+                case "REPLACE" -> replace = true;
+                case "ABSTTL" -> absoluteTtl = true;
+                case "IDLETIME", "FREQ" -> {
+                    if (++i >= command.length) {
+                        return new Exception("ERR syntax error");
+                    }
+                }
+                default -> {
+                    return new Exception("ERR syntax error");
+                }
+            }
+        }
+        if (ttl < 0) {
+            return new Exception("ERR Invalid TTL value, must be >= 0");
+        }
+        boolean exists = executor.lookupKey(key) != null;
+        if (exists && !replace) {
+            return new Exception("BUSYKEY Target key name already exists.");
+        }
+        Object value;
+        try {
+            byte[] payload = ((String) command[3]).getBytes(StandardCharsets.ISO_8859_1);
+            value = RdbPersistence.deserializeValue(payload, executor.getEncodingLimits());
+        } catch (IOException e) {
+            return new Exception("ERR DUMP payload version or checksum are wrong");
+        }
+        long deadline = ttl == 0 ? -1 : absoluteTtl ? ttl : System.currentTimeMillis() + ttl;
+        if (exists) {
+            executor.deleteKey(key);
+        }
+        if (deadline >= 0 && deadline <= System.currentTimeMillis()) {
+            // already expired, so the key is not created at all
+            return new PropagatedReply("OK", exists ? new Object[]{"DEL", key} : null);
+        }
+        executor.preserveForSnapshot(key);
+        executor.store(key, value);
+        if (deadline >= 0) {
+            executor.getExpires().set(key, deadline);
+        }
+        return new PropagatedReply("OK", new Object[]{"RESTORE", key, deadline < 0 ? "0" : Long.toString(deadline),
+                command[3], "REPLACE", "ABSTTL"});
+    }
+
+    /**
+     * Moves keys to another server (MIGRATE host port key|"" destination-db timeout [COPY] [REPLACE]
+     * [AUTH password] [AUTH2 username password] [KEYS key [key ...]]). The keys stay locked until the
+     * other server has restored them, so no write to them is lost in between, then they are deleted
+     * here and the deletion logged. The restores are sent as RESTORE-ASKING, which a cluster node
+     * importing the keys' slot serves. There is only database 0, and the password options are
+     * accepted and ignored as there is no AUTH.
+     * @param command The command, the other server, the key or "" and the options
+     * @return OK, NOKEY if none of the keys exist, or an error
+     */
+    private Object migrate(Object[] command) {
+        String host = (String) command[1];
+        int port;
+        long timeout;
+        try {
+            port = Integer.parseInt((String) command[2]);
+            timeout = Long.parseLong((String) command[5]);
+        } catch (NumberFormatException e) {
+            return new PropagatedReply(new Exception("ERR value is not an integer or out of range"), null);
+        }
+        if (!command[4].equals("0")) {
+            return new PropagatedReply(new Exception("ERR invalid DB index"), null);
+        }
+        boolean copy = false;
+        boolean replace = false;
+        List<String> keys = new ArrayList<>();
+        for (int i = 6; i < command.length; i++) {
+            String option = ((String) command[i]).toUpperCase();
+            if (option.equals("COPY")) {
+                copy = true;
+            } else if (option.equals("REPLACE")) {
+                replace = true;
+            } else if (option.equals("AUTH") && i + 1 < command.length) {
+                i++;
+            } else if (option.equals("AUTH2") && i + 2 < command.length) {
+                i += 2;
+            } else if (option.equals("KEYS")) {
+                if (!((String) command[3]).isEmpty()) {
+                    return new PropagatedReply(new Exception(
+                            "ERR When using MIGRATE KEYS option, the key argument must be set to the empty string"), null);
+                }
+                for (i++; i < command.length; i++) {
+                    keys.add((String) command[i]);
+                }
+            } else {
+                return new PropagatedReply(new Exception("ERR syntax error"), null);
+            }
+        }
+        if (keys.isEmpty() && !((String) command[3]).isEmpty()) {
+            keys.add((String) command[3]);
+        }
+        if (keys.isEmpty()) {
+            return new PropagatedReply("NOKEY", null);
+        }
+        int timeoutMillis = timeout <= 0 ? DEFAULT_MIGRATE_TIMEOUT_MILLIS : (int) Math.min(timeout, Integer.MAX_VALUE);
+        boolean keepLocal = copy;
+        boolean replaceRemote = replace;
+        String[] keyArray = keys.toArray(new String[0]);
+        Object reply = executor.readLocked(keyArray,
+                () -> transfer(host, port, timeoutMillis, keyArray, keepLocal, replaceRemote));
+        return new PropagatedReply(reply, null);
+    }
+
+    /**
+     * Restores keys on another server and deletes them here. Called with the keys locked.
+     * @param host The other server's host
+     * @param port The other server's port
+     * @param timeoutMillis How long to wait to connect and for each reply
+     * @param keys The keys
+     * @param copy True to keep the keys here
+     * @param replace True to overwrite keys the other server already has
+     * @return OK, NOKEY if none of the keys exist, or the first error
+     */
+    private Object transfer(String host, int port, int timeoutMillis, String[] keys, boolean copy, boolean replace) {
+        List<String> present = new ArrayList<>();
+        List<Object[]> restores = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        for (String key : keys) {
+            Object value = executor.lookupKey(key);
+            if (value == null) {
+                continue;
+            }
+            long deadline = executor.getExpires().get(key);
+            String ttl = deadline < 0 ? "0" : Long.toString(Math.max(deadline - now, 1));
+            String payload = new String(RdbPersistence.serializeValue(value), StandardCharsets.ISO_8859_1);
+            present.add(key);
+            restores.add(replace ? new Object[]{"RESTORE-ASKING", key, ttl, payload, "REPLACE"}
+                    : new Object[]{"RESTORE-ASKING", key, ttl, payload});
+        }
+        if (present.isEmpty()) {
+            return "NOKEY";
+        }
+        List<Object> moved = new ArrayList<>();
+        moved.add("DEL");
+        Object error = null;
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress(host, port), timeoutMillis);
+            socket.setSoTimeout(timeoutMillis);
+            socket.setTcpNoDelay(true);
+            OutputStream out = socket.getOutputStream();
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            // the restores are pipelined, then their replies read in order
+            for (Object[] restore : restores) {
+                out.write(RESPParser.encodeCommand(restore));
+            }
+            out.flush();
+            for (String key : present) {
+                Object reply = RESPParser.decode(in);
+                if (reply instanceof Exception e) {
+                    error = error != null ? error : new Exception("ERR Target instance replied with error: " + e.getMessage());
+                } else {
+                    moved.add(key);
+                }
+            }
+        } catch (IOException e) {
+            return new Exception("IOERR error or timeout reading to target instance");
+        }
+        if (!copy && moved.size() > 1) {
+            for (int i = 1; i < moved.size(); i++) {
+                executor.deleteKey((String) moved.get(i));
+            }
+            executor.logCommand(moved.toArray());
+        }
+        return error != null ? error : "OK";
+    }
+}
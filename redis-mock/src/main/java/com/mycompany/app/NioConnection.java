@@ -0,0 +1,182 @@
+package com.mycompany.app;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.function.Consumer;
+
+public class NioConnection {
+
+    private static final int INITIAL_BUFFER_SIZE = 16 * 1024;
+
+    private final SocketChannel channel;
+    private final RespDecoder decoder = new RespDecoder();
+    private ByteBuffer readBuffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+    private final ReplyBuffer replies = new ReplyBuffer();
+    private DeferredReply blockedReply;
+    private final PubSub pubSub;
+    private Subscriber subscriber;
+    // set by ASKING for the next command only
+    private boolean asking;
+
+    /**
+     * Holds the per-connection state owned by a single reactor thread
+     * @param channel The non-blocking channel of the client
+     */
+    public NioConnection(SocketChannel channel) {
+        this(channel, new PubSub());
+        this.subscriber = pubSub.newSubscriber(() -> { });
+    }
+
+    /**
+     * Holds the per-connection state owned by a single reactor thread
+     * @param channel The non-blocking channel of the client
+     * @param pubSub The channels shared by every connection of the server
+     * @param onPushed Called from the publishing thread when a message has been queued for this connection
+     * @return The connection
+     */
+    public static NioConnection open(SocketChannel channel, PubSub pubSub, Consumer<NioConnection> onPushed) {
+        NioConnection connection = new NioConnection(channel, pubSub);
+        // registered once the connection is built, as a publisher may call back straight away
+        connection.subscriber = pubSub.newSubscriber(() -> onPushed.accept(connection));
+        return connection;
+    }
+
+    /**
+     * Holds the per-connection state, without a subscriber until one is registered
+     * @param channel The non-blocking channel of the client
+     * @param pubSub The channels shared by every connection of the server
+     */
+    private NioConnection(SocketChannel channel, PubSub pubSub) {
+        this.channel = channel;
+        this.pubSub = pubSub;
+    }
+
+    /**
+     * Gets the channel of the client
+     * @return The client channel
+     */
+    public SocketChannel getChannel() {
+        return channel;
+    }
+
+    /**
+     * Reads whatever the client has sent so far into the read buffer, growing it when a command
+     * is larger than the space left
+     * @return The number of bytes read, or -1 once the client has closed its side
+     * @throws IOException Throws if the channel cannot be read
+     */
+    public int read() throws IOException {
+        if (!readBuffer.hasRemaining()) {
+            ByteBuffer bigger = ByteBuffer.allocate(readBuffer.capacity() * 2);
+            readBuffer.flip();
+            bigger.put(readBuffer);
+            readBuffer = bigger;
+        }
+        return channel.read(readBuffer);
+    }
+
+    /**
+     * Executes every complete command in the read buffer in order and queues their replies,
+     * leaving any partial command in place until the rest of it arrives. A command that blocks
+     * stops the loop: the commands after it wait in the buffer until unblock is called.
+     * @param commandExecutor The executor the commands are handed to
+     * @return True if a command blocked, in which case the caller arranges to unblock the connection
+     * @throws IOException Throws if the buffered bytes are not valid RESP
+     */
+    public boolean processCommands(CommandDispatcher commandExecutor) throws IOException {
+        if (blockedReply != null) {
+            return false;
+        }
+        readBuffer.flip();
+        try {
+            RespCommand command;
+            while ((command = decoder.decode(readBuffer)) != null) {
+                CommandSpec spec = commandExecutor.lookup(command);
+                Object[] arguments = command.toArray(spec);
+                if (pubSub.execute(subscriber, arguments, replies)) {
+                    continue;
+                }
+                Object reply = commandExecutor.execute(spec, arguments, asking);
+                asking = false;
+                if (reply instanceof AskingReply) {
+                    asking = true;
+                    reply = "OK";
+                }
+                if (reply instanceof SyncReply sync) {
+                    // the connection becomes a replica link, fed through its push queue from here on
+                    subscriber.enterPushMode();
+                    subscriber.pushReplies(replies);
+                    sync.attach(subscriber);
+                    continue;
+                }
+                if (reply instanceof DeferredReply deferred) {
+                    if (!deferred.isDone()) {
+                        blockedReply = deferred;
+                        return true;
+                    }
+                    reply = deferred.getNow();
+                }
+                queueReply(reply);
+            }
+            return false;
+        } finally {
+            readBuffer.compact();
+        }
+    }
+
+    /**
+     * Gets the reply of the command the connection is blocked on
+     * @return The reply, null if the connection is not blocked
+     */
+    public DeferredReply getBlockedReply() {
+        return blockedReply;
+    }
+
+    /**
+     * Queues the reply of the blocked command once it has completed, so the commands after it can run
+     */
+    public void unblock() {
+        queueReply(blockedReply.getNow());
+        blockedReply = null;
+    }
+
+    /**
+     * Encodes a reply and appends it to the pending output
+     * @param result The value returned by the executor
+     */
+    public void queueReply(Object result) {
+        replies.write(result);
+    }
+
+    /**
+     * Writes as much pending output as the socket accepts without blocking. Once the client has
+     * subscribed its replies join the queue of published messages and are sent from there.
+     * @return True if all pending output has been written
+     * @throws IOException Throws if the channel cannot be written, or the client has fallen past its output limit
+     */
+    public boolean flush() throws IOException {
+        if (!subscriber.isPushMode()) {
+            return replies.flushTo(channel);
+        }
+        subscriber.pushReplies(replies);
+        return subscriber.flushTo(channel);
+    }
+
+    /**
+     * Closes the client channel, ignoring errors as the connection is being discarded anyway, and
+     * gives up any command it was blocked on and every subscription
+     */
+    public void close() {
+        pubSub.unsubscribeAll(subscriber);
+        subscriber.close();
+        if (blockedReply != null) {
+            blockedReply.cancel();
+        }
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+            // the connection is gone either way
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.mycompany.app;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+public class NioServer {
+
+    private final int port;
+    private final Reactor[] reactors;
+    private final Thread[] reactorThreads;
+    private final ServerSocketChannel serverChannel;
+
+    /**
+     * Creates a server that accepts connections on the calling thread and spreads them over a fixed
+     * number of reactor threads, each owning the buffers of its connections
+     * @param port The port to listen on, 0 picks a free one
+     * @param ioThreads The number of reactor threads
+     * @param commandExecutor The executor complete commands are handed to
+     * @throws IOException Throws if the port cannot be bound or a selector cannot be opened
+     */
+    public NioServer(int port, int ioThreads, CommandDispatcher commandExecutor) throws IOException {
+        this(port, ioThreads, commandExecutor, new PubSub());
+    }
+
+    /**
+     * Creates a server that accepts connections on the calling thread and spreads them over a fixed
+     * number of reactor threads, each owning the buffers of its connections
+     * @param port The port to listen on, 0 picks a free one
+     * @param ioThreads The number of reactor threads
+     * @param commandExecutor The executor complete commands are handed to
+     * @param pubSub The channels shared by every connection
+     * @throws IOException Throws if the port cannot be bound or a selector cannot be opened
+     */
+    public NioServer(int port, int ioThreads, CommandDispatcher commandExecutor, PubSub pubSub) throws IOException {
+        this.port = port;
+        this.reactors = new Reactor[ioThreads];
+        this.reactorThreads = new Thread[ioThreads];
+        for (int i = 0; i < ioThreads; i++) {
+            reactors[i] = new Reactor(commandExecutor, pubSub);
+            reactorThreads[i] = new Thread(reactors[i], "reactor-" + i);
+        }
+        this.serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port));
+    }
+
+    /**
+     * Gets the port the server is bound to
+     * @return The local port, resolved if 0 was requested
+     */
+    public int getLocalPort() {
+        try {
+            return ((InetSocketAddress) serverChannel.getLocalAddress()).getPort();
+        } catch (IOException e) {
+            return port;
+        }
+    }
+
+    /**
+     * Starts the reactors and accepts connections until the server is stopped, handing each new
+     * connection to the next reactor in turn
+     */
+    public void start() {
+        for (Thread thread : reactorThreads) {
+            thread.start();
+        }
+        int next = 0;
+        try {
+            while (serverChannel.isOpen()) {
+                SocketChannel channel = serverChannel.accept();
+                channel.socket().setTcpNoDelay(true);
+                reactors[next].register(channel);
+                next = (next + 1) % reactors.length;
+            }
+        } catch (ClosedChannelException e) {
+            // stop() closed the listening channel
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            stop();
+        }
+    }
+
+    /**
+     * Stops accepting connections and shuts down every reactor along with its connections
+     */
+    public void stop() {
+        try {
+            serverChannel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        for (Reactor reactor : reactors) {
+            reactor.stop();
+        }
+    }
+}
@@ -0,0 +1,535 @@
+package com.mycompany.app;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+public class OffHeapKeyspace implements Keyspace {
+
+    private static final int SEGMENTS = 16;
+    private static final int SEGMENT_SHIFT = 4;
+    private static final int INITIAL_CAPACITY = 64;
+    private static final int ITERATION_BATCH = 1024;
+    // slot markers in the index: never used, and removed (so probes carry on past it)
+    private static final long EMPTY = 0;
+    private static final long TOMBSTONE = -1;
+    // entry layout: key length, value length, value type, key bytes, value bytes
+    private static final int HEADER_SIZE = 9;
+    private static final byte TYPE_STRING = 0;
+    private static final byte TYPE_INTEGER = 1;
+    // a collection: the entry holds only the key, the value is in the segment's heap values
+    private static final byte TYPE_HEAP = 2;
+    // a string value that is not valid UTF-8, read back as the bytes
+    private static final byte TYPE_BYTES = 3;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+
+    /**
+     * Keeps string keys and values off the heap, so the heap and the work of the garbage collector
+     * stay the same size however much data there is
+     */
+    public OffHeapKeyspace() {
+        this(SlabAllocator.DEFAULT_PAGE_SIZE);
+    }
+
+    /**
+     * Keeps string keys and values off the heap: each entry is stored as UTF-8 bytes in a chunk from
+     * a slab allocator of direct buffers, and found through an open-addressing index of primitive
+     * arrays, so neither adds an object per key. Collection values, which are changed in place, stay
+     * on the heap, with an entry holding only their key in the index so every key has a place in
+     * it. The keyspace is split into segments by key hash, each with its
+     * own index, allocator and read-write lock.
+     * @param pageSize The size of the allocators' pages in bytes
+     */
+    public OffHeapKeyspace(int pageSize) {
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(pageSize);
+        }
+    }
+
+    @Override
+    public Object get(String key) {
+        byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        int hash = hash(bytes);
+        Segment segment = segmentFor(hash);
+        segment.lock.readLock().lock();
+        try {
+            int slot = segment.find(bytes, hash);
+            return slot >= 0 ? segment.value(segment.addresses[slot], key) : null;
+        } finally {
+            segment.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Object put(String key, Object value) {
+        byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        int hash = hash(bytes);
+        Segment segment = segmentFor(hash);
+        segment.lock.writeLock().lock();
+        try {
+            boolean onHeap = !CommandExecutor.isString(value);
+            int slot = segment.find(bytes, hash);
+            Object previous = null;
+            if (slot < 0) {
+                segment.insert(bytes, hash, value);
+            } else {
+                previous = segment.value(segment.addresses[slot], key);
+                if (!onHeap || !segment.isOnHeap(segment.addresses[slot])) {
+                    // rewritten in the same slot, so an iterator that has not reached it yet still will
+                    segment.slabs.free(segment.addresses[slot]);
+                    segment.addresses[slot] = segment.write(bytes, value);
+                }
+            }
+            if (onHeap) {
+                segment.heapValues.put(key, value);
+            } else if (previous != null && !CommandExecutor.isString(previous)) {
+                segment.heapValues.remove(key);
+            }
+            return previous;
+        } finally {
+            segment.lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Object remove(String key) {
+        byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        int hash = hash(bytes);
+        Segment segment = segmentFor(hash);
+        segment.lock.writeLock().lock();
+        try {
+            return segment.removeEntry(key, bytes, hash);
+        } finally {
+            segment.lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean containsKey(String key) {
+        byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        int hash = hash(bytes);
+        Segment segment = segmentFor(hash);
+        segment.lock.readLock().lock();
+        try {
+            return segment.find(bytes, hash) >= 0;
+        } finally {
+            segment.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            segment.lock.readLock().lock();
+            try {
+                size += segment.count;
+            } finally {
+                segment.lock.readLock().unlock();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Lists the keys a batch at a time, so iterating never copies a whole segment. A key only changes
+     * place when a segment's index is resized; an iterator that finds this has happened starts that
+     * segment again, so it may return a key twice but never misses one.
+     * @return The keys
+     */
+    @Override
+    public Iterable<String> keys() {
+        return KeyIterator::new;
+    }
+
+    /**
+     * Walks the segments' indexes a few home slots at a time, each slot giving the keys whose
+     * probe starts there. The cursor holds the segment number in its low bits and, above them, a
+     * slot counted with its bits reversed as in a Dict, so a segment's index may be resized
+     * between calls without a key present throughout being missed.
+     * @param cursor 0 to start, or the cursor the previous call returned
+     * @param count Roughly how many keys to return
+     * @param action Called with each key, under the segment's read lock
+     * @return The cursor to resume from, 0 once every segment has been walked
+     */
+    @Override
+    public long scan(long cursor, int count, Consumer<String> action) {
+        int segmentIndex = (int) (cursor & (SEGMENTS - 1));
+        int home = (int) (cursor >>> SEGMENT_SHIFT);
+        int found = 0;
+        while (segmentIndex < SEGMENTS) {
+            Segment segment = segments[segmentIndex];
+            segment.lock.readLock().lock();
+            try {
+                int mask = segment.addresses.length - 1;
+                // empty slots count for a little so a sparse index still returns in bounded time
+                int budget = Math.max(count, 1) * 10;
+                do {
+                    found += segment.scanHome(home & mask, action);
+                    home = Dict.nextCursor(home, mask);
+                } while (home != 0 && found < count && --budget > 0);
+            } finally {
+                segment.lock.readLock().unlock();
+            }
+            if (home != 0) {
+                return ((long) home << SEGMENT_SHIFT) | segmentIndex;
+            }
+            segmentIndex++;
+            if (found >= count) {
+                return segmentIndex == SEGMENTS ? 0 : segmentIndex;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Gets the off-heap memory taken by the allocators' pages
+     * @return The reserved size in bytes
+     */
+    public long getReservedBytes() {
+        long reserved = 0;
+        for (Segment segment : segments) {
+            segment.lock.readLock().lock();
+            try {
+                reserved += segment.slabs.getReservedBytes();
+            } finally {
+                segment.lock.readLock().unlock();
+            }
+        }
+        return reserved;
+    }
+
+    /**
+     * Picks the segment for a key
+     * @param hash The key's hash
+     * @return The segment
+     */
+    private Segment segmentFor(int hash) {
+        return segments[hash & (SEGMENTS - 1)];
+    }
+
+    /**
+     * Hashes a key's bytes
+     * @param bytes The UTF-8 key
+     * @return The hash; the low bits pick the segment and the rest the slot in its index
+     */
+    private static int hash(byte[] bytes) {
+        int hash = 1;
+        for (byte b : bytes) {
+            hash = 31 * hash + b;
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * One part of the keyspace, guarded by its own lock
+     */
+    private static final class Segment {
+
+        final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        final SlabAllocator slabs;
+        final HashMap<String, Object> heapValues = new HashMap<>();
+        long[] addresses = new long[INITIAL_CAPACITY];
+        int[] hashes = new int[INITIAL_CAPACITY];
+        int count;
+        int tombstones;
+        // bumped whenever the index is rebuilt, moving keys to places an iterator may have passed
+        int version;
+
+        /**
+         * Creates an empty segment
+         * @param pageSize The size of its allocator's pages
+         */
+        Segment(int pageSize) {
+            this.slabs = new SlabAllocator(pageSize);
+        }
+
+        /**
+         * Finds a key in the index. Called with the lock held.
+         * @param key The UTF-8 key
+         * @param hash Its hash
+         * @return The slot, or -1 if the key is not in the index
+         */
+        int find(byte[] key, int hash) {
+            int mask = addresses.length - 1;
+            for (int slot = (hash >>> SEGMENT_SHIFT) & mask; ; slot = (slot + 1) & mask) {
+                long address = addresses[slot];
+                if (address == EMPTY) {
+                    return -1;
+                }
+                if (address != TOMBSTONE && hashes[slot] == hash && keyEquals(address, key)) {
+                    return slot;
+                }
+            }
+        }
+
+        /**
+         * Removes a key from the index, and its value from the heap values if it is a collection.
+         * Called with the write lock held.
+         * @param key The key
+         * @param bytes The UTF-8 key
+         * @param hash Its hash
+         * @return The value it had, null if it had none
+         */
+        Object removeEntry(String key, byte[] bytes, int hash) {
+            int slot = find(bytes, hash);
+            if (slot < 0) {
+                return null;
+            }
+            long address = addresses[slot];
+            Object previous = isOnHeap(address) ? heapValues.remove(key) : value(address, key);
+            slabs.free(address);
+            addresses[slot] = TOMBSTONE;
+            count--;
+            tombstones++;
+            return previous;
+        }
+
+        /**
+         * Writes a new entry and adds it to the index. Called with the write lock held, for a key
+         * that is not in the segment.
+         * @param key The UTF-8 key
+         * @param hash Its hash
+         * @param value The value
+         */
+        void insert(byte[] key, int hash, Object value) {
+            if ((count + tombstones + 1) * 4L > addresses.length * 3L) {
+                resize();
+            }
+            long address = write(key, value);
+            int mask = addresses.length - 1;
+            int slot = (hash >>> SEGMENT_SHIFT) & mask;
+            while (addresses[slot] != EMPTY && addresses[slot] != TOMBSTONE) {
+                slot = (slot + 1) & mask;
+            }
+            if (addresses[slot] == TOMBSTONE) {
+                tombstones--;
+            }
+            addresses[slot] = address;
+            hashes[slot] = hash;
+            count++;
+        }
+
+        /**
+         * Copies an entry into a newly allocated chunk. Called with the write lock held.
+         * @param key The UTF-8 key
+         * @param value A String, a byte array or an IntegerValue, or a collection for which only the key is written
+         * @return The entry's address
+         */
+        long write(byte[] key, Object value) {
+            byte type;
+            byte[] valueBytes;
+            if (value instanceof IntegerValue) {
+                type = TYPE_INTEGER;
+                valueBytes = null;
+            } else if (value instanceof String string) {
+                type = TYPE_STRING;
+                valueBytes = string.getBytes(StandardCharsets.UTF_8);
+            } else if (value instanceof byte[] bytes) {
+                type = TYPE_BYTES;
+                valueBytes = bytes;
+            } else {
+                type = TYPE_HEAP;
+                valueBytes = new byte[0];
+            }
+            int valueLength = valueBytes == null ? Long.BYTES : valueBytes.length;
+            long address = slabs.allocate(HEADER_SIZE + key.length + valueLength);
+            ByteBuffer buffer = slabs.buffer(address);
+            int offset = SlabAllocator.offset(address);
+            buffer.putInt(offset, key.length);
+            buffer.putInt(offset + 4, valueLength);
+            buffer.put(offset + 8, type);
+            buffer.put(offset + HEADER_SIZE, key);
+            if (valueBytes == null) {
+                buffer.putLong(offset + HEADER_SIZE + key.length, ((IntegerValue) value).get());
+            } else {
+                buffer.put(offset + HEADER_SIZE + key.length, valueBytes);
+            }
+            return address;
+        }
+
+        /**
+         * Rebuilds the index at a size suited to the live entries, dropping tombstones
+         */
+        void resize() {
+            int capacity = INITIAL_CAPACITY;
+            while ((count + 1) * 2L > capacity) {
+                capacity *= 2;
+            }
+            long[] oldAddresses = addresses;
+            int[] oldHashes = hashes;
+            addresses = new long[capacity];
+            hashes = new int[capacity];
+            int mask = capacity - 1;
+            for (int i = 0; i < oldAddresses.length; i++) {
+                if (oldAddresses[i] != EMPTY && oldAddresses[i] != TOMBSTONE) {
+                    int slot = (oldHashes[i] >>> SEGMENT_SHIFT) & mask;
+                    while (addresses[slot] != EMPTY) {
+                        slot = (slot + 1) & mask;
+                    }
+                    addresses[slot] = oldAddresses[i];
+                    hashes[slot] = oldHashes[i];
+                }
+            }
+            tombstones = 0;
+            version++;
+        }
+
+        /**
+         * Compares an entry's key with a key
+         * @param address The entry
+         * @param key The UTF-8 key
+         * @return True if they are the same bytes
+         */
+        boolean keyEquals(long address, byte[] key) {
+            ByteBuffer buffer = slabs.buffer(address);
+            int offset = SlabAllocator.offset(address);
+            if (buffer.getInt(offset) != key.length) {
+                return false;
+            }
+            for (int i = 0; i < key.length; i++) {
+                if (buffer.get(offset + HEADER_SIZE + i) != key[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Reads an entry's key
+         * @param address The entry
+         * @return The key
+         */
+        String key(long address) {
+            ByteBuffer buffer = slabs.buffer(address);
+            int offset = SlabAllocator.offset(address);
+            byte[] key = new byte[buffer.getInt(offset)];
+            buffer.get(offset + HEADER_SIZE, key);
+            return new String(key, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Lists the keys whose probe starts at a slot of the index: they are all in the run of
+         * used or removed slots from it up to the first empty one. Called with the lock held.
+         * @param home The slot
+         * @param action Called with each key
+         * @return The number of keys
+         */
+        int scanHome(int home, Consumer<String> action) {
+            int mask = addresses.length - 1;
+            int found = 0;
+            for (int slot = home; addresses[slot] != EMPTY; slot = (slot + 1) & mask) {
+                if (addresses[slot] != TOMBSTONE && ((hashes[slot] >>> SEGMENT_SHIFT) & mask) == home) {
+                    action.accept(key(addresses[slot]));
+                    found++;
+                }
+            }
+            return found;
+        }
+
+        /**
+         * Checks whether an entry's value is a collection kept on the heap
+         * @param address The entry
+         * @return True if the entry holds only its key
+         */
+        boolean isOnHeap(long address) {
+            return slabs.buffer(address).get(SlabAllocator.offset(address) + 8) == TYPE_HEAP;
+        }
+
+        /**
+         * Reads an entry's value
+         * @param address The entry
+         * @param key The entry's key, to find a collection in the heap values
+         * @return A String, a byte array, an IntegerValue or a collection
+         */
+        Object value(long address, String key) {
+            ByteBuffer buffer = slabs.buffer(address);
+            int offset = SlabAllocator.offset(address);
+            int keyLength = buffer.getInt(offset);
+            int valueOffset = offset + HEADER_SIZE + keyLength;
+            byte type = buffer.get(offset + 8);
+            if (type == TYPE_HEAP) {
+                return heapValues.get(key);
+            }
+            if (type == TYPE_INTEGER) {
+                return IntegerValue.of(buffer.getLong(valueOffset));
+            }
+            byte[] value = new byte[buffer.getInt(offset + 4)];
+            buffer.get(valueOffset, value);
+            return type == TYPE_BYTES ? value : new String(value, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Walks the segments, taking each one's index a batch at a time
+     */
+    private final class KeyIterator implements Iterator<String> {
+
+        private int segmentIndex = -1;
+        private boolean inSegment;
+        private int versionSeen;
+        private int slot;
+        private final List<String> batch = new ArrayList<>();
+        private int batchPosition;
+
+        @Override
+        public boolean hasNext() {
+            while (batchPosition == batch.size()) {
+                if (!fill()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public String next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return batch.get(batchPosition++);
+        }
+
+        /**
+         * Loads the next batch of keys from a segment's index, starting the segment again if its
+         * version changed
+         * @return False once every segment is done
+         */
+        private boolean fill() {
+            batch.clear();
+            batchPosition = 0;
+            if (!inSegment && ++segmentIndex == SEGMENTS) {
+                return false;
+            }
+            Segment segment = segments[segmentIndex];
+            segment.lock.readLock().lock();
+            try {
+                if (!inSegment || segment.version != versionSeen) {
+                    inSegment = true;
+                    versionSeen = segment.version;
+                    slot = 0;
+                }
+                long[] addresses = segment.addresses;
+                while (slot < addresses.length && batch.size() < ITERATION_BATCH) {
+                    long address = addresses[slot++];
+                    if (address != EMPTY && address != TOMBSTONE) {
+                        batch.add(segment.key(address));
+                    }
+                }
+                if (slot == addresses.length) {
+                    inSegment = false;
+                }
+            } finally {
+                segment.lock.readLock().unlock();
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package com.mycompany.app;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+
+public class ParallelAofReplayer {
+
+    private static final int BATCH_SIZE = 64 * 1024;
+    private static final int QUEUED_BATCHES = 8;
+
+    /**
+     * Raw commands, or a barrier, handed to one worker
+     */
+    private record Batch(byte[] data, int length, CountDownLatch barrier) {
+    }
+
+    private static final Batch END = new Batch(null, 0, null);
+
+    private final CommandExecutor commandExecutor;
+    private final int threads;
+    private final BlockingQueue<Batch>[] queues;
+    private final byte[][] pending;
+    private final int[] pendingLength;
+    private volatile Throwable failure;
+
+    /**
+     * Replays the append only file on several threads. Commands are routed to a worker by a hash of
+     * their key, so writes to one key are still applied in file order while different keys are
+     * replayed in parallel.
+     * @param commandExecutor The executor the commands are applied through, already set to loading
+     * @param threads The number of worker threads, at least one
+     */
+    public ParallelAofReplayer(CommandExecutor commandExecutor, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be at least 1");
+        }
+        this.commandExecutor = commandExecutor;
+        this.threads = threads;
+        this.queues = newQueues(threads);
+        this.pending = new byte[threads][];
+        this.pendingLength = new int[threads];
+        for (int i = 0; i < threads; i++) {
+            queues[i] = new ArrayBlockingQueue<>(QUEUED_BATCHES);
+        }
+    }
+
+    /**
+     * Reads the file on the calling thread and applies it on the workers. The calling thread only
+     * finds where each command ends and copies its bytes into a batch for its key's worker; turning
+     * arguments into strings and executing them happens on the workers. A command that does not act on
+     * exactly one key is run on the calling thread once every worker has caught up, so it keeps its
+     * place in the file.
+     * @param loader The loader for the file to replay
+     * @return The number of commands replayed
+     * @throws IOException Throws if the file cannot be read or is not made of commands
+     */
+    public long replay(AofLoader loader) throws IOException {
+        Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            BlockingQueue<Batch> queue = queues[i];
+            workers[i] = new Thread(() -> work(queue), "aof-replay-" + i);
+            workers[i].start();
+        }
+        try {
+            loader.load(this::route);
+        } finally {
+            for (int i = 0; i < threads; i++) {
+                submit(i);
+                put(i, END);
+            }
+            for (Thread worker : workers) {
+                try {
+                    worker.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+        if (failure != null) {
+            throw new IOException("AOF replay failed", failure);
+        }
+        return loader.getCommandsLoaded();
+    }
+
+    /**
+     * Sends one decoded command to the worker that owns its key
+     * @param command The decoded command
+     * @param window The mapped part of the file holding it
+     * @param start Where its bytes start in the window
+     * @param end Where its bytes end in the window
+     */
+    private void route(RespCommand command, ByteBuffer window, int start, int end) {
+        CommandSpec spec = commandExecutor.getRegistry().lookup(command);
+        if (spec == null || !spec.isSingleKey() || command.argCount() <= spec.getFirstKey()) {
+            barrier();
+            commandExecutor.execute(command.toArray(spec));
+            return;
+        }
+        int worker = Math.floorMod(keyHash(command, spec.getFirstKey()), threads);
+        int length = end - start;
+        byte[] batch = pending[worker];
+        if (batch != null && pendingLength[worker] + length > batch.length) {
+            submit(worker);
+            batch = null;
+        }
+        if (batch == null) {
+            batch = new byte[Math.max(BATCH_SIZE, length)];
+            pending[worker] = batch;
+        }
+        window.get(start, batch, pendingLength[worker], length);
+        pendingLength[worker] += length;
+    }
+
+    /**
+     * Waits until every worker has applied everything routed to it so far
+     */
+    private void barrier() {
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int i = 0; i < threads; i++) {
+            submit(i);
+            put(i, new Batch(null, 0, done));
+        }
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Hands a worker the batch being filled for it, if any
+     * @param worker The worker index
+     */
+    private void submit(int worker) {
+        if (pendingLength[worker] > 0) {
+            put(worker, new Batch(pending[worker], pendingLength[worker], null));
+        }
+        pending[worker] = null;
+        pendingLength[worker] = 0;
+    }
+
+    /**
+     * Queues a batch for a worker, waiting while the worker is behind
+     * @param worker The worker index
+     * @param batch The batch to queue
+     */
+    private void put(int worker, Batch batch) {
+        try {
+            queues[worker].put(batch);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while replaying the AOF", e);
+        }
+    }
+
+    /**
+     * A worker's loop: decode and execute each batch until the end marker. After a failure the
+     * worker keeps taking batches so the reading thread is never left blocked on a full queue.
+     * @param queue The worker's queue
+     */
+    private void work(BlockingQueue<Batch> queue) {
+        RespDecoder decoder = new RespDecoder();
+        try {
+            Batch batch;
+            while ((batch = queue.take()) != END) {
+                if (batch.barrier() != null) {
+                    batch.barrier().countDown();
+                } else if (failure == null) {
+                    execute(decoder, batch);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Executes every command in a batch
+     * @param decoder The worker's decoder
+     * @param batch Whole commands copied from the file
+     */
+    private void execute(RespDecoder decoder, Batch batch) {
+        ByteBuffer buffer = ByteBuffer.wrap(batch.data(), 0, batch.length());
+        try {
+            RespCommand command;
+            while ((command = decoder.decode(buffer)) != null) {
+                commandExecutor.execute(command.toArray(commandExecutor.getRegistry().lookup(command)));
+            }
+        } catch (IOException | RuntimeException e) {
+            failure = e;
+        }
+    }
+
+    /**
+     * Hashes the key of a command from its raw bytes
+     * @param command The command
+     * @param keyIndex The index of its key argument
+     * @return The hash
+     */
+    private static int keyHash(RespCommand command, int keyIndex) {
+        int hash = 0;
+        int length = command.argLength(keyIndex);
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + command.argByte(keyIndex, i);
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Allocates the array of worker queues
+     * @param threads The number of workers
+     * @return The array, every queue still null
+     */
+    @SuppressWarnings("unchecked")
+    private static BlockingQueue<Batch>[] newQueues(int threads) {
+        return (BlockingQueue<Batch>[]) new BlockingQueue<?>[threads];
+    }
+}
@@ -0,0 +1,34 @@
+package com.mycompany.app;
+
+public final class PropagatedReply {
+
+    private final Object reply;
+    private final Object[] command;
+
+    /**
+     * A write command's reply together with what is logged for it in place of the command itself,
+     * for writes whose effect depends on when they ran (relative expiry times) or that did nothing
+     * @param reply The reply sent to the client
+     * @param command The command to log to the AOF, null to log nothing
+     */
+    public PropagatedReply(Object reply, Object[] command) {
+        this.reply = reply;
+        this.command = command;
+    }
+
+    /**
+     * Gets the reply sent to the client
+     * @return The reply
+     */
+    public Object getReply() {
+        return reply;
+    }
+
+    /**
+     * Gets the command logged to the AOF
+     * @return The command, null if nothing is logged
+     */
+    public Object[] getCommand() {
+        return command;
+    }
+}
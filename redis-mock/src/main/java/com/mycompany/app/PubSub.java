@@ -0,0 +1,412 @@
+package com.mycompany.app;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+public class PubSub {
+
+    public static final long DEFAULT_OUTPUT_LIMIT = 32L * 1024 * 1024;
+
+    /**
+     * A pattern subscription, filed in the trie under the literal characters it starts with
+     * @param pattern The whole pattern, as sent in the pmessage
+     * @param rest The part of the pattern after the literal prefix, matched against the rest of the channel
+     * @param subscribers The connections subscribed to the pattern, replaced rather than changed
+     */
+    private record PatternEntry(String pattern, String rest, Subscriber[] subscribers) {
+    }
+
+    /**
+     * A node of the pattern trie, reached by the literal prefix spelt out on the way down
+     */
+    private static final class Node {
+        private final Map<Character, Node> children = new HashMap<>();
+        private final Map<String, PatternEntry> patterns = new LinkedHashMap<>();
+    }
+
+    private static final Subscriber[] NO_SUBSCRIBERS = new Subscriber[0];
+    private static final String[] COMMANDS =
+            {"SUBSCRIBE", "PSUBSCRIBE", "UNSUBSCRIBE", "PUNSUBSCRIBE", "PUBLISH", "PING", "QUIT", "RESET"};
+
+    private final long outputLimit;
+    // each channel's subscribers, replaced rather than changed so publishers read them without locking
+    private final ConcurrentHashMap<String, Subscriber[]> channels = new ConcurrentHashMap<>();
+    private final Node patternRoot = new Node();
+    private final ReentrantReadWriteLock patternLock = new ReentrantReadWriteLock();
+    private int patternCount;
+
+    /**
+     * Creates a hub with the default output limit of 32mb per subscriber
+     */
+    public PubSub() {
+        this(DEFAULT_OUTPUT_LIMIT);
+    }
+
+    /**
+     * Channels and patterns shared by every connection of a server. A published message is encoded
+     * once and the same bytes are queued for every subscriber, each connection sending them as its
+     * socket allows, so one slow client never holds up the publisher or the others.
+     * @param outputLimit The most bytes a subscriber may have waiting before it is cut off, 0 for no limit
+     */
+    public PubSub(long outputLimit) {
+        this.outputLimit = outputLimit;
+    }
+
+    /**
+     * Creates the pub/sub state of a new connection
+     * @param onOutput Called from the publishing thread when the connection has output to send
+     * @return The subscriber
+     */
+    public Subscriber newSubscriber(Runnable onOutput) {
+        return new Subscriber(outputLimit, onOutput);
+    }
+
+    /**
+     * Runs a command if it is one of the pub/sub commands, or refuses it if the connection is
+     * subscribed and the command is not allowed there. Replies go to the connection's buffer, or
+     * straight onto its queue once it has subscribed.
+     * @param subscriber The connection's pub/sub state
+     * @param command The command and its arguments
+     * @param replies The connection's reply buffer
+     * @return True if the command was dealt with, false if it is for the executor
+     */
+    public boolean execute(Subscriber subscriber, Object[] command, ReplyBuffer replies) {
+        if (command.length == 0) {
+            // nothing to run and nothing to reply, as for an empty multibulk
+            return true;
+        }
+        String name = canonicalName((String) command[0]);
+        switch (name) {
+            case "SUBSCRIBE", "PSUBSCRIBE" -> {
+                if (command.length < 2) {
+                    replies.write(wrongArguments(name));
+                } else {
+                    subscribe(subscriber, command, replies, name.equals("PSUBSCRIBE"));
+                }
+            }
+            case "UNSUBSCRIBE", "PUNSUBSCRIBE" -> unsubscribe(subscriber, command, replies, name.equals("PUNSUBSCRIBE"));
+            case "PUBLISH" -> {
+                if (command.length != 3) {
+                    replies.write(wrongArguments(name));
+                } else {
+                    replies.write(publish((String) command[1], (String) command[2]));
+                }
+            }
+            case "PING" -> {
+                if (!subscriber.isSubscribed()) {
+                    return false;
+                }
+                replies.write(new Object[]{"pong", command.length > 1 ? command[1] : ""});
+            }
+            case "QUIT", "RESET" -> {
+                return false;
+            }
+            default -> {
+                if (!subscriber.isSubscribed()) {
+                    return false;
+                }
+                replies.write(new Exception("ERR Can't execute '" + name.toLowerCase()
+                        + "': only (P)SUBSCRIBE / (P)UNSUBSCRIBE / PING / QUIT / RESET are allowed in this context"));
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Matches a command name against the commands dealt with here, ignoring case, without making an
+     * upper case copy of the name of every command the connection sends
+     * @param name The name as sent by the client
+     * @return The upper case name of the matching command, or the name as it is if none matches
+     */
+    private static String canonicalName(String name) {
+        for (String command : COMMANDS) {
+            if (command.equalsIgnoreCase(name)) {
+                return command;
+            }
+        }
+        return name;
+    }
+
+    /**
+     * Sends a message to every subscriber of a channel and of each pattern matching it. The message
+     * is encoded once for the channel and once per matching pattern, whatever the number of subscribers.
+     * @param channel The channel
+     * @param message The message
+     * @return The number of subscribers the message was queued for
+     */
+    public long publish(String channel, String message) {
+        long receivers = 0;
+        Subscriber[] subscribers = channels.get(channel);
+        if (subscribers != null) {
+            receivers += pushToAll(subscribers, encode(new Object[]{"message", channel, message}));
+        }
+        patternLock.readLock().lock();
+        try {
+            Node node = patternRoot;
+            for (int i = 0; node != null; i++) {
+                for (PatternEntry entry : node.patterns.values()) {
+                    if (GlobPattern.matches(entry.rest(), channel.substring(i))) {
+                        receivers += pushToAll(entry.subscribers(),
+                                encode(new Object[]{"pmessage", entry.pattern(), channel, message}));
+                    }
+                }
+                node = i < channel.length() ? node.children.get(channel.charAt(i)) : null;
+            }
+        } finally {
+            patternLock.readLock().unlock();
+        }
+        return receivers;
+    }
+
+    /**
+     * Drops every subscription of a connection that is going away
+     * @param subscriber The connection's pub/sub state
+     */
+    public void unsubscribeAll(Subscriber subscriber) {
+        for (String channel : subscriber.getChannels()) {
+            removeChannel(channel, subscriber);
+        }
+        for (String pattern : subscriber.getPatterns()) {
+            removePattern(pattern, subscriber);
+        }
+        subscriber.getChannels().clear();
+        subscriber.getPatterns().clear();
+    }
+
+    /**
+     * Gets the number of channels with at least one subscriber
+     * @return The channel count
+     */
+    public int channelCount() {
+        return channels.size();
+    }
+
+    /**
+     * Gets the number of patterns with at least one subscriber
+     * @return The pattern count
+     */
+    public int patternCount() {
+        patternLock.readLock().lock();
+        try {
+            return patternCount;
+        } finally {
+            patternLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Subscribes a connection to channels or patterns (SUBSCRIBE channel [channel ...], PSUBSCRIBE
+     * pattern [pattern ...]). Each confirmation is queued before the subscription is made visible
+     * to publishers, so it always reaches the client ahead of the first message.
+     * @param subscriber The connection's pub/sub state
+     * @param command The command and its channels or patterns
+     * @param replies The connection's reply buffer, emptied onto the queue first
+     * @param pattern True for PSUBSCRIBE
+     */
+    private void subscribe(Subscriber subscriber, Object[] command, ReplyBuffer replies, boolean pattern) {
+        subscriber.enterPushMode();
+        subscriber.pushReplies(replies);
+        for (int i = 1; i < command.length; i++) {
+            String name = (String) command[i];
+            boolean added = pattern ? subscriber.getPatterns().add(name) : subscriber.getChannels().add(name);
+            replies.write(new Object[]{pattern ? "psubscribe" : "subscribe", name, (long) subscriber.subscriptionCount()});
+            subscriber.pushReplies(replies);
+            if (added && pattern) {
+                addPattern(name, subscriber);
+            } else if (added) {
+                channels.compute(name, (key, subscribers) -> append(subscribers, subscriber));
+            }
+        }
+    }
+
+    /**
+     * Unsubscribes a connection from channels or patterns, or from all of them when none are named
+     * (UNSUBSCRIBE [channel ...], PUNSUBSCRIBE [pattern ...])
+     * @param subscriber The connection's pub/sub state
+     * @param command The command and its channels or patterns
+     * @param replies The connection's reply buffer, emptied onto the queue first
+     * @param pattern True for PUNSUBSCRIBE
+     */
+    private void unsubscribe(Subscriber subscriber, Object[] command, ReplyBuffer replies, boolean pattern) {
+        subscriber.enterPushMode();
+        subscriber.pushReplies(replies);
+        String kind = pattern ? "punsubscribe" : "unsubscribe";
+        List<Object> names = command.length > 1
+                ? Arrays.asList(command).subList(1, command.length)
+                : List.of((pattern ? subscriber.getPatterns() : subscriber.getChannels()).toArray());
+        for (Object value : names) {
+            String name = (String) value;
+            if (pattern && subscriber.getPatterns().remove(name)) {
+                removePattern(name, subscriber);
+            } else if (!pattern && subscriber.getChannels().remove(name)) {
+                removeChannel(name, subscriber);
+            }
+            replies.write(new Object[]{kind, name, (long) subscriber.subscriptionCount()});
+        }
+        if (names.isEmpty()) {
+            replies.write(new Object[]{kind, null, (long) subscriber.subscriptionCount()});
+        }
+        subscriber.pushReplies(replies);
+    }
+
+    /**
+     * Files a pattern subscription in the trie under its literal prefix
+     * @param pattern The pattern
+     * @param subscriber The subscribing connection
+     */
+    private void addPattern(String pattern, Subscriber subscriber) {
+        int prefix = literalPrefixLength(pattern);
+        patternLock.writeLock().lock();
+        try {
+            Node node = patternRoot;
+            for (int i = 0; i < prefix; i++) {
+                node = node.children.computeIfAbsent(pattern.charAt(i), c -> new Node());
+            }
+            PatternEntry entry = node.patterns.get(pattern);
+            if (entry == null) {
+                patternCount++;
+                entry = new PatternEntry(pattern, pattern.substring(prefix), NO_SUBSCRIBERS);
+            }
+            node.patterns.put(pattern, new PatternEntry(pattern, entry.rest(), append(entry.subscribers(), subscriber)));
+        } finally {
+            patternLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Takes a connection off a pattern, pruning the trie of nodes left with nothing under them
+     * @param pattern The pattern
+     * @param subscriber The unsubscribing connection
+     */
+    private void removePattern(String pattern, Subscriber subscriber) {
+        int prefix = literalPrefixLength(pattern);
+        patternLock.writeLock().lock();
+        try {
+            Node[] path = new Node[prefix + 1];
+            path[0] = patternRoot;
+            for (int i = 0; i < prefix; i++) {
+                path[i + 1] = path[i].children.get(pattern.charAt(i));
+                if (path[i + 1] == null) {
+                    return;
+                }
+            }
+            Node node = path[prefix];
+            PatternEntry entry = node.patterns.get(pattern);
+            if (entry == null) {
+                return;
+            }
+            Subscriber[] remaining = remove(entry.subscribers(), subscriber);
+            if (remaining != null) {
+                node.patterns.put(pattern, new PatternEntry(pattern, entry.rest(), remaining));
+                return;
+            }
+            node.patterns.remove(pattern);
+            patternCount--;
+            for (int i = prefix; i > 0 && path[i].patterns.isEmpty() && path[i].children.isEmpty(); i--) {
+                path[i - 1].children.remove(pattern.charAt(i - 1));
+            }
+        } finally {
+            patternLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Takes a connection off a channel, dropping the channel once nobody is left on it
+     * @param channel The channel
+     * @param subscriber The unsubscribing connection
+     */
+    private void removeChannel(String channel, Subscriber subscriber) {
+        channels.computeIfPresent(channel, (key, subscribers) -> remove(subscribers, subscriber));
+    }
+
+    /**
+     * Measures how much of a pattern is plain characters, up to the first special one
+     * @param pattern The pattern
+     * @return The length of the literal prefix
+     */
+    static int literalPrefixLength(String pattern) {
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c == '*' || c == '?' || c == '[' || c == '\\') {
+                return i;
+            }
+        }
+        return pattern.length();
+    }
+
+    /**
+     * Queues the same encoded message for each of a set of subscribers
+     * @param subscribers The subscribers
+     * @param message The encoded message
+     * @return The number of subscribers it was queued for
+     */
+    private static int pushToAll(Subscriber[] subscribers, byte[] message) {
+        int receivers = 0;
+        for (Subscriber subscriber : subscribers) {
+            if (subscriber.push(message)) {
+                receivers++;
+            }
+        }
+        return receivers;
+    }
+
+    /**
+     * Encodes a push message once, to be shared by every subscriber it goes to
+     * @param message The parts of the message
+     * @return The encoded message
+     */
+    private static byte[] encode(Object[] message) {
+        ReplyBuffer buffer = new ReplyBuffer(256);
+        buffer.write(message);
+        return buffer.toByteArray();
+    }
+
+    /**
+     * Copies a subscriber list with one more subscriber at the end
+     * @param subscribers The current list, null if there is none
+     * @param subscriber The subscriber to add
+     * @return The new list
+     */
+    private static Subscriber[] append(Subscriber[] subscribers, Subscriber subscriber) {
+        if (subscribers == null) {
+            return new Subscriber[]{subscriber};
+        }
+        Subscriber[] grown = Arrays.copyOf(subscribers, subscribers.length + 1);
+        grown[subscribers.length] = subscriber;
+        return grown;
+    }
+
+    /**
+     * Copies a subscriber list without one subscriber
+     * @param subscribers The current list
+     * @param subscriber The subscriber to leave out
+     * @return The new list, or null if nobody is left
+     */
+    private static Subscriber[] remove(Subscriber[] subscribers, Subscriber subscriber) {
+        int index = Arrays.asList(subscribers).indexOf(subscriber);
+        if (index < 0) {
+            return subscribers;
+        }
+        if (subscribers.length == 1) {
+            return null;
+        }
+        Subscriber[] shrunk = new Subscriber[subscribers.length - 1];
+        System.arraycopy(subscribers, 0, shrunk, 0, index);
+        System.arraycopy(subscribers, index + 1, shrunk, index, shrunk.length - index);
+        return shrunk;
+    }
+
+    /**
+     * Builds the error for a command with the wrong number of arguments
+     * @param name The command name
+     * @return The error
+     */
+    private static Exception wrongArguments(String name) {
+        return new Exception("ERR wrong number of arguments for '" + name + "' command");
+    }
+}
@@ -1,88 +1,130 @@
 package com.mycompany.app;
 
-import java.io.BufferedReader;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
 public class RESPParser {
 
     /**
      * Takes an input stream from a client and decodes the RESP message into a Java object.
+     * Bytes are read one at a time and never past the end of the message, so the same stream can be
+     * passed again for the next message; wrap slow streams in a BufferedInputStream.
      * @param is This is the input stream from a client.
+     * Replies read from another server may also be errors, decoded as an Exception, and integers, as a Long.
      * @return A Java object representing the client's command (e.g., a String, an array of Objects, or null).
+     * @throws IOException Throws if message does not start with +, -, :, $, or *, or the stream ends first
      */
     public static Object decode(InputStream is) throws IOException {
-        BufferedReader reader = new BufferedReader(new InputStreamReader(is));
-        return decodeFromReader(reader);
-    }
-
-    /**
-     * Reads from a BufferedReader and decodes the next RESP message into a Java object.
-     * @param reader A BufferedReader containing the encoded message from the client.
-     * @return A Java object representing the client's command (e.g., a String, an array of Objects, or null).
-     * @throws IOException Throws if message does not start with +, $, or *
-     */
-    private static Object decodeFromReader(BufferedReader reader) throws IOException {
-        int firstByte = reader.read();
+        int firstByte = is.read();
         switch (firstByte) {
             case '+':
-                return reader.readLine();
+                return readLine(is);
+            case '-':
+                return new Exception(readLine(is));
+            case ':':
+                try {
+                    return Long.parseLong(readLine(is));
+                } catch (NumberFormatException e) {
+                    throw new IOException("Invalid RESP integer", e);
+                }
             case '$':
-                int length = Integer.parseInt(reader.readLine());
+                int length = readLength(is);
                 if (length == -1) {
                     return null;
                 }
-                char[] buffer = new char[length];
-                reader.read(buffer, 0, length);
-                reader.readLine(); // Consume trailing CRLF
-                return new String(buffer);
+                byte[] bytes = is.readNBytes(length);
+                if (bytes.length < length) {
+                    throw new EOFException("Connection closed before a complete RESP message was read");
+                }
+                readLine(is); // Consume trailing CRLF
+                return new String(bytes, StandardCharsets.UTF_8);
             case '*':
-                int numElements = Integer.parseInt(reader.readLine());
+                int numElements = readLength(is);
                 Object[] array = new Object[numElements];
                 for (int i = 0; i < numElements; i++) {
-                    array[i] = decodeFromReader(reader);
+                    array[i] = decode(is);
                 }
                 return array;
+            case -1:
+                throw new EOFException("Connection closed before a complete RESP message was read");
             default:
-                //This is a workaround for the fact that the input stream is not being fully consumed
-                if(firstByte == '\r' || firstByte == '\n' || firstByte == -1){
-                    return decodeFromReader(reader);
-                }
                 throw new IOException("Unknown RESP type: " + (char) firstByte + " " + firstByte);
         }
     }
 
+    /**
+     * Reads a CRLF terminated line from the stream
+     * @param is The stream positioned at the start of the line
+     * @return The line without its CRLF, decoded as UTF-8
+     * @throws IOException Throws if the stream ends before the CRLF
+     */
+    private static String readLine(InputStream is) throws IOException {
+        byte[] line = new byte[16];
+        int size = 0;
+        int b;
+        while ((b = is.read()) != '\r') {
+            if (b == -1) {
+                throw new EOFException("Connection closed before a complete RESP message was read");
+            }
+            if (size == line.length) {
+                line = Arrays.copyOf(line, size * 2);
+            }
+            line[size++] = (byte) b;
+        }
+        is.read(); // Consume LF
+        return new String(line, 0, size, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads a CRLF terminated decimal length straight from the stream bytes
+     * @param is The stream positioned just after the type byte
+     * @return The length, -1 for a null value
+     * @throws IOException Throws if the line is not a number or the stream ends first
+     */
+    private static int readLength(InputStream is) throws IOException {
+        int b = is.read();
+        boolean negative = b == '-';
+        if (negative) {
+            b = is.read();
+        }
+        long value = 0;
+        int digits = 0;
+        while (b >= '0' && b <= '9' && ++digits <= 10) {
+            value = value * 10 + (b - '0');
+            b = is.read();
+        }
+        if (b == -1) {
+            throw new EOFException("Connection closed before a complete RESP message was read");
+        }
+        if (b != '\r' || is.read() != '\n' || digits == 0 || value > Integer.MAX_VALUE) {
+            throw new IOException("Invalid RESP length");
+        }
+        return (int) (negative ? -value : value);
+    }
+
     /**
      * Takes a Java object (e.g., a String or an array of strings) and encodes it into the RESP format to be sent to the client.
+     * Connections encode into their own ReplyBuffer instead; this is for callers that want the reply as text.
      * @param data An instruction from the client.
      * @return A RESP formatted string representing the server's response.
      */
     public static String encode(Object data) {
-        StringBuilder sb = new StringBuilder();
-        switch (data) {
-            case String s when s.equals("OK") || s.equals("PONG"):
-                sb.append("+").append(s).append("\r\n");
-                break;
-            case String s:
-                sb.append("$").append(s.length()).append("\r\n").append(s).append("\r\n");
-                break;
-            case String[] cmdArray:
-                sb.append("*").append(cmdArray.length).append("\r\n");
-                for (String s : cmdArray) {
-                    sb.append("$").append(s.length()).append("\r\n");
-                    sb.append(s).append("\r\n");
-                }
-                break;
-            case Exception e:
-                sb.append("-").append(e.getMessage()).append("\r\n");
-                break;
-            case null:
-                sb.append("$-1\r\n");
-                break;
-            default:
-                break;
-        }
-        return sb.toString();
+        ReplyBuffer buffer = new ReplyBuffer();
+        buffer.write(data);
+        return new String(buffer.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Encodes a command as an array of bulk strings, the form it is sent by clients and stored in the AOF
+     * @param command The command name followed by its arguments
+     * @return The RESP encoded command
+     */
+    public static byte[] encodeCommand(Object[] command) {
+        ReplyBuffer buffer = new ReplyBuffer(64);
+        buffer.write(command);
+        return buffer.toByteArray();
     }
 }
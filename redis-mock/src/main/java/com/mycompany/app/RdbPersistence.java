@@ -0,0 +1,587 @@
+package com.mycompany.app;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+public class RdbPersistence {
+
+    private static final byte[] MAGIC = {'R', 'M', 'D', 'B'};
+    private static final int VERSION = 5;
+    private static final int MIN_VERSION = 1;
+    private static final int TYPE_STRING = 0;
+    private static final int TYPE_LIST = 1;
+    private static final int TYPE_HASH = 4;
+    private static final int TYPE_ZSET = 5;
+    private static final int OPCODE_EXPIRETIME_MS = 0xFC;
+    private static final int OPCODE_EOF = 0xFF;
+    private static final int IO_BUFFER_SIZE = 64 * 1024;
+
+    // markers in the pre-image map: the key has been written to the snapshot, or did not exist when it started
+    private static final Object DUMPED = new Object();
+    private static final Object ABSENT = new Object();
+
+    /**
+     * A key's value and expiry time from before the first write made to it during a snapshot
+     */
+    private record PreImage(Object value, long deadline) {
+    }
+
+    private final String rdbFile;
+    private final AtomicBoolean saving = new AtomicBoolean();
+    private volatile ConcurrentHashMap<String, Object> preImages;
+    private volatile long lastSaveTime;
+    private volatile long saves;
+    private volatile boolean lastSaveOk = true;
+
+    /**
+     * Creates a binary point-in-time snapshot of the database, the counterpart to the AOF.
+     * The file is a version header, one record per key (preceded by its expiry time if it has one),
+     * an end marker and a CRC32C of everything before it. A record is a type byte, the key, and the
+     * value: a string, for a list the element count followed by each element, for a hash the field
+     * count followed by each field and value, or for a sorted set the member count followed by each
+     * member and its score as an 8 byte double.
+     * @param rdbFile The file snapshots are written to and loaded from
+     */
+    public RdbPersistence(String rdbFile) {
+        this.rdbFile = rdbFile;
+    }
+
+    /**
+     * Marks a snapshot as running. From here on every write must report the value it replaced
+     * through preserve, until the snapshot has been written.
+     * @return False if a snapshot is already being written
+     */
+    public boolean tryBeginSave() {
+        if (!saving.compareAndSet(false, true)) {
+            return false;
+        }
+        preImages = new ConcurrentHashMap<>();
+        return true;
+    }
+
+    /**
+     * Keeps the value and expiry time a key had when the running snapshot started, if the snapshot
+     * has not reached the key yet. Must be called while holding the key's lock, before the write.
+     * @param key The key being written
+     * @param previous The key's value before the write, null if it did not exist
+     * @param previousDeadline The key's expiry time before the write, -1 if it had none
+     */
+    public void preserve(String key, Object previous, long previousDeadline) {
+        ConcurrentHashMap<String, Object> images = preImages;
+        if (images != null && !images.containsKey(key)) {
+            // only the first write after the snapshot started carries the value the snapshot must see
+            images.putIfAbsent(key, previous == null ? ABSENT : new PreImage(frozen(previous), previousDeadline));
+        }
+    }
+
+    /**
+     * Writes the database as it was when tryBeginSave was called, without stopping writers: keys
+     * are read under their lock, and keys written since the snapshot started are taken from the
+     * pre-images recorded by preserve. The file is written next to the target, fsynced, and renamed
+     * over it. Ends the snapshot started by tryBeginSave.
+     * @param dataStore The database to save
+     * @param expires The expiry times of the database's keys
+     * @param keyLocks The locks writers hold while applying a write
+     * @return True if the snapshot was written
+     * @throws IllegalStateException If no snapshot was started
+     */
+    public boolean save(Keyspace dataStore, Expires expires, KeyLocks keyLocks) {
+        ConcurrentHashMap<String, Object> images = preImages;
+        if (images == null) {
+            throw new IllegalStateException("No snapshot in progress");
+        }
+        Path target = Paths.get(rdbFile);
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        boolean ok = false;
+        try (FileOutputStream file = new FileOutputStream(temp.toFile())) {
+            BufferedOutputStream out = new BufferedOutputStream(file, IO_BUFFER_SIZE);
+            writeSnapshot(out, dataStore, expires, keyLocks, images);
+            out.flush();
+            file.getFD().sync();
+            ok = true;
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            preImages = null;
+        }
+        try {
+            if (ok) {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                lastSaveTime = System.currentTimeMillis() / 1000;
+                saves++;
+            } else {
+                Files.deleteIfExists(temp);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            ok = false;
+        }
+        lastSaveOk = ok;
+        saving.set(false);
+        return ok;
+    }
+
+    /**
+     * Writes the database as it was when tryBeginSave was called into memory rather than a file, in
+     * the same format and without stopping writers, for sending to a replica. Ends the snapshot
+     * started by tryBeginSave.
+     * @param dataStore The database to save
+     * @param expires The expiry times of the database's keys
+     * @param keyLocks The locks writers hold while applying a write
+     * @return The snapshot
+     * @throws IllegalStateException If no snapshot was started
+     */
+    public byte[] dump(Keyspace dataStore, Expires expires, KeyLocks keyLocks) {
+        ConcurrentHashMap<String, Object> images = preImages;
+        if (images == null) {
+            throw new IllegalStateException("No snapshot in progress");
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(IO_BUFFER_SIZE);
+        try {
+            writeSnapshot(out, dataStore, expires, keyLocks, images);
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write snapshot", e);
+        } finally {
+            preImages = null;
+            saving.set(false);
+        }
+    }
+
+    /**
+     * Writes the header, every key as it was when the snapshot started, the end marker and the checksum
+     * @param sink Where the snapshot goes
+     * @param dataStore The database to save
+     * @param expires The expiry times of the database's keys
+     * @param keyLocks The locks writers hold while applying a write
+     * @param images The pre-images recorded since the snapshot started
+     * @throws IOException Throws if the snapshot cannot be written
+     */
+    private void writeSnapshot(OutputStream sink, Keyspace dataStore, Expires expires, KeyLocks keyLocks,
+                               ConcurrentHashMap<String, Object> images) throws IOException {
+        CheckedOutputStream checked = new CheckedOutputStream(sink, new CRC32C());
+        DataOutputStream out = new DataOutputStream(checked);
+        out.write(MAGIC);
+        out.writeInt(VERSION);
+        for (String key : dataStore.keys()) {
+            ReentrantLock lock = keyLocks.lockFor(key);
+            Object image;
+            lock.lock();
+            try {
+                image = images.put(key, DUMPED);
+                if (image == null) {
+                    image = new PreImage(frozen(dataStore.get(key)), expires.get(key));
+                }
+            } finally {
+                lock.unlock();
+            }
+            writeEntry(out, key, image);
+        }
+        // every key that existed at the start has now been dumped or had its old value recorded,
+        // so recording can stop and what is left are keys removed before the loop reached them
+        preImages = null;
+        for (Map.Entry<String, Object> entry : images.entrySet()) {
+            writeEntry(out, entry.getKey(), entry.getValue());
+        }
+        out.writeByte(OPCODE_EOF);
+        out.flush();
+        long checksum = checked.getChecksum().getValue();
+        out.writeInt((int) checksum);
+        out.flush();
+    }
+
+    /**
+     * Copies a value that writers change in place, so it can be written out after its lock is released
+     * @param value The value, or null
+     * @return The value itself if it is never changed in place, otherwise a copy
+     */
+    private static Object frozen(Object value) {
+        return value instanceof CollectionValue collection ? collection.copy() : value;
+    }
+
+    /**
+     * Loads the snapshot's keys and values, leaving out expiry times
+     * @param dataStore The database to fill
+     * @return The number of keys loaded, 0 if there is no snapshot file
+     * @throws UncheckedIOException Throws if the file is truncated, corrupt or of an unknown version
+     */
+    public long load(Map<String, Object> dataStore) {
+        return load(dataStore, new Expires());
+    }
+
+    /**
+     * Loads the snapshot straight into the database, without going through the command executor.
+     * Keys whose expiry time has passed are loaded too and expire as soon as they are looked at.
+     * @param dataStore The database to fill
+     * @param expires Receives the expiry times of the loaded keys
+     * @return The number of keys loaded, 0 if there is no snapshot file
+     * @throws UncheckedIOException Throws if the file is truncated, corrupt or of an unknown version
+     */
+    public long load(Map<String, Object> dataStore, Expires expires) {
+        return load(new HeapKeyspace(dataStore), expires, new EncodingLimits());
+    }
+
+    /**
+     * Loads the snapshot straight into the database, without going through the command executor.
+     * Keys whose expiry time has passed are loaded too and expire as soon as they are looked at.
+     * @param dataStore The database to fill
+     * @param expires Receives the expiry times of the loaded keys
+     * @param limits Decides how loaded hashes are encoded
+     * @return The number of keys loaded, 0 if there is no snapshot file
+     * @throws UncheckedIOException Throws if the file is truncated, corrupt or of an unknown version
+     */
+    public long load(Keyspace dataStore, Expires expires, EncodingLimits limits) {
+        Path path = Paths.get(rdbFile);
+        if (!Files.exists(path)) {
+            return 0;
+        }
+        try (InputStream file = Files.newInputStream(path)) {
+            return read(file, dataStore, expires, limits);
+        } catch (EOFException e) {
+            throw new UncheckedIOException("Snapshot file is truncated: " + rdbFile, e);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot load snapshot " + rdbFile + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Loads a snapshot received from elsewhere, such as from a master, straight into the database
+     * @param input The snapshot
+     * @param dataStore The database to fill
+     * @param expires Receives the expiry times of the loaded keys
+     * @param limits Decides how loaded collections are encoded
+     * @return The number of keys loaded
+     * @throws UncheckedIOException Throws if the snapshot is truncated, corrupt or of an unknown version
+     */
+    public static long loadFrom(InputStream input, Keyspace dataStore, Expires expires, EncodingLimits limits) {
+        try {
+            return read(input, dataStore, expires, limits);
+        } catch (EOFException e) {
+            throw new UncheckedIOException("Snapshot is truncated", e);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot load snapshot: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Reads a snapshot's keys into the database and checks its checksum
+     * @param input The snapshot
+     * @param dataStore The database to fill
+     * @param expires Receives the expiry times of the loaded keys
+     * @param limits Decides how loaded collections are encoded
+     * @return The number of keys loaded
+     * @throws IOException Throws if the snapshot is truncated, corrupt or of an unknown version
+     */
+    private static long read(InputStream input, Keyspace dataStore, Expires expires, EncodingLimits limits) throws IOException {
+        CheckedInputStream checked = new CheckedInputStream(new BufferedInputStream(input, IO_BUFFER_SIZE), new CRC32C());
+        DataInputStream in = new DataInputStream(checked);
+        byte[] magic = new byte[MAGIC.length];
+        in.readFully(magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IOException("Not a snapshot");
+        }
+        int version = in.readInt();
+        if (version < MIN_VERSION || version > VERSION) {
+            throw new IOException("Unsupported snapshot version " + version);
+        }
+        long keys = 0;
+        int type;
+        while ((type = in.readUnsignedByte()) != OPCODE_EOF) {
+            long deadline = -1;
+            if (type == OPCODE_EXPIRETIME_MS) {
+                deadline = in.readLong();
+                type = in.readUnsignedByte();
+            }
+            String key = readString(in);
+            dataStore.put(key, readValue(in, type, limits));
+            if (deadline >= 0) {
+                expires.set(key, deadline);
+            }
+            keys++;
+        }
+        int expected = (int) checked.getChecksum().getValue();
+        if (in.readInt() != expected) {
+            throw new IOException("Snapshot checksum mismatch");
+        }
+        return keys;
+    }
+
+    /**
+     * Reports whether a snapshot is being written
+     * @return True between tryBeginSave and the end of save
+     */
+    public boolean isSaving() {
+        return saving.get();
+    }
+
+    /**
+     * Gets when the last snapshot was written successfully
+     * @return The time in seconds since the epoch, 0 if none has been written
+     */
+    public long getLastSaveTime() {
+        return lastSaveTime;
+    }
+
+    /**
+     * Describes the snapshot state in the format of the INFO persistence section
+     * @return The snapshot fields, one per line
+     */
+    public String info() {
+        return "rdb_bgsave_in_progress:" + (saving.get() ? 1 : 0) + "\r\n"
+                + "rdb_saves:" + saves + "\r\n"
+                + "rdb_last_save_time:" + lastSaveTime + "\r\n"
+                + "rdb_last_bgsave_status:" + (lastSaveOk ? "ok" : "err") + "\r\n";
+    }
+
+    /**
+     * Reads the value of one record
+     * @param in The snapshot being read
+     * @param type The record's type byte
+     * @param limits Decides how a hash or sorted set is encoded
+     * @return The value
+     * @throws IOException Throws if the file cannot be read or the type is unknown
+     */
+    private static Object readValue(DataInputStream in, int type, EncodingLimits limits) throws IOException {
+        switch (type) {
+            case TYPE_STRING -> {
+                return IntegerValue.encode(CommandExecutor.stringValue(readBytes(in)));
+            }
+            case TYPE_LIST -> {
+                int elements = readLength(in);
+                RedisList list = new RedisList();
+                for (int i = 0; i < elements; i++) {
+                    list.pushLast(readString(in));
+                }
+                return list;
+            }
+            case TYPE_HASH -> {
+                int fields = readLength(in);
+                RedisHash hash = new RedisHash();
+                for (int i = 0; i < fields; i++) {
+                    hash.put(readString(in), readString(in), limits);
+                }
+                return hash;
+            }
+            case TYPE_ZSET -> {
+                int members = readLength(in);
+                RedisSortedSet zset = new RedisSortedSet();
+                for (int i = 0; i < members; i++) {
+                    zset.add(readString(in), in.readDouble(), limits);
+                }
+                return zset;
+            }
+            default -> throw new IOException("Unknown snapshot record type " + type);
+        }
+    }
+
+    /**
+     * Writes one key to the snapshot unless it is a marker for a key that should not be in it
+     * @param out The snapshot being written
+     * @param key The key
+     * @param image The value and expiry time the key had when the snapshot started
+     * @throws IOException Throws if the file cannot be written
+     */
+    private static void writeEntry(DataOutputStream out, String key, Object image) throws IOException {
+        if (!(image instanceof PreImage(Object value, long deadline)) || value == null) {
+            return;
+        }
+        if (deadline >= 0) {
+            out.writeByte(OPCODE_EXPIRETIME_MS);
+            out.writeLong(deadline);
+        }
+        out.writeByte(typeOf(value));
+        writeString(out, key);
+        writeValue(out, value);
+    }
+
+    /**
+     * Gets the record type byte of a value
+     * @param value The value
+     * @return The type byte
+     */
+    private static int typeOf(Object value) {
+        if (value instanceof RedisHash) {
+            return TYPE_HASH;
+        }
+        if (value instanceof RedisList) {
+            return TYPE_LIST;
+        }
+        if (value instanceof RedisSortedSet) {
+            return TYPE_ZSET;
+        }
+        return TYPE_STRING;
+    }
+
+    /**
+     * Writes a value in the form its type byte says readValue expects
+     * @param out The snapshot being written
+     * @param value The value
+     * @throws IOException Throws if the file cannot be written
+     */
+    private static void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value instanceof RedisHash hash) {
+            writeLength(out, hash.size());
+            for (Object element : hash.toArray()) {
+                writeString(out, (String) element);
+            }
+        } else if (value instanceof RedisList list) {
+            writeLength(out, list.size());
+            for (Object element : list.toArray()) {
+                writeString(out, (String) element);
+            }
+        } else if (value instanceof RedisSortedSet zset) {
+            writeLength(out, zset.size());
+            for (RedisSortedSet.Entry entry : zset.rangeByRank(0, zset.size() - 1, false)) {
+                writeString(out, entry.member());
+                out.writeDouble(entry.score());
+            }
+        } else if (value instanceof byte[] bytes) {
+            writeLength(out, bytes.length);
+            out.write(bytes);
+        } else {
+            writeString(out, value.toString());
+        }
+    }
+
+    /**
+     * Serializes one value on its own, as DUMP does, in the record format of the snapshot followed
+     * by the format version and a checksum. Called with the value's key locked.
+     * @param value The value
+     * @return The serialized value
+     */
+    public static byte[] serializeValue(Object value) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            CheckedOutputStream checked = new CheckedOutputStream(bytes, new CRC32C());
+            DataOutputStream out = new DataOutputStream(checked);
+            out.writeByte(typeOf(value));
+            writeValue(out, value);
+            out.writeInt(VERSION);
+            out.flush();
+            out.writeInt((int) checked.getChecksum().getValue());
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Reads back a value serialized by serializeValue, as RESTORE does
+     * @param payload The serialized value
+     * @param limits Decides how a hash or sorted set is encoded
+     * @return The value
+     * @throws IOException Throws if the payload is truncated, corrupt or of an unknown version
+     */
+    public static Object deserializeValue(byte[] payload, EncodingLimits limits) throws IOException {
+        // the version and checksum trail the value, so they are checked before it is read
+        if (payload.length < 9) {
+            throw new IOException("Payload too short");
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(payload, 0, payload.length - 4);
+        DataInputStream trailer = new DataInputStream(new ByteArrayInputStream(payload, payload.length - 8, 8));
+        int version = trailer.readInt();
+        if (version < MIN_VERSION || version > VERSION || trailer.readInt() != (int) crc.getValue()) {
+            throw new IOException("Payload version or checksum are wrong");
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload, 0, payload.length - 8));
+        Object value = readValue(in, in.readUnsignedByte(), limits);
+        if (in.available() > 0) {
+            throw new IOException("Trailing bytes after the value");
+        }
+        return value;
+    }
+
+    /**
+     * Writes a string as its UTF-8 length followed by its bytes
+     * @param out The snapshot being written
+     * @param value The string to write
+     * @throws IOException Throws if the file cannot be written
+     */
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeLength(out, bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads a string written by writeString
+     * @param in The snapshot being read
+     * @return The string
+     * @throws IOException Throws if the file cannot be read or the length is invalid
+     */
+    private static String readString(DataInputStream in) throws IOException {
+        return new String(readBytes(in), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads a string written by writeString, or a byte array value, as the bytes stored
+     * @param in The snapshot being read
+     * @return The bytes
+     * @throws IOException Throws if the file cannot be read or the length is invalid
+     */
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[readLength(in)];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    /**
+     * Writes a length as a varint, so the short keys and values that make up most data take one byte
+     * @param out The stream to write to
+     * @param length The non-negative length
+     * @throws IOException Throws if the stream cannot be written
+     */
+    private static void writeLength(OutputStream out, int length) throws IOException {
+        while ((length & ~0x7F) != 0) {
+            out.write((length & 0x7F) | 0x80);
+            length >>>= 7;
+        }
+        out.write(length);
+    }
+
+    /**
+     * Reads a varint length written by writeLength
+     * @param in The stream to read from
+     * @return The length
+     * @throws IOException Throws if the stream ends or the length is out of range
+     */
+    private static int readLength(DataInputStream in) throws IOException {
+        int length = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.readUnsignedByte();
+            length |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                if (length < 0) {
+                    break;
+                }
+                return length;
+            }
+        }
+        throw new IOException("Invalid length in snapshot");
+    }
+}
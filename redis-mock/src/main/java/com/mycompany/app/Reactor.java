@@ -0,0 +1,251 @@
+package com.mycompany.app;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+public class Reactor implements Runnable {
+
+    private final Selector selector;
+    private final CommandDispatcher commandExecutor;
+    private final Queue<SocketChannel> pendingChannels = new ConcurrentLinkedQueue<>();
+    // connections whose blocked command has its reply, queued by whichever thread completed it
+    private final Queue<SelectionKey> unblocked = new ConcurrentLinkedQueue<>();
+    // subscribed connections with newly published messages, queued by the publishing thread
+    private final Queue<NioConnection> pushed = new ConcurrentLinkedQueue<>();
+    private final PubSub pubSub;
+    private volatile boolean running = true;
+
+    /**
+     * Creates an event loop that services the reads and writes of many connections on one thread
+     * @param commandExecutor The executor complete commands are handed to
+     * @throws IOException Throws if a selector cannot be opened
+     */
+    public Reactor(CommandDispatcher commandExecutor) throws IOException {
+        this(commandExecutor, new PubSub());
+    }
+
+    /**
+     * Creates an event loop that services the reads and writes of many connections on one thread
+     * @param commandExecutor The executor complete commands are handed to
+     * @param pubSub The channels shared by every connection of the server
+     * @throws IOException Throws if a selector cannot be opened
+     */
+    public Reactor(CommandDispatcher commandExecutor, PubSub pubSub) throws IOException {
+        this.selector = Selector.open();
+        this.commandExecutor = commandExecutor;
+        this.pubSub = pubSub;
+    }
+
+    /**
+     * Hands a newly accepted channel to this reactor, it is registered on the reactor's own thread
+     * @param channel The accepted client channel
+     */
+    public void register(SocketChannel channel) {
+        pendingChannels.add(channel);
+        selector.wakeup();
+    }
+
+    /**
+     * Stops the event loop and closes every connection it owns
+     */
+    public void stop() {
+        running = false;
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (running) {
+                selector.select();
+                registerPendingChannels();
+                resumeUnblocked();
+                flushPushed();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    handle(key);
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            closeAll();
+        }
+    }
+
+    /**
+     * Registers the channels handed over since the last loop iteration for read readiness
+     */
+    private void registerPendingChannels() {
+        SocketChannel channel;
+        while ((channel = pendingChannels.poll()) != null) {
+            try {
+                channel.configureBlocking(false);
+                channel.register(selector, SelectionKey.OP_READ, NioConnection.open(channel, pubSub, this::onPushed));
+            } catch (IOException e) {
+                closeQuietly(channel);
+            }
+        }
+    }
+
+    /**
+     * Services a ready connection: reads and executes commands, then writes back as many replies
+     * as the socket accepts, waiting for write readiness if the rest does not fit
+     * @param key The selection key of the ready connection
+     */
+    private void handle(SelectionKey key) {
+        NioConnection connection = (NioConnection) key.attachment();
+        try {
+            if (key.isReadable()) {
+                if (connection.read() < 0) {
+                    key.cancel();
+                    connection.close();
+                    return;
+                }
+                if (connection.processCommands(commandExecutor)) {
+                    watchBlocked(key, connection);
+                }
+            }
+            flush(key, connection);
+        } catch (IOException e) {
+            key.cancel();
+            connection.close();
+        } catch (RuntimeException e) {
+            drop(key, connection, e);
+        }
+    }
+
+    /**
+     * Closes a connection whose command failed with an unexpected exception, so a bug hit by one
+     * client ends only that client's connection rather than the reactor thread serving every other one
+     * @param key The selection key of the connection
+     * @param connection The connection
+     * @param e The exception
+     */
+    private static void drop(SelectionKey key, NioConnection connection, RuntimeException e) {
+        e.printStackTrace();
+        key.cancel();
+        connection.close();
+    }
+
+    /**
+     * Arranges for a connection whose command blocked to be resumed on this reactor's thread once
+     * the reply is ready. No thread waits for it meanwhile.
+     * @param key The selection key of the connection
+     * @param connection The blocked connection
+     */
+    private void watchBlocked(SelectionKey key, NioConnection connection) {
+        connection.getBlockedReply().onComplete(() -> {
+            unblocked.add(key);
+            selector.wakeup();
+        });
+    }
+
+    /**
+     * Sends the replies of the blocked commands that have completed since the last loop iteration
+     * and runs the commands their clients sent after them
+     */
+    private void resumeUnblocked() {
+        SelectionKey key;
+        while ((key = unblocked.poll()) != null) {
+            if (!key.isValid()) {
+                continue;
+            }
+            NioConnection connection = (NioConnection) key.attachment();
+            try {
+                connection.unblock();
+                if (connection.processCommands(commandExecutor)) {
+                    watchBlocked(key, connection);
+                }
+                flush(key, connection);
+            } catch (IOException e) {
+                key.cancel();
+                connection.close();
+            } catch (RuntimeException e) {
+                drop(key, connection, e);
+            }
+        }
+    }
+
+    /**
+     * Hands a connection with newly published messages to this reactor's thread to send
+     * @param connection The subscribed connection
+     */
+    private void onPushed(NioConnection connection) {
+        pushed.add(connection);
+        selector.wakeup();
+    }
+
+    /**
+     * Sends the messages published to subscribed connections since the last loop iteration, closing
+     * any connection that has fallen past its output limit
+     */
+    private void flushPushed() {
+        NioConnection connection;
+        while ((connection = pushed.poll()) != null) {
+            SelectionKey key = connection.getChannel().keyFor(selector);
+            if (key == null || !key.isValid()) {
+                continue;
+            }
+            try {
+                flush(key, connection);
+            } catch (IOException e) {
+                key.cancel();
+                connection.close();
+            } catch (RuntimeException e) {
+                drop(key, connection, e);
+            }
+        }
+    }
+
+    /**
+     * Writes as many pending replies as the socket accepts, waiting for write readiness if the rest
+     * does not fit
+     * @param key The selection key of the connection
+     * @param connection The connection
+     * @throws IOException Throws if the channel cannot be written
+     */
+    private static void flush(SelectionKey key, NioConnection connection) throws IOException {
+        if (connection.flush()) {
+            key.interestOps(SelectionKey.OP_READ);
+        } else {
+            key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
+    }
+
+    /**
+     * Closes the selector and every connection registered with it
+     */
+    private void closeAll() {
+        for (SelectionKey key : selector.keys()) {
+            if (key.attachment() instanceof NioConnection connection) {
+                connection.close();
+            }
+        }
+        pendingChannels.forEach(Reactor::closeQuietly);
+        try {
+            selector.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Closes a channel that never made it onto the selector
+     * @param channel The channel to close
+     */
+    private static void closeQuietly(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+            // the connection is gone either way
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package com.mycompany.app;
+
+import java.util.Arrays;
+import java.util.function.BiConsumer;
+
+public final class RedisHash implements CollectionValue {
+
+    private static final String LISTPACK = "listpack";
+    private static final String HASHTABLE = "hashtable";
+    private static final long OBJECT_OVERHEAD = 32;
+    private static final long ARRAY_HEADER = 16;
+    private static final long REFERENCE_SIZE = 4;
+    private static final long HASHMAP_OVERHEAD = 48;
+    private static final long HASHMAP_NODE = 32;
+
+    // small hashes: fields and values side by side in one array, searched linearly
+    private String[] packed;
+    private int packedLength;
+    // large hashes, once converted; never converted back
+    private Dict<String> table;
+    // estimated size of every field and value string
+    private long contentSize;
+
+    /**
+     * Creates an empty hash in the packed encoding. A hash is not thread safe: it is changed and
+     * read under its key's lock.
+     */
+    public RedisHash() {
+        this.packed = new String[8];
+    }
+
+    /**
+     * Gets the value of a field
+     * @param field The field
+     * @return The value, null if the hash has no such field
+     */
+    public String get(String field) {
+        if (table != null) {
+            return table.get(field);
+        }
+        int index = indexOf(field);
+        return index < 0 ? null : packed[index + 1];
+    }
+
+    /**
+     * Sets a field, converting the hash to a hashtable if it no longer fits the packed limits
+     * @param field The field
+     * @param value The value
+     * @param limits The limits on packed hashes
+     * @return True if the field is new
+     */
+    public boolean put(String field, String value, EncodingLimits limits) {
+        if (table == null && (field.length() > limits.getHashMaxListpackValue()
+                || value.length() > limits.getHashMaxListpackValue())) {
+            convert();
+        }
+        if (table != null) {
+            String previous = table.put(field, value);
+            if (previous == null) {
+                contentSize += MemoryEstimator.sizeOf(field) + MemoryEstimator.sizeOf(value);
+                return true;
+            }
+            contentSize += MemoryEstimator.sizeOf(value) - MemoryEstimator.sizeOf(previous);
+            return false;
+        }
+        int index = indexOf(field);
+        if (index >= 0) {
+            contentSize += MemoryEstimator.sizeOf(value) - MemoryEstimator.sizeOf(packed[index + 1]);
+            packed[index + 1] = value;
+            return false;
+        }
+        if (packedLength / 2 >= limits.getHashMaxListpackEntries()) {
+            convert();
+            table.put(field, value);
+        } else {
+            if (packedLength == packed.length) {
+                packed = Arrays.copyOf(packed, packed.length * 2);
+            }
+            packed[packedLength++] = field;
+            packed[packedLength++] = value;
+        }
+        contentSize += MemoryEstimator.sizeOf(field) + MemoryEstimator.sizeOf(value);
+        return true;
+    }
+
+    /**
+     * Removes a field
+     * @param field The field
+     * @return True if the hash had the field
+     */
+    public boolean remove(String field) {
+        String value;
+        if (table != null) {
+            value = table.remove(field);
+            if (value == null) {
+                return false;
+            }
+        } else {
+            int index = indexOf(field);
+            if (index < 0) {
+                return false;
+            }
+            value = packed[index + 1];
+            // keep the array dense by moving the last pair into the gap
+            packed[index] = packed[packedLength - 2];
+            packed[index + 1] = packed[packedLength - 1];
+            packed[--packedLength] = null;
+            packed[--packedLength] = null;
+        }
+        contentSize -= MemoryEstimator.sizeOf(field) + MemoryEstimator.sizeOf(value);
+        return true;
+    }
+
+    /**
+     * Calls an action for every field and value
+     * @param action The action
+     */
+    public void forEach(BiConsumer<String, String> action) {
+        if (table != null) {
+            table.forEach(action);
+            return;
+        }
+        for (int i = 0; i < packedLength; i += 2) {
+            action.accept(packed[i], packed[i + 1]);
+        }
+    }
+
+    /**
+     * Walks some of the fields, resuming from a cursor that holds no state (HSCAN). A packed hash
+     * is small enough to be walked whole in one call.
+     * @param cursor 0 to start, or the cursor the previous call returned
+     * @param count Roughly how many fields to visit
+     * @param action Called with each field and its value
+     * @return The cursor to resume from, 0 once every field has been visited
+     */
+    public long scan(long cursor, int count, BiConsumer<String, String> action) {
+        if (table != null) {
+            return table.scan(cursor, count, action);
+        }
+        forEach(action);
+        return 0;
+    }
+
+    /**
+     * Lists the fields and values in the reply format of HGETALL
+     * @return Each field followed by its value
+     */
+    public Object[] toArray() {
+        if (table == null) {
+            return Arrays.copyOf(packed, packedLength, Object[].class);
+        }
+        Object[] reply = new Object[table.size() * 2];
+        int[] i = new int[1];
+        table.forEach((field, value) -> {
+            reply[i[0]++] = field;
+            reply[i[0]++] = value;
+        });
+        return reply;
+    }
+
+    /**
+     * Reports whether the hash is still in the packed encoding
+     * @return True while packed
+     */
+    public boolean isPacked() {
+        return table == null;
+    }
+
+    @Override
+    public int size() {
+        return table != null ? table.size() : packedLength / 2;
+    }
+
+    @Override
+    public String encoding() {
+        return table == null ? LISTPACK : HASHTABLE;
+    }
+
+    @Override
+    public long estimatedSize() {
+        if (table == null) {
+            return OBJECT_OVERHEAD + MemoryEstimator.align(ARRAY_HEADER + REFERENCE_SIZE * packed.length) + contentSize;
+        }
+        int buckets = Integer.highestOneBit(Math.max(table.size() * 4 / 3, 1)) << 1;
+        return OBJECT_OVERHEAD + HASHMAP_OVERHEAD + MemoryEstimator.align(ARRAY_HEADER + REFERENCE_SIZE * buckets)
+                + HASHMAP_NODE * table.size() + contentSize;
+    }
+
+    @Override
+    public RedisHash copy() {
+        RedisHash copy = new RedisHash();
+        copy.packed = Arrays.copyOf(packed, Math.max(packedLength, 2));
+        copy.packedLength = packedLength;
+        copy.table = table == null ? null : table.copy();
+        copy.contentSize = contentSize;
+        return copy;
+    }
+
+    /**
+     * Finds a field in the packed array
+     * @param field The field
+     * @return The index of the field, its value follows it, or -1 if absent
+     */
+    private int indexOf(String field) {
+        for (int i = 0; i < packedLength; i += 2) {
+            if (packed[i].equals(field)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Moves the fields from the packed array into a hashtable
+     */
+    private void convert() {
+        table = new Dict<>(packedLength);
+        for (int i = 0; i < packedLength; i += 2) {
+            table.put(packed[i], packed[i + 1]);
+        }
+        packed = new String[0];
+        packedLength = 0;
+    }
+}
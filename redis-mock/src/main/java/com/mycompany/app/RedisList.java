@@ -0,0 +1,336 @@
+package com.mycompany.app;
+
+import java.util.Arrays;
+
+public final class RedisList implements CollectionValue {
+
+    private static final String LISTPACK = "listpack";
+    private static final String QUICKLIST = "quicklist";
+    // a chunk starts small and doubles until it holds this many elements, then a new chunk is linked on
+    static final int CHUNK_SIZE = 128;
+    private static final int INITIAL_CHUNK_CAPACITY = 8;
+    private static final long OBJECT_OVERHEAD = 32;
+    private static final long CHUNK_OVERHEAD = 32;
+    private static final long ARRAY_HEADER = 16;
+    private static final long REFERENCE_SIZE = 4;
+
+    /**
+     * A run of up to CHUNK_SIZE elements held in items[start] to items[start + count - 1], with
+     * room left at either end so pushes and pops at that end do not shift anything
+     */
+    private static final class Chunk {
+
+        private String[] items;
+        private int start;
+        private int count;
+        private Chunk previous;
+        private Chunk next;
+
+        /**
+         * Creates an empty chunk
+         * @param atEnd True to fill it from the end backwards, for pushes at the head of the list
+         */
+        private Chunk(boolean atEnd) {
+            this.items = new String[INITIAL_CHUNK_CAPACITY];
+            this.start = atEnd ? INITIAL_CHUNK_CAPACITY : 0;
+        }
+    }
+
+    private Chunk head;
+    private Chunk tail;
+    private int size;
+    private int chunks;
+    // total length of the chunks' arrays, for the memory estimate
+    private long capacity;
+    // estimated size of every element string
+    private long contentSize;
+
+    /**
+     * Creates an empty list, stored as a chain of chunks like Redis's quicklist so a long list
+     * costs one array slot per element rather than one linked node. A list is not thread safe: it
+     * is changed and read under its key's lock.
+     */
+    public RedisList() {
+    }
+
+    /**
+     * Adds an element at the head of the list
+     * @param element The element
+     */
+    public void pushFirst(String element) {
+        if (head == null || head.start == 0) {
+            if (head != null && head.items.length < CHUNK_SIZE) {
+                growFront(head);
+            } else {
+                Chunk chunk = newChunk(true);
+                chunk.next = head;
+                if (head != null) {
+                    head.previous = chunk;
+                } else {
+                    tail = chunk;
+                }
+                head = chunk;
+            }
+        }
+        head.items[--head.start] = element;
+        head.count++;
+        size++;
+        contentSize += MemoryEstimator.sizeOf(element);
+    }
+
+    /**
+     * Adds an element at the tail of the list
+     * @param element The element
+     */
+    public void pushLast(String element) {
+        if (tail == null || tail.start + tail.count == tail.items.length) {
+            if (tail != null && tail.items.length < CHUNK_SIZE) {
+                growBack(tail);
+            } else {
+                Chunk chunk = newChunk(false);
+                chunk.previous = tail;
+                if (tail != null) {
+                    tail.next = chunk;
+                } else {
+                    head = chunk;
+                }
+                tail = chunk;
+            }
+        }
+        tail.items[tail.start + tail.count] = element;
+        tail.count++;
+        size++;
+        contentSize += MemoryEstimator.sizeOf(element);
+    }
+
+    /**
+     * Gets the element at the head of the list without removing it
+     * @return The element, null if the list is empty
+     */
+    public String peekFirst() {
+        return head == null ? null : head.items[head.start];
+    }
+
+    /**
+     * Gets the element at the tail of the list without removing it
+     * @return The element, null if the list is empty
+     */
+    public String peekLast() {
+        return tail == null ? null : tail.items[tail.start + tail.count - 1];
+    }
+
+    /**
+     * Removes the element at the head of the list
+     * @return The element, null if the list is empty
+     */
+    public String popFirst() {
+        if (head == null) {
+            return null;
+        }
+        String element = head.items[head.start];
+        head.items[head.start++] = null;
+        if (--head.count == 0) {
+            unlink(head);
+        }
+        size--;
+        contentSize -= MemoryEstimator.sizeOf(element);
+        return element;
+    }
+
+    /**
+     * Removes the element at the tail of the list
+     * @return The element, null if the list is empty
+     */
+    public String popLast() {
+        if (tail == null) {
+            return null;
+        }
+        int index = tail.start + tail.count - 1;
+        String element = tail.items[index];
+        tail.items[index] = null;
+        if (--tail.count == 0) {
+            unlink(tail);
+        }
+        size--;
+        contentSize -= MemoryEstimator.sizeOf(element);
+        return element;
+    }
+
+    /**
+     * Lists the elements between two indexes, walking from whichever end is nearer
+     * @param start The first index, at least 0
+     * @param stop The last index, at least start and below the size
+     * @return The elements in order
+     */
+    public Object[] range(long start, long stop) {
+        Object[] range = new Object[(int) (stop - start + 1)];
+        Chunk chunk;
+        long offset;
+        if (start <= size - 1 - stop) {
+            chunk = head;
+            offset = start;
+            while (offset >= chunk.count) {
+                offset -= chunk.count;
+                chunk = chunk.next;
+            }
+        } else {
+            chunk = tail;
+            long fromEnd = size - 1 - start;
+            while (fromEnd >= chunk.count) {
+                fromEnd -= chunk.count;
+                chunk = chunk.previous;
+            }
+            offset = chunk.count - 1 - fromEnd;
+        }
+        int filled = 0;
+        while (filled < range.length) {
+            int take = (int) Math.min(chunk.count - offset, range.length - filled);
+            System.arraycopy(chunk.items, chunk.start + (int) offset, range, filled, take);
+            filled += take;
+            offset = 0;
+            chunk = chunk.next;
+        }
+        return range;
+    }
+
+    /**
+     * Keeps only the elements between two indexes, dropping whole chunks from each end first
+     * @param start The first index kept, at least 0
+     * @param stop The last index kept, below the size; the list is emptied if it is below start
+     */
+    public void trim(long start, long stop) {
+        long dropLast = stop < start ? size - start : size - 1 - stop;
+        long dropFirst = start;
+        while (dropFirst > 0 && head != null) {
+            if (head.count <= dropFirst) {
+                dropFirst -= head.count;
+                removeContent(head, head.start, head.count);
+                size -= head.count;
+                unlink(head);
+            } else {
+                removeContent(head, head.start, (int) dropFirst);
+                Arrays.fill(head.items, head.start, head.start + (int) dropFirst, null);
+                head.start += (int) dropFirst;
+                head.count -= (int) dropFirst;
+                size -= (int) dropFirst;
+                dropFirst = 0;
+            }
+        }
+        while (dropLast > 0 && tail != null) {
+            if (tail.count <= dropLast) {
+                dropLast -= tail.count;
+                removeContent(tail, tail.start, tail.count);
+                size -= tail.count;
+                unlink(tail);
+            } else {
+                int from = tail.start + tail.count - (int) dropLast;
+                removeContent(tail, from, (int) dropLast);
+                Arrays.fill(tail.items, from, from + (int) dropLast, null);
+                tail.count -= (int) dropLast;
+                size -= (int) dropLast;
+                dropLast = 0;
+            }
+        }
+    }
+
+    /**
+     * Gets every element in order
+     * @return The elements
+     */
+    public Object[] toArray() {
+        return size == 0 ? new Object[0] : range(0, size - 1);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public String encoding() {
+        return chunks <= 1 ? LISTPACK : QUICKLIST;
+    }
+
+    @Override
+    public long estimatedSize() {
+        return OBJECT_OVERHEAD + chunks * (CHUNK_OVERHEAD + ARRAY_HEADER) + MemoryEstimator.align(REFERENCE_SIZE * capacity)
+                + contentSize;
+    }
+
+    @Override
+    public RedisList copy() {
+        RedisList copy = new RedisList();
+        for (Chunk chunk = head; chunk != null; chunk = chunk.next) {
+            for (int i = chunk.start; i < chunk.start + chunk.count; i++) {
+                copy.pushLast(chunk.items[i]);
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * Creates a chunk and counts it towards the memory estimate
+     * @param atEnd True to fill it from the end backwards
+     * @return The chunk, not yet linked in
+     */
+    private Chunk newChunk(boolean atEnd) {
+        chunks++;
+        capacity += INITIAL_CHUNK_CAPACITY;
+        return new Chunk(atEnd);
+    }
+
+    /**
+     * Doubles a chunk's array, keeping its elements at the end so there is room at the front
+     * @param chunk The head chunk, full at the front and smaller than CHUNK_SIZE
+     */
+    private void growFront(Chunk chunk) {
+        int length = Math.min(chunk.items.length * 2, CHUNK_SIZE);
+        String[] items = new String[length];
+        int shift = length - chunk.items.length;
+        System.arraycopy(chunk.items, chunk.start, items, chunk.start + shift, chunk.count);
+        capacity += shift;
+        chunk.items = items;
+        chunk.start += shift;
+    }
+
+    /**
+     * Doubles a chunk's array, keeping its elements where they are so there is room at the back
+     * @param chunk The tail chunk, full at the back and smaller than CHUNK_SIZE
+     */
+    private void growBack(Chunk chunk) {
+        int length = Math.min(chunk.items.length * 2, CHUNK_SIZE);
+        capacity += length - chunk.items.length;
+        chunk.items = Arrays.copyOf(chunk.items, length);
+    }
+
+    /**
+     * Unlinks an empty or discarded chunk from the chain
+     * @param chunk The chunk
+     */
+    private void unlink(Chunk chunk) {
+        if (chunk.previous != null) {
+            chunk.previous.next = chunk.next;
+        } else {
+            head = chunk.next;
+        }
+        if (chunk.next != null) {
+            chunk.next.previous = chunk.previous;
+        } else {
+            tail = chunk.previous;
+        }
+        chunks--;
+        capacity -= chunk.items.length;
+    }
+
+    /**
+     * Takes elements that are about to be dropped off the content size
+     * @param chunk The chunk holding them
+     * @param from The index of the first in the chunk's array
+     * @param count How many there are
+     */
+    private void removeContent(Chunk chunk, int from, int count) {
+        for (int i = from; i < from + count; i++) {
+            contentSize -= MemoryEstimator.sizeOf(chunk.items[i]);
+        }
+    }
+}
@@ -3,42 +3,264 @@ package com.mycompany.app;
 import java.io.IOException;
 import java.net.ServerSocket;
 import java.net.Socket;
-import java.util.List;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 public class RedisServer {
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 10;
+    private static final long ACTIVE_EXPIRE_PERIOD_MILLIS = 100;
+    // a quarter of each period, as in Redis's slow expire cycle
+    private static final long ACTIVE_EXPIRE_BUDGET_NANOS = TimeUnit.MILLISECONDS.toNanos(25);
+
+    private final ServerConfig config;
     private final CommandExecutor commandExecutor;
+    private final AofPersistence aofPersistence;
+    private final RdbPersistence rdbPersistence;
+    private final ShardedExecutor shardedExecutor;
+    private final CommandDispatcher dispatcher;
+    private final PubSub pubSub;
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final ScheduledExecutorService activeExpire;
+    private volatile ServerSocket serverSocket;
+    private volatile NioServer nioServer;
+    private volatile VirtualThreadServer virtualThreadServer;
+    private volatile int localPort;
 
     public RedisServer() {
-        AofPersistence aofPersistence = new AofPersistence("redis.aof");
-        this.commandExecutor = new CommandExecutor(new ConcurrentHashMap<>(), aofPersistence);
-        loadDataFromFile(aofPersistence);
+        this(new ServerConfig());
+    }
+
+    /**
+     * Creates a server and restores its data from the append only file, or from the snapshot if
+     * the append only file is empty. With shards configured the keyspace is split over shard
+     * threads, each with its own segment of both files. A server configured as a replica starts
+     * following its master once its own files are loaded, and a cluster node serves only the slots
+     * it is given once it is running.
+     * @param config The port, connection handling mode and file locations to use
+     */
+    public RedisServer(ServerConfig config) {
+        this.config = config;
+        this.pubSub = new PubSub(config.getPubSubOutputLimit());
+        if (config.getShards() > 0) {
+            if (config.getReplicaOfHost() != null) {
+                throw new IllegalArgumentException("replicaof is not supported with shards");
+            }
+            if (config.isClusterEnabled()) {
+                throw new IllegalArgumentException("cluster-enabled is not supported with shards");
+            }
+            this.shardedExecutor = new ShardedExecutor(config);
+            this.dispatcher = shardedExecutor;
+            this.commandExecutor = null;
+            this.aofPersistence = null;
+            this.rdbPersistence = null;
+            this.activeExpire = null;
+            shardedExecutor.load();
+            return;
+        }
+        this.shardedExecutor = null;
+        this.aofPersistence = new AofPersistence(config.getAofFile(), config.getAppendFsync());
+        aofPersistence.setAutoRewrite(config.getAutoAofRewritePercentage(), config.getAutoAofRewriteMinSize());
+        aofPersistence.setLoadTruncated(config.isAofLoadTruncated());
+        aofPersistence.setWriterQueueLimit(config.getAofWriterQueueLimit());
+        this.rdbPersistence = new RdbPersistence(config.getRdbFile());
+        Keyspace dataStore = switch (config.getKeyspace()) {
+            case HEAP -> new HeapKeyspace();
+            case OFFHEAP -> new OffHeapKeyspace();
+        };
+        this.commandExecutor = new CommandExecutor(dataStore, aofPersistence, rdbPersistence);
+        this.dispatcher = commandExecutor;
+        commandExecutor.getEncodingLimits()
+                .setHashMaxListpackEntries(config.getHashMaxListpackEntries())
+                .setHashMaxListpackValue(config.getHashMaxListpackValue())
+                .setZsetMaxListpackEntries(config.getZsetMaxListpackEntries())
+                .setZsetMaxListpackValue(config.getZsetMaxListpackValue());
+        commandExecutor.setMaxMemory(config.getMaxMemory(), config.getMaxMemoryPolicy(), config.getMaxMemorySamples());
+        commandExecutor.getReplication().setBacklogSize(config.getReplBacklogSize());
+        commandExecutor.getReplication().setReplicaOutputLimit(config.getReplicaOutputLimit());
+        commandExecutor.getCluster().setEnabled(config.isClusterEnabled());
+        loadDataFromFile(aofPersistence, dataStore);
+        if (config.getReplicaOfHost() != null) {
+            commandExecutor.getReplication().replicaOf(config.getReplicaOfHost(), config.getReplicaOfPort());
+        }
+        this.activeExpire = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "active-expire");
+            thread.setDaemon(true);
+            return thread;
+        });
+        activeExpire.scheduleWithFixedDelay(() -> commandExecutor.activeExpireCycle(ACTIVE_EXPIRE_BUDGET_NANOS),
+                ACTIVE_EXPIRE_PERIOD_MILLIS, ACTIVE_EXPIRE_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
     }
 
-    private void loadDataFromFile(AofPersistence aofPersistence) {
-        List<Object[]> commands = aofPersistence.loadData();
-        for (Object[] command : commands) {
-            commandExecutor.execute(command);
+    /**
+     * Restores the database at startup. As in Redis the append only file wins when it has anything
+     * in it, since it holds every write; the snapshot is only read when there is no AOF to replay.
+     * @param aofPersistence The append only file
+     * @param dataStore The database to fill
+     */
+    private void loadDataFromFile(AofPersistence aofPersistence, Keyspace dataStore) {
+        if (!aofPersistence.hasData()) {
+            if (rdbPersistence.load(dataStore, commandExecutor.getExpires(), commandExecutor.getEncodingLimits()) > 0) {
+                commandExecutor.recalculateUsedMemory();
+                // the AOF must hold the snapshot's keys too, or the next restart would replay the AOF alone
+                commandExecutor.rewriteAof();
+            }
+            return;
+        }
+        commandExecutor.setLoading(true);
+        try {
+            aofPersistence.replay(commandExecutor, config.getAofLoadThreads());
+        } finally {
+            commandExecutor.setLoading(false);
         }
     }
 
     public static void main(String[] args) {
-        RedisServer server = new RedisServer();
+        RedisServer server = new RedisServer(ServerConfig.fromArgs(args));
         server.start();
     }
 
     /**
-     * Starts the server on port 6379, creating a new thread as each new client connects
+     * Starts the server in the configured mode and serves clients until stop is called
      */
     public void start() {
-        try (ServerSocket serverSocket = new ServerSocket(6379)) {
-            System.out.println("Redis mock server started on port 6379");
-            while (true) {
+        switch (config.getMode()) {
+            case BLOCKING -> startBlocking();
+            case NIO -> startNio();
+            case VIRTUAL -> startVirtual();
+        }
+    }
+
+    /**
+     * Waits until the server is accepting connections
+     * @param timeout How long to wait
+     * @param unit The unit of the timeout
+     * @return The port the server is listening on
+     * @throws InterruptedException Throws if interrupted while waiting
+     * @throws IllegalStateException Throws if the server did not start in time
+     */
+    public int awaitStarted(long timeout, TimeUnit unit) throws InterruptedException {
+        if (!started.await(timeout, unit)) {
+            throw new IllegalStateException("Server did not start within " + timeout + " " + unit);
+        }
+        return localPort;
+    }
+
+    /**
+     * Gets the cluster state of the server
+     * @return The cluster state, null with shards, which cannot be cluster nodes
+     */
+    public Cluster getCluster() {
+        return commandExecutor == null ? null : commandExecutor.getCluster();
+    }
+
+    /**
+     * Gets the replication state of the server
+     * @return The replication state, null with shards, which do not replicate
+     */
+    public Replication getReplication() {
+        return commandExecutor == null ? null : commandExecutor.getReplication();
+    }
+
+    /**
+     * Stops accepting connections, causing start to return. In virtual thread mode commands already
+     * being executed are allowed to finish first. Active expiry stops, or the shard threads once
+     * their queues are empty, and queued AOF writes are flushed to disk.
+     */
+    public void stop() {
+        try {
+            if (serverSocket != null) {
+                serverSocket.close();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        if (nioServer != null) {
+            nioServer.stop();
+        }
+        if (virtualThreadServer != null) {
+            try {
+                virtualThreadServer.stop(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (shardedExecutor != null) {
+            shardedExecutor.stop();
+            return;
+        }
+        commandExecutor.getReplication().stop();
+        activeExpire.shutdownNow();
+        aofPersistence.close();
+    }
+
+    /**
+     * Listens on the configured port, creating a new thread as each new client connects
+     */
+    private void startBlocking() {
+        try (ServerSocket serverSocket = new ServerSocket(config.getPort())) {
+            this.serverSocket = serverSocket;
+            announce(serverSocket.getLocalPort());
+            while (!serverSocket.isClosed()) {
                 Socket clientSocket = serverSocket.accept();
-                new Thread(new ClientHandler(clientSocket.getInputStream(), clientSocket.getOutputStream(), commandExecutor)).start();
-            } 
+                new Thread(() -> serve(clientSocket)).start();
+            }
+        } catch (IOException e) {
+            if (serverSocket == null || !serverSocket.isClosed()) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Runs the handler of one connection on the current thread and closes the connection once the client is done
+     * @param clientSocket The connected client
+     */
+    private void serve(Socket clientSocket) {
+        try (clientSocket) {
+            new ClientHandler(clientSocket.getInputStream(), clientSocket.getOutputStream(), dispatcher, pubSub).run();
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
+
+    /**
+     * Listens on the configured port, multiplexing every client over the configured number of reactor threads
+     */
+    private void startNio() {
+        try {
+            nioServer = new NioServer(config.getPort(), config.getIoThreads(), dispatcher, pubSub);
+            announce(nioServer.getLocalPort());
+            nioServer.start();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Listens on the configured port, serving each client on its own virtual thread up to the configured number of clients
+     */
+    private void startVirtual() {
+        try {
+            virtualThreadServer = new VirtualThreadServer(config.getPort(), config.getMaxClients(), dispatcher, pubSub);
+            announce(virtualThreadServer.getLocalPort());
+            virtualThreadServer.start();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Records the bound port and releases anyone waiting for the server to start
+     * @param port The port the server is listening on
+     */
+    private void announce(int port) {
+        this.localPort = port;
+        if (commandExecutor != null) {
+            commandExecutor.getCluster().setAddress(config.getClusterAnnounceIp(), port);
+        }
+        System.out.println("Redis mock server started on port " + port + " (" + config.getMode().name().toLowerCase() + " mode)");
+        started.countDown();
+    }
 }
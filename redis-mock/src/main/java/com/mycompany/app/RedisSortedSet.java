@@ -0,0 +1,377 @@
+package com.mycompany.app;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+public final class RedisSortedSet implements CollectionValue {
+
+    private static final String LISTPACK = "listpack";
+    private static final String SKIPLIST = "skiplist";
+    private static final long OBJECT_OVERHEAD = 32;
+    private static final long ARRAY_HEADER = 16;
+    private static final long REFERENCE_SIZE = 4;
+    private static final long HASHMAP_OVERHEAD = 48;
+    private static final long HASHMAP_NODE = 32;
+    private static final long BOXED_DOUBLE = 16;
+    // a node with the average 1.33 levels: the object, its link and span arrays
+    private static final long SKIPLIST_NODE = 88;
+
+    /**
+     * A member and its score, as returned by the range queries
+     * @param member The member
+     * @param score The score
+     */
+    public record Entry(String member, double score) {
+    }
+
+    /**
+     * A range of scores, each end inclusive or exclusive
+     * @param min The lowest score
+     * @param minExclusive True if min itself is not in the range
+     * @param max The highest score
+     * @param maxExclusive True if max itself is not in the range
+     */
+    public record ScoreRange(double min, boolean minExclusive, double max, boolean maxExclusive) {
+
+        /**
+         * Checks a score against the low end of the range
+         * @param score The score
+         * @return True if the score is not below the range
+         */
+        public boolean aboveMin(double score) {
+            return minExclusive ? score > min : score >= min;
+        }
+
+        /**
+         * Checks a score against the high end of the range
+         * @param score The score
+         * @return True if the score is not above the range
+         */
+        public boolean belowMax(double score) {
+            return maxExclusive ? score < max : score <= max;
+        }
+
+        /**
+         * Checks whether the range can hold any score
+         * @return True if it is empty
+         */
+        public boolean isEmpty() {
+            return min > max || (min == max && (minExclusive || maxExclusive));
+        }
+    }
+
+    // small sets: members and scores in two arrays sorted by score then member
+    private String[] members;
+    private double[] scores;
+    private int packedLength;
+    // large sets, once converted: the skiplist for order and ranks, the map for a member's score
+    private SkipList skipList;
+    private Dict<Double> dict;
+    // estimated size of every member string
+    private long contentSize;
+
+    /**
+     * Creates an empty sorted set in the packed encoding. A sorted set is not thread safe: it is
+     * changed and read under its key's lock.
+     */
+    public RedisSortedSet() {
+        this.members = new String[8];
+        this.scores = new double[8];
+    }
+
+    /**
+     * Gets the score of a member
+     * @param member The member
+     * @return The score, null if the set has no such member
+     */
+    public Double score(String member) {
+        if (dict != null) {
+            return dict.get(member);
+        }
+        int index = indexOf(member);
+        return index < 0 ? null : scores[index];
+    }
+
+    /**
+     * Adds a member or changes its score, converting the set to a skiplist if it no longer fits
+     * the packed limits
+     * @param member The member
+     * @param score The score
+     * @param limits The limits on packed sorted sets
+     * @return True if the member is new
+     */
+    public boolean add(String member, double score, EncodingLimits limits) {
+        if (dict == null && member.length() > limits.getZsetMaxListpackValue()) {
+            convert();
+        }
+        if (dict != null) {
+            Double previous = dict.put(member, score);
+            if (previous != null) {
+                if (previous != score) {
+                    skipList.delete(previous, member);
+                    skipList.insert(score, member);
+                }
+                return false;
+            }
+            skipList.insert(score, member);
+            contentSize += MemoryEstimator.sizeOf(member);
+            return true;
+        }
+        int index = indexOf(member);
+        if (index >= 0) {
+            if (scores[index] != score) {
+                removeAt(index);
+                insertPacked(member, score);
+            }
+            return false;
+        }
+        if (packedLength >= limits.getZsetMaxListpackEntries()) {
+            convert();
+            dict.put(member, score);
+            skipList.insert(score, member);
+        } else {
+            insertPacked(member, score);
+        }
+        contentSize += MemoryEstimator.sizeOf(member);
+        return true;
+    }
+
+    /**
+     * Removes a member
+     * @param member The member
+     * @return True if the set had the member
+     */
+    public boolean remove(String member) {
+        if (dict != null) {
+            Double score = dict.remove(member);
+            if (score == null) {
+                return false;
+            }
+            skipList.delete(score, member);
+        } else {
+            int index = indexOf(member);
+            if (index < 0) {
+                return false;
+            }
+            removeAt(index);
+        }
+        contentSize -= MemoryEstimator.sizeOf(member);
+        return true;
+    }
+
+    /**
+     * Finds the rank of a member, its position in score order
+     * @param member The member
+     * @param reverse True to count from the highest score
+     * @return The 0-based rank, or -1 if the set has no such member
+     */
+    public long rank(String member, boolean reverse) {
+        long rank;
+        if (dict != null) {
+            Double score = dict.get(member);
+            if (score == null) {
+                return -1;
+            }
+            rank = skipList.rank(score, member) - 1;
+        } else {
+            rank = indexOf(member);
+            if (rank < 0) {
+                return -1;
+            }
+        }
+        return reverse ? size() - 1 - rank : rank;
+    }
+
+    /**
+     * Lists the members between two ranks
+     * @param start The first rank, at least 0
+     * @param stop The last rank, at least start and below the size
+     * @param reverse True to rank from the highest score
+     * @return The members in rank order
+     */
+    public List<Entry> rangeByRank(long start, long stop, boolean reverse) {
+        List<Entry> range = new ArrayList<>((int) (stop - start + 1));
+        if (dict == null) {
+            for (long rank = start; rank <= stop; rank++) {
+                int index = (int) (reverse ? packedLength - 1 - rank : rank);
+                range.add(new Entry(members[index], scores[index]));
+            }
+            return range;
+        }
+        SkipList.Node node = skipList.byRank(reverse ? size() - start : start + 1);
+        for (long rank = start; rank <= stop && node != null; rank++) {
+            range.add(new Entry(node.getMember(), node.getScore()));
+            node = reverse ? node.previous() : node.next();
+        }
+        return range;
+    }
+
+    /**
+     * Lists the members whose scores are in a range
+     * @param range The score range
+     * @param reverse True to list from the highest score
+     * @param offset How many matching members to skip
+     * @param count The most members to list, negative for no limit
+     * @return The members in score order
+     */
+    public List<Entry> rangeByScore(ScoreRange range, boolean reverse, long offset, long count) {
+        List<Entry> matches = new ArrayList<>();
+        if (range.isEmpty()) {
+            return matches;
+        }
+        if (dict == null) {
+            for (int i = 0; i < packedLength && count != 0; i++) {
+                int index = reverse ? packedLength - 1 - i : i;
+                if (range.aboveMin(scores[index]) && range.belowMax(scores[index])) {
+                    if (offset > 0) {
+                        offset--;
+                    } else {
+                        matches.add(new Entry(members[index], scores[index]));
+                        count--;
+                    }
+                }
+            }
+            return matches;
+        }
+        SkipList.Node node = reverse ? skipList.lastInRange(range) : skipList.firstInRange(range);
+        for (; node != null && offset > 0; offset--) {
+            node = reverse ? node.previous() : node.next();
+        }
+        while (node != null && count != 0 && (reverse ? range.aboveMin(node.getScore()) : range.belowMax(node.getScore()))) {
+            matches.add(new Entry(node.getMember(), node.getScore()));
+            count--;
+            node = reverse ? node.previous() : node.next();
+        }
+        return matches;
+    }
+
+    /**
+     * Walks some of the members, resuming from a cursor that holds no state (ZSCAN). A packed set
+     * is small enough to be walked whole in one call.
+     * @param cursor 0 to start, or the cursor the previous call returned
+     * @param count Roughly how many members to visit
+     * @param action Called with each member and its score
+     * @return The cursor to resume from, 0 once every member has been visited
+     */
+    public long scan(long cursor, int count, BiConsumer<String, Double> action) {
+        if (dict != null) {
+            return dict.scan(cursor, count, action);
+        }
+        for (int i = 0; i < packedLength; i++) {
+            action.accept(members[i], scores[i]);
+        }
+        return 0;
+    }
+
+    /**
+     * Reports whether the set is still in the packed encoding
+     * @return True while packed
+     */
+    public boolean isPacked() {
+        return dict == null;
+    }
+
+    @Override
+    public int size() {
+        return dict != null ? dict.size() : packedLength;
+    }
+
+    @Override
+    public String encoding() {
+        return dict == null ? LISTPACK : SKIPLIST;
+    }
+
+    @Override
+    public long estimatedSize() {
+        if (dict == null) {
+            return OBJECT_OVERHEAD + MemoryEstimator.align(ARRAY_HEADER + REFERENCE_SIZE * members.length)
+                    + MemoryEstimator.align(ARRAY_HEADER + Double.BYTES * scores.length) + contentSize;
+        }
+        int buckets = Integer.highestOneBit(Math.max(dict.size() * 4 / 3, 1)) << 1;
+        return OBJECT_OVERHEAD + HASHMAP_OVERHEAD + MemoryEstimator.align(ARRAY_HEADER + REFERENCE_SIZE * buckets)
+                + (HASHMAP_NODE + BOXED_DOUBLE + SKIPLIST_NODE) * dict.size() + contentSize;
+    }
+
+    @Override
+    public RedisSortedSet copy() {
+        RedisSortedSet copy = new RedisSortedSet();
+        if (dict == null) {
+            copy.members = Arrays.copyOf(members, Math.max(packedLength, 1));
+            copy.scores = Arrays.copyOf(scores, Math.max(packedLength, 1));
+            copy.packedLength = packedLength;
+        } else {
+            copy.dict = dict.copy();
+            copy.skipList = new SkipList();
+            for (SkipList.Node node = skipList.first(); node != null; node = node.next()) {
+                copy.skipList.insert(node.getScore(), node.getMember());
+            }
+            copy.members = new String[0];
+            copy.scores = new double[0];
+        }
+        copy.contentSize = contentSize;
+        return copy;
+    }
+
+    /**
+     * Finds a member in the packed arrays
+     * @param member The member
+     * @return Its index, or -1 if absent
+     */
+    private int indexOf(String member) {
+        for (int i = 0; i < packedLength; i++) {
+            if (members[i].equals(member)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Inserts a member into the packed arrays at its place in order
+     * @param member The member, not already in the set
+     * @param score The score
+     */
+    private void insertPacked(String member, double score) {
+        if (packedLength == members.length) {
+            members = Arrays.copyOf(members, members.length * 2);
+            scores = Arrays.copyOf(scores, scores.length * 2);
+        }
+        int index = packedLength;
+        while (index > 0 && (scores[index - 1] > score
+                || (scores[index - 1] == score && members[index - 1].compareTo(member) > 0))) {
+            index--;
+        }
+        System.arraycopy(members, index, members, index + 1, packedLength - index);
+        System.arraycopy(scores, index, scores, index + 1, packedLength - index);
+        members[index] = member;
+        scores[index] = score;
+        packedLength++;
+    }
+
+    /**
+     * Removes the member at an index of the packed arrays, keeping them in order
+     * @param index The index
+     */
+    private void removeAt(int index) {
+        System.arraycopy(members, index + 1, members, index, packedLength - index - 1);
+        System.arraycopy(scores, index + 1, scores, index, packedLength - index - 1);
+        members[--packedLength] = null;
+    }
+
+    /**
+     * Moves the members from the packed arrays into the skiplist and map
+     */
+    private void convert() {
+        skipList = new SkipList();
+        dict = new Dict<>(packedLength);
+        for (int i = 0; i < packedLength; i++) {
+            skipList.insert(scores[i], members[i]);
+            dict.put(members[i], scores[i]);
+        }
+        members = new String[0];
+        scores = new double[0];
+        packedLength = 0;
+    }
+}
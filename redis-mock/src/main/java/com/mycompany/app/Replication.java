@@ -0,0 +1,486 @@
+package com.mycompany.app;
+
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class Replication {
+
+    public static final int DEFAULT_BACKLOG_SIZE = 1024 * 1024;
+    public static final long DEFAULT_REPLICA_OUTPUT_LIMIT = 256L * 1024 * 1024;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    /**
+     * A connected replica. While its snapshot is being made, the writes fed meanwhile are held back
+     * here, to be sent straight after it.
+     */
+    private static final class ReplicaLink {
+        private final Subscriber subscriber;
+        private List<byte[]> held;
+
+        /**
+         * Links a replica's connection
+         * @param subscriber The output queue of the connection
+         * @param waitingForSnapshot True to hold back writes until the snapshot has been sent
+         */
+        private ReplicaLink(Subscriber subscriber, boolean waitingForSnapshot) {
+            this.subscriber = subscriber;
+            this.held = waitingForSnapshot ? new ArrayList<>() : null;
+        }
+    }
+
+    private final CommandExecutor executor;
+    // a snapshot of its own, so a full resync never waits for or disturbs a BGSAVE
+    private final RdbPersistence syncSnapshot = new RdbPersistence(null);
+    // held by the master link while it applies a write and feeds it on, so a snapshot never splits the two
+    private final ReentrantLock applyLock = new ReentrantLock();
+    // the fields below are guarded by this object's monitor
+    private final List<ReplicaLink> replicas = new ArrayList<>();
+    private final List<ReplicaLink> waiting = new ArrayList<>();
+    private String replicationId = newReplicationId();
+    private long offset;
+    private boolean snapshotRunning;
+    private volatile ReplicationBacklog backlog;
+    private volatile MasterLink masterLink;
+    private volatile int backlogSize = DEFAULT_BACKLOG_SIZE;
+    private volatile long replicaOutputLimit = DEFAULT_REPLICA_OUTPUT_LIMIT;
+    private final LongAdder fullSyncs = new LongAdder();
+    private final LongAdder partialSyncs = new LongAdder();
+    private final LongAdder partialSyncsRefused = new LongAdder();
+
+    /**
+     * The replication state of a server, on both sides. As a master it streams every write it logs
+     * to its replicas, after a snapshot for a full resync, and keeps the latest part of the stream
+     * in a backlog so a replica that reconnects can carry on where it stopped. As a replica it keeps
+     * a link to its master, applies what the master streams, and refuses writes from its clients.
+     * @param executor The executor whose database is replicated
+     */
+    public Replication(CommandExecutor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Adds the replication commands to a registry
+     * @param registry The registry
+     */
+    public void register(CommandRegistry registry) {
+        registry.register(new CommandSpec("PSYNC", 3, EnumSet.of(CommandFlag.ADMIN), 0, 0, 0, this::psync));
+        for (String name : new String[]{"REPLICAOF", "SLAVEOF"}) {
+            registry.register(new CommandSpec(name, 3, EnumSet.of(CommandFlag.ADMIN), 0, 0, 0, this::replicaOf));
+        }
+    }
+
+    /**
+     * Sets how much of the stream is kept for replicas that reconnect. Takes effect when the backlog
+     * is next created, when the first replica connects or this server becomes a replica.
+     * @param backlogSize The backlog size in bytes
+     */
+    public void setBacklogSize(int backlogSize) {
+        this.backlogSize = backlogSize;
+    }
+
+    /**
+     * Sets how far a replica may fall behind, snapshot included, before it is disconnected
+     * @param replicaOutputLimit The limit in bytes, 0 for no limit
+     */
+    public void setReplicaOutputLimit(long replicaOutputLimit) {
+        this.replicaOutputLimit = replicaOutputLimit;
+    }
+
+    /**
+     * Checks if this server follows a master, in which case its clients may not write
+     * @return True for a replica
+     */
+    public boolean isReplica() {
+        return masterLink != null;
+    }
+
+    /**
+     * Streams a write to the replicas. Called on the path that logs the write to the AOF, with the
+     * write's keys locked, so the stream holds writes to a key in the order they were applied. Costs
+     * nothing until a replica has connected, and a replica streams on what its master sent instead.
+     * @param command The write as logged
+     */
+    public void feed(Object[] command) {
+        if (backlog == null || masterLink != null) {
+            return;
+        }
+        byte[] bytes = RESPParser.encodeCommand(command);
+        synchronized (this) {
+            append(bytes, 0, bytes.length, bytes);
+        }
+    }
+
+    /**
+     * Makes this server a replica of another, or a master again
+     * @param host The master's host, null to stop replicating
+     * @param port The master's port
+     */
+    public void replicaOf(String host, int port) {
+        MasterLink previous = masterLink;
+        if (previous != null) {
+            previous.stop();
+        }
+        if (host == null) {
+            synchronized (this) {
+                // the history diverges from the old master's from here on
+                replicationId = newReplicationId();
+                masterLink = null;
+            }
+            return;
+        }
+        MasterLink link = new MasterLink(this, host, port);
+        synchronized (this) {
+            if (backlog == null) {
+                backlog = new ReplicationBacklog(backlogSize, offset);
+            }
+            masterLink = link;
+        }
+        Thread thread = new Thread(link, "replica-link");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops following the master, if any, without becoming a master again; used at shutdown
+     */
+    public void stop() {
+        MasterLink link = masterLink;
+        if (link != null) {
+            link.stop();
+        }
+    }
+
+    /**
+     * Handles PSYNC replicationid offset, the request of a replica to be sent the stream
+     * @param command The command, the replication ID the replica has and the offset it needs next
+     * @return A reply the connection attaches its output queue to, or an error
+     */
+    private Object psync(Object[] command) {
+        long requested;
+        try {
+            requested = Long.parseLong((String) command[2]);
+        } catch (NumberFormatException e) {
+            return new Exception("ERR value is not an integer or out of range");
+        }
+        MasterLink link = masterLink;
+        if (link != null && !link.isUp()) {
+            return new Exception("NOMASTERLINK Can't SYNC while not connected with my master");
+        }
+        return new SyncReply(this, (String) command[1], requested);
+    }
+
+    /**
+     * Handles REPLICAOF host port and REPLICAOF NO ONE
+     * @param command The command and its arguments
+     * @return OK, or an error for a bad port
+     */
+    private Object replicaOf(Object[] command) {
+        String host = (String) command[1];
+        String port = (String) command[2];
+        if (host.equalsIgnoreCase("NO") && port.equalsIgnoreCase("ONE")) {
+            replicaOf(null, 0);
+            return "OK";
+        }
+        int portNumber;
+        try {
+            portNumber = Integer.parseInt(port);
+        } catch (NumberFormatException e) {
+            return new Exception("ERR Invalid master port");
+        }
+        MasterLink link = masterLink;
+        if (link == null || !link.isFollowing(host, portNumber)) {
+            replicaOf(host, portNumber);
+        }
+        return "OK";
+    }
+
+    /**
+     * Starts streaming to a replica's connection. If the replica has the same history and the
+     * backlog still holds everything it missed, it is sent just that; otherwise it gets a full
+     * resync, sharing the next snapshot with any other replica waiting for one.
+     * @param subscriber The output queue of the replica's connection
+     * @param requestedId The replication ID the replica has
+     * @param requested The offset of the next stream byte it needs
+     */
+    void attach(Subscriber subscriber, String requestedId, long requested) {
+        subscriber.setOutputLimit(replicaOutputLimit);
+        synchronized (this) {
+            if (backlog == null) {
+                backlog = new ReplicationBacklog(backlogSize, offset);
+            }
+            if (requestedId.equals(replicationId) && backlog.covers(requested)) {
+                subscriber.push(ascii("+CONTINUE " + replicationId + "\r\n"));
+                if (requested < offset) {
+                    subscriber.push(backlog.copyFrom(requested));
+                }
+                replicas.add(new ReplicaLink(subscriber, false));
+                partialSyncs.increment();
+                return;
+            }
+            if (!requestedId.equals("?")) {
+                partialSyncsRefused.increment();
+            }
+            waiting.add(new ReplicaLink(subscriber, true));
+            if (snapshotRunning) {
+                return;
+            }
+            snapshotRunning = true;
+        }
+        startSnapshot();
+    }
+
+    /**
+     * Makes a snapshot for the replicas waiting for a full resync on a background thread
+     */
+    private void startSnapshot() {
+        Thread thread = new Thread(this::sendSnapshot, "repl-snapshot");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Sends a snapshot to every replica waiting for one. The snapshot starts with every writer held
+     * off, so it holds exactly the writes before the offset the replicas are told, and the writes fed
+     * while it is made are held back and sent straight after it.
+     */
+    private void sendSnapshot() {
+        List<ReplicaLink> batch;
+        KeyLocks keyLocks = executor.getKeyLocks();
+        applyLock.lock();
+        try {
+            keyLocks.lockAll();
+            try {
+                synchronized (this) {
+                    syncSnapshot.tryBeginSave();
+                    batch = new ArrayList<>(waiting);
+                    waiting.clear();
+                    byte[] header = ascii("+FULLRESYNC " + replicationId + " " + offset + "\r\n");
+                    for (ReplicaLink link : batch) {
+                        link.subscriber.push(header);
+                        replicas.add(link);
+                    }
+                }
+            } finally {
+                keyLocks.unlockAll();
+            }
+        } finally {
+            applyLock.unlock();
+        }
+        byte[] snapshot;
+        try {
+            snapshot = syncSnapshot.dump(executor.getKeyspace(), executor.getExpires(), keyLocks);
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            snapshot = null;
+        }
+        synchronized (this) {
+            byte[] length = snapshot == null ? null : ascii("$" + snapshot.length + "\r\n");
+            for (ReplicaLink link : batch) {
+                if (snapshot == null) {
+                    // the replica is cut off and will ask again
+                    link.subscriber.cutOff();
+                    continue;
+                }
+                link.subscriber.push(length);
+                link.subscriber.push(snapshot);
+                for (byte[] bytes : link.held) {
+                    link.subscriber.push(bytes);
+                }
+                link.held = null;
+            }
+            fullSyncs.add(batch.size());
+            if (waiting.isEmpty()) {
+                snapshotRunning = false;
+                return;
+            }
+        }
+        startSnapshot();
+    }
+
+    /**
+     * Gets where a replica carries on from when it reconnects to its master
+     * @return The replication ID and the offset of the next byte wanted
+     */
+    synchronized Object[] resumePoint() {
+        return new Object[]{replicationId, Long.toString(offset)};
+    }
+
+    /**
+     * Replaces the database with a snapshot sent by the master for a full resync. Readers and the
+     * replica's own replicas, which must resync in turn, are held off or cut off meanwhile.
+     * @param masterId The master's replication ID
+     * @param masterOffset The offset of the stream the snapshot was taken at
+     * @param snapshot The snapshot
+     */
+    void loadFullSync(String masterId, long masterOffset, byte[] snapshot) {
+        KeyLocks keyLocks = executor.getKeyLocks();
+        applyLock.lock();
+        try {
+            keyLocks.lockAll();
+            try {
+                executor.replaceDataset(snapshot);
+                synchronized (this) {
+                    replicationId = masterId;
+                    offset = masterOffset;
+                    backlog = new ReplicationBacklog(backlogSize, masterOffset);
+                    dropReplicas();
+                }
+            } finally {
+                keyLocks.unlockAll();
+            }
+        } finally {
+            applyLock.unlock();
+        }
+        // the AOF still holds the old data set, so it is rebuilt from the new one
+        executor.rewriteAof();
+    }
+
+    /**
+     * Carries on after the master accepted a partial resync, taking on its replication ID if it
+     * has changed
+     * @param masterId The ID the master gave, or null if it did not give one
+     */
+    synchronized void continueSync(String masterId) {
+        if (masterId != null && !masterId.equals(replicationId)) {
+            replicationId = masterId;
+            dropReplicas();
+        }
+    }
+
+    /**
+     * Builds the argument array of a write streamed by the master, keeping the values it stores
+     * as the exact bytes sent
+     * @param command The decoded write
+     * @return The arguments to apply
+     */
+    Object[] arguments(RespCommand command) {
+        return command.toArray(executor.lookup(command));
+    }
+
+    /**
+     * Applies a write streamed by the master and streams it on, byte for byte, to this server's own
+     * replicas, so the offsets along a chain of replicas all agree
+     * @param command The decoded write
+     * @param raw The array holding the write as the master sent it
+     * @param from The index of its first byte
+     * @param length Its length in bytes
+     */
+    void applyFromMaster(Object[] command, byte[] raw, int from, int length) {
+        applyLock.lock();
+        try {
+            executor.executeFromMaster(command);
+            synchronized (this) {
+                append(raw, from, length, null);
+            }
+        } finally {
+            applyLock.unlock();
+        }
+    }
+
+    /**
+     * Adds bytes to the stream: to the backlog, and to every replica or to the writes it is holding
+     * back. Called holding this object's monitor.
+     * @param bytes The array holding the bytes
+     * @param from The index of the first byte
+     * @param length The number of bytes
+     * @param shared The bytes as an array of their own that can be handed to replicas, null to copy them if needed
+     */
+    private void append(byte[] bytes, int from, int length, byte[] shared) {
+        offset += length;
+        if (backlog != null) {
+            backlog.append(bytes, from, length);
+        }
+        if (replicas.isEmpty()) {
+            return;
+        }
+        byte[] message = shared != null ? shared : Arrays.copyOfRange(bytes, from, from + length);
+        replicas.removeIf(link -> link.subscriber.isClosed() || link.subscriber.isOverLimit());
+        for (ReplicaLink link : replicas) {
+            if (link.held != null) {
+                link.held.add(message);
+            } else {
+                link.subscriber.push(message);
+            }
+        }
+    }
+
+    /**
+     * Cuts off every replica of this server, so each one asks for the stream again. Called holding
+     * this object's monitor.
+     */
+    private void dropReplicas() {
+        for (ReplicaLink link : replicas) {
+            link.subscriber.cutOff();
+        }
+        replicas.clear();
+    }
+
+    /**
+     * Describes the replication state in the format of INFO
+     * @return The replication section
+     */
+    synchronized String info() {
+        replicas.removeIf(link -> link.subscriber.isClosed() || link.subscriber.isOverLimit());
+        MasterLink link = masterLink;
+        StringBuilder info = new StringBuilder("\r\n# Replication\r\n");
+        info.append("role:").append(link == null ? "master" : "slave").append("\r\n");
+        if (link != null) {
+            info.append("master_host:").append(link.getHost()).append("\r\n")
+                    .append("master_port:").append(link.getPort()).append("\r\n")
+                    .append("master_link_status:").append(link.isUp() ? "up" : "down").append("\r\n");
+        }
+        ReplicationBacklog current = backlog;
+        info.append("connected_slaves:").append(replicas.size()).append("\r\n")
+                .append("master_replid:").append(replicationId).append("\r\n")
+                .append("master_repl_offset:").append(offset).append("\r\n")
+                .append("repl_backlog_active:").append(current == null ? 0 : 1).append("\r\n")
+                .append("repl_backlog_size:").append(current == null ? backlogSize : current.getSize()).append("\r\n")
+                .append("repl_backlog_first_byte_offset:").append(current == null ? 0 : current.getStartOffset()).append("\r\n")
+                .append("sync_full:").append(fullSyncs.sum()).append("\r\n")
+                .append("sync_partial_ok:").append(partialSyncs.sum()).append("\r\n")
+                .append("sync_partial_err:").append(partialSyncsRefused.sum()).append("\r\n");
+        return info.toString();
+    }
+
+    /**
+     * Gets the snapshot that full resyncs are made with, which writers must report their pre-images to
+     * @return The snapshot
+     */
+    RdbPersistence getSyncSnapshot() {
+        return syncSnapshot;
+    }
+
+    /**
+     * Gets the link to the master
+     * @return The link, null for a master
+     */
+    MasterLink getMasterLink() {
+        return masterLink;
+    }
+
+    /**
+     * Makes up a new replication ID, naming a history of writes
+     * @return 40 random hex digits
+     */
+    private static String newReplicationId() {
+        byte[] bytes = new byte[20];
+        RANDOM.nextBytes(bytes);
+        return HexFormat.of().formatHex(bytes);
+    }
+
+    /**
+     * Encodes a protocol line
+     * @param s The line
+     * @return Its bytes
+     */
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+}
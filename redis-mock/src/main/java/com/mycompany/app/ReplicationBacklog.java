@@ -0,0 +1,103 @@
+package com.mycompany.app;
+
+public class ReplicationBacklog {
+
+    private final byte[] ring;
+    // the stream offset of the oldest byte held and of the byte after the newest
+    private long startOffset;
+    private long endOffset;
+
+    /**
+     * A fixed-size circular buffer holding the most recent part of the replication stream, so a
+     * replica that reconnects after a short break can be sent just what it missed. Not thread safe:
+     * the owner appends and reads under its own lock.
+     * @param size The number of stream bytes kept
+     * @param offset The stream offset the backlog starts at
+     */
+    public ReplicationBacklog(int size, long offset) {
+        if (size < 1) {
+            throw new IllegalArgumentException("repl-backlog-size must be at least 1");
+        }
+        this.ring = new byte[size];
+        this.startOffset = offset;
+        this.endOffset = offset;
+    }
+
+    /**
+     * Appends stream bytes, overwriting the oldest once the backlog is full
+     * @param bytes The array holding the bytes
+     * @param from The index of the first byte
+     * @param length The number of bytes
+     */
+    public void append(byte[] bytes, int from, int length) {
+        // only the newest ring.length bytes can survive the append
+        int skipped = Math.max(0, length - ring.length);
+        int position = (int) ((endOffset + skipped) % ring.length);
+        int remaining = length - skipped;
+        int index = from + skipped;
+        while (remaining > 0) {
+            int chunk = Math.min(remaining, ring.length - position);
+            System.arraycopy(bytes, index, ring, position, chunk);
+            index += chunk;
+            remaining -= chunk;
+            position = 0;
+        }
+        endOffset += length;
+        startOffset = Math.max(startOffset, endOffset - ring.length);
+    }
+
+    /**
+     * Checks if a replica that has processed the stream up to an offset can carry on from the backlog
+     * @param offset The offset of the next byte the replica needs
+     * @return True if every byte from the offset on is still held
+     */
+    public boolean covers(long offset) {
+        return offset >= startOffset && offset <= endOffset;
+    }
+
+    /**
+     * Copies out every byte from an offset to the end of the stream
+     * @param offset The offset of the first byte wanted
+     * @return The bytes
+     * @throws IllegalArgumentException If the backlog no longer holds the offset
+     */
+    public byte[] copyFrom(long offset) {
+        if (!covers(offset)) {
+            throw new IllegalArgumentException("Offset " + offset + " is outside the backlog");
+        }
+        byte[] copy = new byte[(int) (endOffset - offset)];
+        int position = (int) (offset % ring.length);
+        int copied = 0;
+        while (copied < copy.length) {
+            int chunk = Math.min(copy.length - copied, ring.length - position);
+            System.arraycopy(ring, position, copy, copied, chunk);
+            copied += chunk;
+            position = 0;
+        }
+        return copy;
+    }
+
+    /**
+     * Gets the offset of the oldest byte held
+     * @return The first offset a replica can resume from
+     */
+    public long getStartOffset() {
+        return startOffset;
+    }
+
+    /**
+     * Gets the offset after the newest byte held
+     * @return The length of the whole stream so far
+     */
+    public long getEndOffset() {
+        return endOffset;
+    }
+
+    /**
+     * Gets the number of stream bytes the backlog can hold
+     * @return The capacity in bytes
+     */
+    public int getSize() {
+        return ring.length;
+    }
+}
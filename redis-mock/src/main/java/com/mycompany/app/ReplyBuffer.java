@@ -0,0 +1,359 @@
+package com.mycompany.app;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+public class ReplyBuffer {
+
+    private static final int INITIAL_SIZE = 16 * 1024;
+    // a buffer grown past this by one huge reply is dropped once drained rather than kept for the connection's lifetime
+    private static final int RETAINED_SIZE = 1024 * 1024;
+    private static final int SHARED_HEADERS = 1024;
+    private static final int SHARED_INTEGERS = 10000;
+
+    private static final byte[] OK = ascii("+OK\r\n");
+    private static final byte[] PONG = ascii("+PONG\r\n");
+    private static final byte[] NULL_BULK = ascii("$-1\r\n");
+    private static final byte[] CRLF = ascii("\r\n");
+    private static final byte[][] BULK_HEADERS = headers('$', SHARED_HEADERS);
+    private static final byte[][] ARRAY_HEADERS = headers('*', SHARED_HEADERS);
+    private static final byte[][] INTEGERS = headers(':', SHARED_INTEGERS);
+
+    private byte[] bytes;
+    private ByteBuffer view;
+    private int readIndex;
+    private int writeIndex;
+
+    /**
+     * Creates a reply buffer sized for a connection's output
+     */
+    public ReplyBuffer() {
+        this(INITIAL_SIZE);
+    }
+
+    /**
+     * Creates a reply buffer with a given starting capacity, it grows as needed
+     * @param initialSize The starting capacity in bytes
+     */
+    public ReplyBuffer(int initialSize) {
+        this.bytes = new byte[initialSize];
+        this.view = ByteBuffer.wrap(bytes);
+    }
+
+    /**
+     * Encodes a Java object as a RESP reply straight into the buffer. Strings OK and PONG become
+     * simple strings, other Strings, byte arrays and integer-encoded values bulk strings, Exceptions
+     * errors, numbers integers, arrays RESP arrays and null the null bulk string.
+     * @param data The value returned by the executor
+     */
+    public void write(Object data) {
+        switch (data) {
+            case String s when s.equals("OK") -> writeBytes(OK);
+            case String s when s.equals("PONG") -> writeBytes(PONG);
+            case String s -> writeBulk(s);
+            case byte[] b -> writeBulk(b);
+            case IntegerValue v -> writeBulk(v.get());
+            case Long l -> writeInteger(l);
+            case Integer i -> writeInteger(i);
+            case Object[] array -> {
+                writeHeader(ARRAY_HEADERS, '*', array.length);
+                for (Object element : array) {
+                    if (element == null) {
+                        writeBytes(NULL_BULK);
+                    } else if (element instanceof byte[] b) {
+                        writeBulk(b);
+                    } else if (element instanceof IntegerValue v) {
+                        writeBulk(v.get());
+                    } else if (element instanceof Object[] || element instanceof Long || element instanceof Integer) {
+                        write(element);
+                    } else {
+                        writeBulk(String.valueOf(element));
+                    }
+                }
+            }
+            case Exception e -> {
+                String message = String.valueOf(e.getMessage());
+                writeByte('-');
+                writeUtf8(message, utf8Length(message));
+                writeBytes(CRLF);
+            }
+            case null -> writeBytes(NULL_BULK);
+            default -> {
+                // unsupported reply types produce no output, as RESPParser.encode always has
+            }
+        }
+    }
+
+    /**
+     * Gets the number of encoded bytes not yet sent
+     * @return The pending byte count
+     */
+    public int pending() {
+        return writeIndex - readIndex;
+    }
+
+    /**
+     * Sends every pending byte to a blocking stream
+     * @param out The stream to write to
+     * @throws IOException Throws if the stream cannot be written
+     */
+    public void flushTo(OutputStream out) throws IOException {
+        if (pending() == 0) {
+            return;
+        }
+        out.write(bytes, readIndex, pending());
+        out.flush();
+        clear();
+    }
+
+    /**
+     * Sends as many pending bytes as a non-blocking channel accepts
+     * @param channel The channel to write to
+     * @return True if nothing is left pending
+     * @throws IOException Throws if the channel cannot be written
+     */
+    public boolean flushTo(WritableByteChannel channel) throws IOException {
+        if (pending() == 0) {
+            return true;
+        }
+        view.limit(writeIndex).position(readIndex);
+        channel.write(view);
+        readIndex = view.position();
+        if (pending() > 0) {
+            return false;
+        }
+        clear();
+        return true;
+    }
+
+    /**
+     * Copies the pending bytes out, mostly useful for callers that need the encoded form as a value
+     * @return A new array holding the pending bytes
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOfRange(bytes, readIndex, writeIndex);
+    }
+
+    /**
+     * Discards every pending byte, returning an oversized buffer to its initial size
+     */
+    public void clear() {
+        readIndex = 0;
+        writeIndex = 0;
+        if (bytes.length > RETAINED_SIZE) {
+            bytes = new byte[INITIAL_SIZE];
+            view = ByteBuffer.wrap(bytes);
+        }
+    }
+
+    /**
+     * Writes a bulk string, sizing its header by the UTF-8 byte length rather than the char count
+     * @param s The text to send
+     */
+    private void writeBulk(String s) {
+        int length = utf8Length(s);
+        writeHeader(BULK_HEADERS, '$', length);
+        writeUtf8(s, length);
+        writeBytes(CRLF);
+    }
+
+    /**
+     * Writes a bulk string holding raw bytes
+     * @param b The bytes to send
+     */
+    private void writeBulk(byte[] b) {
+        writeHeader(BULK_HEADERS, '$', b.length);
+        writeBytes(b);
+        writeBytes(CRLF);
+    }
+
+    /**
+     * Writes a bulk string holding the decimal digits of a number, without building a String
+     * @param value The number to send
+     */
+    private void writeBulk(long value) {
+        int length = value < 0 ? 2 : 1;
+        for (long rest = value / 10; rest != 0; rest /= 10) {
+            length++;
+        }
+        writeHeader(BULK_HEADERS, '$', length);
+        writeDecimal(value);
+        writeBytes(CRLF);
+    }
+
+    /**
+     * Writes an integer reply, using a precomputed encoding for small values
+     * @param value The integer to send
+     */
+    private void writeInteger(long value) {
+        if (value >= 0 && value < SHARED_INTEGERS) {
+            writeBytes(INTEGERS[(int) value]);
+            return;
+        }
+        writeByte(':');
+        writeDecimal(value);
+        writeBytes(CRLF);
+    }
+
+    /**
+     * Writes a length header, using a precomputed encoding for small lengths
+     * @param shared The precomputed headers for this prefix
+     * @param prefix The RESP type byte
+     * @param length The length to announce
+     */
+    private void writeHeader(byte[][] shared, char prefix, int length) {
+        if (length < shared.length) {
+            writeBytes(shared[length]);
+            return;
+        }
+        writeByte(prefix);
+        writeDecimal(length);
+        writeBytes(CRLF);
+    }
+
+    /**
+     * Writes the decimal digits of a number without building a String
+     * @param value The number to write
+     */
+    private void writeDecimal(long value) {
+        if (value == Long.MIN_VALUE) {
+            writeBytes(ascii(Long.toString(value)));
+            return;
+        }
+        if (value < 0) {
+            writeByte('-');
+            value = -value;
+        }
+        int digits = 1;
+        for (long rest = value / 10; rest > 0; rest /= 10) {
+            digits++;
+        }
+        ensureCapacity(digits);
+        for (int i = writeIndex + digits - 1; i >= writeIndex; i--) {
+            bytes[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        writeIndex += digits;
+    }
+
+    /**
+     * Encodes text as UTF-8 directly into the buffer
+     * @param s The text to write
+     * @param encodedLength The UTF-8 length of the text as given by utf8Length
+     */
+    private void writeUtf8(String s, int encodedLength) {
+        ensureCapacity(encodedLength);
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                bytes[writeIndex++] = (byte) c;
+            } else if (c < 0x800) {
+                bytes[writeIndex++] = (byte) (0xc0 | (c >> 6));
+                bytes[writeIndex++] = (byte) (0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, s.charAt(++i));
+                bytes[writeIndex++] = (byte) (0xf0 | (codePoint >> 18));
+                bytes[writeIndex++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+                bytes[writeIndex++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+                bytes[writeIndex++] = (byte) (0x80 | (codePoint & 0x3f));
+            } else if (Character.isSurrogate(c)) {
+                bytes[writeIndex++] = '?';
+            } else {
+                bytes[writeIndex++] = (byte) (0xe0 | (c >> 12));
+                bytes[writeIndex++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                bytes[writeIndex++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+    }
+
+    /**
+     * Counts the bytes a String takes in UTF-8, matching what writeUtf8 produces
+     * @param s The text to measure
+     * @return The encoded length
+     */
+    static int utf8Length(String s) {
+        int length = s.length();
+        int bytes = length;
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            if (c >= 0x80) {
+                if (c < 0x800) {
+                    bytes += 1;
+                } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+                    bytes += 2;
+                    i++;
+                } else if (!Character.isSurrogate(c)) {
+                    bytes += 2;
+                }
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Appends a single byte
+     * @param b The byte to append
+     */
+    private void writeByte(int b) {
+        ensureCapacity(1);
+        bytes[writeIndex++] = (byte) b;
+    }
+
+    /**
+     * Appends an array of bytes
+     * @param b The bytes to append
+     */
+    private void writeBytes(byte[] b) {
+        ensureCapacity(b.length);
+        System.arraycopy(b, 0, bytes, writeIndex, b.length);
+        writeIndex += b.length;
+    }
+
+    /**
+     * Makes room for more bytes, first reclaiming space already sent and then growing
+     * @param extra The number of bytes about to be written
+     */
+    private void ensureCapacity(int extra) {
+        if (writeIndex + extra <= bytes.length) {
+            return;
+        }
+        int pending = pending();
+        if (readIndex > 0 && pending + extra <= bytes.length) {
+            System.arraycopy(bytes, readIndex, bytes, 0, pending);
+        } else {
+            byte[] bigger = new byte[Math.max(bytes.length * 2, pending + extra)];
+            System.arraycopy(bytes, readIndex, bigger, 0, pending);
+            bytes = bigger;
+            view = ByteBuffer.wrap(bytes);
+        }
+        readIndex = 0;
+        writeIndex = pending;
+    }
+
+    /**
+     * Precomputes the encodings of a header for every length below a limit
+     * @param prefix The RESP type byte
+     * @param count The number of lengths to precompute
+     * @return The encoded headers indexed by length
+     */
+    private static byte[][] headers(char prefix, int count) {
+        byte[][] headers = new byte[count][];
+        for (int i = 0; i < count; i++) {
+            headers[i] = ascii(prefix + Integer.toString(i) + "\r\n");
+        }
+        return headers;
+    }
+
+    /**
+     * Encodes a constant as ASCII bytes
+     * @param s The constant text
+     * @return Its bytes
+     */
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+}
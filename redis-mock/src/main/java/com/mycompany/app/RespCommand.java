@@ -0,0 +1,144 @@
+package com.mycompany.app;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+public class RespCommand {
+
+    private ByteBuffer buffer;
+    private int[] starts = new int[8];
+    private int[] lengths = new int[8];
+    private int argCount;
+
+    /**
+     * Points this command at a new set of argument slices. Called by the decoder, which reuses one
+     * command object per connection.
+     * @param buffer The buffer the arguments live in
+     * @param count The number of arguments
+     */
+    void reset(ByteBuffer buffer, int count) {
+        this.buffer = buffer;
+        this.argCount = count;
+        if (starts.length < count) {
+            starts = Arrays.copyOf(starts, count);
+            lengths = Arrays.copyOf(lengths, count);
+        }
+    }
+
+    /**
+     * Records where an argument lives in the buffer
+     * @param index The argument position
+     * @param start The absolute index of its first byte
+     * @param length The number of bytes in it
+     */
+    void setArg(int index, int start, int length) {
+        starts[index] = start;
+        lengths[index] = length;
+    }
+
+    /**
+     * Gets the number of arguments, including the command name
+     * @return The argument count
+     */
+    public int argCount() {
+        return argCount;
+    }
+
+    /**
+     * Gets the length of an argument in bytes
+     * @param index The argument position
+     * @return The byte length
+     */
+    public int argLength(int index) {
+        return lengths[index];
+    }
+
+    /**
+     * Gets a single byte of an argument without copying it
+     * @param index The argument position
+     * @param offset The byte position within the argument
+     * @return The byte
+     */
+    public byte argByte(int index, int offset) {
+        return buffer.get(starts[index] + offset);
+    }
+
+    /**
+     * Copies an argument out of the read buffer, exactly as sent by the client
+     * @param index The argument position
+     * @return A new array holding the argument bytes
+     */
+    public byte[] argBytes(int index) {
+        byte[] bytes = new byte[lengths[index]];
+        buffer.get(starts[index], bytes);
+        return bytes;
+    }
+
+    /**
+     * Decodes an argument as UTF-8 text
+     * @param index The argument position
+     * @return The argument as a String
+     */
+    public String argString(int index) {
+        if (buffer.hasArray()) {
+            return new String(buffer.array(), buffer.arrayOffset() + starts[index], lengths[index], StandardCharsets.UTF_8);
+        }
+        return new String(argBytes(index), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Compares an argument with an upper case ASCII word, ignoring the case of the argument, without copying it
+     * @param index The argument position
+     * @param upperCaseWord The word to compare with, in upper case
+     * @return True if the argument spells the word in any case
+     */
+    public boolean argEqualsIgnoreCase(int index, String upperCaseWord) {
+        int length = lengths[index];
+        if (length != upperCaseWord.length()) {
+            return false;
+        }
+        int start = starts[index];
+        for (int i = 0; i < length; i++) {
+            int b = buffer.get(start + i);
+            if (b >= 'a' && b <= 'z') {
+                b -= 'a' - 'A';
+            }
+            if (b != upperCaseWord.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Builds the argument array handed to the CommandExecutor. The slices are only valid until the
+     * next read into the buffer, so this must be called before then.
+     * @return Every argument decoded as a String
+     */
+    public Object[] toArray() {
+        Object[] array = new Object[argCount];
+        for (int i = 0; i < argCount; i++) {
+            array[i] = argString(i);
+        }
+        return array;
+    }
+
+    /**
+     * Builds the argument array handed to the CommandExecutor, keeping the string values the
+     * command stores as their exact bytes: as a byte array when they are not valid UTF-8, which
+     * a String would not hold. Must be called before the next read into the buffer.
+     * @param spec The command, or null if unknown, in which case every argument is decoded as text
+     * @return Value arguments as a String or a byte array, the rest as Strings
+     */
+    public Object[] toArray(CommandSpec spec) {
+        if (spec == null) {
+            return toArray();
+        }
+        Object[] array = new Object[argCount];
+        for (int i = 0; i < argCount; i++) {
+            array[i] = spec.isValue(i, argCount) ? CommandExecutor.stringValue(argBytes(i)) : argString(i);
+        }
+        return array;
+    }
+}
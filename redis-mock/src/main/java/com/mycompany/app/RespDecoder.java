@@ -0,0 +1,139 @@
+package com.mycompany.app;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+public class RespDecoder {
+
+    private static final int MAX_BULK_LENGTH = 512 * 1024 * 1024;
+    private static final int MAX_ARGS = 1024 * 1024;
+
+    private final RespCommand command = new RespCommand();
+    private final int[] lengthOut = new int[1];
+
+    // progress through the frame at the buffer position, kept relative to it so a compacted buffer can be resumed
+    private int expectedArgs = -1;
+    private int parsedArgs;
+    private int resumeOffset;
+    private int[] argOffsets = new int[8];
+    private int[] argLengths = new int[8];
+
+    /**
+     * Decodes the next command (an array of bulk strings) from a buffer. If the command has not fully
+     * arrived, nothing is consumed and the progress made so far is remembered, so the next call only
+     * looks at the new bytes. Between calls the caller may compact the buffer but must not otherwise
+     * consume bytes from it. Empty multibulks are skipped.
+     * @param buffer A buffer in read mode, the command starts at its current position
+     * @return The decoded command, reused by the next call and only valid until the buffer is next
+     *         written to, or null if more bytes are needed
+     * @throws IOException Throws if the bytes are not a valid RESP command
+     */
+    public RespCommand decode(ByteBuffer buffer) throws IOException {
+        int frameStart = buffer.position();
+        int limit = buffer.limit();
+        while (expectedArgs < 0) {
+            if (frameStart >= limit) {
+                return null;
+            }
+            if (buffer.get(frameStart) != '*') {
+                throw new IOException("Protocol error: expected '*', got '" + (char) buffer.get(frameStart) + "'");
+            }
+            int next = parseLength(buffer, frameStart + 1, limit);
+            if (next < 0) {
+                return null;
+            }
+            int count = lengthOut[0];
+            if (count > MAX_ARGS) {
+                throw new IOException("Protocol error: invalid multibulk length");
+            }
+            if (count <= 0) {
+                // an empty or null multibulk is not a command, so it is skipped as Redis does
+                buffer.position(next);
+                frameStart = next;
+                continue;
+            }
+            expectedArgs = count;
+            parsedArgs = 0;
+            resumeOffset = next - frameStart;
+            if (argOffsets.length < count) {
+                argOffsets = new int[count];
+                argLengths = new int[count];
+            }
+        }
+        while (parsedArgs < expectedArgs) {
+            int headerStart = frameStart + resumeOffset;
+            if (headerStart >= limit) {
+                return null;
+            }
+            if (buffer.get(headerStart) != '$') {
+                throw new IOException("Protocol error: expected '$', got '" + (char) buffer.get(headerStart) + "'");
+            }
+            int bodyStart = parseLength(buffer, headerStart + 1, limit);
+            if (bodyStart < 0) {
+                return null;
+            }
+            int length = lengthOut[0];
+            if (length < 0 || length > MAX_BULK_LENGTH) {
+                throw new IOException("Protocol error: invalid bulk length");
+            }
+            long bodyEnd = (long) bodyStart + length + 2;
+            if (bodyEnd > limit) {
+                return null;
+            }
+            if (buffer.get(bodyStart + length) != '\r' || buffer.get(bodyStart + length + 1) != '\n') {
+                throw new IOException("Protocol error: bulk string not terminated by CRLF");
+            }
+            argOffsets[parsedArgs] = bodyStart - frameStart;
+            argLengths[parsedArgs] = length;
+            parsedArgs++;
+            resumeOffset = (int) bodyEnd - frameStart;
+        }
+        command.reset(buffer, expectedArgs);
+        for (int i = 0; i < expectedArgs; i++) {
+            command.setArg(i, frameStart + argOffsets[i], argLengths[i]);
+        }
+        buffer.position(frameStart + resumeOffset);
+        expectedArgs = -1;
+        return command;
+    }
+
+    /**
+     * Parses a decimal length terminated by CRLF straight from the buffer bytes
+     * @param buffer The buffer holding the header
+     * @param from The index of the first digit (or minus sign)
+     * @param limit The end of the readable bytes
+     * @return The index just past the CRLF, or -1 if the line is incomplete; the value goes to lengthOut
+     * @throws IOException Throws if the header is not a number
+     */
+    private int parseLength(ByteBuffer buffer, int from, int limit) throws IOException {
+        int i = from;
+        boolean negative = i < limit && buffer.get(i) == '-';
+        if (negative) {
+            i++;
+        }
+        long value = 0;
+        int digits = 0;
+        while (i < limit) {
+            byte b = buffer.get(i);
+            if (b == '\r') {
+                if (i + 1 >= limit) {
+                    return -1;
+                }
+                if (buffer.get(i + 1) != '\n' || digits == 0 || value > Integer.MAX_VALUE) {
+                    break;
+                }
+                lengthOut[0] = (int) (negative ? -value : value);
+                return i + 2;
+            }
+            if (b < '0' || b > '9' || ++digits > 10) {
+                break;
+            }
+            value = value * 10 + (b - '0');
+            i++;
+        }
+        if (i >= limit) {
+            return -1;
+        }
+        throw new IOException("Protocol error: invalid length");
+    }
+}
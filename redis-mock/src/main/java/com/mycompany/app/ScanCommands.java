@@ -0,0 +1,264 @@
+package com.mycompany.app;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+
+public class ScanCommands {
+
+    private static final int DEFAULT_COUNT = 10;
+    // KEYS walks the keyspace in steps of this many keys, like a client looping over SCAN
+    private static final int KEYS_BATCH = 1000;
+
+    /**
+     * The options of a SCAN, HSCAN or ZSCAN
+     * @param pattern The pattern names must match, null for any
+     * @param count Roughly how many entries to look at
+     * @param type The type keys must have, null for any
+     * @param noValues True to leave the values out of an HSCAN reply
+     */
+    private record Options(String pattern, int count, String type, boolean noValues) {
+    }
+
+    private final CommandExecutor executor;
+
+    /**
+     * The commands that walk the keyspace or a collection. The walks resume from a cursor the
+     * client hands back each time, which the server keeps no state for, and each call does a
+     * bounded amount of work without locking out other clients, however large the keyspace.
+     * @param executor The executor whose database the commands act on
+     */
+    public ScanCommands(CommandExecutor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Adds the scan commands to a registry
+     * @param registry The registry
+     */
+    public void register(CommandRegistry registry) {
+        registry.register(new CommandSpec("SCAN", -2, EnumSet.of(CommandFlag.READONLY), 0, 0, 0, this::scan));
+        registry.register(new CommandSpec("KEYS", 2, EnumSet.of(CommandFlag.READONLY), 0, 0, 0, this::keys));
+        registry.register(new CommandSpec("HSCAN", -3, EnumSet.of(CommandFlag.READONLY), 1, 1, 1, this::hscan));
+        registry.register(new CommandSpec("ZSCAN", -3, EnumSet.of(CommandFlag.READONLY), 1, 1, 1, this::zscan));
+    }
+
+    /**
+     * Walks some of the keyspace (SCAN cursor [MATCH pattern] [COUNT count] [TYPE type]). Every key
+     * present from the first call to the last is returned at least once. Expired keys found on the
+     * way are removed and left out.
+     * @param command The command, the cursor and the options
+     * @return The cursor to pass next, 0 once the walk is done, and the keys found
+     */
+    private Object scan(Object[] command) {
+        long cursor = parseCursor((String) command[1]);
+        if (cursor < 0) {
+            return new Exception("ERR invalid cursor");
+        }
+        Object parsed = parseOptions(command, 2, true, false);
+        if (parsed instanceof Exception) {
+            return parsed;
+        }
+        Options options = (Options) parsed;
+        List<String> found = new ArrayList<>();
+        long next = executor.getKeyspace().scan(cursor, options.count(), found::add);
+        List<Object> keys = new ArrayList<>(found.size());
+        for (String key : found) {
+            if (isWanted(key, options)) {
+                keys.add(key);
+            }
+        }
+        return new Object[]{Long.toString(next), keys.toArray()};
+    }
+
+    /**
+     * Lists every key matching a pattern (KEYS pattern). The keyspace is walked a step at a time
+     * like SCAN, so other clients are not held up, though the reply holds every match at once.
+     * @param command The command and the pattern
+     * @return The matching keys
+     */
+    private Object keys(Object[] command) {
+        String pattern = (String) command[1];
+        Options options = new Options(pattern.equals("*") ? null : pattern, KEYS_BATCH, null, false);
+        Keyspace keyspace = executor.getKeyspace();
+        List<Object> keys = new ArrayList<>();
+        List<String> found = new ArrayList<>();
+        long cursor = 0;
+        do {
+            found.clear();
+            cursor = keyspace.scan(cursor, KEYS_BATCH, found::add);
+            for (String key : found) {
+                if (isWanted(key, options)) {
+                    keys.add(key);
+                }
+            }
+        } while (cursor != 0);
+        return keys.toArray();
+    }
+
+    /**
+     * Walks some of the fields of a hash (HSCAN key cursor [MATCH pattern] [COUNT count] [NOVALUES]).
+     * Every field present from the first call to the last is returned at least once.
+     * @param command The command, its key, the cursor and the options
+     * @return The cursor to pass next, 0 once the walk is done, and the fields found each followed
+     * by its value
+     */
+    private Object hscan(Object[] command) {
+        String key = (String) command[1];
+        long cursor = parseCursor((String) command[2]);
+        if (cursor < 0) {
+            return new Exception("ERR invalid cursor");
+        }
+        Object parsed = parseOptions(command, 3, false, true);
+        if (parsed instanceof Exception) {
+            return parsed;
+        }
+        Options options = (Options) parsed;
+        return executor.readLocked(key, () -> {
+            Object value = executor.lookupKey(key);
+            if (value == null) {
+                return new Object[]{"0", new Object[0]};
+            }
+            if (!(value instanceof RedisHash hash)) {
+                return new Exception(CommandExecutor.WRONGTYPE);
+            }
+            List<Object> entries = new ArrayList<>();
+            long next = hash.scan(cursor, options.count(), (field, fieldValue) -> {
+                if (options.pattern() == null || GlobPattern.matches(options.pattern(), field)) {
+                    entries.add(field);
+                    if (!options.noValues()) {
+                        entries.add(fieldValue);
+                    }
+                }
+            });
+            return new Object[]{Long.toString(next), entries.toArray()};
+        });
+    }
+
+    /**
+     * Walks some of the members of a sorted set (ZSCAN key cursor [MATCH pattern] [COUNT count]).
+     * Every member present from the first call to the last is returned at least once.
+     * @param command The command, its key, the cursor and the options
+     * @return The cursor to pass next, 0 once the walk is done, and the members found each followed
+     * by its score
+     */
+    private Object zscan(Object[] command) {
+        String key = (String) command[1];
+        long cursor = parseCursor((String) command[2]);
+        if (cursor < 0) {
+            return new Exception("ERR invalid cursor");
+        }
+        Object parsed = parseOptions(command, 3, false, false);
+        if (parsed instanceof Exception) {
+            return parsed;
+        }
+        Options options = (Options) parsed;
+        return executor.readLocked(key, () -> {
+            Object value = executor.lookupKey(key);
+            if (value == null) {
+                return new Object[]{"0", new Object[0]};
+            }
+            if (!(value instanceof RedisSortedSet sortedSet)) {
+                return new Exception(CommandExecutor.WRONGTYPE);
+            }
+            List<Object> entries = new ArrayList<>();
+            long next = sortedSet.scan(cursor, options.count(), (member, score) -> {
+                if (options.pattern() == null || GlobPattern.matches(options.pattern(), member)) {
+                    entries.add(member);
+                    entries.add(SortedSetCommands.formatScore(score));
+                }
+            });
+            return new Object[]{Long.toString(next), entries.toArray()};
+        });
+    }
+
+    /**
+     * Checks a key found by a walk against the pattern and type asked for, removing it if it has expired
+     * @param key The key
+     * @param options The options
+     * @return True if the key is to be returned
+     */
+    private boolean isWanted(String key, Options options) {
+        if (options.pattern() != null && !GlobPattern.matches(options.pattern(), key)) {
+            return false;
+        }
+        if (options.type() == null) {
+            return !executor.expireIfNeeded(key);
+        }
+        Object value = executor.lookupKey(key);
+        return value != null && options.type().equalsIgnoreCase(typeOf(value));
+    }
+
+    /**
+     * Names the type of a value as TYPE does
+     * @param value The value
+     * @return string, list, hash or zset
+     */
+    static String typeOf(Object value) {
+        if (value instanceof RedisList) {
+            return "list";
+        }
+        if (value instanceof RedisHash) {
+            return "hash";
+        }
+        if (value instanceof RedisSortedSet) {
+            return "zset";
+        }
+        return "string";
+    }
+
+    /**
+     * Parses a cursor
+     * @param text The cursor as sent
+     * @return The cursor, or -1 if it is not a number of zero or more
+     */
+    private static long parseCursor(String text) {
+        try {
+            return Math.max(Long.parseLong(text), -1);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Parses the options after a cursor
+     * @param command The command
+     * @param start The index of the first option
+     * @param keyspace True for SCAN, which takes TYPE
+     * @param hash True for HSCAN, which takes NOVALUES
+     * @return The options, or an error
+     */
+    private static Object parseOptions(Object[] command, int start, boolean keyspace, boolean hash) {
+        String pattern = null;
+        int count = DEFAULT_COUNT;
+        String type = null;
+        boolean noValues = false;
+        for (int i = start; i < command.length; i++) {
+            String option = (String) command[i];
+            boolean hasArgument = i + 1 < command.length;
+            if (option.equalsIgnoreCase("MATCH") && hasArgument) {
+                pattern = (String) command[++i];
+                // a lone star matches everything, so skip matching altogether
+                if (pattern.equals("*")) {
+                    pattern = null;
+                }
+            } else if (option.equalsIgnoreCase("COUNT") && hasArgument) {
+                try {
+                    count = Integer.parseInt((String) command[++i]);
+                } catch (NumberFormatException e) {
+                    return new Exception("ERR value is not an integer or out of range");
+                }
+                if (count < 1) {
+                    return new Exception("ERR syntax error");
+                }
+            } else if (option.equalsIgnoreCase("TYPE") && hasArgument && keyspace) {
+                type = (String) command[++i];
+            } else if (option.equalsIgnoreCase("NOVALUES") && hash) {
+                noValues = true;
+            } else {
+                return new Exception("ERR syntax error");
+            }
+        }
+        return new Options(pattern, count, type, noValues);
+    }
+}
@@ -0,0 +1,683 @@
+package com.mycompany.app;
+
+public class ServerConfig {
+
+    private int port = 6379;
+    private ServerMode mode = ServerMode.BLOCKING;
+    private int ioThreads = Math.min(4, Runtime.getRuntime().availableProcessors());
+    private int maxClients = 10000;
+    private String aofFile = "redis.aof";
+    private String rdbFile = "dump.rdb";
+    private AppendFsync appendFsync = AppendFsync.EVERYSEC;
+    private int autoAofRewritePercentage = 100;
+    private long autoAofRewriteMinSize = 64L * 1024 * 1024;
+    private boolean aofLoadTruncated = true;
+    private int aofLoadThreads = 1;
+    private long aofWriterQueueLimit = 64L * 1024 * 1024;
+    private long maxMemory;
+    private EvictionPolicy maxMemoryPolicy = EvictionPolicy.NOEVICTION;
+    private int maxMemorySamples = 5;
+    private int hashMaxListpackEntries = 128;
+    private int hashMaxListpackValue = 64;
+    private int zsetMaxListpackEntries = 128;
+    private int zsetMaxListpackValue = 64;
+    private KeyspaceStorage keyspace = KeyspaceStorage.HEAP;
+    private int shards;
+    private long pubSubOutputLimit = PubSub.DEFAULT_OUTPUT_LIMIT;
+    private String replicaOfHost;
+    private int replicaOfPort;
+    private int replBacklogSize = Replication.DEFAULT_BACKLOG_SIZE;
+    private long replicaOutputLimit = Replication.DEFAULT_REPLICA_OUTPUT_LIMIT;
+    private boolean clusterEnabled;
+    private String clusterAnnounceIp = "127.0.0.1";
+
+    /**
+     * Builds a configuration from redis-server style command line options (e.g. --port 6380 --mode nio)
+     * @param args The command line arguments given to the server
+     * @return A configuration with every recognised option applied on top of the defaults
+     * @throws IllegalArgumentException If an option is unknown or is missing its value
+     */
+    public static ServerConfig fromArgs(String[] args) {
+        ServerConfig config = new ServerConfig();
+        for (int i = 0; i < args.length; i++) {
+            String option = args[i];
+            if (!option.startsWith("--") || i + 1 >= args.length) {
+                throw new IllegalArgumentException("Expected '--option value' but got: " + option);
+            }
+            String value = args[++i];
+            switch (option.substring(2).toLowerCase()) {
+                case "port" -> config.setPort(Integer.parseInt(value));
+                case "mode" -> config.setMode(ServerMode.fromName(value));
+                case "io-threads" -> config.setIoThreads(Integer.parseInt(value));
+                case "maxclients" -> config.setMaxClients(Integer.parseInt(value));
+                case "appendfilename" -> config.setAofFile(value);
+                case "dbfilename" -> config.setRdbFile(value);
+                case "appendfsync" -> config.setAppendFsync(AppendFsync.fromName(value));
+                case "auto-aof-rewrite-percentage" -> config.setAutoAofRewritePercentage(Integer.parseInt(value));
+                case "auto-aof-rewrite-min-size" -> config.setAutoAofRewriteMinSize(parseMemory(value));
+                case "aof-load-truncated" -> config.setAofLoadTruncated(parseYesNo(value));
+                case "aof-load-threads" -> config.setAofLoadThreads(Integer.parseInt(value));
+                case "aof-writer-queue-limit" -> config.setAofWriterQueueLimit(parseMemory(value));
+                case "maxmemory" -> config.setMaxMemory(parseMemory(value));
+                case "maxmemory-policy" -> config.setMaxMemoryPolicy(EvictionPolicy.fromName(value));
+                case "maxmemory-samples" -> config.setMaxMemorySamples(Integer.parseInt(value));
+                case "hash-max-listpack-entries" -> config.setHashMaxListpackEntries(Integer.parseInt(value));
+                case "hash-max-listpack-value" -> config.setHashMaxListpackValue(Integer.parseInt(value));
+                case "zset-max-listpack-entries" -> config.setZsetMaxListpackEntries(Integer.parseInt(value));
+                case "zset-max-listpack-value" -> config.setZsetMaxListpackValue(Integer.parseInt(value));
+                case "keyspace" -> config.setKeyspace(KeyspaceStorage.fromName(value));
+                case "shards" -> config.setShards(Integer.parseInt(value));
+                case "client-output-buffer-limit-pubsub" -> config.setPubSubOutputLimit(parseMemory(value));
+                case "replicaof", "slaveof" -> config.setReplicaOf(value);
+                case "repl-backlog-size" -> config.setReplBacklogSize(Math.toIntExact(parseMemory(value)));
+                case "client-output-buffer-limit-replica" -> config.setReplicaOutputLimit(parseMemory(value));
+                case "cluster-enabled" -> config.setClusterEnabled(parseYesNo(value));
+                case "cluster-announce-ip" -> config.setClusterAnnounceIp(value);
+                default -> throw new IllegalArgumentException("Unknown option: " + option);
+            }
+        }
+        return config;
+    }
+
+    /**
+     * Parses a redis.conf style boolean
+     * @param value yes or no, ignoring case
+     * @return True for yes
+     * @throws IllegalArgumentException If the value is neither
+     */
+    public static boolean parseYesNo(String value) {
+        if (value.equalsIgnoreCase("yes")) {
+            return true;
+        }
+        if (value.equalsIgnoreCase("no")) {
+            return false;
+        }
+        throw new IllegalArgumentException("Expected yes or no but got: " + value);
+    }
+
+    /**
+     * Parses a redis.conf style memory size such as 64mb, 1gb or a plain byte count
+     * @param value The size with an optional b, k, kb, m, mb, g or gb suffix, ignoring case
+     * @return The size in bytes
+     * @throws IllegalArgumentException If the value is not a size
+     */
+    public static long parseMemory(String value) {
+        String lower = value.trim().toLowerCase();
+        int end = lower.length();
+        while (end > 0 && Character.isLetter(lower.charAt(end - 1))) {
+            end--;
+        }
+        long multiplier = switch (lower.substring(end)) {
+            case "", "b" -> 1L;
+            case "k" -> 1000L;
+            case "kb" -> 1024L;
+            case "m" -> 1000L * 1000;
+            case "mb" -> 1024L * 1024;
+            case "g" -> 1000L * 1000 * 1000;
+            case "gb" -> 1024L * 1024 * 1024;
+            default -> throw new IllegalArgumentException("Invalid memory size: " + value);
+        };
+        try {
+            return Long.parseLong(lower.substring(0, end)) * multiplier;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid memory size: " + value, e);
+        }
+    }
+
+    /**
+     * Gets the TCP port the server listens on
+     * @return The listening port
+     */
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * Sets the TCP port the server listens on
+     * @param port The listening port, 0 lets the operating system pick a free one
+     * @return This configuration
+     */
+    public ServerConfig setPort(int port) {
+        this.port = port;
+        return this;
+    }
+
+    /**
+     * Gets how client connections are serviced
+     * @return The connection handling mode
+     */
+    public ServerMode getMode() {
+        return mode;
+    }
+
+    /**
+     * Sets how client connections are serviced
+     * @param mode The connection handling mode
+     * @return This configuration
+     */
+    public ServerConfig setMode(ServerMode mode) {
+        this.mode = mode;
+        return this;
+    }
+
+    /**
+     * Gets the number of reactor threads used in NIO mode
+     * @return The reactor thread count
+     */
+    public int getIoThreads() {
+        return ioThreads;
+    }
+
+    /**
+     * Sets the number of reactor threads used in NIO mode
+     * @param ioThreads The reactor thread count, at least one
+     * @return This configuration
+     */
+    public ServerConfig setIoThreads(int ioThreads) {
+        if (ioThreads < 1) {
+            throw new IllegalArgumentException("io-threads must be at least 1");
+        }
+        this.ioThreads = ioThreads;
+        return this;
+    }
+
+    /**
+     * Gets the maximum number of simultaneously connected clients in virtual thread mode
+     * @return The connection cap
+     */
+    public int getMaxClients() {
+        return maxClients;
+    }
+
+    /**
+     * Sets the maximum number of simultaneously connected clients in virtual thread mode
+     * @param maxClients The connection cap, at least one
+     * @return This configuration
+     */
+    public ServerConfig setMaxClients(int maxClients) {
+        if (maxClients < 1) {
+            throw new IllegalArgumentException("maxclients must be at least 1");
+        }
+        this.maxClients = maxClients;
+        return this;
+    }
+
+    /**
+     * Gets the path of the append only file
+     * @return The AOF path
+     */
+    public String getAofFile() {
+        return aofFile;
+    }
+
+    /**
+     * Sets the path of the append only file
+     * @param aofFile The AOF path
+     * @return This configuration
+     */
+    public ServerConfig setAofFile(String aofFile) {
+        this.aofFile = aofFile;
+        return this;
+    }
+
+    /**
+     * Gets the path of the snapshot file written by SAVE and BGSAVE
+     * @return The snapshot path
+     */
+    public String getRdbFile() {
+        return rdbFile;
+    }
+
+    /**
+     * Sets the path of the snapshot file written by SAVE and BGSAVE
+     * @param rdbFile The snapshot path
+     * @return This configuration
+     */
+    public ServerConfig setRdbFile(String rdbFile) {
+        this.rdbFile = rdbFile;
+        return this;
+    }
+
+    /**
+     * Gets how often the append only file is forced to disk
+     * @return The fsync policy
+     */
+    public AppendFsync getAppendFsync() {
+        return appendFsync;
+    }
+
+    /**
+     * Sets how often the append only file is forced to disk
+     * @param appendFsync The fsync policy
+     * @return This configuration
+     */
+    public ServerConfig setAppendFsync(AppendFsync appendFsync) {
+        this.appendFsync = appendFsync;
+        return this;
+    }
+
+    /**
+     * Gets how much the AOF must grow past its size after the last rewrite before it is rewritten automatically
+     * @return The growth in percent, 0 when automatic rewrites are off
+     */
+    public int getAutoAofRewritePercentage() {
+        return autoAofRewritePercentage;
+    }
+
+    /**
+     * Sets how much the AOF must grow past its size after the last rewrite before it is rewritten automatically
+     * @param autoAofRewritePercentage The growth in percent, 0 turns automatic rewrites off
+     * @return This configuration
+     */
+    public ServerConfig setAutoAofRewritePercentage(int autoAofRewritePercentage) {
+        if (autoAofRewritePercentage < 0) {
+            throw new IllegalArgumentException("auto-aof-rewrite-percentage must not be negative");
+        }
+        this.autoAofRewritePercentage = autoAofRewritePercentage;
+        return this;
+    }
+
+    /**
+     * Gets the size below which the AOF is never rewritten automatically
+     * @return The minimum size in bytes
+     */
+    public long getAutoAofRewriteMinSize() {
+        return autoAofRewriteMinSize;
+    }
+
+    /**
+     * Sets the size below which the AOF is never rewritten automatically
+     * @param autoAofRewriteMinSize The minimum size in bytes
+     * @return This configuration
+     */
+    public ServerConfig setAutoAofRewriteMinSize(long autoAofRewriteMinSize) {
+        if (autoAofRewriteMinSize < 0) {
+            throw new IllegalArgumentException("auto-aof-rewrite-min-size must not be negative");
+        }
+        this.autoAofRewriteMinSize = autoAofRewriteMinSize;
+        return this;
+    }
+
+    /**
+     * Gets whether an AOF that ends part way through a command is repaired and loaded at startup
+     * @return True if the partial command is cut off and loading carries on
+     */
+    public boolean isAofLoadTruncated() {
+        return aofLoadTruncated;
+    }
+
+    /**
+     * Sets whether an AOF that ends part way through a command is repaired and loaded at startup
+     * @param aofLoadTruncated True to cut off the partial command, false to refuse to start
+     * @return This configuration
+     */
+    public ServerConfig setAofLoadTruncated(boolean aofLoadTruncated) {
+        this.aofLoadTruncated = aofLoadTruncated;
+        return this;
+    }
+
+    /**
+     * Gets the number of threads the AOF is replayed on at startup
+     * @return The replay thread count
+     */
+    public int getAofLoadThreads() {
+        return aofLoadThreads;
+    }
+
+    /**
+     * Sets the number of threads the AOF is replayed on at startup; with more than one, commands
+     * are spread over them by key
+     * @param aofLoadThreads The replay thread count, 1 to replay on the startup thread
+     * @return This configuration
+     */
+    public ServerConfig setAofLoadThreads(int aofLoadThreads) {
+        if (aofLoadThreads < 1) {
+            throw new IllegalArgumentException("aof-load-threads must be at least 1");
+        }
+        this.aofLoadThreads = aofLoadThreads;
+        return this;
+    }
+
+    /**
+     * Gets the most bytes of logged writes that may wait for the AOF writer thread
+     * @return The limit in bytes, 0 for none
+     */
+    public long getAofWriterQueueLimit() {
+        return aofWriterQueueLimit;
+    }
+
+    /**
+     * Sets the most bytes of logged writes that may wait for the AOF writer thread. Past it, writes
+     * wait for the disk to catch up rather than queueing without bound.
+     * @param aofWriterQueueLimit The limit in bytes, 0 for none; with shards each segment gets an equal part
+     * @return This configuration
+     */
+    public ServerConfig setAofWriterQueueLimit(long aofWriterQueueLimit) {
+        if (aofWriterQueueLimit < 0) {
+            throw new IllegalArgumentException("aof-writer-queue-limit must not be negative");
+        }
+        this.aofWriterQueueLimit = aofWriterQueueLimit;
+        return this;
+    }
+
+    /**
+     * Gets the limit on the estimated memory used by the database
+     * @return The limit in bytes, 0 for none
+     */
+    public long getMaxMemory() {
+        return maxMemory;
+    }
+
+    /**
+     * Sets the limit on the estimated memory used by the database
+     * @param maxMemory The limit in bytes, 0 for none
+     * @return This configuration
+     */
+    public ServerConfig setMaxMemory(long maxMemory) {
+        this.maxMemory = maxMemory;
+        return this;
+    }
+
+    /**
+     * Gets which keys are evicted once maxmemory is reached
+     * @return The eviction policy
+     */
+    public EvictionPolicy getMaxMemoryPolicy() {
+        return maxMemoryPolicy;
+    }
+
+    /**
+     * Sets which keys are evicted once maxmemory is reached
+     * @param maxMemoryPolicy The eviction policy
+     * @return This configuration
+     */
+    public ServerConfig setMaxMemoryPolicy(EvictionPolicy maxMemoryPolicy) {
+        this.maxMemoryPolicy = maxMemoryPolicy;
+        return this;
+    }
+
+    /**
+     * Gets how many keys each eviction round samples
+     * @return The sample size
+     */
+    public int getMaxMemorySamples() {
+        return maxMemorySamples;
+    }
+
+    /**
+     * Sets how many keys each eviction round samples; more samples approximate the policy more
+     * closely at more cost per eviction
+     * @param maxMemorySamples The sample size, at least 1
+     * @return This configuration
+     */
+    public ServerConfig setMaxMemorySamples(int maxMemorySamples) {
+        if (maxMemorySamples < 1) {
+            throw new IllegalArgumentException("maxmemory-samples must be at least 1");
+        }
+        this.maxMemorySamples = maxMemorySamples;
+        return this;
+    }
+
+    /**
+     * Gets the most fields a hash can have and still be stored in the packed encoding
+     * @return The field count
+     */
+    public int getHashMaxListpackEntries() {
+        return hashMaxListpackEntries;
+    }
+
+    /**
+     * Sets the most fields a hash can have and still be stored in the packed encoding
+     * @param hashMaxListpackEntries The field count
+     * @return This configuration
+     */
+    public ServerConfig setHashMaxListpackEntries(int hashMaxListpackEntries) {
+        this.hashMaxListpackEntries = hashMaxListpackEntries;
+        return this;
+    }
+
+    /**
+     * Gets the longest field or value a hash can hold and still be stored in the packed encoding
+     * @return The length in characters
+     */
+    public int getHashMaxListpackValue() {
+        return hashMaxListpackValue;
+    }
+
+    /**
+     * Sets the longest field or value a hash can hold and still be stored in the packed encoding
+     * @param hashMaxListpackValue The length in characters
+     * @return This configuration
+     */
+    public ServerConfig setHashMaxListpackValue(int hashMaxListpackValue) {
+        this.hashMaxListpackValue = hashMaxListpackValue;
+        return this;
+    }
+
+    /**
+     * Gets the most members a sorted set can have and still be stored in the packed encoding
+     * @return The member count
+     */
+    public int getZsetMaxListpackEntries() {
+        return zsetMaxListpackEntries;
+    }
+
+    /**
+     * Sets the most members a sorted set can have and still be stored in the packed encoding
+     * @param zsetMaxListpackEntries The member count
+     * @return This configuration
+     */
+    public ServerConfig setZsetMaxListpackEntries(int zsetMaxListpackEntries) {
+        this.zsetMaxListpackEntries = zsetMaxListpackEntries;
+        return this;
+    }
+
+    /**
+     * Gets the longest member a sorted set can hold and still be stored in the packed encoding
+     * @return The length in characters
+     */
+    public int getZsetMaxListpackValue() {
+        return zsetMaxListpackValue;
+    }
+
+    /**
+     * Sets the longest member a sorted set can hold and still be stored in the packed encoding
+     * @param zsetMaxListpackValue The length in characters
+     * @return This configuration
+     */
+    public ServerConfig setZsetMaxListpackValue(int zsetMaxListpackValue) {
+        this.zsetMaxListpackValue = zsetMaxListpackValue;
+        return this;
+    }
+
+    /**
+     * Gets where the keys and values are stored
+     * @return The keyspace storage
+     */
+    public KeyspaceStorage getKeyspace() {
+        return keyspace;
+    }
+
+    /**
+     * Sets where the keys and values are stored
+     * @param keyspace The keyspace storage
+     * @return This configuration
+     */
+    public ServerConfig setKeyspace(KeyspaceStorage keyspace) {
+        this.keyspace = keyspace;
+        return this;
+    }
+
+    /**
+     * Gets the number of shards the keyspace is split over, each owned by one executor thread
+     * @return The shard count, 0 when every connection executes commands itself
+     */
+    public int getShards() {
+        return shards;
+    }
+
+    /**
+     * Sets the number of shards the keyspace is split over, each owned by one executor thread
+     * @param shards The shard count, 0 for no sharding
+     * @return This configuration
+     * @throws IllegalArgumentException If the count is negative
+     */
+    public ServerConfig setShards(int shards) {
+        if (shards < 0) {
+            throw new IllegalArgumentException("shards must not be negative");
+        }
+        this.shards = shards;
+        return this;
+    }
+
+    /**
+     * Gets the most output a subscribed client may have waiting before it is disconnected
+     * @return The limit in bytes, 0 for no limit
+     */
+    public long getPubSubOutputLimit() {
+        return pubSubOutputLimit;
+    }
+
+    /**
+     * Sets the most output a subscribed client may have waiting before it is disconnected, so a slow
+     * subscriber is dropped rather than growing without bound or holding up publishers
+     * @param pubSubOutputLimit The limit in bytes, 0 for no limit
+     * @return This configuration
+     * @throws IllegalArgumentException If the limit is negative
+     */
+    public ServerConfig setPubSubOutputLimit(long pubSubOutputLimit) {
+        if (pubSubOutputLimit < 0) {
+            throw new IllegalArgumentException("client-output-buffer-limit-pubsub must not be negative");
+        }
+        this.pubSubOutputLimit = pubSubOutputLimit;
+        return this;
+    }
+
+    /**
+     * Gets the host of the master this server replicates on start
+     * @return The host, null if the server starts as a master
+     */
+    public String getReplicaOfHost() {
+        return replicaOfHost;
+    }
+
+    /**
+     * Gets the port of the master this server replicates on start
+     * @return The port, 0 if the server starts as a master
+     */
+    public int getReplicaOfPort() {
+        return replicaOfPort;
+    }
+
+    /**
+     * Makes the server start as a replica of another, as the replicaof directive does
+     * @param master The master as "host port"
+     * @return This configuration
+     * @throws IllegalArgumentException If the value is not a host and a port
+     */
+    public ServerConfig setReplicaOf(String master) {
+        String[] parts = master.trim().split("\\s+");
+        if (parts.length != 2) {
+            throw new IllegalArgumentException("replicaof expects 'host port' but got: " + master);
+        }
+        return setReplicaOf(parts[0], Integer.parseInt(parts[1]));
+    }
+
+    /**
+     * Makes the server start as a replica of another
+     * @param host The master's host
+     * @param port The master's port
+     * @return This configuration
+     * @throws IllegalArgumentException If the port is out of range
+     */
+    public ServerConfig setReplicaOf(String host, int port) {
+        if (port < 1 || port > 65535) {
+            throw new IllegalArgumentException("replicaof port must be between 1 and 65535");
+        }
+        this.replicaOfHost = host;
+        this.replicaOfPort = port;
+        return this;
+    }
+
+    /**
+     * Gets the size of the backlog of recent writes kept for replicas that reconnect
+     * @return The size in bytes
+     */
+    public int getReplBacklogSize() {
+        return replBacklogSize;
+    }
+
+    /**
+     * Sets the size of the backlog of recent writes kept for replicas that reconnect. A replica that
+     * has missed more than this needs a full resync.
+     * @param replBacklogSize The size in bytes
+     * @return This configuration
+     * @throws IllegalArgumentException If the size is not positive
+     */
+    public ServerConfig setReplBacklogSize(int replBacklogSize) {
+        if (replBacklogSize < 1) {
+            throw new IllegalArgumentException("repl-backlog-size must be at least 1");
+        }
+        this.replBacklogSize = replBacklogSize;
+        return this;
+    }
+
+    /**
+     * Gets the most output a replica may have waiting before it is disconnected
+     * @return The limit in bytes, 0 for no limit
+     */
+    public long getReplicaOutputLimit() {
+        return replicaOutputLimit;
+    }
+
+    /**
+     * Sets the most output a replica may have waiting, snapshot included, before it is disconnected
+     * @param replicaOutputLimit The limit in bytes, 0 for no limit
+     * @return This configuration
+     * @throws IllegalArgumentException If the limit is negative
+     */
+    public ServerConfig setReplicaOutputLimit(long replicaOutputLimit) {
+        if (replicaOutputLimit < 0) {
+            throw new IllegalArgumentException("client-output-buffer-limit-replica must not be negative");
+        }
+        this.replicaOutputLimit = replicaOutputLimit;
+        return this;
+    }
+
+    /**
+     * Checks if the server runs as a cluster node
+     * @return True in cluster mode
+     */
+    public boolean isClusterEnabled() {
+        return clusterEnabled;
+    }
+
+    /**
+     * Makes the server a cluster node, serving only the hash slots assigned to it and redirecting
+     * commands for the others
+     * @param clusterEnabled True for cluster mode
+     * @return This configuration
+     */
+    public ServerConfig setClusterEnabled(boolean clusterEnabled) {
+        this.clusterEnabled = clusterEnabled;
+        return this;
+    }
+
+    /**
+     * Gets the host a cluster node gives out for itself in redirections and to other nodes
+     * @return The host
+     */
+    public String getClusterAnnounceIp() {
+        return clusterAnnounceIp;
+    }
+
+    /**
+     * Sets the host a cluster node gives out for itself in redirections and to other nodes
+     * @param clusterAnnounceIp The host, 127.0.0.1 by default for nodes on one machine
+     * @return This configuration
+     */
+    public ServerConfig setClusterAnnounceIp(String clusterAnnounceIp) {
+        this.clusterAnnounceIp = clusterAnnounceIp;
+        return this;
+    }
+}
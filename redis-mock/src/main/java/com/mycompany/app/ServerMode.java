@@ -0,0 +1,34 @@
+package com.mycompany.app;
+
+public enum ServerMode {
+
+    /**
+     * One platform thread per connection, each running a ClientHandler over blocking socket streams
+     */
+    BLOCKING,
+
+    /**
+     * A small fixed set of reactor threads multiplexing non-blocking channels through a Selector
+     */
+    NIO,
+
+    /**
+     * One virtual thread per connection, each running a ClientHandler, with a cap on open connections
+     */
+    VIRTUAL;
+
+    /**
+     * Resolves a mode from its configuration name, ignoring case
+     * @param name The name given on the command line (e.g. "nio")
+     * @return The matching server mode
+     * @throws IllegalArgumentException If no mode has the given name
+     */
+    public static ServerMode fromName(String name) {
+        for (ServerMode mode : values()) {
+            if (mode.name().equalsIgnoreCase(name)) {
+                return mode;
+            }
+        }
+        throw new IllegalArgumentException("Unknown server mode: " + name);
+    }
+}
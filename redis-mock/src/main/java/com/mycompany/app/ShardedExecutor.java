@@ -0,0 +1,889 @@
+package com.mycompany.app;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+public class ShardedExecutor implements CommandDispatcher {
+
+    private static final long ACTIVE_EXPIRE_PERIOD_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long ACTIVE_EXPIRE_BUDGET_NANOS = TimeUnit.MILLISECONDS.toNanos(25);
+    // a busy shard looks at the clock for its expiry cycle once per this many commands
+    private static final int CLOCK_CHECK_INTERVAL = 256;
+    // replay waits for the shards to catch up after this many commands, so their queues stay short
+    private static final int REPLAY_WINDOW = 16 * 1024;
+
+    /**
+     * How the replies of a command run on several shards are combined into one
+     */
+    private enum Merge {
+        SUM, FIRST, MIN, ARRAY, CONCAT, INFO
+    }
+
+    /**
+     * A command queued for a shard and where its reply goes, or code to run on the shard's thread
+     */
+    private record Request(Object[] command, Runnable task, CompletableFuture<Object> reply) {
+    }
+
+    // keyless commands that act on the whole database run on every shard
+    private static final Map<String, Merge> BROADCAST = Map.of(
+            "INFO", Merge.INFO,
+            "SAVE", Merge.FIRST,
+            "BGSAVE", Merge.FIRST,
+            "BGREWRITEAOF", Merge.FIRST,
+            "LASTSAVE", Merge.MIN,
+            "KEYS", Merge.CONCAT);
+    // multi-key commands that can be split into one command per shard holding some of the keys
+    private static final Map<String, Merge> SPLIT = Map.of(
+            "DEL", Merge.SUM,
+            "UNLINK", Merge.SUM,
+            "EXISTS", Merge.SUM,
+            "MGET", Merge.ARRAY);
+    // multi-key writes that must be seen whole, run across shards with every shard involved paused
+    private static final Set<String> COORDINATED = Set.of("MSET", "MSETNX");
+    // keyless commands that read nothing a shard owns, answered on the calling thread rather than
+    // queued behind whatever the first shard is running
+    private static final Set<String> STATELESS = Set.of("PING", "COMMAND", "ASKING");
+    // commands that need one stream of writes for the whole database, which shards do not have, or
+    // that name their keys in a way a shard cannot be picked by
+    private static final Map<String, String> UNSHARDABLE = Map.of(
+            "PSYNC", "replication",
+            "REPLICAOF", "replication",
+            "SLAVEOF", "replication",
+            "MIGRATE", "MIGRATE");
+
+    private final ServerConfig config;
+    private final Shard[] shards;
+    private final CommandRegistry registry;
+    // coordinated writes pause their shards in the order they take this, so two cannot each hold a shard the other waits for
+    private final Object coordinationLock = new Object();
+
+    /**
+     * Splits the keyspace into the configured number of shards, each owned by one thread with its
+     * own data store, AOF segment and snapshot segment, so writes to different shards share
+     * nothing. Connections hand commands to the owning shard through a lock-free queue and are
+     * handed the reply once it is ready; commands on keys of several shards are split into one command per shard, or
+     * for MSET and MSETNX run on all of them together.
+     * Segment files are named after the configured files with the shard number appended. The
+     * shard threads are started straight away; call load to restore the data.
+     * @param config The shard count, file locations and memory settings to use
+     */
+    public ShardedExecutor(ServerConfig config) {
+        if (config.getShards() < 1) {
+            throw new IllegalArgumentException("shards must be at least 1");
+        }
+        this.config = config;
+        this.shards = new Shard[config.getShards()];
+        long maxMemory = config.getMaxMemory() > 0 ? Math.max(1, config.getMaxMemory() / shards.length) : 0;
+        long queueLimit = config.getAofWriterQueueLimit() > 0 ? Math.max(1, config.getAofWriterQueueLimit() / shards.length) : 0;
+        for (int i = 0; i < shards.length; i++) {
+            AofPersistence aofPersistence = new AofPersistence(segmentName(config.getAofFile(), i), config.getAppendFsync());
+            aofPersistence.setAutoRewrite(config.getAutoAofRewritePercentage(), config.getAutoAofRewriteMinSize());
+            aofPersistence.setLoadTruncated(config.isAofLoadTruncated());
+            aofPersistence.setWriterQueueLimit(queueLimit);
+            RdbPersistence rdbPersistence = new RdbPersistence(segmentName(config.getRdbFile(), i));
+            Keyspace dataStore = switch (config.getKeyspace()) {
+                case HEAP -> new HeapKeyspace();
+                case OFFHEAP -> new OffHeapKeyspace();
+            };
+            CommandExecutor executor = new CommandExecutor(dataStore, aofPersistence, rdbPersistence);
+            executor.getEncodingLimits()
+                    .setHashMaxListpackEntries(config.getHashMaxListpackEntries())
+                    .setHashMaxListpackValue(config.getHashMaxListpackValue())
+                    .setZsetMaxListpackEntries(config.getZsetMaxListpackEntries())
+                    .setZsetMaxListpackValue(config.getZsetMaxListpackValue());
+            executor.setMaxMemory(maxMemory, config.getMaxMemoryPolicy(), config.getMaxMemorySamples());
+            shards[i] = new Shard(i, executor, aofPersistence);
+        }
+        this.registry = shards[0].executor.getRegistry();
+        for (Shard shard : shards) {
+            shard.thread.start();
+        }
+    }
+
+    /**
+     * Restores the data at startup from the AOF segments, or from the snapshot segments if there
+     * is no AOF data. Every command and key is routed by the current shard count, so segments
+     * written with a different count load correctly. When any key has changed shard, or the data
+     * came from snapshots, every AOF segment is rewritten and segments beyond the current count
+     * are deleted.
+     */
+    public void load() {
+        List<File> staleAofs = staleSegments(config.getAofFile());
+        boolean hasAof = !staleAofs.isEmpty();
+        for (Shard shard : shards) {
+            hasAof |= shard.aofPersistence.hasData();
+        }
+        boolean rewrite = hasAof ? replayAof(staleAofs) : loadSnapshots();
+        if (rewrite) {
+            for (Shard shard : shards) {
+                shard.executor.rewriteAof();
+            }
+            staleAofs.forEach(File::delete);
+            staleSegments(config.getRdbFile()).forEach(File::delete);
+        }
+    }
+
+    /**
+     * Replays every AOF segment through the shards
+     * @param staleAofs Segments beyond the current shard count
+     * @return True if any command was for a shard other than the one whose segment it came from
+     */
+    private boolean replayAof(List<File> staleAofs) {
+        boolean moved = !staleAofs.isEmpty();
+        for (Shard shard : shards) {
+            shard.executor.setLoading(true);
+        }
+        try {
+            for (Shard shard : shards) {
+                moved |= replaySegment(shard.aofPersistence, shard.index);
+            }
+            for (File file : staleAofs) {
+                AofPersistence stale = new AofPersistence(file.getPath(), config.getAppendFsync());
+                stale.setLoadTruncated(config.isAofLoadTruncated());
+                try {
+                    replaySegment(stale, -1);
+                } finally {
+                    stale.close();
+                }
+            }
+        } finally {
+            for (Shard shard : shards) {
+                shard.executor.setLoading(false);
+            }
+        }
+        return moved;
+    }
+
+    /**
+     * Replays one AOF segment without waiting for each reply: a shard's queue keeps the order of
+     * the commands for its keys, and replay pauses every so often for the shards to catch up
+     * @param aofPersistence The segment
+     * @param index The shard the segment was written by, or -1 for a stale segment
+     * @return True if any command was for a key of another shard
+     */
+    private boolean replaySegment(AofPersistence aofPersistence, int index) {
+        boolean[] moved = new boolean[1];
+        int[] sinceBarrier = new int[1];
+        aofPersistence.replay(registry, command -> {
+            if (index >= 0 && !moved[0] && !ownsKeys(index, command)) {
+                moved[0] = true;
+            }
+            dispatch(registry.lookup((String) command[0]), command);
+            if (++sinceBarrier[0] == REPLAY_WINDOW) {
+                sinceBarrier[0] = 0;
+                barrier();
+            }
+        });
+        barrier();
+        return moved[0];
+    }
+
+    /**
+     * Loads every snapshot segment and moves each key to the shard that owns it. Called before any
+     * client is served, so the shards are idle. As in the unsharded server, the AOF segments must
+     * then be rewritten to hold the loaded keys.
+     * @return True if any key was loaded
+     */
+    private boolean loadSnapshots() {
+        boolean loaded = false;
+        for (int i = 0; ; i++) {
+            File file = new File(segmentName(config.getRdbFile(), i));
+            if (i >= shards.length && !file.exists()) {
+                break;
+            }
+            if (!file.exists()) {
+                continue;
+            }
+            Keyspace segment = new HeapKeyspace(new HashMap<>());
+            Expires segmentExpires = new Expires();
+            new RdbPersistence(file.getPath()).load(segment, segmentExpires, shards[0].executor.getEncodingLimits());
+            for (String key : segment.keys()) {
+                CommandExecutor owner = shards[shardOf(key)].executor;
+                owner.getKeyspace().put(key, segment.get(key));
+                long deadline = segmentExpires.get(key);
+                if (deadline >= 0) {
+                    owner.getExpires().set(key, deadline);
+                }
+                loaded = true;
+            }
+        }
+        for (Shard shard : shards) {
+            shard.executor.recalculateUsedMemory();
+        }
+        return loaded;
+    }
+
+    /**
+     * Runs a command on the shards that own its keys and waits for the reply
+     * @param command The decoded command, its name first
+     * @return The reply, an Exception for an error reply
+     */
+    @Override
+    public Object execute(Object[] command) {
+        return join(dispatch(registry.lookup((String) command[0]), command));
+    }
+
+    /**
+     * Finds a command straight from the bytes of its name, as the connections do before running it
+     * @param command The decoded command
+     * @return The command, or null if there is none by that name
+     */
+    @Override
+    public CommandSpec lookup(RespCommand command) {
+        return registry.lookup(command);
+    }
+
+    /**
+     * Runs a command the connection has already looked up on the shards that own its keys. The
+     * connection's thread does not wait for the shards: if the reply is not ready at once it gets a
+     * DeferredReply, which it treats as it does a blocked command, so a reactor thread goes on
+     * serving its other connections meanwhile. There is no cluster mode with shards, so ASKING
+     * makes no difference.
+     * @param spec The command, null if there is none by the name sent
+     * @param command The decoded command, its name first
+     * @param asking True if the client sent ASKING before the command
+     * @return The reply, an Exception for an error reply, or a DeferredReply completed with it
+     */
+    @Override
+    public Object execute(CommandSpec spec, Object[] command, boolean asking) {
+        CompletableFuture<Object> reply = dispatch(spec, command);
+        if (reply.isDone()) {
+            return join(reply);
+        }
+        DeferredReply deferred = new DeferredReply();
+        reply.whenComplete((value, error) -> {
+            if (error != null) {
+                error.printStackTrace();
+                deferred.complete(new Exception("ERR " + (error instanceof CompletionException ? error.getCause() : error)));
+            } else if (value instanceof DeferredReply blocked) {
+                // a blocking pop the shard parked: its reply becomes this one, and giving up on this gives up on it
+                deferred.onComplete(blocked::cancel);
+                blocked.onComplete(() -> deferred.complete(blocked.getNow()));
+            } else {
+                deferred.complete(value);
+            }
+        });
+        return deferred;
+    }
+
+    /**
+     * Waits for the reply of a dispatched command
+     * @param reply The reply to come
+     * @return The reply, an Exception for an error reply
+     */
+    private static Object join(CompletableFuture<Object> reply) {
+        try {
+            return reply.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Sends a command to the shards that own its keys. Unknown commands, wrong argument counts and
+     * keyless commands that need no data are answered on the calling thread. Other commands without
+     * keys go to the first shard, unless they act on the whole database, in which case every shard
+     * runs them, or they are SCAN, which walks the shards one after another. Replication and MIGRATE are refused. A
+     * command whose keys are all in one shard runs there whole; otherwise it is run on all of them
+     * together if it is MSET or MSETNX, split by shard if its replies can be merged, and refused if not.
+     * @param spec The command, null if there is none by the name sent
+     * @param command The decoded command
+     * @return The reply, once every shard involved has run its part
+     */
+    private CompletableFuture<Object> dispatch(CommandSpec spec, Object[] command) {
+        if (spec == null || !spec.acceptsArgCount(command.length) || STATELESS.contains(spec.getName())) {
+            // errors, PING and COMMAND are made by the executor without touching the shard's data
+            return CompletableFuture.completedFuture(shards[0].executor.execute(spec, command, false));
+        }
+        String unsupported = UNSHARDABLE.get(spec.getName());
+        if (unsupported != null) {
+            return CompletableFuture.completedFuture(new Exception("ERR " + unsupported + " is not supported with shards"));
+        }
+        Merge broadcast = BROADCAST.get(spec.getName());
+        if (broadcast != null) {
+            List<CompletableFuture<Object>> replies = new ArrayList<>(shards.length);
+            for (Shard shard : shards) {
+                replies.add(shard.submit(command));
+            }
+            return gather(replies, null, broadcast);
+        }
+        if (spec.getName().equals("SCAN")) {
+            return scan(command);
+        }
+        if (spec.getFirstKey() <= 0 || command.length <= spec.getFirstKey()) {
+            return shards[0].submit(command);
+        }
+        if (spec.isSingleKey()) {
+            return shards[shardOf((String) command[spec.getFirstKey()])].submit(command);
+        }
+        return dispatchMultiKey(spec, command);
+    }
+
+    /**
+     * Sends a command with several keys to their shards. If they are in more than one, MSET and
+     * MSETNX are run on all of them together, reads and deletes are split by shard, atomic within
+     * each shard but not across them, and anything else is refused.
+     * @param spec The command
+     * @param command The decoded command
+     * @return The merged reply, or an error if the command cannot run across shards
+     */
+    private CompletableFuture<Object> dispatchMultiKey(CommandSpec spec, Object[] command) {
+        int first = spec.getFirstKey();
+        int last = Math.min(spec.getLastKey(command.length), command.length - 1);
+        int step = spec.getKeyStep();
+        int owner = shardOf((String) command[first]);
+        boolean oneShard = true;
+        for (int i = first + step; i <= last; i += step) {
+            oneShard &= shardOf((String) command[i]) == owner;
+        }
+        if (oneShard) {
+            return shards[owner].submit(command);
+        }
+        if (COORDINATED.contains(spec.getName())) {
+            return coordinate(spec, splitByShard(command, first, last, step, null));
+        }
+        Merge merge = SPLIT.get(spec.getName());
+        if (merge == null) {
+            return CompletableFuture.completedFuture(
+                    new Exception("ERR keys in request are on different shards, give them a common {hash tag} to keep them together"));
+        }
+        List<List<Integer>> positions = new ArrayList<>(shards.length);
+        Object[][] parts = splitByShard(command, first, last, step, positions);
+        List<CompletableFuture<Object>> replies = new ArrayList<>();
+        List<List<Integer>> replyPositions = new ArrayList<>();
+        for (int s = 0; s < shards.length; s++) {
+            if (parts[s] != null) {
+                replies.add(shards[s].submit(parts[s]));
+                replyPositions.add(positions.get(s));
+            }
+        }
+        return gather(replies, replyPositions, merge);
+    }
+
+    /**
+     * Splits a command into one command per shard holding some of its keys, each keeping the
+     * arguments before the first key and after the last
+     * @param command The decoded command
+     * @param first The index of the first key
+     * @param last The index of the last key
+     * @param step The distance between keys
+     * @param positions Receives which of the command's keys each shard's part holds, in order, to
+     *        put an array reply back together; null if not needed
+     * @return The parts by shard index, null for a shard with none of the keys
+     */
+    private Object[][] splitByShard(Object[] command, int first, int last, int step, List<List<Integer>> positions) {
+        List<List<Object>> parts = new ArrayList<>(shards.length);
+        for (int s = 0; s < shards.length; s++) {
+            parts.add(null);
+            if (positions != null) {
+                positions.add(new ArrayList<>());
+            }
+        }
+        for (int i = first, position = 0; i <= last; i += step, position++) {
+            int shard = shardOf((String) command[i]);
+            List<Object> part = parts.get(shard);
+            if (part == null) {
+                part = new ArrayList<>();
+                for (int j = 0; j < first; j++) {
+                    part.add(command[j]);
+                }
+                parts.set(shard, part);
+            }
+            for (int j = i; j < i + step && j < command.length; j++) {
+                part.add(command[j]);
+            }
+            if (positions != null) {
+                positions.get(shard).add(position);
+            }
+        }
+        Object[][] split = new Object[shards.length][];
+        for (int s = 0; s < shards.length; s++) {
+            List<Object> part = parts.get(s);
+            if (part != null) {
+                for (int j = last + step; j < command.length; j++) {
+                    part.add(command[j]);
+                }
+                split[s] = part.toArray();
+            }
+        }
+        return split;
+    }
+
+    /**
+     * Runs a write on several shards at once, so no command sees some of its keys written and not
+     * others. Each shard involved is paused by a task queued to it; the shard whose task runs last
+     * finds the others paused, applies every part on its own thread, then lets them go on. The
+     * tasks are queued under a lock, so every shard sees coordinated writes in the same order and
+     * two of them never wait for each other. The calling thread does not wait.
+     * @param spec The command, MSET or MSETNX
+     * @param parts The command split by shard, null for a shard not involved
+     * @return The reply, once every part has been applied
+     */
+    private CompletableFuture<Object> coordinate(CommandSpec spec, Object[][] parts) {
+        CompletableFuture<Object> reply = new CompletableFuture<>();
+        CompletableFuture<Void> applied = new CompletableFuture<>();
+        int involved = 0;
+        for (Object[] part : parts) {
+            if (part != null) {
+                involved++;
+            }
+        }
+        AtomicInteger waiting = new AtomicInteger(involved);
+        Runnable pause = () -> {
+            if (waiting.decrementAndGet() > 0) {
+                applied.join();
+                return;
+            }
+            try {
+                reply.complete(applyAcrossShards(spec, parts));
+            } catch (RuntimeException e) {
+                reply.completeExceptionally(e);
+            } finally {
+                applied.complete(null);
+            }
+        };
+        synchronized (coordinationLock) {
+            for (int s = 0; s < parts.length; s++) {
+                if (parts[s] != null) {
+                    shards[s].runTask(pause);
+                }
+            }
+        }
+        return reply;
+    }
+
+    /**
+     * Applies the parts of a coordinated write, with every shard involved paused. MSETNX first
+     * checks that none of its keys exist on any of them. A part refused for lack of memory leaves
+     * the parts before it applied, as a failed command part way through a MULTI would.
+     * @param spec The command, MSET or MSETNX
+     * @param parts The command split by shard, null for a shard not involved
+     * @return The reply of the whole command
+     */
+    private Object applyAcrossShards(CommandSpec spec, Object[][] parts) {
+        if (spec.getName().equals("MSETNX")) {
+            for (int s = 0; s < parts.length; s++) {
+                if (parts[s] == null) {
+                    continue;
+                }
+                Object[] part = parts[s];
+                List<Object> exists = new ArrayList<>();
+                exists.add("EXISTS");
+                for (int i = spec.getFirstKey(); i <= spec.getLastKey(part.length); i += spec.getKeyStep()) {
+                    exists.add(part[i]);
+                }
+                if (!Long.valueOf(0).equals(shards[s].executor.execute(exists.toArray()))) {
+                    return 0L;
+                }
+            }
+        }
+        Object result = null;
+        for (int s = 0; s < parts.length; s++) {
+            if (parts[s] != null) {
+                result = shards[s].executor.execute(parts[s]);
+                if (result instanceof Exception) {
+                    return result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Runs a SCAN step on one shard, walking the shards one after another. The cursor holds the
+     * shard being walked as its remainder by the shard count and that shard's own cursor as the
+     * quotient, so it stays stateless and 0 still starts and ends the walk.
+     * @param command The decoded SCAN command
+     * @return The next cursor and the keys found
+     */
+    private CompletableFuture<Object> scan(Object[] command) {
+        long cursor;
+        try {
+            cursor = Long.parseLong((String) command[1]);
+        } catch (NumberFormatException e) {
+            cursor = -1;
+        }
+        if (cursor < 0) {
+            return CompletableFuture.completedFuture(new Exception("ERR invalid cursor"));
+        }
+        int shard = (int) (cursor % shards.length);
+        Object[] part = command.clone();
+        part[1] = Long.toString(cursor / shards.length);
+        return shards[shard].submit(part).thenApply(reply -> {
+            if (!(reply instanceof Object[] scanned)) {
+                return reply;
+            }
+            long next = Long.parseLong((String) scanned[0]);
+            int nextShard = next == 0 ? shard + 1 : shard;
+            if (nextShard == shards.length) {
+                return scanned;
+            }
+            return new Object[]{Long.toString(next * shards.length + nextShard), scanned[1]};
+        });
+    }
+
+    /**
+     * Combines the replies of the shards a command ran on once they have all arrived
+     * @param replies The shards' replies
+     * @param positions For a split command, which of its keys each reply is for; null otherwise
+     * @param merge How to combine them
+     * @return The combined reply; an error reply from any shard is returned as it is
+     */
+    private static CompletableFuture<Object> gather(List<CompletableFuture<Object>> replies, List<List<Integer>> positions,
+                                                    Merge merge) {
+        return CompletableFuture.allOf(replies.toArray(new CompletableFuture<?>[0])).thenApply(done -> {
+            Object[] values = new Object[replies.size()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = replies.get(i).join();
+                if (values[i] instanceof Exception) {
+                    return values[i];
+                }
+            }
+            return switch (merge) {
+                case SUM -> {
+                    long sum = 0;
+                    for (Object value : values) {
+                        sum += (Long) value;
+                    }
+                    yield sum;
+                }
+                case FIRST -> values[0];
+                case MIN -> {
+                    long min = Long.MAX_VALUE;
+                    for (Object value : values) {
+                        min = Math.min(min, (Long) value);
+                    }
+                    yield min;
+                }
+                case ARRAY -> {
+                    int count = 0;
+                    for (List<Integer> part : positions) {
+                        count += part.size();
+                    }
+                    Object[] merged = new Object[count];
+                    for (int i = 0; i < values.length; i++) {
+                        Object[] part = (Object[]) values[i];
+                        for (int j = 0; j < part.length; j++) {
+                            merged[positions.get(i).get(j)] = part[j];
+                        }
+                    }
+                    yield merged;
+                }
+                case CONCAT -> {
+                    List<Object> merged = new ArrayList<>();
+                    for (Object value : values) {
+                        Collections.addAll(merged, (Object[]) value);
+                    }
+                    yield merged.toArray();
+                }
+                case INFO -> mergeInfo(values);
+            };
+        });
+    }
+
+    /**
+     * Combines the INFO of every shard into one: counters and sizes are added up, times and
+     * latencies take the largest, a status is err if any shard's is, and other fields are taken
+     * from the first shard. A Sharding section is added at the end.
+     * @param infos The INFO text of each shard, all with the same fields
+     * @return The combined text
+     */
+    private static String mergeInfo(Object[] infos) {
+        List<Map<String, String>> fields = new ArrayList<>(infos.length);
+        for (Object info : infos) {
+            Map<String, String> shardFields = new HashMap<>();
+            for (String line : ((String) info).split("\r\n")) {
+                int colon = line.indexOf(':');
+                if (colon > 0 && !line.startsWith("#")) {
+                    shardFields.put(line.substring(0, colon), line.substring(colon + 1));
+                }
+            }
+            fields.add(shardFields);
+        }
+        StringBuilder merged = new StringBuilder();
+        for (String line : ((String) infos[0]).split("\r\n", -1)) {
+            int colon = line.indexOf(':');
+            if (colon <= 0 || line.startsWith("#")) {
+                merged.append(line).append("\r\n");
+                continue;
+            }
+            String name = line.substring(0, colon);
+            String[] values = new String[fields.size()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = fields.get(i).getOrDefault(name, "");
+            }
+            merged.append(name).append(':').append(mergeField(name, values)).append("\r\n");
+        }
+        // the split left an empty last line for the text's final line break
+        merged.setLength(merged.length() - 2);
+        merged.append("\r\n# Sharding\r\n").append("shards:").append(infos.length).append("\r\n");
+        return merged.toString();
+    }
+
+    /**
+     * Combines one INFO field across shards
+     * @param name The field name
+     * @param values Its value in each shard
+     * @return The combined value
+     */
+    private static String mergeField(String name, String[] values) {
+        if (name.startsWith("db")) {
+            // db0:keys=..,expires=.. adds up item by item
+            String[] items = values[0].split(",");
+            long[] sums = new long[items.length];
+            for (String value : values) {
+                String[] parts = value.split(",");
+                for (int i = 0; i < items.length && i < parts.length; i++) {
+                    sums[i] += Long.parseLong(parts[i].substring(parts[i].indexOf('=') + 1));
+                }
+            }
+            StringBuilder merged = new StringBuilder();
+            for (int i = 0; i < items.length; i++) {
+                merged.append(i > 0 ? "," : "").append(items[i], 0, items[i].indexOf('=') + 1).append(sums[i]);
+            }
+            return merged.toString();
+        }
+        long[] numbers = new long[values.length];
+        for (int i = 0; i < values.length; i++) {
+            try {
+                numbers[i] = Long.parseLong(values[i]);
+            } catch (NumberFormatException e) {
+                for (String value : values) {
+                    if (value.equals("err")) {
+                        return value;
+                    }
+                }
+                return values[0];
+            }
+        }
+        boolean largest = name.endsWith("_time") || name.contains("latency")
+                || name.endsWith("_in_progress") || name.endsWith("_enabled");
+        long merged = largest ? Long.MIN_VALUE : 0;
+        for (long number : numbers) {
+            merged = largest ? Math.max(merged, number) : merged + number;
+        }
+        return String.valueOf(merged);
+    }
+
+    /**
+     * Waits until every shard has run everything queued to it so far
+     */
+    private void barrier() {
+        CompletableFuture<?>[] done = new CompletableFuture<?>[shards.length];
+        for (int i = 0; i < shards.length; i++) {
+            done[i] = shards[i].submit(null);
+        }
+        CompletableFuture.allOf(done).join();
+    }
+
+    /**
+     * Checks whether every key of a command belongs to a shard
+     * @param index The shard
+     * @param command The decoded command
+     * @return True if it does, or the command has no keys
+     */
+    private boolean ownsKeys(int index, Object[] command) {
+        CommandSpec spec = registry.lookup((String) command[0]);
+        if (spec == null || spec.getFirstKey() <= 0 || !spec.acceptsArgCount(command.length)) {
+            return true;
+        }
+        int last = Math.min(spec.getLastKey(command.length), command.length - 1);
+        for (int i = spec.getFirstKey(); i <= last; i += spec.getKeyStep()) {
+            if (shardOf((String) command[i]) != index) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Picks the shard that owns a key. Keys with the same {hash tag} are owned by the same shard,
+     * as they share a slot in cluster mode.
+     * @param key The key
+     * @return The shard index
+     */
+    int shardOf(String key) {
+        int h = HashSlots.hashTag(key).hashCode() * 0x9E3779B9;
+        return Math.floorMod(h ^ (h >>> 16), shards.length);
+    }
+
+    /**
+     * Gets the number of shards
+     * @return The shard count
+     */
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * Finds the segment files of a base file name beyond the current shard count, left by a run
+     * with more shards
+     * @param baseName The configured file name
+     * @return The files, in shard order
+     */
+    private List<File> staleSegments(String baseName) {
+        List<File> stale = new ArrayList<>();
+        for (int i = shards.length; ; i++) {
+            File file = new File(segmentName(baseName, i));
+            if (!file.exists()) {
+                return stale;
+            }
+            stale.add(file);
+        }
+    }
+
+    /**
+     * Names the file a shard keeps its part of a file in
+     * @param baseName The configured file name
+     * @param shard The shard index
+     * @return The segment file name
+     */
+    static String segmentName(String baseName, int shard) {
+        return baseName + "." + shard;
+    }
+
+    /**
+     * Stops the shard threads once they have run every command queued to them, and flushes their
+     * AOF segments to disk
+     */
+    public void stop() {
+        for (Shard shard : shards) {
+            shard.running = false;
+            LockSupport.unpark(shard.thread);
+        }
+        for (Shard shard : shards) {
+            try {
+                shard.thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            shard.aofPersistence.close();
+        }
+    }
+
+    /**
+     * One part of the keyspace and the thread that owns it
+     */
+    private static final class Shard implements Runnable {
+
+        final int index;
+        final CommandExecutor executor;
+        final AofPersistence aofPersistence;
+        final Thread thread;
+        final ConcurrentLinkedQueue<Request> queue = new ConcurrentLinkedQueue<>();
+        volatile boolean idle;
+        volatile boolean running = true;
+
+        /**
+         * Creates a shard; its thread is started by the caller
+         * @param index The shard number
+         * @param executor The executor over the shard's data
+         * @param aofPersistence The shard's AOF segment
+         */
+        Shard(int index, CommandExecutor executor, AofPersistence aofPersistence) {
+            this.index = index;
+            this.executor = executor;
+            this.aofPersistence = aofPersistence;
+            this.thread = new Thread(this, "shard-" + index);
+            thread.setDaemon(true);
+        }
+
+        /**
+         * Queues a command for the shard's thread, waking it if it is waiting for work
+         * @param command The decoded command, or null for a marker that only completes
+         * @return The reply, once the command has run
+         */
+        CompletableFuture<Object> submit(Object[] command) {
+            Request request = new Request(command, null, new CompletableFuture<>());
+            enqueue(request);
+            return request.reply();
+        }
+
+        /**
+         * Queues code to run on the shard's thread between two commands
+         * @param task The code to run
+         */
+        void runTask(Runnable task) {
+            enqueue(new Request(null, task, null));
+        }
+
+        /**
+         * Adds a request to the queue, waking the thread if it is waiting for work
+         * @param request The request
+         */
+        private void enqueue(Request request) {
+            queue.add(request);
+            // idle is set before the thread checks the queue a last time, so this cannot miss it
+            if (idle) {
+                LockSupport.unpark(thread);
+            }
+        }
+
+        /**
+         * Runs queued commands in order until stopped, parking when there are none, and runs the
+         * shard's active expiry cycle between them
+         */
+        @Override
+        public void run() {
+            long nextExpireCycle = System.nanoTime() + ACTIVE_EXPIRE_PERIOD_NANOS;
+            int sinceClockCheck = 0;
+            while (running || !queue.isEmpty()) {
+                Request request = queue.poll();
+                if (request != null) {
+                    handle(request);
+                    if (++sinceClockCheck < CLOCK_CHECK_INTERVAL) {
+                        continue;
+                    }
+                }
+                sinceClockCheck = 0;
+                long now = System.nanoTime();
+                if (now - nextExpireCycle >= 0) {
+                    executor.activeExpireCycle(ACTIVE_EXPIRE_BUDGET_NANOS);
+                    nextExpireCycle = now + ACTIVE_EXPIRE_PERIOD_NANOS;
+                }
+                if (request == null) {
+                    idle = true;
+                    if (queue.isEmpty() && running) {
+                        LockSupport.parkNanos(this, nextExpireCycle - now);
+                    }
+                    idle = false;
+                }
+            }
+        }
+
+        /**
+         * Runs one queued command and completes its reply
+         * @param request The command
+         */
+        private void handle(Request request) {
+            if (request.task() != null) {
+                request.task().run();
+                return;
+            }
+            if (request.command() == null) {
+                request.reply().complete(null);
+                return;
+            }
+            try {
+                request.reply().complete(executor.execute(request.command()));
+            } catch (RuntimeException e) {
+                request.reply().completeExceptionally(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,291 @@
+package com.mycompany.app;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+public final class SkipList {
+
+    private static final int MAX_LEVEL = 32;
+    // chance of a node reaching each next level, as in Redis
+    private static final double LEVEL_PROBABILITY = 0.25;
+
+    /**
+     * One member. forward[i] is the next node on level i and span[i] how many nodes that link
+     * skips, which is what makes ranks cheap to find.
+     */
+    public static final class Node {
+
+        private final String member;
+        private final double score;
+        private final Node[] forward;
+        private final int[] span;
+        private Node backward;
+
+        /**
+         * Creates a node
+         * @param member The member, null for the header
+         * @param score The score
+         * @param level The number of levels the node is linked on
+         */
+        private Node(String member, double score, int level) {
+            this.member = member;
+            this.score = score;
+            this.forward = new Node[level];
+            this.span = new int[level];
+        }
+
+        /**
+         * Gets the member
+         * @return The member
+         */
+        public String getMember() {
+            return member;
+        }
+
+        /**
+         * Gets the score
+         * @return The score
+         */
+        public double getScore() {
+            return score;
+        }
+
+        /**
+         * Gets the next node in order
+         * @return The next node, null at the end
+         */
+        public Node next() {
+            return forward[0];
+        }
+
+        /**
+         * Gets the previous node in order
+         * @return The previous node, null at the start
+         */
+        public Node previous() {
+            return backward;
+        }
+    }
+
+    private final Node header = new Node(null, 0, MAX_LEVEL);
+    private Node tail;
+    private int length;
+    private int level = 1;
+
+    /**
+     * Creates an empty skiplist of members ordered by score, then by member, as the ordered half of
+     * a large sorted set. Finding a member by score and member, by rank, or the first member in a
+     * score range takes O(log n) on average. Not thread safe.
+     */
+    public SkipList() {
+    }
+
+    /**
+     * Adds a member, which must not already be in the list
+     * @param score The score
+     * @param member The member
+     * @return The new node
+     */
+    public Node insert(double score, String member) {
+        Node[] update = new Node[MAX_LEVEL];
+        int[] rank = new int[MAX_LEVEL];
+        Node x = header;
+        for (int i = level - 1; i >= 0; i--) {
+            rank[i] = i == level - 1 ? 0 : rank[i + 1];
+            while (x.forward[i] != null && precedes(x.forward[i], score, member)) {
+                rank[i] += x.span[i];
+                x = x.forward[i];
+            }
+            update[i] = x;
+        }
+        int nodeLevel = randomLevel();
+        if (nodeLevel > level) {
+            for (int i = level; i < nodeLevel; i++) {
+                rank[i] = 0;
+                update[i] = header;
+                update[i].span[i] = length;
+            }
+            level = nodeLevel;
+        }
+        Node node = new Node(member, score, nodeLevel);
+        for (int i = 0; i < nodeLevel; i++) {
+            node.forward[i] = update[i].forward[i];
+            update[i].forward[i] = node;
+            node.span[i] = update[i].span[i] - (rank[0] - rank[i]);
+            update[i].span[i] = rank[0] - rank[i] + 1;
+        }
+        for (int i = nodeLevel; i < level; i++) {
+            update[i].span[i]++;
+        }
+        node.backward = update[0] == header ? null : update[0];
+        if (node.forward[0] != null) {
+            node.forward[0].backward = node;
+        } else {
+            tail = node;
+        }
+        length++;
+        return node;
+    }
+
+    /**
+     * Removes a member
+     * @param score The member's current score
+     * @param member The member
+     * @return True if it was in the list
+     */
+    public boolean delete(double score, String member) {
+        Node[] update = new Node[MAX_LEVEL];
+        Node x = header;
+        for (int i = level - 1; i >= 0; i--) {
+            while (x.forward[i] != null && precedes(x.forward[i], score, member)) {
+                x = x.forward[i];
+            }
+            update[i] = x;
+        }
+        x = x.forward[0];
+        if (x == null || x.score != score || !x.member.equals(member)) {
+            return false;
+        }
+        for (int i = 0; i < level; i++) {
+            if (update[i].forward[i] == x) {
+                update[i].span[i] += x.span[i] - 1;
+                update[i].forward[i] = x.forward[i];
+            } else {
+                update[i].span[i]--;
+            }
+        }
+        if (x.forward[0] != null) {
+            x.forward[0].backward = x.backward;
+        } else {
+            tail = x.backward;
+        }
+        while (level > 1 && header.forward[level - 1] == null) {
+            level--;
+        }
+        length--;
+        return true;
+    }
+
+    /**
+     * Finds the rank of a member
+     * @param score The member's score
+     * @param member The member
+     * @return Its 1-based rank, or 0 if it is not in the list
+     */
+    public long rank(double score, String member) {
+        long rank = 0;
+        Node x = header;
+        for (int i = level - 1; i >= 0; i--) {
+            while (x.forward[i] != null && (precedes(x.forward[i], score, member)
+                    || (x.forward[i].score == score && x.forward[i].member.equals(member)))) {
+                rank += x.span[i];
+                x = x.forward[i];
+            }
+            if (x.member != null && x.score == score && x.member.equals(member)) {
+                return rank;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Finds the member at a rank
+     * @param rank The 1-based rank
+     * @return The node, or null if the rank is out of range
+     */
+    public Node byRank(long rank) {
+        if (rank < 1 || rank > length) {
+            return null;
+        }
+        long traversed = 0;
+        Node x = header;
+        for (int i = level - 1; i >= 0; i--) {
+            while (x.forward[i] != null && traversed + x.span[i] <= rank) {
+                traversed += x.span[i];
+                x = x.forward[i];
+            }
+            if (traversed == rank) {
+                return x;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Finds the first member whose score is in a range
+     * @param range The score range
+     * @return The node, or null if no member is in the range
+     */
+    public Node firstInRange(RedisSortedSet.ScoreRange range) {
+        Node x = header;
+        for (int i = level - 1; i >= 0; i--) {
+            while (x.forward[i] != null && !range.aboveMin(x.forward[i].score)) {
+                x = x.forward[i];
+            }
+        }
+        x = x.forward[0];
+        return x != null && range.belowMax(x.score) ? x : null;
+    }
+
+    /**
+     * Finds the last member whose score is in a range
+     * @param range The score range
+     * @return The node, or null if no member is in the range
+     */
+    public Node lastInRange(RedisSortedSet.ScoreRange range) {
+        Node x = header;
+        for (int i = level - 1; i >= 0; i--) {
+            while (x.forward[i] != null && range.belowMax(x.forward[i].score)) {
+                x = x.forward[i];
+            }
+        }
+        return x != header && range.aboveMin(x.score) ? x : null;
+    }
+
+    /**
+     * Gets the member with the lowest score
+     * @return The node, null if the list is empty
+     */
+    public Node first() {
+        return header.forward[0];
+    }
+
+    /**
+     * Gets the member with the highest score
+     * @return The node, null if the list is empty
+     */
+    public Node last() {
+        return tail;
+    }
+
+    /**
+     * Gets the number of members
+     * @return The member count
+     */
+    public int size() {
+        return length;
+    }
+
+    /**
+     * Checks whether a node sorts before a score and member
+     * @param node The node
+     * @param score The score
+     * @param member The member
+     * @return True if the node's score is lower, or equal with a lower member
+     */
+    private static boolean precedes(Node node, double score, String member) {
+        return node.score < score || (node.score == score && node.member.compareTo(member) < 0);
+    }
+
+    /**
+     * Picks the level of a new node: each level is reached with probability 1/4 of the one below
+     * @return The level, from 1 to MAX_LEVEL
+     */
+    private static int randomLevel() {
+        int nodeLevel = 1;
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (nodeLevel < MAX_LEVEL && random.nextDouble() < LEVEL_PROBABILITY) {
+            nodeLevel++;
+        }
+        return nodeLevel;
+    }
+}
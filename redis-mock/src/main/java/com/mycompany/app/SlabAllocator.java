@@ -0,0 +1,194 @@
+package com.mycompany.app;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class SlabAllocator {
+
+    public static final int DEFAULT_PAGE_SIZE = 256 * 1024;
+    private static final int MIN_CHUNK_SIZE = 32;
+    private static final double GROWTH_FACTOR = 1.25;
+    // page class of a page holding one allocation too big for any chunk size
+    private static final int LARGE = -1;
+
+    private final int pageSize;
+    private final int[] chunkSizes;
+    private final List<ByteBuffer> pages = new ArrayList<>();
+    private int[] pageClasses = new int[16];
+    private final long[][] freeChunks;
+    private final int[] freeCounts;
+    private final int[] currentPage;
+    private final int[] currentOffset;
+    private int[] freePages = new int[4];
+    private int freePageCount;
+    private long reservedBytes;
+    private long usedBytes;
+
+    /**
+     * Hands out chunks of off-heap memory, memcached style: sizes are rounded up to one of a series
+     * of chunk sizes, each size class carves its chunks out of its own direct buffer pages, and
+     * freed chunks are reused by the next allocation of their class, so memory is never compacted
+     * and nothing is left for the garbage collector. Allocations bigger than a page get a buffer of
+     * their own. An address packs the page number, plus one so 0 is never an address, and the
+     * offset in the page. Not thread safe.
+     * @param pageSize The size of each page in bytes, also the largest chunk size
+     */
+    public SlabAllocator(int pageSize) {
+        this.pageSize = pageSize;
+        List<Integer> sizes = new ArrayList<>();
+        for (double size = MIN_CHUNK_SIZE; size < pageSize; size *= GROWTH_FACTOR) {
+            int aligned = (int) MemoryEstimator.align((long) size);
+            if (sizes.isEmpty() || aligned > sizes.get(sizes.size() - 1)) {
+                sizes.add(aligned);
+            }
+        }
+        sizes.add(pageSize);
+        this.chunkSizes = sizes.stream().mapToInt(Integer::intValue).toArray();
+        this.freeChunks = new long[chunkSizes.length][16];
+        this.freeCounts = new int[chunkSizes.length];
+        this.currentPage = new int[chunkSizes.length];
+        this.currentOffset = new int[chunkSizes.length];
+        Arrays.fill(currentPage, -1);
+    }
+
+    /**
+     * Allocates a chunk of at least the given size
+     * @param size The number of bytes needed
+     * @return The chunk's address
+     */
+    public long allocate(int size) {
+        if (size > pageSize) {
+            int page = newPage(LARGE, size);
+            usedBytes += size;
+            return address(page, 0);
+        }
+        int sizeClass = sizeClass(size);
+        usedBytes += chunkSizes[sizeClass];
+        if (freeCounts[sizeClass] > 0) {
+            return freeChunks[sizeClass][--freeCounts[sizeClass]];
+        }
+        int chunkSize = chunkSizes[sizeClass];
+        if (currentPage[sizeClass] < 0 || currentOffset[sizeClass] + chunkSize > pageSize) {
+            currentPage[sizeClass] = newPage(sizeClass, pageSize);
+            currentOffset[sizeClass] = 0;
+        }
+        long address = address(currentPage[sizeClass], currentOffset[sizeClass]);
+        currentOffset[sizeClass] += chunkSize;
+        return address;
+    }
+
+    /**
+     * Frees a chunk for reuse
+     * @param address The chunk's address as returned by allocate
+     */
+    public void free(long address) {
+        int page = page(address);
+        int sizeClass = pageClasses[page];
+        if (sizeClass == LARGE) {
+            int size = pages.get(page).capacity();
+            usedBytes -= size;
+            reservedBytes -= size;
+            // dropping the buffer lets its memory be released; the page number is reused
+            pages.set(page, null);
+            if (freePageCount == freePages.length) {
+                freePages = Arrays.copyOf(freePages, freePageCount * 2);
+            }
+            freePages[freePageCount++] = page;
+            return;
+        }
+        usedBytes -= chunkSizes[sizeClass];
+        if (freeCounts[sizeClass] == freeChunks[sizeClass].length) {
+            freeChunks[sizeClass] = Arrays.copyOf(freeChunks[sizeClass], freeCounts[sizeClass] * 2);
+        }
+        freeChunks[sizeClass][freeCounts[sizeClass]++] = address;
+    }
+
+    /**
+     * Gets the buffer holding a chunk
+     * @param address The chunk's address
+     * @return The page; the chunk starts at offset(address)
+     */
+    public ByteBuffer buffer(long address) {
+        return pages.get(page(address));
+    }
+
+    /**
+     * Gets where a chunk starts in its page
+     * @param address The chunk's address
+     * @return The offset in bytes
+     */
+    public static int offset(long address) {
+        return (int) address;
+    }
+
+    /**
+     * Gets the off-heap memory taken by pages
+     * @return The reserved size in bytes
+     */
+    public long getReservedBytes() {
+        return reservedBytes;
+    }
+
+    /**
+     * Gets the off-heap memory taken by allocated chunks, rounded up to their chunk sizes
+     * @return The used size in bytes
+     */
+    public long getUsedBytes() {
+        return usedBytes;
+    }
+
+    /**
+     * Finds the smallest chunk size that fits
+     * @param size The number of bytes needed, at most the page size
+     * @return The size class
+     */
+    private int sizeClass(int size) {
+        int index = Arrays.binarySearch(chunkSizes, size);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    /**
+     * Allocates a page, reusing the number of a freed large page if there is one
+     * @param sizeClass The size class the page is for, or LARGE
+     * @param size The page size in bytes
+     * @return The page number
+     */
+    private int newPage(int sizeClass, int size) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(size);
+        reservedBytes += size;
+        int page;
+        if (freePageCount > 0) {
+            page = freePages[--freePageCount];
+            pages.set(page, buffer);
+        } else {
+            page = pages.size();
+            pages.add(buffer);
+            if (page == pageClasses.length) {
+                pageClasses = Arrays.copyOf(pageClasses, page * 2);
+            }
+        }
+        pageClasses[page] = sizeClass;
+        return page;
+    }
+
+    /**
+     * Packs a page number and offset into an address
+     * @param page The page number
+     * @param offset The offset in the page
+     * @return The address, never 0
+     */
+    private static long address(int page, int offset) {
+        return ((long) (page + 1) << 32) | offset;
+    }
+
+    /**
+     * Gets the page number of an address
+     * @param address The address
+     * @return The page number
+     */
+    private static int page(long address) {
+        return (int) (address >>> 32) - 1;
+    }
+}
@@ -0,0 +1,494 @@
+package com.mycompany.app;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+public class SortedSetCommands {
+
+    private static final String NOT_A_FLOAT = "ERR value is not a valid float";
+    private static final String NOT_AN_INTEGER = "ERR value is not an integer or out of range";
+    private static final String SYNTAX_ERROR = "ERR syntax error";
+
+    private final CommandExecutor executor;
+    private final LongAdder conversions = new LongAdder();
+
+    /**
+     * The sorted set commands. Sorted sets are changed in place, so writes run under the key's lock
+     * like every write and reads take the lock too: reads of different keys run in parallel, reads
+     * of one key take turns with its writes.
+     * @param executor The executor whose database the commands act on
+     */
+    public SortedSetCommands(CommandExecutor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Adds the sorted set commands to a registry
+     * @param registry The registry
+     */
+    public void register(CommandRegistry registry) {
+        registry.register(new CommandSpec("ZADD", -4, EnumSet.of(CommandFlag.WRITE, CommandFlag.DENYOOM, CommandFlag.FAST), 1, 1, 1, this::zadd));
+        registry.register(new CommandSpec("ZINCRBY", 4, EnumSet.of(CommandFlag.WRITE, CommandFlag.DENYOOM, CommandFlag.FAST), 1, 1, 1, this::zincrby));
+        registry.register(new CommandSpec("ZREM", -3, EnumSet.of(CommandFlag.WRITE, CommandFlag.FAST), 1, 1, 1, this::zrem));
+        registry.register(new CommandSpec("ZSCORE", 3, EnumSet.of(CommandFlag.READONLY, CommandFlag.FAST), 1, 1, 1, this::zscore));
+        registry.register(new CommandSpec("ZCARD", 2, EnumSet.of(CommandFlag.READONLY, CommandFlag.FAST), 1, 1, 1, this::zcard));
+        registry.register(new CommandSpec("ZRANK", 3, EnumSet.of(CommandFlag.READONLY, CommandFlag.FAST), 1, 1, 1, this::zrank));
+        registry.register(new CommandSpec("ZRANGE", -4, EnumSet.of(CommandFlag.READONLY), 1, 1, 1, this::zrange));
+        registry.register(new CommandSpec("ZRANGEBYSCORE", -4, EnumSet.of(CommandFlag.READONLY), 1, 1, 1, this::zrangeByScore));
+    }
+
+    /**
+     * Gets how many sorted sets have outgrown the packed encoding
+     * @return The conversion count
+     */
+    public long getConversions() {
+        return conversions.sum();
+    }
+
+    /**
+     * Adds members to a sorted set or updates their scores, creating it if needed
+     * (ZADD key [NX|XX] [GT|LT] [CH] [INCR] score member [score member ...]). Called with the key
+     * locked. Logged as a plain ZADD of the members that changed, so replay does not depend on the
+     * options or on floating point rounding.
+     * @param command The command, its key, the options and the score member pairs
+     * @return The number of members added, or changed with CH, or the new score with INCR
+     */
+    private Object zadd(Object[] command) {
+        String key = (String) command[1];
+        boolean nx = false;
+        boolean xx = false;
+        boolean gt = false;
+        boolean lt = false;
+        boolean ch = false;
+        boolean incr = false;
+        int i = 2;
+        for (; i < command.length; i++) {
+            String option = ((String) command[i]).toUpperCase();
+            if (option.equals("NX")) {
+                nx = true;
+            } else if (option.equals("XX")) {
+                xx = true;
+            } else if (option.equals("GT")) {
+                gt = true;
+            } else if (option.equals("LT")) {
+                lt = true;
+            } else if (option.equals("CH")) {
+                ch = true;
+            } else if (option.equals("INCR")) {
+                incr = true;
+            } else {
+                // the first argument that is not an option starts the pairs
+                break;
+            }
+        }
+        int pairs = command.length - i;
+        if (pairs == 0 || pairs % 2 != 0) {
+            return new Exception(SYNTAX_ERROR);
+        }
+        if (nx && xx) {
+            return new Exception("ERR XX and NX options at the same time are not compatible");
+        }
+        if ((gt && lt) || (nx && (gt || lt))) {
+            return new Exception("ERR GT, LT, and/or NX options at the same time are not compatible");
+        }
+        if (incr && pairs > 2) {
+            return new Exception("ERR INCR option supports a single increment-element pair");
+        }
+        double[] scores = new double[pairs / 2];
+        for (int pair = 0; pair < scores.length; pair++) {
+            try {
+                scores[pair] = parseScore((String) command[i + pair * 2]);
+            } catch (NumberFormatException e) {
+                return new Exception(NOT_A_FLOAT);
+            }
+        }
+        Object value = executor.lookupKey(key);
+        if (value != null && !(value instanceof RedisSortedSet)) {
+            return new Exception(CommandExecutor.WRONGTYPE);
+        }
+        if (value == null && xx) {
+            return new PropagatedReply(incr ? null : 0L, null);
+        }
+        RedisSortedSet zset = value == null ? new RedisSortedSet() : (RedisSortedSet) value;
+        List<Object> logged = new ArrayList<>();
+        logged.add("ZADD");
+        logged.add(key);
+        long added = 0;
+        long changed = 0;
+        Double incremented = null;
+        boolean preserved = false;
+        long before = zset.estimatedSize();
+        boolean packed = zset.isPacked();
+        for (int pair = 0; pair < scores.length; pair++) {
+            String member = (String) command[i + pair * 2 + 1];
+            double score = scores[pair];
+            Double current = zset.score(member);
+            if (current == null ? xx : nx) {
+                continue;
+            }
+            if (incr && current != null) {
+                score += current;
+                if (Double.isNaN(score)) {
+                    return new Exception("ERR resulting score is not a number (NaN)");
+                }
+            }
+            if (current != null && ((gt && score <= current) || (lt && score >= current))) {
+                continue;
+            }
+            incremented = score;
+            if (current != null && current == score) {
+                continue;
+            }
+            if (!preserved) {
+                executor.preserveForSnapshot(key);
+                preserved = true;
+            }
+            zset.add(member, score, executor.getEncodingLimits());
+            if (current == null) {
+                added++;
+            } else {
+                changed++;
+            }
+            logged.add(formatScore(score));
+            logged.add(member);
+        }
+        countConversion(packed, zset);
+        if (zset.size() > 0 && value == null) {
+            executor.store(key, zset);
+        } else if (value != null) {
+            executor.adjustUsedMemory(zset.estimatedSize() - before);
+        }
+        Object reply;
+        if (incr) {
+            reply = incremented == null ? null : formatScore(incremented);
+        } else {
+            reply = ch ? added + changed : added;
+        }
+        return new PropagatedReply(reply, logged.size() > 2 ? logged.toArray() : null);
+    }
+
+    /**
+     * Adds to the score of a member, treating a missing member as scored 0
+     * (ZINCRBY key increment member). Called with the key locked. Logged as ZADD key score member.
+     * @param command The command, its key, the increment and the member
+     * @return The new score
+     */
+    private Object zincrby(Object[] command) {
+        String key = (String) command[1];
+        double increment;
+        try {
+            increment = parseScore((String) command[2]);
+        } catch (NumberFormatException e) {
+            return new Exception(NOT_A_FLOAT);
+        }
+        String member = (String) command[3];
+        Object value = executor.lookupKey(key);
+        if (value != null && !(value instanceof RedisSortedSet)) {
+            return new Exception(CommandExecutor.WRONGTYPE);
+        }
+        RedisSortedSet zset = value == null ? new RedisSortedSet() : (RedisSortedSet) value;
+        Double current = zset.score(member);
+        double score = current == null ? increment : current + increment;
+        if (Double.isNaN(score)) {
+            return new Exception("ERR resulting score is not a number (NaN)");
+        }
+        executor.preserveForSnapshot(key);
+        long before = zset.estimatedSize();
+        boolean packed = zset.isPacked();
+        zset.add(member, score, executor.getEncodingLimits());
+        countConversion(packed, zset);
+        if (value == null) {
+            executor.store(key, zset);
+        } else {
+            executor.adjustUsedMemory(zset.estimatedSize() - before);
+        }
+        String formatted = formatScore(score);
+        return new PropagatedReply(formatted, new Object[]{"ZADD", key, formatted, member});
+    }
+
+    /**
+     * Removes members from a sorted set, and the set once it is empty (ZREM key member [member ...]).
+     * Called with the key locked.
+     * @param command The command, its key and the members
+     * @return The number of members removed
+     */
+    private Object zrem(Object[] command) {
+        String key = (String) command[1];
+        Object value = executor.lookupKey(key);
+        if (value == null) {
+            return new PropagatedReply(0L, null);
+        }
+        if (!(value instanceof RedisSortedSet zset)) {
+            return new Exception(CommandExecutor.WRONGTYPE);
+        }
+        executor.preserveForSnapshot(key);
+        long before = zset.estimatedSize();
+        long removed = 0;
+        for (int i = 2; i < command.length; i++) {
+            if (zset.remove((String) command[i])) {
+                removed++;
+            }
+        }
+        executor.adjustUsedMemory(zset.estimatedSize() - before);
+        if (zset.size() == 0) {
+            executor.deleteKey(key);
+        }
+        return removed > 0 ? removed : new PropagatedReply(0L, null);
+    }
+
+    /**
+     * Gets the score of a member (ZSCORE key member)
+     * @param command The command, its key and the member
+     * @return The score, null if there is no such key or member
+     */
+    private Object zscore(Object[] command) {
+        String key = (String) command[1];
+        return executor.readLocked(key, () -> {
+            Object value = executor.lookupKey(key);
+            if (value == null) {
+                return null;
+            }
+            if (!(value instanceof RedisSortedSet zset)) {
+                return new Exception(CommandExecutor.WRONGTYPE);
+            }
+            Double score = zset.score((String) command[2]);
+            return score == null ? null : formatScore(score);
+        });
+    }
+
+    /**
+     * Counts the members of a sorted set (ZCARD key)
+     * @param command The command and its key
+     * @return The member count, 0 if there is no such key
+     */
+    private Object zcard(Object[] command) {
+        String key = (String) command[1];
+        return executor.readLocked(key, () -> {
+            Object value = executor.lookupKey(key);
+            if (value == null) {
+                return 0L;
+            }
+            if (!(value instanceof RedisSortedSet zset)) {
+                return new Exception(CommandExecutor.WRONGTYPE);
+            }
+            return (long) zset.size();
+        });
+    }
+
+    /**
+     * Gets the rank of a member, counting from 0 at the lowest score (ZRANK key member)
+     * @param command The command, its key and the member
+     * @return The rank, null if there is no such key or member
+     */
+    private Object zrank(Object[] command) {
+        String key = (String) command[1];
+        return executor.readLocked(key, () -> {
+            Object value = executor.lookupKey(key);
+            if (value == null) {
+                return null;
+            }
+            if (!(value instanceof RedisSortedSet zset)) {
+                return new Exception(CommandExecutor.WRONGTYPE);
+            }
+            long rank = zset.rank((String) command[2], false);
+            return rank < 0 ? null : rank;
+        });
+    }
+
+    /**
+     * Lists members by rank, or by score with BYSCORE
+     * (ZRANGE key start stop [BYSCORE] [REV] [LIMIT offset count] [WITHSCORES]). With BYSCORE and
+     * REV, start is the highest score and stop the lowest.
+     * @param command The command, its key, the range and the options
+     * @return The members, each followed by its score with WITHSCORES
+     */
+    private Object zrange(Object[] command) {
+        boolean byScore = false;
+        boolean reverse = false;
+        boolean withScores = false;
+        long offset = 0;
+        long count = -1;
+        boolean limited = false;
+        for (int i = 4; i < command.length; i++) {
+            String option = ((String) command[i]).toUpperCase();
+            switch (option) {
+                case "BYSCORE" -> byScore = true;
+                case "REV" -> reverse = true;
+                case "WITHSCORES" -> withScores = true;
+                case "LIMIT" -> {
+                    if (i + 2 >= command.length) {
+                        return new Exception(SYNTAX_ERROR);
+                    }
+                    try {
+                        offset = Long.parseLong((String) command[++i]);
+                        count = Long.parseLong((String) command[++i]);
+                    } catch (NumberFormatException e) {
+                        return new Exception(NOT_AN_INTEGER);
+                    }
+                    limited = true;
+                }
+                default -> {
+                    return new Exception(SYNTAX_ERROR);
+                }
+            }
+        }
+        if (limited && !byScore) {
+            return new Exception("ERR syntax error, LIMIT is only supported in combination with either BYSCORE or BYLEX");
+        }
+        if (byScore) {
+            String min = (String) command[reverse ? 3 : 2];
+            String max = (String) command[reverse ? 2 : 3];
+            return rangeByScore((String) command[1], min, max, reverse, offset, count, withScores);
+        }
+        long start;
+        long stop;
+        try {
+            start = Long.parseLong((String) command[2]);
+            stop = Long.parseLong((String) command[3]);
+        } catch (NumberFormatException e) {
+            return new Exception(NOT_AN_INTEGER);
+        }
+        String key = (String) command[1];
+        boolean scores = withScores;
+        boolean rev = reverse;
+        return executor.readLocked(key, () -> {
+            Object value = executor.lookupKey(key);
+            if (value == null) {
+                return new Object[0];
+            }
+            if (!(value instanceof RedisSortedSet zset)) {
+                return new Exception(CommandExecutor.WRONGTYPE);
+            }
+            long size = zset.size();
+            long first = start < 0 ? Math.max(size + start, 0) : start;
+            long last = Math.min(stop < 0 ? size + stop : stop, size - 1);
+            if (first > last || first >= size) {
+                return new Object[0];
+            }
+            return toReply(zset.rangeByRank(first, last, rev), scores);
+        });
+    }
+
+    /**
+     * Lists the members whose scores are in a range, lowest first
+     * (ZRANGEBYSCORE key min max [WITHSCORES] [LIMIT offset count]). A bound starting with ( is
+     * exclusive.
+     * @param command The command, its key, the range and the options
+     * @return The members, each followed by its score with WITHSCORES
+     */
+    private Object zrangeByScore(Object[] command) {
+        boolean withScores = false;
+        long offset = 0;
+        long count = -1;
+        for (int i = 4; i < command.length; i++) {
+            String option = ((String) command[i]).toUpperCase();
+            if (option.equals("WITHSCORES")) {
+                withScores = true;
+            } else if (option.equals("LIMIT") && i + 2 < command.length) {
+                try {
+                    offset = Long.parseLong((String) command[++i]);
+                    count = Long.parseLong((String) command[++i]);
+                } catch (NumberFormatException e) {
+                    return new Exception(NOT_AN_INTEGER);
+                }
+            } else {
+                return new Exception(SYNTAX_ERROR);
+            }
+        }
+        return rangeByScore((String) command[1], (String) command[2], (String) command[3], false, offset, count, withScores);
+    }
+
+    /**
+     * Lists the members of a sorted set whose scores are between two bounds
+     * @param key The key
+     * @param min The low bound, ( for exclusive
+     * @param max The high bound, ( for exclusive
+     * @param reverse True to list from the highest score
+     * @param offset How many matching members to skip, none if negative
+     * @param count The most members to list, negative for no limit
+     * @param withScores True to follow each member with its score
+     * @return The reply
+     */
+    private Object rangeByScore(String key, String min, String max, boolean reverse, long offset, long count, boolean withScores) {
+        RedisSortedSet.ScoreRange range;
+        try {
+            boolean minExclusive = min.startsWith("(");
+            boolean maxExclusive = max.startsWith("(");
+            range = new RedisSortedSet.ScoreRange(
+                    parseScore(minExclusive ? min.substring(1) : min), minExclusive,
+                    parseScore(maxExclusive ? max.substring(1) : max), maxExclusive);
+        } catch (NumberFormatException e) {
+            return new Exception("ERR min or max is not a float");
+        }
+        if (offset < 0) {
+            return new Object[0];
+        }
+        return executor.readLocked(key, () -> {
+            Object value = executor.lookupKey(key);
+            if (value == null) {
+                return new Object[0];
+            }
+            if (!(value instanceof RedisSortedSet zset)) {
+                return new Exception(CommandExecutor.WRONGTYPE);
+            }
+            return toReply(zset.rangeByScore(range, reverse, offset, count), withScores);
+        });
+    }
+
+    /**
+     * Turns a range of members into a reply
+     * @param entries The members and scores
+     * @param withScores True to follow each member with its score
+     * @return The reply array
+     */
+    private static Object[] toReply(List<RedisSortedSet.Entry> entries, boolean withScores) {
+        Object[] reply = new Object[withScores ? entries.size() * 2 : entries.size()];
+        int i = 0;
+        for (RedisSortedSet.Entry entry : entries) {
+            reply[i++] = entry.member();
+            if (withScores) {
+                reply[i++] = formatScore(entry.score());
+            }
+        }
+        return reply;
+    }
+
+    /**
+     * Parses a score, which unlike other floats may be infinite
+     * @param text The text, such as 1.5, -inf or +inf
+     * @return The score
+     * @throws NumberFormatException If the text is not a number or is NaN
+     */
+    static double parseScore(String text) {
+        return switch (text.toLowerCase()) {
+            case "inf", "+inf" -> Double.POSITIVE_INFINITY;
+            case "-inf" -> Double.NEGATIVE_INFINITY;
+            default -> CommandExecutor.parseFloat(text);
+        };
+    }
+
+    /**
+     * Formats a score for a reply or the log
+     * @param score The score
+     * @return inf, -inf, or the plain digits INCRBYFLOAT would give
+     */
+    static String formatScore(double score) {
+        if (Double.isInfinite(score)) {
+            return score > 0 ? "inf" : "-inf";
+        }
+        return CommandExecutor.formatFloat(score);
+    }
+
+    /**
+     * Counts a sorted set that left the packed encoding during a write
+     * @param wasPacked Whether it was packed before the write
+     * @param zset The sorted set after the write
+     */
+    private void countConversion(boolean wasPacked, RedisSortedSet zset) {
+        if (wasPacked && !zset.isPacked()) {
+            conversions.increment();
+        }
+    }
+}
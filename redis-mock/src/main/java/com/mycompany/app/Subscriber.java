@@ -0,0 +1,245 @@
+package com.mycompany.app;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.util.ArrayDeque;
+import java.util.LinkedHashSet;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class Subscriber {
+
+    // the most buffers handed to one gathering write
+    private static final int MAX_GATHER = 64;
+
+    private volatile long outputLimit;
+    private final Runnable onOutput;
+    // encoded messages waiting to be sent, each array shared by every subscriber it went to
+    private final Queue<byte[]> output = new ConcurrentLinkedQueue<>();
+    private final AtomicLong pendingBytes = new AtomicLong();
+    private final AtomicBoolean wakeupPending = new AtomicBoolean();
+    // buffers taken off the queue but not yet fully written, only touched by the thread that flushes
+    private final ArrayDeque<ByteBuffer> unsent = new ArrayDeque<>();
+    // the subscriptions are only touched by the connection's own thread
+    private final Set<String> channels = new LinkedHashSet<>();
+    private final Set<String> patterns = new LinkedHashSet<>();
+    private volatile boolean pushMode;
+    private volatile boolean overLimit;
+    private volatile boolean closed;
+
+    /**
+     * The pub/sub side of one connection. Once the connection subscribes, everything sent to it
+     * goes through a queue that publishers on any thread append to without waiting for the client,
+     * and that the connection drains as the socket accepts it.
+     * @param outputLimit The most bytes that may wait in the queue before the connection is cut off, 0 for no limit
+     * @param onOutput Called from the publishing thread when there is output to send, or the limit has been hit
+     */
+    public Subscriber(long outputLimit, Runnable onOutput) {
+        this.outputLimit = outputLimit;
+        this.onOutput = onOutput;
+    }
+
+    /**
+     * Queues an encoded message to be sent. The array is not copied, so it can be shared with every
+     * other subscriber it is pushed to and must not change afterwards. Never blocks: past the output
+     * limit the message is dropped and the connection is marked to be cut off instead.
+     * @param message The encoded message
+     * @return True if the message was queued
+     */
+    public boolean push(byte[] message) {
+        long outputLimit = this.outputLimit;
+        if (overLimit || closed) {
+            return false;
+        }
+        if (outputLimit > 0 && pendingBytes.addAndGet(message.length) > outputLimit) {
+            pendingBytes.addAndGet(-message.length);
+            overLimit = true;
+            onOutput.run();
+            return false;
+        }
+        if (outputLimit <= 0) {
+            pendingBytes.addAndGet(message.length);
+        }
+        output.add(message);
+        // one wakeup covers every message queued until the next flush starts
+        if (wakeupPending.compareAndSet(false, true)) {
+            onOutput.run();
+        }
+        return true;
+    }
+
+    /**
+     * Moves the replies the connection has buffered onto the queue, behind whatever was pushed before
+     * @param replies The connection's reply buffer, emptied by the call
+     */
+    public void pushReplies(ReplyBuffer replies) {
+        if (replies.pending() > 0) {
+            push(replies.toByteArray());
+            replies.clear();
+        }
+    }
+
+    /**
+     * Writes as much queued output as the channel accepts without blocking, in gathering writes over
+     * the shared arrays
+     * @param channel The non-blocking channel of the client
+     * @return True if everything queued has been written
+     * @throws IOException Throws if the channel cannot be written or the output limit has been hit
+     */
+    public boolean flushTo(GatheringByteChannel channel) throws IOException {
+        wakeupPending.set(false);
+        while (true) {
+            checkLimit();
+            byte[] next;
+            while (unsent.size() < MAX_GATHER && (next = output.poll()) != null) {
+                unsent.add(ByteBuffer.wrap(next));
+            }
+            if (unsent.isEmpty()) {
+                return true;
+            }
+            long written = channel.write(unsent.toArray(new ByteBuffer[0]));
+            pendingBytes.addAndGet(-written);
+            while (!unsent.isEmpty() && !unsent.peek().hasRemaining()) {
+                unsent.poll();
+            }
+            if (!unsent.isEmpty()) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Writes every queued message to a blocking stream, each shared array written as it is
+     * @param out The stream of the client
+     * @throws IOException Throws if the stream cannot be written or the output limit has been hit
+     */
+    public void flushTo(OutputStream out) throws IOException {
+        wakeupPending.set(false);
+        byte[] next;
+        while ((next = output.poll()) != null) {
+            checkLimit();
+            out.write(next);
+            pendingBytes.addAndGet(-next.length);
+        }
+        checkLimit();
+        out.flush();
+    }
+
+    /**
+     * Fails once the output limit has been hit, so the caller drops the connection
+     * @throws IOException Throws if the limit has been hit
+     */
+    private void checkLimit() throws IOException {
+        if (overLimit) {
+            throw new IOException("Client output buffer limit reached");
+        }
+    }
+
+    /**
+     * Checks if there is queued output not yet written
+     * @return True if there is output to send
+     */
+    public boolean hasOutput() {
+        return !output.isEmpty() || !unsent.isEmpty();
+    }
+
+    /**
+     * Gets the number of queued bytes not yet written
+     * @return The pending byte count
+     */
+    public long getPendingBytes() {
+        return pendingBytes.get();
+    }
+
+    /**
+     * Checks if the connection has fallen so far behind that it is to be cut off
+     * @return True once the output limit has been hit
+     */
+    public boolean isOverLimit() {
+        return overLimit;
+    }
+
+    /**
+     * Cuts the connection off as if it had hit its output limit, dropping whatever is still queued
+     */
+    public void cutOff() {
+        overLimit = true;
+        onOutput.run();
+    }
+
+    /**
+     * Changes how far the connection may fall behind, as for a replica whose first message is a whole snapshot
+     * @param outputLimit The most bytes that may wait in the queue, 0 for no limit
+     */
+    public void setOutputLimit(long outputLimit) {
+        this.outputLimit = outputLimit;
+    }
+
+    /**
+     * Marks the connection as gone, so nothing more is queued for it
+     */
+    public void close() {
+        closed = true;
+    }
+
+    /**
+     * Checks if the connection is gone
+     * @return True once close has been called
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Checks if the connection's output goes through the queue. It stays that way for the life of
+     * the connection, so replies are never sent ahead of messages queued before them.
+     * @return True once the connection has subscribed
+     */
+    public boolean isPushMode() {
+        return pushMode;
+    }
+
+    /**
+     * Sends the connection's output through the queue from now on
+     */
+    public void enterPushMode() {
+        pushMode = true;
+    }
+
+    /**
+     * Checks if the connection holds any subscription, which limits the commands it may send
+     * @return True if subscribed to a channel or pattern
+     */
+    public boolean isSubscribed() {
+        return !channels.isEmpty() || !patterns.isEmpty();
+    }
+
+    /**
+     * Gets the number of channels and patterns subscribed to
+     * @return The subscription count
+     */
+    public int subscriptionCount() {
+        return channels.size() + patterns.size();
+    }
+
+    /**
+     * Gets the channels subscribed to
+     * @return The channels, in the order they were subscribed
+     */
+    public Set<String> getChannels() {
+        return channels;
+    }
+
+    /**
+     * Gets the patterns subscribed to
+     * @return The patterns, in the order they were subscribed
+     */
+    public Set<String> getPatterns() {
+        return patterns;
+    }
+}
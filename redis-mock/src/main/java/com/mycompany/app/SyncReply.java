@@ -0,0 +1,30 @@
+package com.mycompany.app;
+
+public final class SyncReply {
+
+    private final Replication replication;
+    private final String replicationId;
+    private final long offset;
+
+    /**
+     * The reply to PSYNC, which is not a value but the start of a stream. The connection hands over
+     * its output queue, and from then on the master pushes the snapshot and every write onto it.
+     * @param replication The master's replication state
+     * @param replicationId The replication ID the replica last synced with, ? if none
+     * @param offset The offset of the next stream byte the replica needs, -1 if none
+     */
+    public SyncReply(Replication replication, String replicationId, long offset) {
+        this.replication = replication;
+        this.replicationId = replicationId;
+        this.offset = offset;
+    }
+
+    /**
+     * Turns the connection into a replica link, queueing either the rest of the stream from the
+     * backlog or a full resync
+     * @param subscriber The output queue of the replica's connection, already in push mode
+     */
+    public void attach(Subscriber subscriber) {
+        replication.attach(subscriber, replicationId, offset);
+    }
+}
@@ -0,0 +1,163 @@
+package com.mycompany.app;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+public class VirtualThreadServer {
+
+    private static final int ACCEPT_BACKLOG = 511;
+    private static final byte[] MAX_CLIENTS_REPLY =
+            "-ERR max number of clients reached\r\n".getBytes(StandardCharsets.UTF_8);
+
+    private final ServerSocket serverSocket;
+    private final CommandDispatcher commandExecutor;
+    private final PubSub pubSub;
+    private final Semaphore connectionPermits;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Set<Socket> openSockets = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Creates a server that runs a ClientHandler on its own virtual thread for each connection
+     * @param port The port to listen on, 0 picks a free one
+     * @param maxClients The maximum number of connections served at once, further clients are turned away
+     * @param commandExecutor The executor commands are handed to
+     * @throws IOException Throws if the port cannot be bound
+     */
+    public VirtualThreadServer(int port, int maxClients, CommandDispatcher commandExecutor) throws IOException {
+        this(port, maxClients, commandExecutor, new PubSub());
+    }
+
+    /**
+     * Creates a server that runs a ClientHandler on its own virtual thread for each connection
+     * @param port The port to listen on, 0 picks a free one
+     * @param maxClients The maximum number of connections served at once, further clients are turned away
+     * @param commandExecutor The executor commands are handed to
+     * @param pubSub The channels shared by every connection
+     * @throws IOException Throws if the port cannot be bound
+     */
+    public VirtualThreadServer(int port, int maxClients, CommandDispatcher commandExecutor, PubSub pubSub) throws IOException {
+        this.serverSocket = new ServerSocket(port, ACCEPT_BACKLOG);
+        this.commandExecutor = commandExecutor;
+        this.pubSub = pubSub;
+        this.connectionPermits = new Semaphore(maxClients);
+    }
+
+    /**
+     * Gets the port the server is bound to
+     * @return The local port, resolved if 0 was requested
+     */
+    public int getLocalPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Gets the number of clients currently being served
+     * @return The open connection count
+     */
+    public int getConnectedClients() {
+        return openSockets.size();
+    }
+
+    /**
+     * Accepts connections until the server is stopped, rejecting clients beyond the connection cap
+     * with an error reply rather than queueing them
+     */
+    public void start() {
+        try {
+            while (!serverSocket.isClosed()) {
+                Socket clientSocket = serverSocket.accept();
+                if (!connectionPermits.tryAcquire()) {
+                    reject(clientSocket);
+                    continue;
+                }
+                openSockets.add(clientSocket);
+                executor.execute(() -> serve(clientSocket));
+            }
+        } catch (SocketException e) {
+            // stop() closed the listening socket
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Stops accepting connections and lets every handler finish the command it is executing before
+     * closing its connection
+     * @param timeout How long to wait for in-flight commands to drain
+     * @param unit The unit of the timeout
+     * @return True if every handler finished within the timeout
+     * @throws InterruptedException Throws if interrupted while draining
+     */
+    public boolean stop(long timeout, TimeUnit unit) throws InterruptedException {
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        // ending the input side wakes idle handlers with end of stream while letting replies still be written
+        for (Socket socket : openSockets) {
+            try {
+                socket.shutdownInput();
+            } catch (IOException ignored) {
+                // already closing
+            }
+        }
+        executor.shutdown();
+        boolean drained = executor.awaitTermination(timeout, unit);
+        if (!drained) {
+            executor.shutdownNow();
+            openSockets.forEach(VirtualThreadServer::closeQuietly);
+        }
+        return drained;
+    }
+
+    /**
+     * Runs the handler of one connection on the current virtual thread and releases its slot afterwards
+     * @param clientSocket The connected client
+     */
+    private void serve(Socket clientSocket) {
+        try {
+            new ClientHandler(clientSocket.getInputStream(), clientSocket.getOutputStream(), commandExecutor, pubSub).run();
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            openSockets.remove(clientSocket);
+            closeQuietly(clientSocket);
+            connectionPermits.release();
+        }
+    }
+
+    /**
+     * Tells a client the server is full and disconnects it
+     * @param clientSocket The client over the connection cap
+     */
+    private static void reject(Socket clientSocket) {
+        try (clientSocket; OutputStream out = clientSocket.getOutputStream()) {
+            out.write(MAX_CLIENTS_REPLY);
+        } catch (IOException ignored) {
+            // the client is being turned away either way
+        }
+    }
+
+    /**
+     * Closes a client socket, ignoring errors as the connection is being discarded anyway
+     * @param socket The socket to close
+     */
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+            // the connection is gone either way
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.mycompany.app;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for streaming commands out of the append only file.
+ */
+public class AofLoaderTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    @DisplayName("Should decode commands that straddle mapping windows")
+    public void testCommandsAcrossWindows() throws IOException {
+        // Arrange
+        Path file = tempDir.resolve("windows.aof");
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            content.append(new String(RESPParser.encodeCommand(new Object[]{"SET", "key" + i, "value" + i})));
+        }
+        Files.writeString(file, content);
+        List<Object[]> commands = new ArrayList<>();
+
+        // Act
+        long count = new AofLoader(file, false, 100).load(command -> commands.add(command.toArray()));
+
+        // Assert
+        assertEquals(500, count);
+        assertArrayEquals(new Object[]{"SET", "key0", "value0"}, commands.get(0));
+        assertArrayEquals(new Object[]{"SET", "key499", "value499"}, commands.get(499));
+        assertFalse(new AofLoader(file, false, 100).isTruncated());
+    }
+
+    @Test
+    @DisplayName("Should grow the window for a command larger than it")
+    public void testCommandLargerThanWindow() throws IOException {
+        // Arrange
+        Path file = tempDir.resolve("large.aof");
+        String value = "x".repeat(10_000);
+        Files.write(file, RESPParser.encodeCommand(new Object[]{"SET", "big", value}));
+        List<Object[]> commands = new ArrayList<>();
+
+        // Act
+        new AofLoader(file, false, 64).load(command -> commands.add(command.toArray()));
+
+        // Assert
+        assertEquals(1, commands.size());
+        assertEquals(value, commands.get(0)[2]);
+    }
+
+    @Test
+    @DisplayName("Should report where the last complete command ends when the file is cut short")
+    public void testTruncatedTail() throws IOException {
+        // Arrange
+        Path file = tempDir.resolve("truncated.aof");
+        byte[] complete = RESPParser.encodeCommand(new Object[]{"SET", "a", "1"});
+        Files.writeString(file, new String(complete) + "*3\r\n$3\r\nSET\r\n$1\r\nb");
+        AofLoader loader = new AofLoader(file, false, 16);
+
+        // Act
+        long count = loader.load(command -> { });
+
+        // Assert
+        assertEquals(1, count);
+        assertTrue(loader.isTruncated());
+        assertEquals(complete.length, loader.getValidLength());
+    }
+}
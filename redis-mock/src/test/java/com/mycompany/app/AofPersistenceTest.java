@@ -1,13 +1,16 @@
 package com.mycompany.app;
 
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -32,6 +35,11 @@ public class AofPersistenceTest {
         aofPersistence = new AofPersistence(aofFile.toString());
     }
 
+    @AfterEach
+    void tearDown() {
+        aofPersistence.close();
+    }
+
     @Test
     @DisplayName("logCommand should write a single command to the file")
     public void testLogSingleCommand() throws IOException {
@@ -94,4 +102,94 @@ public class AofPersistenceTest {
         assertNotNull(commands);
         assertTrue(commands.isEmpty());
     }
+
+    @Test
+    @DisplayName("logCommand under everysec should reach the file once the writer has been closed")
+    public void testEverysecWritesOnClose() throws IOException {
+        AofPersistence everysec = new AofPersistence(tempDir.resolve("everysec.aof").toString(), AppendFsync.EVERYSEC);
+
+        for (int i = 0; i < 1000; i++) {
+            everysec.logCommand(new Object[]{"SET", "key" + i, "value"});
+        }
+        everysec.close();
+
+        List<Object[]> commands = new AofPersistence(tempDir.resolve("everysec.aof").toString()).loadData();
+        assertEquals(1000, commands.size());
+        assertArrayEquals(new Object[]{"SET", "key999", "value"}, commands.get(999));
+    }
+
+    @Test
+    @DisplayName("Concurrent logCommand calls under always should share fsyncs")
+    public void testAlwaysGroupsConcurrentWrites() throws Exception {
+        Thread[] writers = new Thread[8];
+        for (int t = 0; t < writers.length; t++) {
+            int id = t;
+            writers[t] = new Thread(() -> {
+                for (int i = 0; i < 50; i++) {
+                    aofPersistence.logCommand(new Object[]{"SET", "key" + id + ":" + i, "value"});
+                }
+            });
+            writers[t].start();
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+
+        assertEquals(400, aofPersistence.loadData().size());
+        String info = aofPersistence.info();
+        assertTrue(info.contains("aof_fsync_policy:always"));
+        assertTrue(info.contains("aof_queue_depth:0"));
+        long fsyncs = Long.parseLong(info.replaceAll("(?s).*aof_fsync_count:(\\d+).*", "$1"));
+        assertTrue(fsyncs > 0 && fsyncs <= 400, "Every write is durable and no write needs more than one fsync");
+    }
+
+    @Test
+    @DisplayName("replay should stream every command to the consumer in order")
+    public void testReplayStreamsCommands() throws IOException {
+        Files.writeString(aofFile, "*3\r\n$3\r\nSET\r\n$1\r\na\r\n$1\r\n1\r\n"
+                + "*3\r\n$3\r\nSET\r\n$1\r\nb\r\n$1\r\n2\r\n");
+        List<Object[]> replayed = new ArrayList<>();
+
+        long count = aofPersistence.replay(replayed::add);
+
+        assertEquals(2, count);
+        assertArrayEquals(new Object[]{"SET", "a", "1"}, replayed.get(0));
+        assertArrayEquals(new Object[]{"SET", "b", "2"}, replayed.get(1));
+    }
+
+    @Test
+    @DisplayName("replay should cut an unfinished command off the end of the file and keep appending after it")
+    public void testReplayRepairsTruncatedTail() throws IOException {
+        String complete = "*3\r\n$3\r\nSET\r\n$1\r\na\r\n$1\r\n1\r\n";
+        Files.writeString(aofFile, complete + "*3\r\n$3\r\nSET\r\n$1\r\nb\r\n$5\r\nab");
+        AofPersistence reopened = new AofPersistence(aofFile.toString());
+        List<Object[]> replayed = new ArrayList<>();
+
+        reopened.replay(replayed::add);
+        reopened.logCommand(new Object[]{"SET", "c", "3"});
+        reopened.close();
+
+        assertEquals(1, replayed.size());
+        assertEquals(complete + "*3\r\n$3\r\nSET\r\n$1\r\nc\r\n$1\r\n3\r\n", Files.readString(aofFile));
+    }
+
+    @Test
+    @DisplayName("replay should refuse a truncated file when aof-load-truncated is off")
+    public void testReplayRefusesTruncatedTail() throws IOException {
+        String content = "*3\r\n$3\r\nSET\r\n$1\r\na\r\n$1\r\n1\r\n*3\r\n$3\r\nSE";
+        Files.writeString(aofFile, content);
+        aofPersistence.setLoadTruncated(false);
+
+        assertThrows(UncheckedIOException.class, () -> aofPersistence.replay(command -> { }));
+        assertEquals(content, Files.readString(aofFile));
+    }
+
+    @Test
+    @DisplayName("replay should fail on a file that is not made of commands")
+    public void testReplayRejectsCorruptFile() throws IOException {
+        Files.writeString(aofFile, "*3\r\n$3\r\nSET\r\n$1\r\na\r\n$1\r\n1\r\ngarbage\r\n*1\r\n$4\r\nPING\r\n");
+
+        UncheckedIOException e = assertThrows(UncheckedIOException.class, () -> aofPersistence.replay(command -> { }));
+        assertTrue(e.getCause().getMessage().contains("offset 27"));
+    }
 }
@@ -0,0 +1,239 @@
+package com.mycompany.app;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for rewriting the append only file in the background.
+ */
+public class AofRewriterTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Path aofFile;
+    private AofPersistence aofPersistence;
+    private ConcurrentHashMap<String, Object> dataStore;
+    private CommandExecutor commandExecutor;
+
+    @BeforeEach
+    void setUp() {
+        aofFile = tempDir.resolve("rewrite.aof");
+        aofPersistence = new AofPersistence(aofFile.toString(), AppendFsync.EVERYSEC);
+        dataStore = new ConcurrentHashMap<>();
+        commandExecutor = new CommandExecutor(dataStore, aofPersistence);
+    }
+
+    @AfterEach
+    void tearDown() {
+        aofPersistence.close();
+    }
+
+    /**
+     * Waits for the running rewrite to finish
+     * @throws InterruptedException If interrupted while waiting
+     */
+    private void awaitRewrite() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (aofPersistence.isRewriting()) {
+            assertTrue(System.currentTimeMillis() < deadline, "Rewrite did not finish in time");
+            Thread.sleep(5);
+        }
+    }
+
+    /**
+     * Replays a list of commands into a plain map
+     * @param commands The commands read back from the file
+     * @return The resulting key value pairs
+     */
+    private Map<String, Object> replay(List<Object[]> commands) {
+        Map<String, Object> state = new HashMap<>();
+        for (Object[] command : commands) {
+            state.put((String) command[1], command[2]);
+        }
+        return state;
+    }
+
+    @Test
+    @DisplayName("BGREWRITEAOF should shrink the log to one command per key")
+    public void testRewriteCompactsRepeatedWrites() throws Exception {
+        // Arrange
+        for (int i = 0; i < 1000; i++) {
+            commandExecutor.execute(new Object[]{"SET", "key" + (i % 3), "value" + i});
+        }
+
+        // Act
+        Object result = commandExecutor.execute(new Object[]{"BGREWRITEAOF"});
+        awaitRewrite();
+
+        // Assert
+        assertEquals("Background append only file rewriting started", result);
+        List<Object[]> commands = aofPersistence.loadData();
+        assertEquals(3, commands.size());
+        assertEquals(Map.of("key0", "value999", "key1", "value997", "key2", "value998"), replay(commands));
+        assertFalse(Files.exists(tempDir.resolve("rewrite.aof.rewrite.tmp")));
+        assertTrue(aofPersistence.info().contains("aof_rewrites:1"));
+    }
+
+    @Test
+    @DisplayName("Writes made while a rewrite runs should end up in the rewritten log")
+    public void testRewriteKeepsConcurrentWrites() throws Exception {
+        // Arrange
+        for (int i = 0; i < 5000; i++) {
+            commandExecutor.execute(new Object[]{"SET", "key" + i, "old"});
+        }
+        Thread[] writers = new Thread[4];
+        for (int t = 0; t < writers.length; t++) {
+            int id = t;
+            writers[t] = new Thread(() -> {
+                for (int i = 0; i < 2000; i++) {
+                    commandExecutor.execute(new Object[]{"SET", "key" + (i * 4 + id), "new" + id});
+                }
+            });
+        }
+
+        // Act
+        for (Thread writer : writers) {
+            writer.start();
+        }
+        commandExecutor.execute(new Object[]{"BGREWRITEAOF"});
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        awaitRewrite();
+        commandExecutor.execute(new Object[]{"SET", "after", "rewrite"});
+
+        // Assert
+        assertEquals(new HashMap<>(dataStore), replay(aofPersistence.loadData()));
+    }
+
+    @Test
+    @DisplayName("A second BGREWRITEAOF should be refused while one is running")
+    public void testRewriteAlreadyInProgress() throws Exception {
+        // Arrange
+        assertTrue(aofPersistence.tryBeginRewrite());
+
+        // Act
+        Object result = commandExecutor.execute(new Object[]{"BGREWRITEAOF"});
+
+        // Assert
+        assertInstanceOf(Exception.class, result);
+        assertEquals("ERR Background append only file rewriting already in progress", ((Exception) result).getMessage());
+        aofPersistence.abortRewrite();
+    }
+
+    @Test
+    @DisplayName("The log should be rewritten automatically once it outgrows the configured ratio")
+    public void testAutoRewrite() throws Exception {
+        // Arrange
+        aofPersistence.setAutoRewrite(0, 0);
+        for (int i = 0; i < 2000; i++) {
+            commandExecutor.execute(new Object[]{"SET", "counter", String.valueOf(i)});
+        }
+        while (aofPersistence.getWriterQueueDepth() > 0) {
+            Thread.sleep(1);
+        }
+        aofPersistence.setAutoRewrite(100, 4096);
+
+        // Act
+        commandExecutor.execute(new Object[]{"SET", "counter", "last"});
+        awaitRewrite();
+
+        // Assert
+        assertTrue(aofPersistence.info().contains("aof_rewrites:1"));
+        assertTrue(Files.size(aofFile) < 1024, "The log was compacted");
+        assertEquals("last", replay(aofPersistence.loadData()).get("counter"));
+    }
+
+    @Test
+    @DisplayName("A rewrite should recreate hashes, split into batches, with their expiry times")
+    public void testRewriteHashes() throws Exception {
+        // Arrange
+        for (int i = 0; i < 150; i++) {
+            commandExecutor.execute(new Object[]{"HSET", "hash", "f" + i, "v" + i});
+        }
+        commandExecutor.execute(new Object[]{"PEXPIRE", "hash", "100000"});
+        long deadline = commandExecutor.getExpires().get("hash");
+
+        // Act
+        commandExecutor.execute(new Object[]{"BGREWRITEAOF"});
+        awaitRewrite();
+        List<Object[]> commands = aofPersistence.loadData();
+        CommandExecutor replayed = new CommandExecutor(new ConcurrentHashMap<>(), aofPersistence);
+        replayed.setLoading(true);
+        commands.forEach(replayed::execute);
+
+        // Assert
+        assertEquals(4, commands.size());
+        assertEquals("PEXPIREAT", commands.get(3)[0]);
+        assertEquals(150L, replayed.execute(new Object[]{"HLEN", "hash"}));
+        assertEquals("v149", replayed.execute(new Object[]{"HGET", "hash", "f149"}));
+        assertEquals(deadline, replayed.getExpires().get("hash"));
+    }
+
+    @Test
+    @DisplayName("A rewrite should recreate sorted sets, split into batches, with their expiry times")
+    public void testRewriteSortedSets() throws Exception {
+        // Arrange
+        for (int i = 0; i < 150; i++) {
+            commandExecutor.execute(new Object[]{"ZADD", "zset", i + ".25", "m" + i});
+        }
+        commandExecutor.execute(new Object[]{"ZINCRBY", "zset", "0.1", "m0"});
+        commandExecutor.execute(new Object[]{"PEXPIRE", "zset", "100000"});
+        long deadline = commandExecutor.getExpires().get("zset");
+
+        // Act
+        commandExecutor.execute(new Object[]{"BGREWRITEAOF"});
+        awaitRewrite();
+        List<Object[]> commands = aofPersistence.loadData();
+        CommandExecutor replayed = new CommandExecutor(new ConcurrentHashMap<>(), aofPersistence);
+        replayed.setLoading(true);
+        commands.forEach(replayed::execute);
+
+        // Assert
+        assertEquals(4, commands.size());
+        assertEquals("ZADD", commands.get(0)[0]);
+        assertEquals(150L, replayed.execute(new Object[]{"ZCARD", "zset"}));
+        assertEquals("0.35", replayed.execute(new Object[]{"ZSCORE", "zset", "m0"}));
+        assertEquals(149L, replayed.execute(new Object[]{"ZRANK", "zset", "m149"}));
+        assertEquals(deadline, replayed.getExpires().get("zset"));
+    }
+
+    @Test
+    @DisplayName("A rewrite should recreate lists in order, split into batches")
+    public void testRewriteLists() throws Exception {
+        // Arrange
+        for (int i = 0; i < 100; i++) {
+            commandExecutor.execute(new Object[]{"RPUSH", "list", "e" + i});
+        }
+        commandExecutor.execute(new Object[]{"LPUSH", "list", "head"});
+        commandExecutor.execute(new Object[]{"LTRIM", "list", "0", "-3"});
+
+        // Act
+        commandExecutor.execute(new Object[]{"BGREWRITEAOF"});
+        awaitRewrite();
+        List<Object[]> commands = aofPersistence.loadData();
+        CommandExecutor replayed = new CommandExecutor(new ConcurrentHashMap<>(), aofPersistence);
+        replayed.setLoading(true);
+        commands.forEach(replayed::execute);
+
+        // Assert
+        assertEquals(2, commands.size());
+        assertEquals("RPUSH", commands.get(0)[0]);
+        assertArrayEquals((Object[]) commandExecutor.execute(new Object[]{"LRANGE", "list", "0", "-1"}),
+                (Object[]) replayed.execute(new Object[]{"LRANGE", "list", "0", "-1"}));
+        assertEquals(99L, replayed.execute(new Object[]{"LLEN", "list"}));
+    }
+}
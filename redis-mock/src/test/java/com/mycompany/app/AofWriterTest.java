@@ -0,0 +1,173 @@
+package com.mycompany.app;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for the AOF writer thread's hand-off queue, run against a file that is slower than
+ * the writes sent to it.
+ */
+public class AofWriterTest {
+
+    @TempDir
+    Path tempDir;
+
+    /**
+     * Makes a file that accepts every write whole, but only after a pause, like a busy disk
+     * @param pauseMillis How long each write takes
+     * @return The file
+     * @throws Exception Never, the mock does no I/O
+     */
+    private static FileChannel slowChannel(long pauseMillis) throws Exception {
+        FileChannel channel = mock(FileChannel.class);
+        when(channel.write(any(ByteBuffer.class))).thenAnswer(invocation -> {
+            Thread.sleep(pauseMillis);
+            ByteBuffer buffer = invocation.getArgument(0);
+            int written = buffer.remaining();
+            buffer.position(buffer.limit());
+            return written;
+        });
+        return channel;
+    }
+
+    /**
+     * Makes a file held in memory that, while broken, writes half of what it is given before
+     * failing, and fails to force to disk, like a disk that has filled up
+     * @param contents The file's contents
+     * @param broken Whether writes and forces fail
+     * @return The file
+     * @throws Exception Never, the mock does no I/O
+     */
+    private static FileChannel failingChannel(StringBuilder contents, AtomicBoolean broken) throws Exception {
+        FileChannel channel = mock(FileChannel.class);
+        when(channel.write(any(ByteBuffer.class))).thenAnswer(invocation -> {
+            ByteBuffer buffer = invocation.getArgument(0);
+            int length = broken.get() ? buffer.remaining() / 2 : buffer.remaining();
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            contents.append(new String(bytes, StandardCharsets.ISO_8859_1));
+            if (broken.get()) {
+                throw new IOException("No space left on device");
+            }
+            return length;
+        });
+        when(channel.truncate(anyLong())).thenAnswer(invocation -> {
+            contents.setLength((int) Math.min(contents.length(), (long) invocation.getArgument(0)));
+            return channel;
+        });
+        doAnswer(invocation -> {
+            if (broken.get()) {
+                throw new IOException("No space left on device");
+            }
+            return null;
+        }).when(channel).force(anyBoolean());
+        return channel;
+    }
+
+    @Test
+    @DisplayName("Writers flooding a slow file should wait for it once the queue limit is reached")
+    public void testQueueStaysWithinLimit() throws Exception {
+        // Arrange
+        long limit = 16 * 1024;
+        byte[] command = new byte[1024];
+        AofWriter writer = AofWriter.open(tempDir.resolve("slow.aof"), slowChannel(2), AppendFsync.EVERYSEC);
+        writer.setQueueLimit(limit);
+        AtomicLong mostQueued = new AtomicLong();
+        AtomicBoolean flooding = new AtomicBoolean(true);
+        Thread sampler = new Thread(() -> {
+            while (flooding.get()) {
+                mostQueued.accumulateAndGet(writer.getQueuedBytes(), Math::max);
+            }
+        });
+        sampler.start();
+
+        // Act
+        Thread[] producers = new Thread[4];
+        for (int t = 0; t < producers.length; t++) {
+            producers[t] = new Thread(() -> {
+                for (int i = 0; i < 500; i++) {
+                    writer.append(command);
+                }
+            });
+            producers[t].start();
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        flooding.set(false);
+        sampler.join();
+        writer.close();
+
+        // Assert
+        assertTrue(mostQueued.get() <= limit, "Queued " + mostQueued.get() + " bytes with a limit of " + limit);
+        assertTrue(writer.getStallCount() > 0);
+        assertEquals(4L * 500 * command.length, writer.getBytesWritten());
+        assertEquals(0, writer.getQueuedBytes());
+    }
+
+    @Test
+    @DisplayName("A command larger than the whole queue limit should still be written")
+    public void testOversizedCommandGoesThrough() throws Exception {
+        // Arrange
+        AofWriter writer = AofWriter.open(tempDir.resolve("small.aof"), slowChannel(1), AppendFsync.EVERYSEC);
+        writer.setQueueLimit(100);
+
+        // Act
+        writer.append(new byte[1000]);
+        writer.append(new byte[1000]);
+        writer.close();
+
+        // Assert
+        assertEquals(2000, writer.getBytesWritten());
+    }
+
+    @Test
+    @DisplayName("A failed write under always should fail its caller, refuse new appends and be cut off the file")
+    public void testFailedWriteIsNotReportedDurable() throws Exception {
+        // Arrange
+        StringBuilder contents = new StringBuilder();
+        AtomicBoolean broken = new AtomicBoolean();
+        AofWriter writer = AofWriter.open(tempDir.resolve("full.aof"), failingChannel(contents, broken), AppendFsync.ALWAYS);
+        writer.append("first;".getBytes(StandardCharsets.ISO_8859_1));
+
+        // Act
+        broken.set(true);
+        assertThrows(UncheckedIOException.class, () -> writer.append("second;".getBytes(StandardCharsets.ISO_8859_1)));
+        assertThrows(UncheckedIOException.class, () -> writer.append("third;".getBytes(StandardCharsets.ISO_8859_1)));
+        String afterFailure = contents.toString();
+        boolean refusing = !writer.isLastWriteOk();
+        String error = writer.getLastWriteError();
+        broken.set(false);
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (!writer.isLastWriteOk() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        writer.append("fourth;".getBytes(StandardCharsets.ISO_8859_1));
+        writer.close();
+
+        // Assert
+        assertEquals("first;", afterFailure);
+        assertTrue(refusing);
+        assertEquals("No space left on device", error);
+        assertEquals("first;fourth;", contents.toString());
+        assertEquals(contents.length(), writer.getFileSize());
+    }
+}
@@ -9,6 +9,9 @@ import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
 import java.net.Socket;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -47,14 +50,14 @@ public class ClientHandlerTest {
         String command = "*1\r\n$4\r\nPING\r\n";
         setupInputStream(command);
         Object[] parsedCommand = {"PING"};
-        when(mockCommandExecutor.execute(parsedCommand)).thenReturn("PONG");
+        when(mockCommandExecutor.execute(any(), eq(parsedCommand), eq(false))).thenReturn("PONG");
 
         // Act
         clientHandler = new ClientHandler(inputStream, outputStream, mockCommandExecutor);
         clientHandler.run();
 
         // Assert
-        verify(mockCommandExecutor, times(1)).execute(parsedCommand);
+        verify(mockCommandExecutor, times(1)).execute(any(), eq(parsedCommand), eq(false));
         assertEquals("+PONG\r\n", outputStream.toString());
     }
 
@@ -65,14 +68,14 @@ public class ClientHandlerTest {
         String command = "*3\r\n$3\r\nSET\r\n$3\r\nkey\r\n$5\r\nvalue\r\n";
         setupInputStream(command);
         Object[] parsedCommand = {"SET", "key", "value"};
-        when(mockCommandExecutor.execute(parsedCommand)).thenReturn("OK");
+        when(mockCommandExecutor.execute(any(), eq(parsedCommand), eq(false))).thenReturn("OK");
 
         // Act
         clientHandler = new ClientHandler(inputStream, outputStream, mockCommandExecutor);
         clientHandler.run();
 
         // Assert
-        verify(mockCommandExecutor, times(1)).execute(parsedCommand);
+        verify(mockCommandExecutor, times(1)).execute(any(), eq(parsedCommand), eq(false));
         assertEquals("+OK\r\n", outputStream.toString());
     }
 
@@ -83,15 +86,91 @@ public class ClientHandlerTest {
         String command = "*2\r\n$3\r\nGET\r\n$3\r\nkey\r\n";
         setupInputStream(command);
         Object[] parsedCommand = {"GET", "key"};
-        when(mockCommandExecutor.execute(parsedCommand)).thenReturn("value");
+        when(mockCommandExecutor.execute(any(), eq(parsedCommand), eq(false))).thenReturn("value");
 
         // Act
         clientHandler = new ClientHandler(inputStream, outputStream, mockCommandExecutor);
         clientHandler.run();
 
         // Assert
-        verify(mockCommandExecutor, times(1)).execute(parsedCommand);
+        verify(mockCommandExecutor, times(1)).execute(any(), eq(parsedCommand), eq(false));
         assertEquals("$5\r\nvalue\r\n", outputStream.toString());
     }
 
-}
\ No newline at end of file
+    @Test
+    @DisplayName("Should execute pipelined commands in order and reply in a single write")
+    public void testHandlesPipelinedCommands() throws Exception {
+        // Arrange
+        StringBuilder pipeline = new StringBuilder();
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            pipeline.append("*2\r\n$3\r\nGET\r\n$3\r\nkey\r\n");
+            expected.append("$5\r\nvalue\r\n");
+        }
+        setupInputStream(pipeline.toString());
+        Object[] parsedCommand = {"GET", "key"};
+        when(mockCommandExecutor.execute(any(), eq(parsedCommand), eq(false))).thenReturn("value");
+        int[] writes = new int[1];
+        OutputStream countingStream = new OutputStream() {
+            @Override
+            public void write(int b) {
+                outputStream.write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                writes[0]++;
+                outputStream.write(b, off, len);
+            }
+        };
+
+        // Act
+        clientHandler = new ClientHandler(inputStream, countingStream, mockCommandExecutor);
+        clientHandler.run();
+
+        // Assert
+        verify(mockCommandExecutor, times(100)).execute(any(), eq(parsedCommand), eq(false));
+        assertEquals(expected.toString(), outputStream.toString());
+        assertEquals(1, writes[0]);
+    }
+
+    @Test
+    @DisplayName("Should keep serving the connection until the client closes it")
+    public void testHandlesCommandSplitAcrossReads() throws Exception {
+        // Arrange
+        byte[] first = "*1\r\n$4\r\nPI".getBytes();
+        byte[] second = "NG\r\n*1\r\n$4\r\nPING\r\n".getBytes();
+        InputStream chunkedStream = new SequenceInputStream(
+                new ByteArrayInputStream(first), new ByteArrayInputStream(second));
+        Object[] parsedCommand = {"PING"};
+        when(mockCommandExecutor.execute(any(), eq(parsedCommand), eq(false))).thenReturn("PONG");
+
+        // Act
+        clientHandler = new ClientHandler(chunkedStream, outputStream, mockCommandExecutor);
+        clientHandler.run();
+
+        // Assert
+        verify(mockCommandExecutor, times(2)).execute(any(), eq(parsedCommand), eq(false));
+        assertEquals("+PONG\r\n+PONG\r\n", outputStream.toString());
+    }
+
+    @Test
+    @DisplayName("Should send the replies ahead of a blocked command, then its reply once it completes")
+    public void testBlockedCommand() throws Exception {
+        // Arrange
+        setupInputStream("*1\r\n$4\r\nPING\r\n*3\r\n$5\r\nBLPOP\r\n$4\r\njobs\r\n$1\r\n0\r\n");
+        DeferredReply deferred = new DeferredReply();
+        when(mockCommandExecutor.execute(any(), eq(new Object[]{"PING"}), eq(false))).thenReturn("PONG");
+        when(mockCommandExecutor.execute(any(), eq(new Object[]{"BLPOP", "jobs", "0"}), eq(false))).thenAnswer(invocation -> {
+            new Thread(() -> deferred.complete(new Object[]{"jobs", "one"})).start();
+            return deferred;
+        });
+
+        // Act
+        clientHandler = new ClientHandler(inputStream, outputStream, mockCommandExecutor);
+        clientHandler.run();
+
+        // Assert
+        assertEquals("+PONG\r\n*2\r\n$4\r\njobs\r\n$3\r\none\r\n", outputStream.toString());
+    }
+}
@@ -0,0 +1,242 @@
+package com.mycompany.app;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Integration tests for cluster mode.
+ * Each test starts several cluster nodes on free loopback ports, each with its own throwaway files,
+ * assigns them slots and introduces them to each other with CLUSTER MEET.
+ */
+public class ClusterTest {
+
+    private static final long WAIT_MILLIS = 10_000;
+
+    @TempDir
+    Path tempDir;
+
+    private final List<RedisServer> servers = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        for (RedisServer server : servers) {
+            server.stop();
+        }
+    }
+
+    /**
+     * Starts a cluster node on a free port
+     * @param name The name its files are given
+     * @param mode How it handles connections
+     * @return The node, already listening
+     */
+    private RedisServer startNode(String name, ServerMode mode) throws InterruptedException {
+        ServerConfig config = new ServerConfig()
+                .setPort(0)
+                .setMode(mode)
+                .setClusterEnabled(true)
+                .setAofFile(tempDir.resolve(name + ".aof").toString())
+                .setRdbFile(tempDir.resolve(name + ".rdb").toString());
+        RedisServer server = new RedisServer(config);
+        servers.add(server);
+        new Thread(server::start, "cluster-test-" + name).start();
+        server.awaitStarted(5, TimeUnit.SECONDS);
+        return server;
+    }
+
+    /**
+     * Gets the port a node listens on
+     * @param server The node
+     * @return The port
+     */
+    private static int portOf(RedisServer server) {
+        try {
+            return server.awaitStarted(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Sends commands on one connection, pipelined, and reads their replies
+     * @param server The node
+     * @param commands The commands
+     * @return The replies in order, errors as Exceptions
+     */
+    private static Object[] pipeline(RedisServer server, Object[]... commands) throws IOException {
+        try (Socket socket = new Socket("localhost", portOf(server))) {
+            socket.setSoTimeout(2000);
+            for (Object[] command : commands) {
+                socket.getOutputStream().write(RESPParser.encodeCommand(command));
+            }
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            Object[] replies = new Object[commands.length];
+            for (int i = 0; i < commands.length; i++) {
+                replies[i] = RESPParser.decode(in);
+            }
+            return replies;
+        }
+    }
+
+    /**
+     * Sends one command on a new connection and reads its reply
+     * @param server The node
+     * @param command The command and its arguments
+     * @return The reply, an error as its message
+     */
+    private static Object send(RedisServer server, Object... command) throws IOException {
+        Object reply = pipeline(server, command)[0];
+        return reply instanceof Exception e ? e.getMessage() : reply;
+    }
+
+    /**
+     * Polls until a condition holds, failing the test if it does not within the wait
+     * @param description What is waited for
+     * @param condition The condition
+     */
+    private static void awaitTrue(String description, Supplier<Boolean> condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + WAIT_MILLIS;
+        while (!condition.get()) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("Timed out waiting until " + description);
+            }
+            Thread.sleep(20);
+        }
+    }
+
+    /**
+     * Waits until a node knows a number of nodes and has every slot assigned
+     * @param server The node
+     * @param nodes The number of nodes it should know
+     */
+    private static void awaitClusterOk(RedisServer server, int nodes) throws InterruptedException {
+        awaitTrue("the node knows " + nodes + " nodes and every slot", () -> {
+            try {
+                String info = (String) send(server, "CLUSTER", "INFO");
+                return info.contains("cluster_state:ok") && info.contains("cluster_known_nodes:" + nodes + "\r\n");
+            } catch (IOException e) {
+                return false;
+            }
+        });
+    }
+
+    @Test
+    @DisplayName("Should serve keys in a node's own slots and redirect the others with MOVED")
+    public void testMovedRedirection() throws IOException, InterruptedException {
+        // Arrange
+        RedisServer first = startNode("first", ServerMode.NIO);
+        RedisServer second = startNode("second", ServerMode.VIRTUAL);
+        RedisServer third = startNode("third", ServerMode.NIO);
+        assertEquals("OK", send(first, "CLUSTER", "ADDSLOTSRANGE", "0", "5460"));
+        assertEquals("OK", send(second, "CLUSTER", "ADDSLOTSRANGE", "5461", "10922"));
+        assertEquals("OK", send(third, "CLUSTER", "ADDSLOTSRANGE", "10923", "16383"));
+
+        // Act
+        send(first, "CLUSTER", "MEET", "127.0.0.1", Integer.toString(portOf(second)));
+        send(first, "CLUSTER", "MEET", "127.0.0.1", Integer.toString(portOf(third)));
+        send(second, "CLUSTER", "MEET", "127.0.0.1", Integer.toString(portOf(third)));
+        for (RedisServer node : servers) {
+            awaitClusterOk(node, 3);
+        }
+
+        // Assert
+        // foo is in slot 12182 and bar in 5061
+        assertEquals("OK", send(third, "SET", "foo", "1"));
+        assertEquals("MOVED 12182 127.0.0.1:" + portOf(third), send(first, "GET", "foo"));
+        assertEquals("MOVED 5061 127.0.0.1:" + portOf(first), send(second, "SET", "bar", "2"));
+        assertEquals("1", send(third, "GET", "foo"));
+        assertEquals(12182L, send(second, "CLUSTER", "KEYSLOT", "foo"));
+        assertTrue(((String) send(first, "MSET", "foo", "1", "bar", "2")).startsWith("CROSSSLOT"));
+        assertEquals("OK", send(first, "MSET", "{bar}.a", "1", "{bar}.b", "2"));
+        Object[] slots = (Object[]) send(second, "CLUSTER", "SLOTS");
+        assertEquals(3, slots.length);
+        assertArrayEquals(new Object[]{"127.0.0.1", (long) portOf(second), second.getCluster().getMyId()},
+                (Object[]) ((Object[]) slots[1])[2]);
+    }
+
+    @Test
+    @DisplayName("Should move a slot with MIGRATE, sending clients to the new node with ASK until the move is done")
+    public void testSlotMigrationWithAsk() throws IOException, InterruptedException {
+        // Arrange
+        RedisServer source = startNode("source", ServerMode.NIO);
+        RedisServer target = startNode("target", ServerMode.VIRTUAL);
+        String sourceId = source.getCluster().getMyId();
+        String targetId = target.getCluster().getMyId();
+        send(source, "CLUSTER", "ADDSLOTSRANGE", "0", "16383");
+        send(source, "CLUSTER", "MEET", "127.0.0.1", Integer.toString(portOf(target)));
+        awaitClusterOk(source, 2);
+        awaitClusterOk(target, 2);
+        String slot = Long.toString((Long) send(source, "CLUSTER", "KEYSLOT", "{tag}"));
+        send(source, "SET", "{tag}moved", "1");
+        send(source, "RPUSH", "{tag}list", "a", "b");
+        send(source, "SET", "{tag}staying", "2");
+        String targetAddress = "127.0.0.1:" + portOf(target);
+
+        // Act
+        assertEquals("OK", send(target, "CLUSTER", "SETSLOT", slot, "IMPORTING", sourceId));
+        assertEquals("OK", send(source, "CLUSTER", "SETSLOT", slot, "MIGRATING", targetId));
+        assertEquals("OK", send(source, "MIGRATE", "127.0.0.1", Integer.toString(portOf(target)), "", "0", "5000",
+                "KEYS", "{tag}moved", "{tag}list"));
+
+        // Assert
+        assertEquals("ASK " + slot + " " + targetAddress, send(source, "GET", "{tag}moved"));
+        assertEquals("ASK " + slot + " " + targetAddress, send(source, "SET", "{tag}new", "3"));
+        assertEquals("2", send(source, "GET", "{tag}staying"));
+        assertTrue(((String) send(source, "MGET", "{tag}moved", "{tag}staying")).startsWith("TRYAGAIN"));
+        assertEquals("MOVED " + slot + " 127.0.0.1:" + portOf(source), send(target, "GET", "{tag}moved"));
+        Object[] asked = pipeline(target, new Object[]{"ASKING"}, new Object[]{"GET", "{tag}moved"},
+                new Object[]{"LLEN", "{tag}list"});
+        assertEquals("OK", asked[0]);
+        assertEquals("1", asked[1]);
+        // ASKING only covers the command straight after it
+        assertTrue(((Exception) asked[2]).getMessage().startsWith("MOVED"));
+        assertEquals(2L, pipeline(target, new Object[]{"ASKING"}, new Object[]{"LLEN", "{tag}list"})[1]);
+
+        // Act
+        assertEquals("OK", send(source, "MIGRATE", "127.0.0.1", Integer.toString(portOf(target)), "{tag}staying", "0", "5000"));
+        assertEquals(0L, send(source, "CLUSTER", "COUNTKEYSINSLOT", slot));
+        assertEquals("OK", send(target, "CLUSTER", "SETSLOT", slot, "NODE", targetId));
+        assertEquals("OK", send(source, "CLUSTER", "SETSLOT", slot, "NODE", targetId));
+
+        // Assert
+        assertEquals("MOVED " + slot + " " + targetAddress, send(source, "GET", "{tag}staying"));
+        assertEquals("2", send(target, "GET", "{tag}staying"));
+        assertEquals(3L, send(target, "CLUSTER", "COUNTKEYSINSLOT", slot));
+    }
+
+    @Test
+    @DisplayName("Should refuse cluster commands when cluster mode is off")
+    public void testClusterDisabled() throws IOException, InterruptedException {
+        // Arrange
+        ServerConfig config = new ServerConfig()
+                .setPort(0)
+                .setMode(ServerMode.NIO)
+                .setAofFile(tempDir.resolve("plain.aof").toString())
+                .setRdbFile(tempDir.resolve("plain.rdb").toString());
+        RedisServer server = new RedisServer(config);
+        servers.add(server);
+        new Thread(server::start, "cluster-test-plain").start();
+        server.awaitStarted(5, TimeUnit.SECONDS);
+
+        // Act & Assert
+        assertEquals("ERR This instance has cluster support disabled", send(server, "CLUSTER", "NODES"));
+        assertEquals("OK", send(server, "SET", "foo", "1"));
+    }
+}
@@ -7,9 +7,14 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.concurrent.ConcurrentHashMap;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.*;
 
@@ -50,6 +55,19 @@ public class CommandExecutorTest {
         assertEquals("OK", result);
     }
 
+    @Test
+    @DisplayName("Execute SET while loading the AOF should store the value without logging it again")
+    public void testExecuteSetWhileLoading() {
+        Object[] command = {"SET", "key", "value"};
+        commandExecutor.setLoading(true);
+
+        Object result = commandExecutor.execute(command);
+
+        assertEquals("value", realDataStore.get("key"));
+        verifyNoInteractions(mockAofPersistence);
+        assertEquals("OK", result);
+    }
+
     @Test
     @DisplayName("Execute GET should retrieve value from the map and not log")
     public void testExecuteGetCommand() {
@@ -125,4 +143,345 @@ public class CommandExecutorTest {
         assertTrue(realDataStore.isEmpty());
         verifyNoInteractions(mockAofPersistence);
     }
+
+    @Test
+    @DisplayName("Execute COMMAND INFO should describe known commands and return null for unknown ones")
+    public void testCommandInfo() {
+        Object[] command = {"command", "info", "get", "nosuchcommand"};
+
+        Object result = commandExecutor.execute(command);
+
+        Object[] infos = (Object[]) result;
+        assertEquals(2, infos.length);
+        Object[] get = (Object[]) infos[0];
+        assertEquals("get", get[0]);
+        assertEquals(2L, get[1]);
+        assertArrayEquals(new Object[]{"readonly", "fast"}, (Object[]) get[2]);
+        assertEquals(1L, get[3]);
+        assertEquals(1L, get[4]);
+        assertEquals(1L, get[5]);
+        assertNull(infos[1]);
+        verifyNoInteractions(mockAofPersistence);
+    }
+
+    @Test
+    @DisplayName("Execute COMMAND COUNT should count every registered command")
+    public void testCommandCount() {
+        Object result = commandExecutor.execute(new Object[]{"COMMAND", "COUNT"});
+
+        assertEquals((long) commandExecutor.getRegistry().size(), result);
+        assertEquals(commandExecutor.getRegistry().size(), ((Object[]) commandExecutor.execute(new Object[]{"COMMAND"})).length);
+    }
+
+    @Test
+    @DisplayName("Execute should accept command names in any case")
+    public void testExecuteLowerCaseCommand() {
+        Object[] command = {"set", "key", "value"};
+
+        Object result = commandExecutor.execute(command);
+
+        assertEquals("OK", result);
+        assertEquals("value", realDataStore.get("key"));
+        verify(mockAofPersistence, times(1)).logCommand(command);
+    }
+
+    @Test
+    @DisplayName("Execute SET with EX should set a TTL and log an absolute PXAT")
+    public void testExecuteSetWithExpiry() {
+        long before = System.currentTimeMillis();
+
+        Object result = commandExecutor.execute(new Object[]{"SET", "key", "value", "EX", "100"});
+
+        assertEquals("OK", result);
+        long ttl = (Long) commandExecutor.execute(new Object[]{"TTL", "key"});
+        assertTrue(ttl > 98 && ttl <= 100, "TTL was " + ttl);
+        long deadline = commandExecutor.getExpires().get("key");
+        assertTrue(deadline >= before + 100_000 && deadline <= System.currentTimeMillis() + 100_000);
+        verify(mockAofPersistence, times(1)).logCommand(new Object[]{"SET", "key", "value", "PXAT", String.valueOf(deadline)});
+    }
+
+    @Test
+    @DisplayName("Execute SET NX and XX should only write when the key is absent or present")
+    public void testExecuteSetNxXx() {
+        assertNull(commandExecutor.execute(new Object[]{"SET", "key", "v1", "XX"}));
+        assertEquals("OK", commandExecutor.execute(new Object[]{"SET", "key", "v1", "NX"}));
+        assertNull(commandExecutor.execute(new Object[]{"SET", "key", "v2", "NX"}));
+        assertEquals("OK", commandExecutor.execute(new Object[]{"SET", "key", "v3", "XX"}));
+
+        assertEquals("v3", realDataStore.get("key"));
+        verify(mockAofPersistence, times(2)).logCommand(any());
+    }
+
+    @Test
+    @DisplayName("Execute SET with bad options should return an error and not log")
+    public void testExecuteSetBadOptions() {
+        Object syntax = commandExecutor.execute(new Object[]{"SET", "key", "value", "NX", "XX"});
+        Object invalid = commandExecutor.execute(new Object[]{"SET", "key", "value", "EX", "0"});
+        Object notInteger = commandExecutor.execute(new Object[]{"SET", "key", "value", "PX", "soon"});
+
+        assertEquals("ERR syntax error", ((Exception) syntax).getMessage());
+        assertEquals("ERR invalid expire time in 'set' command", ((Exception) invalid).getMessage());
+        assertEquals("ERR value is not an integer or out of range", ((Exception) notInteger).getMessage());
+        verify(mockAofPersistence, never()).logCommand(any());
+    }
+
+    @Test
+    @DisplayName("A plain SET should clear the TTL unless KEEPTTL is given")
+    public void testExecuteSetClearsTtl() {
+        commandExecutor.execute(new Object[]{"SET", "a", "value", "PX", "100000"});
+        commandExecutor.execute(new Object[]{"SET", "b", "value", "PX", "100000"});
+
+        commandExecutor.execute(new Object[]{"SET", "a", "new"});
+        commandExecutor.execute(new Object[]{"SET", "b", "new", "KEEPTTL"});
+
+        assertEquals(-1L, commandExecutor.execute(new Object[]{"TTL", "a"}));
+        assertTrue((Long) commandExecutor.execute(new Object[]{"PTTL", "b"}) > 0);
+    }
+
+    @Test
+    @DisplayName("Execute EXPIRE should log PEXPIREAT and return 0 for a missing key")
+    public void testExecuteExpire() {
+        realDataStore.put("key", "value");
+
+        Object missing = commandExecutor.execute(new Object[]{"EXPIRE", "nokey", "10"});
+        Object result = commandExecutor.execute(new Object[]{"EXPIRE", "key", "10"});
+
+        assertEquals(0L, missing);
+        assertEquals(1L, result);
+        long deadline = commandExecutor.getExpires().get("key");
+        verify(mockAofPersistence, times(1)).logCommand(new Object[]{"PEXPIREAT", "key", String.valueOf(deadline)});
+        assertEquals(-2L, commandExecutor.execute(new Object[]{"TTL", "nokey"}));
+    }
+
+    @Test
+    @DisplayName("Execute PERSIST should remove the TTL and log only when there was one")
+    public void testExecutePersist() {
+        realDataStore.put("key", "value");
+        commandExecutor.getExpires().set("key", System.currentTimeMillis() + 100_000);
+
+        Object first = commandExecutor.execute(new Object[]{"PERSIST", "key"});
+        Object second = commandExecutor.execute(new Object[]{"PERSIST", "key"});
+
+        assertEquals(1L, first);
+        assertEquals(0L, second);
+        assertEquals(-1L, commandExecutor.execute(new Object[]{"TTL", "key"}));
+        verify(mockAofPersistence, times(1)).logCommand(any());
+    }
+
+    @Test
+    @DisplayName("An expired key should be gone on access without logging a delete")
+    public void testLazyExpiry() {
+        realDataStore.put("key", "value");
+        commandExecutor.getExpires().set("key", System.currentTimeMillis() - 1);
+
+        Object result = commandExecutor.execute(new Object[]{"GET", "key"});
+
+        assertNull(result);
+        assertTrue(realDataStore.isEmpty());
+        assertEquals(0, commandExecutor.getExpires().size());
+        verifyNoInteractions(mockAofPersistence);
+    }
+
+    @Test
+    @DisplayName("Replaying a PXAT in the past should leave the key expired")
+    public void testReplayPastDeadline() {
+        commandExecutor.setLoading(true);
+
+        commandExecutor.execute(new Object[]{"SET", "key", "value", "PXAT", "1000"});
+        // nothing expires until loading is over, as a later command may have changed the expiry time
+        commandExecutor.setLoading(false);
+
+        assertNull(commandExecutor.execute(new Object[]{"GET", "key"}));
+        verifyNoInteractions(mockAofPersistence);
+    }
+
+    @Test
+    @DisplayName("Writes over maxmemory should evict keys and log each eviction as a DEL")
+    public void testMaxMemoryEvicts() {
+        commandExecutor.setMaxMemory(10_000, EvictionPolicy.ALLKEYS_LRU, 5);
+
+        for (int i = 0; i < 1000; i++) {
+            assertEquals("OK", commandExecutor.execute(new Object[]{"SET", "key" + i, "value"}));
+        }
+
+        assertTrue(commandExecutor.getUsedMemory() <= 10_000 + MemoryEstimator.entrySize("key999", "value"));
+        assertTrue(realDataStore.size() < 1000);
+        verify(mockAofPersistence, times(1000 - realDataStore.size())).logCommand(argThat(logged -> logged[0].equals("DEL")));
+    }
+
+    @Test
+    @DisplayName("Writes over maxmemory with noeviction should be refused, deletes still allowed")
+    public void testMaxMemoryNoEviction() {
+        commandExecutor.setMaxMemory(1, EvictionPolicy.NOEVICTION, 5);
+        commandExecutor.execute(new Object[]{"SET", "key", "value"});
+
+        Object refused = commandExecutor.execute(new Object[]{"SET", "other", "value"});
+        Object deleted = commandExecutor.execute(new Object[]{"DEL", "key", "missing"});
+
+        assertEquals("OOM command not allowed when used memory > 'maxmemory'.", ((Exception) refused).getMessage());
+        assertEquals(1L, deleted);
+        assertTrue(realDataStore.isEmpty());
+        assertEquals(0, commandExecutor.getUsedMemory());
+    }
+
+    @Test
+    @DisplayName("INCR family should count from a missing key and log the result as SET KEEPTTL")
+    public void testIncrementFamily() {
+        Object first = commandExecutor.execute(new Object[]{"INCR", "counter"});
+        Object added = commandExecutor.execute(new Object[]{"INCRBY", "counter", "10"});
+        Object decremented = commandExecutor.execute(new Object[]{"DECR", "counter"});
+        Object subtracted = commandExecutor.execute(new Object[]{"DECRBY", "counter", "20"});
+
+        assertEquals(1L, first);
+        assertEquals(11L, added);
+        assertEquals(10L, decremented);
+        assertEquals(-10L, subtracted);
+        assertEquals(IntegerValue.of(-10), realDataStore.get("counter"));
+        assertEquals("int", commandExecutor.execute(new Object[]{"OBJECT", "ENCODING", "counter"}));
+        verify(mockAofPersistence, times(1)).logCommand(new Object[]{"SET", "counter", "11", "KEEPTTL"});
+        verify(mockAofPersistence, times(1)).logCommand(new Object[]{"SET", "counter", "-10", "KEEPTTL"});
+    }
+
+    @Test
+    @DisplayName("INCR should keep the TTL and refuse non-integers and overflow")
+    public void testIncrementErrors() {
+        commandExecutor.execute(new Object[]{"SET", "counter", "5", "EX", "100"});
+        commandExecutor.execute(new Object[]{"SET", "text", "abc"});
+        commandExecutor.execute(new Object[]{"SET", "max", String.valueOf(Long.MAX_VALUE)});
+
+        Object incremented = commandExecutor.execute(new Object[]{"INCR", "counter"});
+        Object notInteger = commandExecutor.execute(new Object[]{"INCR", "text"});
+        Object overflow = commandExecutor.execute(new Object[]{"INCR", "max"});
+        Object badIncrement = commandExecutor.execute(new Object[]{"INCRBY", "counter", "x"});
+
+        assertEquals(6L, incremented);
+        assertTrue((Long) commandExecutor.execute(new Object[]{"TTL", "counter"}) > 0);
+        assertEquals("ERR value is not an integer or out of range", ((Exception) notInteger).getMessage());
+        assertEquals("ERR increment or decrement would overflow", ((Exception) overflow).getMessage());
+        assertEquals("ERR value is not an integer or out of range", ((Exception) badIncrement).getMessage());
+    }
+
+    @Test
+    @DisplayName("INCRBYFLOAT should add without trailing zeros and log the result")
+    public void testIncrementByFloat() {
+        commandExecutor.execute(new Object[]{"SET", "price", "10.50"});
+
+        Object result = commandExecutor.execute(new Object[]{"INCRBYFLOAT", "price", "0.1"});
+        Object whole = commandExecutor.execute(new Object[]{"INCRBYFLOAT", "price", "-0.6"});
+        Object invalid = commandExecutor.execute(new Object[]{"INCRBYFLOAT", "price", "nan"});
+
+        assertEquals("10.6", result);
+        assertEquals("10", whole);
+        assertEquals(IntegerValue.of(10), realDataStore.get("price"));
+        assertEquals("ERR value is not a valid float", ((Exception) invalid).getMessage());
+        verify(mockAofPersistence, times(1)).logCommand(new Object[]{"SET", "price", "10.6", "KEEPTTL"});
+    }
+
+    @Test
+    @DisplayName("GET of a number should return it as text once encoded")
+    public void testGetIntegerEncoded() {
+        commandExecutor.execute(new Object[]{"SET", "key", "42"});
+
+        Object result = commandExecutor.execute(new Object[]{"GET", "key"});
+
+        assertEquals(IntegerValue.of(42), result);
+        assertEquals("$2\r\n42\r\n", RESPParser.encode(result));
+    }
+
+    @Test
+    @DisplayName("MSET should set every key in one AOF record and MGET should read them back in one reply")
+    public void testMsetAndMget() {
+        commandExecutor.execute(new Object[]{"SET", "a", "old", "EX", "100"});
+        commandExecutor.execute(new Object[]{"HSET", "hash", "field", "value"});
+        Object[] mset = {"MSET", "a", "1", "b", "two"};
+
+        Object result = commandExecutor.execute(mset);
+        Object values = commandExecutor.execute(new Object[]{"MGET", "a", "b", "missing", "hash"});
+        Object missingValue = commandExecutor.execute(new Object[]{"MSET", "a", "1", "b"});
+
+        assertEquals("OK", result);
+        assertArrayEquals(new Object[]{IntegerValue.of(1), "two", null, null}, (Object[]) values);
+        assertEquals(-1L, commandExecutor.execute(new Object[]{"TTL", "a"}));
+        assertEquals("ERR wrong number of arguments for 'MSET' command", ((Exception) missingValue).getMessage());
+        verify(mockAofPersistence, times(1)).logCommand(mset);
+    }
+
+    @Test
+    @DisplayName("MSETNX should set nothing if any key exists, and log only when it sets")
+    public void testMsetnx() {
+        commandExecutor.execute(new Object[]{"SET", "taken", "value"});
+
+        Object refused = commandExecutor.execute(new Object[]{"MSETNX", "free", "1", "taken", "2"});
+        Object[] accepted = {"MSETNX", "free", "1", "other", "2"};
+        Object set = commandExecutor.execute(accepted);
+
+        assertEquals(0L, refused);
+        assertEquals(1L, set);
+        assertEquals("value", realDataStore.get("taken"));
+        assertEquals("2", String.valueOf(realDataStore.get("other")));
+        verify(mockAofPersistence, never()).logCommand(new Object[]{"MSETNX", "free", "1", "taken", "2"});
+        verify(mockAofPersistence, times(1)).logCommand(accepted);
+    }
+
+    @Test
+    @DisplayName("EXISTS should count repeated keys each time and UNLINK should delete like DEL")
+    public void testExistsAndUnlink() {
+        commandExecutor.execute(new Object[]{"MSET", "a", "1", "b", "2"});
+
+        Object counted = commandExecutor.execute(new Object[]{"EXISTS", "a", "a", "b", "missing"});
+        Object unlinked = commandExecutor.execute(new Object[]{"UNLINK", "a", "missing"});
+
+        assertEquals(3L, counted);
+        assertEquals(1L, unlinked);
+        assertEquals(1L, commandExecutor.execute(new Object[]{"EXISTS", "a", "b"}));
+        verify(mockAofPersistence, times(1)).logCommand(new Object[]{"UNLINK", "a", "missing"});
+    }
+
+    @Test
+    @DisplayName("MGET should never see an MSET half applied")
+    public void testMsetIsAtomicForMget() throws InterruptedException {
+        commandExecutor.execute(new Object[]{"MSET", "x", "0", "y", "0"});
+        Thread writer = new Thread(() -> {
+            for (int i = 1; i <= 2000; i++) {
+                commandExecutor.execute(new Object[]{"MSET", "x", String.valueOf(i), "y", String.valueOf(i)});
+            }
+        });
+
+        writer.start();
+        boolean torn = false;
+        while (writer.isAlive()) {
+            Object[] values = (Object[]) commandExecutor.execute(new Object[]{"MGET", "x", "y"});
+            torn |= !values[0].equals(values[1]);
+        }
+        writer.join();
+
+        assertFalse(torn, "MGET saw x and y from different MSETs");
+    }
+
+    @Test
+    @DisplayName("A write the AOF could not take should stay applied but be answered with a MISCONF error")
+    public void testFailedAofWriteIsReported() {
+        doThrow(new UncheckedIOException(new IOException("No space left on device"))).when(mockAofPersistence).logCommand(any());
+
+        Object result = commandExecutor.execute(new Object[]{"SET", "key", "value"});
+
+        assertTrue(result instanceof Exception);
+        assertEquals("MISCONF Errors writing to the AOF file: No space left on device", ((Exception) result).getMessage());
+        assertEquals("value", realDataStore.get("key"));
+    }
+
+    @Test
+    @DisplayName("Writes should be refused while the AOF cannot be written, and reads still served")
+    public void testWritesRefusedAfterAofFailure() {
+        realDataStore.put("key", "value");
+        when(mockAofPersistence.getLastWriteError()).thenReturn("No space left on device");
+
+        Object refused = commandExecutor.execute(new Object[]{"SET", "key", "other"});
+        Object read = commandExecutor.execute(new Object[]{"GET", "key"});
+
+        assertTrue(refused instanceof Exception);
+        assertEquals("MISCONF Errors writing to the AOF file: No space left on device", ((Exception) refused).getMessage());
+        assertEquals("value", read);
+        verify(mockAofPersistence, never()).logCommand(any());
+    }
 }
@@ -0,0 +1,91 @@
+package com.mycompany.app;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the case-insensitive command table.
+ */
+public class CommandRegistryTest {
+
+    /**
+     * Builds a command that just replies with its name
+     * @param name The command name
+     * @return The command
+     */
+    private CommandSpec spec(String name) {
+        return new CommandSpec(name, -1, EnumSet.of(CommandFlag.FAST), 0, 0, 0, command -> name);
+    }
+
+    @Test
+    @DisplayName("Should find commands whatever case they are sent in")
+    public void testLookupIgnoresCase() {
+        CommandRegistry registry = new CommandRegistry();
+        registry.register(spec("get"));
+
+        assertEquals("GET", registry.lookup("GET").getName());
+        assertEquals("GET", registry.lookup("get").getName());
+        assertEquals("GET", registry.lookup("gEt").getName());
+        assertNull(registry.lookup("GETS"));
+        assertNull(registry.lookup("GE"));
+    }
+
+    @Test
+    @DisplayName("Should find commands straight from decoded bytes")
+    public void testLookupFromRespCommand() throws IOException {
+        CommandRegistry registry = new CommandRegistry();
+        registry.register(spec("SET"));
+        registry.register(spec("GET"));
+        ByteBuffer buffer = ByteBuffer.wrap("*2\r\n$3\r\nsEt\r\n$1\r\nk\r\n".getBytes(StandardCharsets.US_ASCII));
+
+        RespCommand command = new RespDecoder().decode(buffer);
+
+        assertEquals("SET", registry.lookup(command).getName());
+    }
+
+    @Test
+    @DisplayName("Should find nothing for a command with no arguments")
+    public void testLookupEmptyCommand() {
+        CommandRegistry registry = new CommandRegistry();
+        registry.register(spec("GET"));
+
+        assertNull(registry.lookup(new RespCommand()));
+    }
+
+    @Test
+    @DisplayName("Should keep every command as the table grows and replace commands by name")
+    public void testGrowAndReplace() {
+        CommandRegistry registry = new CommandRegistry();
+        for (int i = 0; i < 200; i++) {
+            registry.register(spec("CMD" + i));
+        }
+        registry.register(new CommandSpec("cmd7", 2, EnumSet.of(CommandFlag.WRITE), 1, 1, 1, command -> "new"));
+
+        assertEquals(200, registry.size());
+        assertEquals(200, registry.commands().size());
+        for (int i = 0; i < 200; i++) {
+            assertNotNull(registry.lookup("cmd" + i), "cmd" + i);
+        }
+        assertTrue(registry.lookup("CMD7").isWrite());
+    }
+
+    @Test
+    @DisplayName("Should check argument counts by Redis arity rules")
+    public void testArity() {
+        CommandSpec exact = new CommandSpec("GET", 2, EnumSet.of(CommandFlag.READONLY), 1, 1, 1, command -> null);
+        CommandSpec atLeast = new CommandSpec("PING", -1, EnumSet.of(CommandFlag.FAST), 0, 0, 0, command -> null);
+
+        assertTrue(exact.acceptsArgCount(2));
+        assertFalse(exact.acceptsArgCount(1));
+        assertFalse(exact.acceptsArgCount(3));
+        assertTrue(atLeast.acceptsArgCount(1));
+        assertTrue(atLeast.acceptsArgCount(5));
+    }
+}
@@ -0,0 +1,104 @@
+package com.mycompany.app;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the Dict hash table and its stateless scan cursor.
+ */
+public class DictTest {
+
+    @Test
+    @DisplayName("The table should behave like a map as it grows and shrinks")
+    public void testPutGetRemove() {
+        // Arrange
+        Dict<String> dict = new Dict<>(0);
+        Map<String, String> expected = new HashMap<>();
+
+        // Act
+        for (int i = 0; i < 10_000; i++) {
+            dict.put("field:" + i, "value:" + i);
+            expected.put("field:" + i, "value:" + i);
+        }
+        String replaced = dict.put("field:7", "changed");
+        expected.put("field:7", "changed");
+        for (int i = 0; i < 9_900; i++) {
+            assertEquals(expected.remove("field:" + i), dict.remove("field:" + i));
+        }
+
+        // Assert
+        assertEquals("value:7", replaced);
+        assertNull(dict.remove("field:0"));
+        assertEquals(100, dict.size());
+        for (Map.Entry<String, String> entry : expected.entrySet()) {
+            assertEquals(entry.getValue(), dict.get(entry.getKey()));
+        }
+        Map<String, String> visited = new HashMap<>();
+        dict.forEach(visited::put);
+        assertEquals(expected, visited);
+    }
+
+    @Test
+    @DisplayName("A scan should visit every key present throughout, even while the table doubles and halves between calls")
+    public void testScanNeverMissesAKey() {
+        // Arrange
+        Dict<String> dict = new Dict<>(0);
+        for (int i = 0; i < 1_000; i++) {
+            dict.put("stable:" + i, "value");
+        }
+
+        // Act
+        Set<String> seen = new HashSet<>();
+        long cursor = 0;
+        int calls = 0;
+        do {
+            cursor = dict.scan(cursor, 10, (key, value) -> seen.add(key));
+            // grow the table well past its size, then shrink it back, as the walk goes on
+            if (calls % 20 < 10) {
+                for (int i = 0; i < 500; i++) {
+                    dict.put("added:" + calls + ":" + i, "value");
+                }
+            } else {
+                for (int i = 0; i < 500; i++) {
+                    dict.remove("added:" + (calls - 10) + ":" + i);
+                }
+            }
+            calls++;
+        } while (cursor != 0);
+
+        // Assert
+        assertTrue(calls > 10, "The walk did not take several calls");
+        for (int i = 0; i < 1_000; i++) {
+            assertTrue(seen.contains("stable:" + i), "stable:" + i + " was missed");
+        }
+    }
+
+    @Test
+    @DisplayName("Scanning an empty table should finish at once and a copy should not change with the original")
+    public void testEmptyScanAndCopy() {
+        // Arrange
+        Dict<Double> empty = new Dict<>(0);
+        Dict<Double> dict = new Dict<>(0);
+        dict.put("a", 1.0);
+        dict.put("b", 2.0);
+
+        // Act
+        long cursor = empty.scan(0, 10, (key, value) -> fail("Visited " + key));
+        Dict<Double> copy = dict.copy();
+        dict.remove("a");
+        dict.put("b", 3.0);
+
+        // Assert
+        assertEquals(0, cursor);
+        assertEquals(2, copy.size());
+        assertEquals(1.0, copy.get("a"));
+        assertEquals(2.0, copy.get("b"));
+    }
+}
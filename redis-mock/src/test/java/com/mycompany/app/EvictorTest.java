@@ -0,0 +1,91 @@
+package com.mycompany.app;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for the sampled eviction policies of the Evictor.
+ */
+public class EvictorTest {
+
+    @Test
+    @DisplayName("allkeys-lfu should pick rarely used keys before often used ones")
+    public void testLfuPrefersColdKeys() {
+        // Arrange
+        ConcurrentHashMap<String, Object> dataStore = new ConcurrentHashMap<>();
+        Evictor evictor = new Evictor(new HeapKeyspace(dataStore), new Expires(), EvictionPolicy.ALLKEYS_LFU, 5);
+        for (int i = 0; i < 100; i++) {
+            dataStore.put("key" + i, "value");
+            evictor.created("key" + i);
+        }
+        for (int round = 0; round < 1000; round++) {
+            for (int i = 0; i < 10; i++) {
+                evictor.touch("key" + i);
+            }
+        }
+
+        // Act
+        Set<String> victims = new HashSet<>();
+        for (int i = 0; i < 50; i++) {
+            String victim = evictor.nextVictim();
+            victims.add(victim);
+            dataStore.remove(victim);
+        }
+
+        // Assert
+        for (int i = 0; i < 10; i++) {
+            assertFalse(victims.contains("key" + i), "Hot key" + i + " was evicted");
+        }
+    }
+
+    @Test
+    @DisplayName("volatile-ttl should pick the key closest to expiring and never keys without a TTL")
+    public void testVolatileTtlOrder() {
+        // Arrange
+        ConcurrentHashMap<String, Object> dataStore = new ConcurrentHashMap<>();
+        Expires expires = new Expires();
+        Evictor evictor = new Evictor(new HeapKeyspace(dataStore), expires, EvictionPolicy.VOLATILE_TTL, 10);
+        long now = System.currentTimeMillis();
+        dataStore.put("persistent", "value");
+        for (int i = 0; i < 5; i++) {
+            dataStore.put("key" + i, "value");
+            expires.set("key" + i, now + 60_000 * (i + 1));
+        }
+
+        // Act
+        String first = evictor.nextVictim();
+        dataStore.remove(first);
+        expires.remove(first);
+        String second = evictor.nextVictim();
+
+        // Assert
+        assertEquals("key0", first);
+        assertEquals("key1", second);
+        assertFalse(evictor.isEvictable("persistent"));
+        assertTrue(evictor.isEvictable("key2"));
+    }
+
+    @Test
+    @DisplayName("noeviction should never offer a key")
+    public void testNoEviction() {
+        // Arrange
+        ConcurrentHashMap<String, Object> dataStore = new ConcurrentHashMap<>();
+        dataStore.put("key", "value");
+        Evictor evictor = new Evictor(new HeapKeyspace(dataStore), new Expires(), EvictionPolicy.NOEVICTION, 5);
+
+        // Act
+        String victim = evictor.nextVictim();
+
+        // Assert
+        assertNull(victim);
+    }
+}
@@ -0,0 +1,82 @@
+package com.mycompany.app;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for Expires, driving the timing wheel with explicit times.
+ */
+public class ExpiresTest {
+
+    @Test
+    @DisplayName("An expiry cycle should hand over due keys and keep keys that are not yet due")
+    public void testCycleExpiresDueKeys() {
+        // Arrange
+        Expires expires = new Expires();
+        long now = 1_000_000;
+        expires.set("due", now - 500);
+        expires.set("later", now + 60_000);
+        List<String> expired = new ArrayList<>();
+
+        // Act
+        long count = expires.expireCycle(now, Long.MAX_VALUE, (key, deadline) -> expires.remove(key) && expired.add(key));
+        long laterCount = expires.expireCycle(now + 61_000, Long.MAX_VALUE, (key, deadline) -> expires.remove(key) && expired.add(key));
+
+        // Assert
+        assertEquals(1, count);
+        assertEquals(1, laterCount);
+        assertEquals(List.of("due", "later"), expired);
+        assertEquals(0, expires.size());
+    }
+
+    @Test
+    @DisplayName("A timer should be dropped once its key has a different deadline or none")
+    public void testStaleTimersAreDropped() {
+        // Arrange
+        Expires expires = new Expires();
+        long now = 1_000_000;
+        expires.set("moved", now - 500);
+        expires.set("moved", now + 60_000);
+        expires.set("persisted", now - 500);
+        expires.remove("persisted");
+        List<String> expired = new ArrayList<>();
+
+        // Act
+        long count = expires.expireCycle(now, Long.MAX_VALUE, (key, deadline) -> expired.add(key));
+
+        // Assert
+        assertEquals(0, count);
+        assertTrue(expired.isEmpty());
+        assertEquals(now + 60_000, expires.get("moved"));
+    }
+
+    @Test
+    @DisplayName("An expiry cycle out of time budget should leave the rest for the next cycle")
+    public void testCycleRespectsBudget() {
+        // Arrange
+        Expires expires = new Expires();
+        long now = 1_000_000;
+        for (int i = 0; i < 1000; i++) {
+            expires.set("key" + i, now - 1000);
+        }
+        AtomicInteger handled = new AtomicInteger();
+        Expires.ExpiredKeyHandler handler = (key, deadline) -> handled.incrementAndGet() > 0 && expires.remove(key);
+
+        // Act
+        long first = expires.expireCycle(now, 0, handler);
+        while (expires.size() > 0) {
+            expires.expireCycle(now, 0, handler);
+        }
+
+        // Assert
+        assertTrue(first < 1000, "First cycle expired " + first);
+        assertEquals(1000, handled.get());
+    }
+}
@@ -0,0 +1,58 @@
+package com.mycompany.app;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for glob-style pattern matching.
+ */
+public class GlobPatternTest {
+
+    @Test
+    @DisplayName("Stars and question marks should match runs of characters and single characters")
+    public void testWildcards() {
+        // Act and Assert
+        assertTrue(GlobPattern.matches("*", ""));
+        assertTrue(GlobPattern.matches("user:*", "user:42"));
+        assertTrue(GlobPattern.matches("*:42", "user:42"));
+        assertTrue(GlobPattern.matches("u*r:*2", "user:42"));
+        assertTrue(GlobPattern.matches("h?llo", "hello"));
+        assertTrue(GlobPattern.matches("a**b", "ab"));
+        assertFalse(GlobPattern.matches("user:*", "users:42"));
+        assertFalse(GlobPattern.matches("h?llo", "hllo"));
+        assertFalse(GlobPattern.matches("abc", "abcd"));
+        assertFalse(GlobPattern.matches("", "a"));
+    }
+
+    @Test
+    @DisplayName("Sets, ranges, negation and escapes should match like Redis")
+    public void testSetsAndEscapes() {
+        // Act and Assert
+        assertTrue(GlobPattern.matches("h[ae]llo", "hallo"));
+        assertFalse(GlobPattern.matches("h[ae]llo", "hillo"));
+        assertTrue(GlobPattern.matches("h[^e]llo", "hallo"));
+        assertFalse(GlobPattern.matches("h[^e]llo", "hello"));
+        assertTrue(GlobPattern.matches("key:[0-9]", "key:7"));
+        assertTrue(GlobPattern.matches("key:[9-0]", "key:7"));
+        assertFalse(GlobPattern.matches("key:[0-9]", "key:x"));
+        assertTrue(GlobPattern.matches("what\\?", "what?"));
+        assertFalse(GlobPattern.matches("what\\?", "whats"));
+        assertTrue(GlobPattern.matches("star\\*", "star*"));
+        assertTrue(GlobPattern.matches("[\\]]", "]"));
+    }
+
+    @Test
+    @DisplayName("A pattern of many stars should be matched without blowing up")
+    public void testManyStars() {
+        // Arrange
+        String text = "a".repeat(10_000);
+
+        // Act
+        boolean matched = GlobPattern.matches("*a*a*a*a*a*a*a*b", text);
+
+        // Assert
+        assertFalse(matched);
+    }
+}
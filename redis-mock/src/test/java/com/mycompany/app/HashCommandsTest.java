@@ -0,0 +1,125 @@
+package com.mycompany.app;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for the hash commands, run through the CommandExecutor with the AOF mocked.
+ */
+@ExtendWith(MockitoExtension.class)
+public class HashCommandsTest {
+
+    private ConcurrentHashMap<String, Object> dataStore;
+
+    @Mock
+    private AofPersistence mockAofPersistence;
+
+    private CommandExecutor commandExecutor;
+
+    @BeforeEach
+    void setUp() {
+        dataStore = new ConcurrentHashMap<>();
+        commandExecutor = new CommandExecutor(dataStore, mockAofPersistence);
+    }
+
+    @Test
+    @DisplayName("HSET should count new fields and HGET, HMGET, HLEN and HGETALL should read them back")
+    public void testSetAndRead() {
+        // Act
+        Object added = commandExecutor.execute(new Object[]{"HSET", "user", "name", "ada", "city", "london"});
+        Object updated = commandExecutor.execute(new Object[]{"HSET", "user", "name", "grace"});
+
+        // Assert
+        assertEquals(2L, added);
+        assertEquals(0L, updated);
+        assertEquals("grace", commandExecutor.execute(new Object[]{"HGET", "user", "name"}));
+        assertNull(commandExecutor.execute(new Object[]{"HGET", "user", "missing"}));
+        assertArrayEquals(new Object[]{"london", null}, (Object[]) commandExecutor.execute(new Object[]{"HMGET", "user", "city", "missing"}));
+        assertEquals(2L, commandExecutor.execute(new Object[]{"HLEN", "user"}));
+        assertArrayEquals(new Object[]{"name", "grace", "city", "london"}, (Object[]) commandExecutor.execute(new Object[]{"HGETALL", "user"}));
+        assertEquals("listpack", commandExecutor.execute(new Object[]{"OBJECT", "ENCODING", "user"}));
+        verify(mockAofPersistence, times(2)).logCommand(any());
+    }
+
+    @Test
+    @DisplayName("HDEL should remove fields and the key with its last field")
+    public void testDelete() {
+        // Arrange
+        commandExecutor.execute(new Object[]{"HSET", "user", "name", "ada", "city", "london"});
+
+        // Act
+        Object first = commandExecutor.execute(new Object[]{"HDEL", "user", "name", "missing"});
+        Object none = commandExecutor.execute(new Object[]{"HDEL", "user", "missing"});
+        Object last = commandExecutor.execute(new Object[]{"HDEL", "user", "city"});
+
+        // Assert
+        assertEquals(1L, first);
+        assertEquals(0L, none);
+        assertEquals(1L, last);
+        assertFalse(dataStore.containsKey("user"));
+        assertEquals(0L, commandExecutor.execute(new Object[]{"HLEN", "user"}));
+        assertEquals(0, commandExecutor.getUsedMemory());
+        verify(mockAofPersistence, times(3)).logCommand(any());
+    }
+
+    @Test
+    @DisplayName("HINCRBY should add to integer fields and refuse anything else")
+    public void testIncrement() {
+        // Arrange
+        commandExecutor.execute(new Object[]{"HSET", "counters", "text", "abc", "max", String.valueOf(Long.MAX_VALUE)});
+
+        // Act
+        Object created = commandExecutor.execute(new Object[]{"HINCRBY", "counters", "visits", "5"});
+        Object incremented = commandExecutor.execute(new Object[]{"HINCRBY", "counters", "visits", "-7"});
+        Object notInteger = commandExecutor.execute(new Object[]{"HINCRBY", "counters", "text", "1"});
+        Object overflow = commandExecutor.execute(new Object[]{"HINCRBY", "counters", "max", "1"});
+
+        // Assert
+        assertEquals(5L, created);
+        assertEquals(-2L, incremented);
+        assertEquals("ERR hash value is not an integer", ((Exception) notInteger).getMessage());
+        assertEquals("ERR increment or decrement would overflow", ((Exception) overflow).getMessage());
+    }
+
+    @Test
+    @DisplayName("Hash commands on a string and GET on a hash should fail with WRONGTYPE")
+    public void testWrongType() {
+        // Arrange
+        commandExecutor.execute(new Object[]{"SET", "string", "value"});
+        commandExecutor.execute(new Object[]{"HSET", "hash", "f", "v"});
+
+        // Act
+        Object hset = commandExecutor.execute(new Object[]{"HSET", "string", "f", "v"});
+        Object get = commandExecutor.execute(new Object[]{"GET", "hash"});
+        Object odd = commandExecutor.execute(new Object[]{"HSET", "hash", "f", "v", "g"});
+
+        // Assert
+        assertEquals(CommandExecutor.WRONGTYPE, ((Exception) hset).getMessage());
+        assertEquals(CommandExecutor.WRONGTYPE, ((Exception) get).getMessage());
+        assertEquals("ERR wrong number of arguments for 'HSET' command", ((Exception) odd).getMessage());
+    }
+
+    @Test
+    @DisplayName("A hash growing past the limits should convert and be counted in INFO")
+    public void testConversionIsReported() {
+        // Arrange
+        commandExecutor.getEncodingLimits().setHashMaxListpackEntries(2);
+
+        // Act
+        commandExecutor.execute(new Object[]{"HSET", "big", "a", "1", "b", "2", "c", "3"});
+
+        // Assert
+        assertEquals("hashtable", commandExecutor.execute(new Object[]{"OBJECT", "ENCODING", "big"}));
+        assertTrue(((String) commandExecutor.execute(new Object[]{"INFO"})).contains("hash_encoding_conversions:1"));
+        assertEquals(MemoryEstimator.entrySize("big", dataStore.get("big")), commandExecutor.getUsedMemory());
+    }
+}
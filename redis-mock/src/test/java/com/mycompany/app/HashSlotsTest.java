@@ -0,0 +1,47 @@
+package com.mycompany.app;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+/**
+ * Unit tests for the mapping of keys to cluster hash slots.
+ */
+public class HashSlotsTest {
+
+    @Test
+    @DisplayName("Should compute CRC-16/XMODEM, the checksum Redis Cluster uses")
+    public void testCrc16() {
+        byte[] check = "123456789".getBytes(StandardCharsets.US_ASCII);
+
+        assertEquals(0x31C3, HashSlots.crc16(check, 0, check.length));
+    }
+
+    @Test
+    @DisplayName("Should put keys in the same slots as Redis Cluster")
+    public void testSlotOf() {
+        assertEquals(12182, HashSlots.slotOf("foo"));
+        assertEquals(5061, HashSlots.slotOf("bar"));
+        assertEquals(0, HashSlots.slotOf(""));
+    }
+
+    @Test
+    @DisplayName("Should hash only the first non-empty hash tag of a key")
+    public void testHashTags() {
+        // Arrange
+        int userSlot = HashSlots.slotOf("user1000");
+
+        // Act & Assert
+        assertEquals(userSlot, HashSlots.slotOf("{user1000}.following"));
+        assertEquals(userSlot, HashSlots.slotOf("{user1000}.followers"));
+        assertEquals(HashSlots.slotOf("bar"), HashSlots.slotOf("foo{bar}{zap}"));
+        assertEquals(HashSlots.slotOf("{bar"), HashSlots.slotOf("foo{{bar}}zap"));
+        // an empty tag does not count, so the whole key is hashed
+        assertNotEquals(HashSlots.slotOf(""), HashSlots.slotOf("foo{}{bar}"));
+        assertEquals(HashSlots.slotOf("foo{}{bar}"), HashSlots.crc16("foo{}{bar}".getBytes(StandardCharsets.UTF_8), 0, 10) & 16383);
+    }
+}
@@ -0,0 +1,34 @@
+package com.mycompany.app;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the integer encoding of string values.
+ */
+public class IntegerValueTest {
+
+    @Test
+    @DisplayName("Only canonical integers in range should be stored as numbers")
+    public void testEncodeIsCanonical() {
+        assertEquals(IntegerValue.of(123), IntegerValue.encode("123"));
+        assertEquals(IntegerValue.of(-5), IntegerValue.encode("-5"));
+        assertEquals(IntegerValue.of(Long.MIN_VALUE), IntegerValue.encode("-9223372036854775808"));
+        assertEquals(IntegerValue.of(Long.MAX_VALUE), IntegerValue.encode("9223372036854775807"));
+        for (String text : new String[]{"007", "+1", "-0", " 1", "1 ", "", "-", "1.0", "9223372036854775808", "abc"}) {
+            assertEquals(text, IntegerValue.encode(text), "'" + text + "' must stay a string");
+        }
+    }
+
+    @Test
+    @DisplayName("Small values and their replies should be shared")
+    public void testSharedValues() {
+        assertSame(IntegerValue.of(9999), IntegerValue.of(9999));
+        assertNotSame(IntegerValue.of(10000), IntegerValue.of(10000));
+        assertSame(IntegerValue.reply(500), IntegerValue.reply(500));
+        assertEquals(0, MemoryEstimator.sizeOf(IntegerValue.of(1)));
+        assertEquals("10000", IntegerValue.of(10000).toString());
+    }
+}
@@ -0,0 +1,213 @@
+package com.mycompany.app;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for the list commands and blocking pops, run through the CommandExecutor with the AOF mocked.
+ */
+@ExtendWith(MockitoExtension.class)
+public class ListCommandsTest {
+
+    private ConcurrentHashMap<String, Object> dataStore;
+
+    @Mock
+    private AofPersistence mockAofPersistence;
+
+    private CommandExecutor commandExecutor;
+
+    @BeforeEach
+    void setUp() {
+        dataStore = new ConcurrentHashMap<>();
+        commandExecutor = new CommandExecutor(dataStore, mockAofPersistence);
+    }
+
+    /**
+     * Runs a blocking pop that is expected to block
+     * @param command The BLPOP or BRPOP command
+     * @return The reply it is blocked on
+     */
+    private DeferredReply block(Object... command) {
+        Object reply = commandExecutor.execute(command);
+        DeferredReply deferred = assertInstanceOf(DeferredReply.class, reply);
+        assertFalse(deferred.isDone());
+        return deferred;
+    }
+
+    @Test
+    @DisplayName("LPUSH, RPUSH, LPOP and RPOP should work both ends and LRANGE and LLEN should read the list")
+    public void testPushPopAndRead() {
+        // Act
+        Object pushed = commandExecutor.execute(new Object[]{"RPUSH", "list", "b", "c"});
+        Object prepended = commandExecutor.execute(new Object[]{"LPUSH", "list", "a", "z"});
+
+        // Assert
+        assertEquals(2L, pushed);
+        assertEquals(4L, prepended);
+        assertArrayEquals(new Object[]{"z", "a", "b", "c"}, (Object[]) commandExecutor.execute(new Object[]{"LRANGE", "list", "0", "-1"}));
+        assertArrayEquals(new Object[]{"b", "c"}, (Object[]) commandExecutor.execute(new Object[]{"LRANGE", "list", "-2", "100"}));
+        assertArrayEquals(new Object[0], (Object[]) commandExecutor.execute(new Object[]{"LRANGE", "list", "3", "1"}));
+        assertEquals(4L, commandExecutor.execute(new Object[]{"LLEN", "list"}));
+        assertEquals("z", commandExecutor.execute(new Object[]{"LPOP", "list"}));
+        assertArrayEquals(new Object[]{"c", "b"}, (Object[]) commandExecutor.execute(new Object[]{"RPOP", "list", "2"}));
+        assertEquals("listpack", commandExecutor.execute(new Object[]{"OBJECT", "ENCODING", "list"}));
+        assertEquals("a", commandExecutor.execute(new Object[]{"RPOP", "list"}));
+        assertFalse(dataStore.containsKey("list"));
+        assertNull(commandExecutor.execute(new Object[]{"LPOP", "list"}));
+        assertEquals(0L, commandExecutor.execute(new Object[]{"LLEN", "list"}));
+        assertEquals(0, commandExecutor.getUsedMemory());
+        verify(mockAofPersistence, times(5)).logCommand(any());
+    }
+
+    @Test
+    @DisplayName("LTRIM should keep the given range and remove the list if nothing is left")
+    public void testTrim() {
+        // Arrange
+        for (int i = 0; i < 500; i++) {
+            commandExecutor.execute(new Object[]{"RPUSH", "list", "e" + i});
+        }
+        commandExecutor.execute(new Object[]{"RPUSH", "gone", "x"});
+
+        // Act
+        Object trimmed = commandExecutor.execute(new Object[]{"LTRIM", "list", "100", "-101"});
+        commandExecutor.execute(new Object[]{"LTRIM", "gone", "1", "-1"});
+
+        // Assert
+        assertEquals("OK", trimmed);
+        assertEquals(300L, commandExecutor.execute(new Object[]{"LLEN", "list"}));
+        assertArrayEquals(new Object[]{"e100", "e101"}, (Object[]) commandExecutor.execute(new Object[]{"LRANGE", "list", "0", "1"}));
+        assertArrayEquals(new Object[]{"e399"}, (Object[]) commandExecutor.execute(new Object[]{"LRANGE", "list", "-1", "-1"}));
+        assertEquals("quicklist", commandExecutor.execute(new Object[]{"OBJECT", "ENCODING", "list"}));
+        assertFalse(dataStore.containsKey("gone"));
+        assertEquals("OK", commandExecutor.execute(new Object[]{"LTRIM", "missing", "0", "1"}));
+    }
+
+    @Test
+    @DisplayName("BLPOP should pop at once from the first non-empty list and log an LPOP")
+    public void testBlockingPopWithData() {
+        // Arrange
+        commandExecutor.execute(new Object[]{"RPUSH", "second", "a", "b"});
+
+        // Act
+        Object reply = commandExecutor.execute(new Object[]{"BRPOP", "first", "second", "0"});
+
+        // Assert
+        assertArrayEquals(new Object[]{"second", "b"}, (Object[]) reply);
+        verify(mockAofPersistence).logCommand(new Object[]{"RPOP", "second"});
+    }
+
+    @Test
+    @DisplayName("A push should wake the longest blocked client and log the pop after the push")
+    public void testPushWakesBlockedClient() {
+        // Arrange
+        DeferredReply first = block("BLPOP", "jobs", "0");
+        DeferredReply second = block("BLPOP", "other", "jobs", "0");
+
+        // Act
+        Object length = commandExecutor.execute(new Object[]{"RPUSH", "jobs", "one"});
+
+        // Assert
+        assertEquals(1L, length);
+        assertArrayEquals(new Object[]{"jobs", "one"}, (Object[]) first.getNow());
+        assertFalse(second.isDone());
+        assertFalse(dataStore.containsKey("jobs"));
+        InOrder inOrder = inOrder(mockAofPersistence);
+        inOrder.verify(mockAofPersistence).logCommand(new Object[]{"RPUSH", "jobs", "one"});
+        inOrder.verify(mockAofPersistence).logCommand(new Object[]{"LPOP", "jobs"});
+        assertTrue(((String) commandExecutor.execute(new Object[]{"INFO"})).contains("blocked_clients:1"));
+
+        commandExecutor.execute(new Object[]{"LPUSH", "other", "x", "y"});
+        assertArrayEquals(new Object[]{"other", "y"}, (Object[]) second.getNow());
+        assertEquals(1L, commandExecutor.execute(new Object[]{"LLEN", "other"}));
+        commandExecutor.execute(new Object[]{"RPUSH", "jobs", "two"});
+        assertEquals(1L, commandExecutor.execute(new Object[]{"LLEN", "jobs"}));
+        assertTrue(((String) commandExecutor.execute(new Object[]{"INFO"})).contains("blocked_clients:0"));
+    }
+
+    @Test
+    @DisplayName("A blocked client should get null once its timeout passes and take nothing pushed after")
+    public void testTimeout() throws InterruptedException {
+        // Arrange
+        DeferredReply reply = block("BRPOP", "jobs", "0.05");
+
+        // Act
+        Object result = reply.await();
+        commandExecutor.execute(new Object[]{"RPUSH", "jobs", "late"});
+
+        // Assert
+        assertNull(result);
+        assertEquals(1L, commandExecutor.execute(new Object[]{"LLEN", "jobs"}));
+    }
+
+    @Test
+    @DisplayName("A cancelled blocked client should not take anything pushed after")
+    public void testCancel() {
+        // Arrange
+        DeferredReply reply = block("BLPOP", "jobs", "0");
+
+        // Act
+        reply.cancel();
+        commandExecutor.execute(new Object[]{"RPUSH", "jobs", "kept"});
+
+        // Assert
+        assertEquals(1L, commandExecutor.execute(new Object[]{"LLEN", "jobs"}));
+        verify(mockAofPersistence, never()).logCommand(new Object[]{"LPOP", "jobs"});
+    }
+
+    @Test
+    @DisplayName("Thousands of blocked clients should be registrations only, with no thread each")
+    public void testManyBlockedClients() {
+        // Arrange
+        int threadsBefore = Thread.activeCount();
+        DeferredReply[] replies = new DeferredReply[5_000];
+
+        // Act
+        for (int i = 0; i < replies.length; i++) {
+            replies[i] = block("BLPOP", "queue", "0");
+        }
+        int threadsBlocked = Thread.activeCount();
+        for (int i = 0; i < replies.length; i++) {
+            commandExecutor.execute(new Object[]{"RPUSH", "queue", "job" + i});
+        }
+
+        // Assert
+        assertTrue(threadsBlocked - threadsBefore < 5, "Blocking added threads");
+        for (int i = 0; i < replies.length; i++) {
+            assertArrayEquals(new Object[]{"queue", "job" + i}, (Object[]) replies[i].getNow());
+        }
+        assertFalse(dataStore.containsKey("queue"));
+    }
+
+    @Test
+    @DisplayName("List commands should refuse other types and bad arguments")
+    public void testErrors() {
+        // Arrange
+        commandExecutor.execute(new Object[]{"SET", "string", "value"});
+        commandExecutor.execute(new Object[]{"RPUSH", "list", "a"});
+
+        // Act and Assert
+        for (Object[] command : new Object[][]{
+                {"LPUSH", "string", "a"}, {"RPUSH", "string", "a"}, {"LPOP", "string"}, {"RPOP", "string"},
+                {"LLEN", "string"}, {"LRANGE", "string", "0", "-1"}, {"LTRIM", "string", "0", "1"},
+                {"BLPOP", "string", "0"}}) {
+            Object reply = commandExecutor.execute(command);
+            assertInstanceOf(Exception.class, reply);
+            assertEquals(CommandExecutor.WRONGTYPE, ((Exception) reply).getMessage());
+        }
+        assertInstanceOf(Exception.class, commandExecutor.execute(new Object[]{"GET", "list"}));
+        assertInstanceOf(Exception.class, commandExecutor.execute(new Object[]{"LPOP", "list", "-1"}));
+        assertInstanceOf(Exception.class, commandExecutor.execute(new Object[]{"LRANGE", "list", "a", "1"}));
+        assertInstanceOf(Exception.class, commandExecutor.execute(new Object[]{"BLPOP", "list", "-1"}));
+        assertInstanceOf(Exception.class, commandExecutor.execute(new Object[]{"BLPOP", "list", "soon"}));
+    }
+}
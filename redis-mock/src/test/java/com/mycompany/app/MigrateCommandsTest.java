@@ -0,0 +1,115 @@
+package com.mycompany.app;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Unit tests for DUMP and RESTORE, run through the CommandExecutor over a heap keyspace.
+ * MIGRATE, which needs a second server, is covered by ClusterTest.
+ */
+@ExtendWith(MockitoExtension.class)
+public class MigrateCommandsTest {
+
+    @Mock
+    private AofPersistence mockAofPersistence;
+
+    @Mock
+    private RdbPersistence mockRdbPersistence;
+
+    private CommandExecutor commandExecutor;
+
+    @BeforeEach
+    void setUp() {
+        commandExecutor = new CommandExecutor(new HeapKeyspace(), mockAofPersistence, mockRdbPersistence);
+    }
+
+    @Test
+    @DisplayName("RESTORE should recreate a dumped value of each type under a new key")
+    public void testDumpAndRestore() {
+        // Arrange
+        commandExecutor.execute(new Object[]{"SET", "string", "héllo wörld"});
+        commandExecutor.execute(new Object[]{"HSET", "hash", "field", "value"});
+        commandExecutor.execute(new Object[]{"RPUSH", "list", "a", "b"});
+        commandExecutor.execute(new Object[]{"ZADD", "zset", "1.5", "member"});
+
+        // Act
+        for (String key : new String[]{"string", "hash", "list", "zset"}) {
+            Object payload = commandExecutor.execute(new Object[]{"DUMP", key});
+            assertEquals("OK", commandExecutor.execute(new Object[]{"RESTORE", key + "-copy", "0", payload}));
+        }
+
+        // Assert
+        assertEquals("héllo wörld", commandExecutor.execute(new Object[]{"GET", "string-copy"}));
+        assertEquals("value", commandExecutor.execute(new Object[]{"HGET", "hash-copy", "field"}));
+        assertArrayEquals(new Object[]{"a", "b"}, (Object[]) commandExecutor.execute(new Object[]{"LRANGE", "list-copy", "0", "-1"}));
+        assertEquals("1.5", commandExecutor.execute(new Object[]{"ZSCORE", "zset-copy", "member"}));
+        assertEquals(-1L, commandExecutor.execute(new Object[]{"TTL", "hash-copy"}));
+    }
+
+    @Test
+    @DisplayName("DUMP should return nil for a missing key")
+    public void testDumpMissingKey() {
+        assertNull(commandExecutor.execute(new Object[]{"DUMP", "missing"}));
+    }
+
+    @Test
+    @DisplayName("RESTORE should refuse an existing key unless REPLACE is given")
+    public void testRestoreExistingKey() {
+        // Arrange
+        commandExecutor.execute(new Object[]{"SET", "source", "new"});
+        commandExecutor.execute(new Object[]{"SET", "target", "old"});
+        Object payload = commandExecutor.execute(new Object[]{"DUMP", "source"});
+
+        // Act
+        Object refused = commandExecutor.execute(new Object[]{"RESTORE", "target", "0", payload});
+        Object replaced = commandExecutor.execute(new Object[]{"RESTORE", "target", "0", payload, "REPLACE"});
+
+        // Assert
+        assertTrue(((Exception) refused).getMessage().startsWith("BUSYKEY"));
+        assertEquals("OK", replaced);
+        assertEquals("new", commandExecutor.execute(new Object[]{"GET", "target"}));
+    }
+
+    @Test
+    @DisplayName("RESTORE with a TTL should set the expiry and be logged with the absolute expiry time")
+    public void testRestoreWithTtl() {
+        // Arrange
+        commandExecutor.execute(new Object[]{"SET", "source", "value"});
+        Object payload = commandExecutor.execute(new Object[]{"DUMP", "source"});
+        long before = System.currentTimeMillis();
+
+        // Act
+        commandExecutor.execute(new Object[]{"RESTORE", "target", "100000", payload});
+
+        // Assert
+        long ttl = (Long) commandExecutor.execute(new Object[]{"PTTL", "target"});
+        assertTrue(ttl > 90000 && ttl <= 100000);
+        verify(mockAofPersistence).logCommand(argThat(logged -> logged[0].equals("RESTORE")
+                && Long.parseLong((String) logged[2]) >= before + 100000
+                && logged[logged.length - 1].equals("ABSTTL")));
+    }
+
+    @Test
+    @DisplayName("RESTORE should reject a corrupted payload")
+    public void testRestoreCorruptPayload() {
+        // Arrange
+        commandExecutor.execute(new Object[]{"SET", "source", "value"});
+        String payload = (String) commandExecutor.execute(new Object[]{"DUMP", "source"});
+        String corrupted = payload.substring(0, 3) + (char) (payload.charAt(3) ^ 1) + payload.substring(4);
+
+        // Act
+        Object reply = commandExecutor.execute(new Object[]{"RESTORE", "target", "0", corrupted});
+
+        // Assert
+        assertEquals("ERR DUMP payload version or checksum are wrong", ((Exception) reply).getMessage());
+        assertNull(commandExecutor.execute(new Object[]{"GET", "target"}));
+    }
+}
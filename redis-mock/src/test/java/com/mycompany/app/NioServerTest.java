@@ -0,0 +1,286 @@
+package com.mycompany.app;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Integration tests for the NIO reactor server.
+ * Each test starts a server with two reactor threads on a free port and talks to it over loopback sockets.
+ */
+public class NioServerTest {
+
+    @TempDir
+    Path tempDir;
+
+    private NioServer nioServer;
+    private Thread acceptThread;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        AofPersistence aofPersistence = new AofPersistence(tempDir.resolve("nio.aof").toString());
+        CommandExecutor commandExecutor = new CommandExecutor(new ConcurrentHashMap<>(), aofPersistence);
+        nioServer = new NioServer(0, 2, commandExecutor);
+        acceptThread = new Thread(nioServer::start, "nio-server-test");
+        acceptThread.start();
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        nioServer.stop();
+        acceptThread.join(5000);
+    }
+
+    /**
+     * Reads exactly the given number of bytes from the socket
+     * @param in The socket input stream
+     * @param length The number of bytes expected
+     * @return The bytes decoded as UTF-8
+     */
+    private String readExactly(InputStream in, int length) throws IOException {
+        byte[] bytes = in.readNBytes(length);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Test
+    @DisplayName("Should answer PING over a non-blocking connection")
+    public void testPing() throws IOException {
+        try (Socket socket = new Socket("localhost", nioServer.getLocalPort())) {
+            socket.setSoTimeout(2000);
+            socket.getOutputStream().write("*1\r\n$4\r\nPING\r\n".getBytes(StandardCharsets.UTF_8));
+
+            assertEquals("+PONG\r\n", readExactly(socket.getInputStream(), 7));
+        }
+    }
+
+    @Test
+    @DisplayName("An empty multibulk should be skipped without breaking the connection")
+    public void testEmptyMultibulk() throws IOException {
+        try (Socket socket = new Socket("localhost", nioServer.getLocalPort())) {
+            socket.setSoTimeout(2000);
+            socket.getOutputStream().write("*0\r\n*1\r\n$4\r\nPING\r\n".getBytes(StandardCharsets.UTF_8));
+
+            assertEquals("+PONG\r\n", readExactly(socket.getInputStream(), 7));
+        }
+    }
+
+    @Test
+    @DisplayName("A command that throws should close only its own connection, not the reactor")
+    public void testFailingCommandKeepsReactor() throws Exception {
+        CommandDispatcher failing = command -> {
+            if (command[0].equals("FAIL")) {
+                throw new IllegalStateException("bug in a command");
+            }
+            return "PONG";
+        };
+        NioServer single = new NioServer(0, 1, failing);
+        Thread singleThread = new Thread(single::start, "nio-server-single");
+        singleThread.start();
+        try (Socket bad = new Socket("localhost", single.getLocalPort());
+             Socket good = new Socket("localhost", single.getLocalPort())) {
+            bad.setSoTimeout(2000);
+            good.setSoTimeout(2000);
+            bad.getOutputStream().write("*1\r\n$4\r\nFAIL\r\n".getBytes(StandardCharsets.UTF_8));
+
+            assertEquals(-1, bad.getInputStream().read());
+            good.getOutputStream().write("*1\r\n$4\r\nPING\r\n".getBytes(StandardCharsets.UTF_8));
+            assertEquals("+PONG\r\n", readExactly(good.getInputStream(), 7));
+        } finally {
+            single.stop();
+            singleThread.join(5000);
+        }
+    }
+
+    @Test
+    @DisplayName("Should answer pipelined commands in order on one connection")
+    public void testPipelinedCommands() throws IOException {
+        try (Socket socket = new Socket("localhost", nioServer.getLocalPort())) {
+            socket.setSoTimeout(2000);
+            String pipeline = "*3\r\n$3\r\nSET\r\n$3\r\nkey\r\n$5\r\nhello\r\n"
+                    + "*2\r\n$3\r\nGET\r\n$3\r\nkey\r\n"
+                    + "*1\r\n$4\r\nPING\r\n";
+            socket.getOutputStream().write(pipeline.getBytes(StandardCharsets.UTF_8));
+
+            String expected = "+OK\r\n$5\r\nhello\r\n+PONG\r\n";
+            assertEquals(expected, readExactly(socket.getInputStream(), expected.length()));
+        }
+    }
+
+    @Test
+    @DisplayName("Should wait for the rest of a command split across TCP writes")
+    public void testCommandSplitAcrossWrites() throws Exception {
+        try (Socket socket = new Socket("localhost", nioServer.getLocalPort())) {
+            socket.setSoTimeout(2000);
+            socket.setTcpNoDelay(true);
+            OutputStream out = socket.getOutputStream();
+            out.write("*2\r\n$4\r\nPI".getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            Thread.sleep(50);
+            out.write("NG\r\n$2\r\nhi\r\n".getBytes(StandardCharsets.UTF_8));
+            out.flush();
+
+            assertEquals("$2\r\nhi\r\n", readExactly(socket.getInputStream(), 8));
+        }
+    }
+
+    @Test
+    @DisplayName("Should serve more connections than there are reactor threads")
+    public void testManyConnections() throws IOException {
+        Socket[] sockets = new Socket[8];
+        try {
+            for (int i = 0; i < sockets.length; i++) {
+                sockets[i] = new Socket("localhost", nioServer.getLocalPort());
+                sockets[i].setSoTimeout(2000);
+            }
+            for (Socket socket : sockets) {
+                socket.getOutputStream().write("*1\r\n$4\r\nPING\r\n".getBytes(StandardCharsets.UTF_8));
+            }
+            for (Socket socket : sockets) {
+                assertEquals("+PONG\r\n", readExactly(socket.getInputStream(), 7));
+            }
+        } finally {
+            for (Socket socket : sockets) {
+                if (socket != null) {
+                    socket.close();
+                }
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("BLPOP should hold back the connection's later commands until a push from another connection")
+    public void testBlockingPop() throws Exception {
+        try (Socket consumer = new Socket("localhost", nioServer.getLocalPort());
+             Socket producer = new Socket("localhost", nioServer.getLocalPort())) {
+            consumer.setSoTimeout(2000);
+            producer.setSoTimeout(2000);
+            String pipeline = "*3\r\n$5\r\nBLPOP\r\n$4\r\njobs\r\n$1\r\n0\r\n"
+                    + "*1\r\n$4\r\nPING\r\n";
+            consumer.getOutputStream().write(pipeline.getBytes(StandardCharsets.UTF_8));
+            Thread.sleep(100);
+            assertEquals(0, consumer.getInputStream().available());
+
+            producer.getOutputStream().write("*3\r\n$5\r\nRPUSH\r\n$4\r\njobs\r\n$3\r\none\r\n".getBytes(StandardCharsets.UTF_8));
+
+            assertEquals(":1\r\n", readExactly(producer.getInputStream(), 4));
+            String expected = "*2\r\n$4\r\njobs\r\n$3\r\none\r\n+PONG\r\n";
+            assertEquals(expected, readExactly(consumer.getInputStream(), expected.length()));
+        }
+    }
+
+    @Test
+    @DisplayName("Messages published on one reactor should reach subscribers on every reactor, by channel and by pattern")
+    public void testPublishSubscribe() throws IOException {
+        try (Socket first = new Socket("localhost", nioServer.getLocalPort());
+             Socket second = new Socket("localhost", nioServer.getLocalPort());
+             Socket publisher = new Socket("localhost", nioServer.getLocalPort())) {
+            for (Socket socket : new Socket[]{first, second, publisher}) {
+                socket.setSoTimeout(2000);
+            }
+            first.getOutputStream().write("*2\r\n$9\r\nSUBSCRIBE\r\n$5\r\ncache\r\n".getBytes(StandardCharsets.UTF_8));
+            second.getOutputStream().write("*2\r\n$10\r\nPSUBSCRIBE\r\n$3\r\nca*\r\n".getBytes(StandardCharsets.UTF_8));
+            String firstConfirmation = "*3\r\n$9\r\nsubscribe\r\n$5\r\ncache\r\n:1\r\n";
+            String secondConfirmation = "*3\r\n$10\r\npsubscribe\r\n$3\r\nca*\r\n:1\r\n";
+            assertEquals(firstConfirmation, readExactly(first.getInputStream(), firstConfirmation.length()));
+            assertEquals(secondConfirmation, readExactly(second.getInputStream(), secondConfirmation.length()));
+
+            publisher.getOutputStream().write("*3\r\n$7\r\nPUBLISH\r\n$5\r\ncache\r\n$4\r\nuser\r\n".getBytes(StandardCharsets.UTF_8));
+
+            assertEquals(":2\r\n", readExactly(publisher.getInputStream(), 4));
+            String message = "*3\r\n$7\r\nmessage\r\n$5\r\ncache\r\n$4\r\nuser\r\n";
+            String pmessage = "*4\r\n$8\r\npmessage\r\n$3\r\nca*\r\n$5\r\ncache\r\n$4\r\nuser\r\n";
+            assertEquals(message, readExactly(first.getInputStream(), message.length()));
+            assertEquals(pmessage, readExactly(second.getInputStream(), pmessage.length()));
+        }
+    }
+
+    @Test
+    @DisplayName("A subscriber that stops reading should be disconnected at its output limit while publishing carries on")
+    public void testSlowSubscriberIsDisconnected() throws Exception {
+        AofPersistence aofPersistence = new AofPersistence(tempDir.resolve("limited.aof").toString());
+        CommandExecutor commandExecutor = new CommandExecutor(new ConcurrentHashMap<>(), aofPersistence);
+        NioServer limited = new NioServer(0, 2, commandExecutor, new PubSub(256 * 1024));
+        Thread limitedThread = new Thread(limited::start, "nio-server-limited");
+        limitedThread.start();
+        try (Socket slow = new Socket();
+             Socket publisher = new Socket("localhost", limited.getLocalPort())) {
+            // a small window set before connecting keeps the kernel from soaking up the backlog
+            slow.setReceiveBufferSize(4096);
+            slow.connect(new InetSocketAddress("localhost", limited.getLocalPort()));
+            slow.setSoTimeout(5000);
+            publisher.setTcpNoDelay(true);
+            publisher.setSoTimeout(5000);
+            slow.getOutputStream().write("*2\r\n$9\r\nSUBSCRIBE\r\n$6\r\nevents\r\n".getBytes(StandardCharsets.UTF_8));
+            String confirmation = "*3\r\n$9\r\nsubscribe\r\n$6\r\nevents\r\n:1\r\n";
+            assertEquals(confirmation, readExactly(slow.getInputStream(), confirmation.length()));
+
+            // each message is ~100kb, so a few dozen overflow the socket buffers and then the limit
+            String payload = "x".repeat(100_000);
+            String publish = "*3\r\n$7\r\nPUBLISH\r\n$6\r\nevents\r\n$100000\r\n" + payload + "\r\n";
+            OutputStream out = publisher.getOutputStream();
+            InputStream in = publisher.getInputStream();
+            String reply = ":1\r\n";
+            for (int i = 0; i < 1_000 && reply.equals(":1\r\n"); i++) {
+                out.write(publish.getBytes(StandardCharsets.UTF_8));
+                reply = readExactly(in, 4);
+            }
+
+            assertEquals(":0\r\n", reply);
+            // the slow client finds its connection closed once it drains what was already sent
+            InputStream slowIn = slow.getInputStream();
+            long drained = 0;
+            try {
+                while (slowIn.read() != -1) {
+                    drained++;
+                }
+            } catch (IOException e) {
+                // reset by the server rather than closed
+            }
+            assertTrue(drained < 1_000L * publish.length(), "Received " + drained + " bytes");
+        } finally {
+            limited.stop();
+            limitedThread.join(5000);
+        }
+    }
+
+    @Test
+    @DisplayName("SET and GET should keep a value that is not valid UTF-8 byte for byte, in the reply and the AOF")
+    public void testBinaryValueRoundTrip() throws Exception {
+        byte[] value = {'a', (byte) 0xff, (byte) 0xfe, 0, 'b', (byte) 0xc3};
+        try (Socket socket = new Socket("localhost", nioServer.getLocalPort())) {
+            socket.setSoTimeout(2000);
+            OutputStream out = socket.getOutputStream();
+            out.write("*3\r\n$3\r\nSET\r\n$3\r\nbin\r\n$6\r\n".getBytes(StandardCharsets.UTF_8));
+            out.write(value);
+            out.write("\r\n*2\r\n$3\r\nGET\r\n$3\r\nbin\r\n".getBytes(StandardCharsets.UTF_8));
+
+            InputStream in = socket.getInputStream();
+            assertEquals("+OK\r\n$6\r\n", readExactly(in, 9));
+            assertArrayEquals(value, in.readNBytes(value.length));
+            assertEquals("\r\n", readExactly(in, 2));
+        }
+
+        // replaying the log gives back the same bytes
+        AofPersistence log = new AofPersistence(tempDir.resolve("nio.aof").toString());
+        CommandExecutor replayed = new CommandExecutor(new ConcurrentHashMap<>(), log);
+        replayed.setLoading(true);
+        log.replay(replayed, 1);
+        log.close();
+        assertArrayEquals(value, (byte[]) replayed.execute(new Object[]{"GET", "bin"}));
+    }
+}
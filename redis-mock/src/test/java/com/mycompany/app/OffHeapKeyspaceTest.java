@@ -0,0 +1,210 @@
+package com.mycompany.app;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Unit tests for the OffHeapKeyspace and the slab allocator underneath it.
+ */
+public class OffHeapKeyspaceTest {
+
+    @Test
+    @DisplayName("Strings and integers should round trip through off-heap memory, including multi-byte keys")
+    public void testPutGetRemove() {
+        // Arrange
+        OffHeapKeyspace keyspace = new OffHeapKeyspace();
+
+        // Act
+        Object first = keyspace.put("key", "value");
+        Object replaced = keyspace.put("key", "a much longer value than before");
+        keyspace.put("clé", "välue");
+        keyspace.put("counter", IntegerValue.of(123_456_789_012L));
+        Object removed = keyspace.remove("clé");
+
+        // Assert
+        assertNull(first);
+        assertEquals("value", replaced);
+        assertEquals("a much longer value than before", keyspace.get("key"));
+        assertEquals("välue", removed);
+        assertNull(keyspace.get("clé"));
+        assertFalse(keyspace.containsKey("clé"));
+        assertEquals(IntegerValue.of(123_456_789_012L), keyspace.get("counter"));
+        assertEquals(2, keyspace.size());
+    }
+
+    @Test
+    @DisplayName("Collections should stay on the heap as the same object, and be replaceable by a string")
+    public void testCollectionsStayOnHeap() {
+        // Arrange
+        OffHeapKeyspace keyspace = new OffHeapKeyspace();
+        RedisHash hash = new RedisHash();
+
+        // Act
+        keyspace.put("hash", hash);
+        Object sameHash = keyspace.get("hash");
+        Object previous = keyspace.put("hash", "now a string");
+
+        // Assert
+        assertSame(hash, sameHash);
+        assertSame(hash, previous);
+        assertEquals("now a string", keyspace.get("hash"));
+        assertEquals(1, keyspace.size());
+    }
+
+    @Test
+    @DisplayName("The index should grow and reuse removed slots without losing keys")
+    public void testManyKeys() {
+        // Arrange
+        OffHeapKeyspace keyspace = new OffHeapKeyspace(4096);
+
+        // Act
+        for (int i = 0; i < 20_000; i++) {
+            keyspace.put("key:" + i, "value:" + i);
+        }
+        for (int i = 0; i < 20_000; i += 2) {
+            keyspace.remove("key:" + i);
+        }
+        for (int i = 0; i < 20_000; i += 2) {
+            keyspace.put("again:" + i, "value:" + i);
+        }
+
+        // Assert
+        assertEquals(20_000, keyspace.size());
+        for (int i = 1; i < 20_000; i += 2) {
+            assertEquals("value:" + i, keyspace.get("key:" + i));
+        }
+        for (int i = 0; i < 20_000; i += 2) {
+            assertNull(keyspace.get("key:" + i));
+            assertEquals("value:" + i, keyspace.get("again:" + i));
+        }
+    }
+
+    @Test
+    @DisplayName("Iterating should return every key that is present throughout, even while keys are added, rewritten and moved")
+    public void testKeysNeverMissesAKey() {
+        // Arrange
+        OffHeapKeyspace keyspace = new OffHeapKeyspace();
+        for (int i = 0; i < 5_000; i++) {
+            keyspace.put("stable:" + i, "value");
+            keyspace.put("moving:" + i, "value");
+        }
+
+        // Act
+        Set<String> seen = new HashSet<>();
+        int step = 0;
+        for (String key : keyspace.keys()) {
+            seen.add(key);
+            // grow the index, rewrite values in place and move keys between the index and the heap
+            keyspace.put("added:" + step, "value");
+            keyspace.put("moving:" + (step % 5_000), step % 2 == 0 ? new RedisHash() : "longer value " + step);
+            step++;
+        }
+
+        // Assert
+        for (int i = 0; i < 5_000; i++) {
+            assertTrue(seen.contains("stable:" + i), "stable:" + i + " was missed");
+            assertTrue(seen.contains("moving:" + i), "moving:" + i + " was missed");
+        }
+    }
+
+    @Test
+    @DisplayName("A scan should return every key present throughout, even while the indexes grow, shrink and hold collections")
+    public void testScanNeverMissesAKey() {
+        // Arrange
+        OffHeapKeyspace keyspace = new OffHeapKeyspace();
+        for (int i = 0; i < 2_000; i++) {
+            keyspace.put("stable:" + i, "value");
+            keyspace.put("collection:" + i, new RedisHash());
+        }
+        for (int i = 0; i < 20_000; i++) {
+            keyspace.put("temporary:" + i, "value");
+        }
+
+        // Act
+        Set<String> seen = new HashSet<>();
+        long cursor = 0;
+        int calls = 0;
+        do {
+            cursor = keyspace.scan(cursor, 50, seen::add);
+            // remove the temporary keys early on so the indexes are rebuilt smaller, then grow them again
+            for (int i = 0; i < 1_000; i++) {
+                if (calls < 20) {
+                    keyspace.remove("temporary:" + (calls * 1_000 + i));
+                } else if (calls < 40) {
+                    keyspace.put("added:" + calls + ":" + i, "value");
+                }
+            }
+            keyspace.put("stable:" + (calls % 2_000), calls % 2 == 0 ? new RedisHash() : "rewritten");
+            calls++;
+        } while (cursor != 0);
+
+        // Assert
+        assertTrue(calls > 20, "The walk took " + calls + " calls");
+        for (int i = 0; i < 2_000; i++) {
+            assertTrue(seen.contains("stable:" + i), "stable:" + i + " was missed");
+            assertTrue(seen.contains("collection:" + i), "collection:" + i + " was missed");
+        }
+    }
+
+    @Test
+    @DisplayName("The executor should run commands against an off-heap keyspace")
+    public void testExecutorOnOffHeapKeyspace() {
+        // Arrange
+        OffHeapKeyspace keyspace = new OffHeapKeyspace();
+        CommandExecutor commandExecutor = new CommandExecutor(keyspace, mock(AofPersistence.class), mock(RdbPersistence.class));
+
+        // Act
+        commandExecutor.execute(new Object[]{"SET", "name", "redis"});
+        commandExecutor.execute(new Object[]{"INCRBY", "counter", "41"});
+        commandExecutor.execute(new Object[]{"INCR", "counter"});
+        commandExecutor.execute(new Object[]{"HSET", "hash", "field", "value"});
+        commandExecutor.execute(new Object[]{"DEL", "name"});
+
+        // Assert
+        assertNull(commandExecutor.execute(new Object[]{"GET", "name"}));
+        assertEquals("42", String.valueOf(commandExecutor.execute(new Object[]{"GET", "counter"})));
+        assertEquals("value", commandExecutor.execute(new Object[]{"HGET", "hash", "field"}));
+        assertTrue(((String) commandExecutor.execute(new Object[]{"INFO"})).contains("used_memory_offheap:"));
+        assertEquals(2, keyspace.size());
+    }
+
+    @Test
+    @DisplayName("Freed chunks should be reused and pages bigger than a page should be given back")
+    public void testSlabAllocatorReuse() {
+        // Arrange
+        SlabAllocator slabs = new SlabAllocator(4096);
+        long first = slabs.allocate(100);
+        long reserved = slabs.getReservedBytes();
+
+        // Act
+        slabs.free(first);
+        long second = slabs.allocate(90);
+        long large = slabs.allocate(10_000);
+        long reservedWithLarge = slabs.getReservedBytes();
+        slabs.free(large);
+        List<Long> more = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            more.add(slabs.allocate(100));
+        }
+
+        // Assert
+        assertEquals(first, second);
+        assertEquals(reserved + 10_000, reservedWithLarge);
+        assertEquals(reserved, slabs.getReservedBytes());
+        assertEquals(10, new HashSet<>(more).size());
+        assertFalse(more.contains(second));
+        assertTrue(slabs.getUsedBytes() >= 11 * 100);
+    }
+}
@@ -0,0 +1,140 @@
+package com.mycompany.app;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for replaying the append only file on several threads.
+ */
+public class ParallelAofReplayerTest {
+
+    @TempDir
+    Path tempDir;
+
+    /**
+     * Writes an AOF of SET commands that overwrite a smaller set of keys many times
+     * @param file The file to write
+     * @param commands The number of SET commands
+     * @param keys The number of distinct keys
+     * @throws IOException If the file cannot be written
+     */
+    private static void writeAof(Path file, int commands, int keys) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file), 1 << 16)) {
+            for (int i = 0; i < commands; i++) {
+                out.write(RESPParser.encodeCommand(new Object[]{"SET", "key:" + (i % keys), "value:" + i}));
+            }
+        }
+    }
+
+    /**
+     * Replays a file into a fresh database
+     * @param file The AOF to replay
+     * @param threads The number of replay threads
+     * @return The resulting database
+     */
+    private static ConcurrentHashMap<String, Object> replay(Path file, int threads) {
+        ConcurrentHashMap<String, Object> dataStore = new ConcurrentHashMap<>();
+        AofPersistence aofPersistence = new AofPersistence(file.toString(), AppendFsync.NO);
+        CommandExecutor commandExecutor = new CommandExecutor(dataStore, aofPersistence);
+        commandExecutor.setLoading(true);
+        try {
+            aofPersistence.replay(commandExecutor, threads);
+        } finally {
+            aofPersistence.close();
+        }
+        return dataStore;
+    }
+
+    @Test
+    @DisplayName("Parallel replay should end in the same state as replaying in order")
+    public void testParallelMatchesSequential() throws IOException {
+        // Arrange
+        Path file = tempDir.resolve("replay.aof");
+        writeAof(file, 50_000, 1_000);
+
+        // Act
+        ConcurrentHashMap<String, Object> sequential = replay(file, 1);
+        ConcurrentHashMap<String, Object> parallel = replay(file, 4);
+
+        // Assert
+        assertEquals(1_000, parallel.size());
+        assertEquals(sequential, parallel);
+        assertEquals("value:49999", parallel.get("key:999"));
+    }
+
+    @Test
+    @DisplayName("Commands without a key should run after everything before them")
+    public void testKeylessCommandIsABarrier() throws IOException {
+        // Arrange
+        Path file = tempDir.resolve("barrier.aof");
+        writeAof(file, 10_000, 100);
+        Files.write(file, RESPParser.encodeCommand(new Object[]{"PING"}), StandardOpenOption.APPEND);
+        Files.write(file, RESPParser.encodeCommand(new Object[]{"SET", "key:0", "last"}), StandardOpenOption.APPEND);
+
+        // Act
+        ConcurrentHashMap<String, Object> dataStore = replay(file, 3);
+
+        // Assert
+        assertEquals(100, dataStore.size());
+        assertEquals("last", dataStore.get("key:0"));
+        assertEquals("value:9999", dataStore.get("key:99"));
+    }
+
+    @Test
+    @DisplayName("A key given a new expiry time or persisted after its first one has passed by the restart should survive replay")
+    public void testExpiryChangedAfterSetSurvivesRestart() throws Exception {
+        // Arrange
+        Path file = tempDir.resolve("expiry.aof");
+        AofPersistence aofPersistence = new AofPersistence(file.toString(), AppendFsync.ALWAYS);
+        CommandExecutor before = new CommandExecutor(new ConcurrentHashMap<>(), aofPersistence);
+        before.execute(new Object[]{"SET", "extended", "v", "PX", "200"});
+        before.execute(new Object[]{"EXPIRE", "extended", "1000"});
+        before.execute(new Object[]{"SET", "persisted", "v", "PX", "200"});
+        before.execute(new Object[]{"PERSIST", "persisted"});
+        aofPersistence.close();
+        // the restart comes after the expiry times the SETs were logged with
+        Thread.sleep(300);
+
+        // Act
+        ConcurrentHashMap<String, Object> sequential = replay(file, 1);
+        ConcurrentHashMap<String, Object> parallel = replay(file, 4);
+
+        // Assert
+        assertEquals("v", sequential.get("extended"));
+        assertEquals("v", sequential.get("persisted"));
+        assertEquals(sequential, parallel);
+    }
+
+    @Test
+    @DisplayName("Startup benchmark: replay time in order and in parallel")
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    public void benchmarkReplay() throws IOException {
+        Path file = tempDir.resolve("benchmark.aof");
+        writeAof(file, 5_000_000, 500_000);
+        int threads = Runtime.getRuntime().availableProcessors();
+        System.out.printf("AOF of %d MB, %d cores%n", Files.size(file) >> 20, threads);
+
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            replay(file, 1);
+            long sequential = System.nanoTime() - start;
+            start = System.nanoTime();
+            replay(file, threads);
+            long parallel = System.nanoTime() - start;
+            System.out.printf("round %d: 1 thread %d ms, %d threads %d ms (%.1fx)%n", round, sequential / 1_000_000,
+                    threads, parallel / 1_000_000, (double) sequential / parallel);
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package com.mycompany.app;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the pub/sub hub, driving subscribers directly and reading what each one would send.
+ */
+public class PubSubTest {
+
+    /**
+     * Records every array written to it, so tests can tell whether subscribers were sent the same bytes
+     */
+    private static class RecordingStream extends ByteArrayOutputStream {
+        private final List<byte[]> writes = new ArrayList<>();
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            writes.add(b);
+            super.write(b, off, len);
+        }
+    }
+
+    /**
+     * Runs a command for a subscriber the way a connection would
+     * @param pubSub The hub
+     * @param subscriber The connection's pub/sub state
+     * @param command The command and its arguments
+     * @return What the connection would send back for it
+     */
+    private String run(PubSub pubSub, Subscriber subscriber, Object... command) throws IOException {
+        ReplyBuffer replies = new ReplyBuffer();
+        assertTrue(pubSub.execute(subscriber, command, replies), List.of(command) + " was left to the executor");
+        return output(subscriber, replies);
+    }
+
+    /**
+     * Takes everything a subscriber has waiting to be sent
+     * @param subscriber The subscriber
+     * @param replies Replies buffered by its connection
+     * @return The bytes decoded as UTF-8
+     */
+    private String output(Subscriber subscriber, ReplyBuffer replies) throws IOException {
+        if (!subscriber.isPushMode()) {
+            return new String(replies.toByteArray(), StandardCharsets.UTF_8);
+        }
+        subscriber.pushReplies(replies);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        subscriber.flushTo(out);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    @DisplayName("PUBLISH should encode a message once and queue the same bytes for every subscriber, after their confirmations")
+    public void testPublishSharesTheEncodedMessage() throws IOException {
+        // Arrange
+        PubSub pubSub = new PubSub();
+        AtomicInteger wakeups = new AtomicInteger();
+        Subscriber first = pubSub.newSubscriber(wakeups::incrementAndGet);
+        Subscriber second = pubSub.newSubscriber(wakeups::incrementAndGet);
+        Subscriber publisher = pubSub.newSubscriber(() -> { });
+        ReplyBuffer replies = new ReplyBuffer();
+        pubSub.execute(first, new Object[]{"SUBSCRIBE", "orders", "users"}, replies);
+        pubSub.execute(second, new Object[]{"SUBSCRIBE", "orders"}, replies);
+
+        // Act
+        String published = run(pubSub, publisher, "PUBLISH", "orders", "created");
+        String unheard = run(pubSub, publisher, "PUBLISH", "nobody", "hello");
+        RecordingStream firstOut = new RecordingStream();
+        RecordingStream secondOut = new RecordingStream();
+        first.flushTo(firstOut);
+        second.flushTo(secondOut);
+
+        // Assert
+        assertEquals(":2\r\n", published);
+        assertEquals(":0\r\n", unheard);
+        assertEquals("*3\r\n$9\r\nsubscribe\r\n$6\r\norders\r\n:1\r\n"
+                + "*3\r\n$9\r\nsubscribe\r\n$5\r\nusers\r\n:2\r\n"
+                + "*3\r\n$7\r\nmessage\r\n$6\r\norders\r\n$7\r\ncreated\r\n", firstOut.toString(StandardCharsets.UTF_8));
+        assertSame(firstOut.writes.getLast(), secondOut.writes.getLast());
+        assertEquals(2, wakeups.get());
+        assertFalse(publisher.isPushMode());
+    }
+
+    @Test
+    @DisplayName("PSUBSCRIBE should deliver pmessages for every matching pattern and prune the trie on PUNSUBSCRIBE")
+    public void testPatterns() throws IOException {
+        // Arrange
+        PubSub pubSub = new PubSub();
+        Subscriber subscriber = pubSub.newSubscriber(() -> { });
+        run(pubSub, subscriber, "PSUBSCRIBE", "news.*", "news.sport.?", "*", "n[ae]ws", "news.sport.x", "weather.*");
+
+        // Act
+        long sport = pubSub.publish("news.sport.1", "goal");
+        long naws = pubSub.publish("naws", "typo");
+        long exact = pubSub.publish("news.sport.x", "x");
+        String received = output(subscriber, new ReplyBuffer());
+        String unsubscribed = run(pubSub, subscriber, "PUNSUBSCRIBE", "news.*", "missing");
+        long afterwards = pubSub.publish("news.politics", "vote");
+
+        // Assert
+        assertEquals(3, sport);
+        assertEquals(2, naws);
+        assertEquals(4, exact);
+        assertTrue(received.contains("*4\r\n$8\r\npmessage\r\n$12\r\nnews.sport.?\r\n$12\r\nnews.sport.1\r\n$4\r\ngoal\r\n"));
+        assertTrue(received.contains("*4\r\n$8\r\npmessage\r\n$7\r\nn[ae]ws\r\n$4\r\nnaws\r\n$4\r\ntypo\r\n"));
+        assertEquals("*3\r\n$12\r\npunsubscribe\r\n$6\r\nnews.*\r\n:5\r\n"
+                + "*3\r\n$12\r\npunsubscribe\r\n$7\r\nmissing\r\n:5\r\n", unsubscribed);
+        assertEquals(1, afterwards);
+        assertEquals(5, pubSub.patternCount());
+        pubSub.unsubscribeAll(subscriber);
+        assertEquals(0, pubSub.patternCount());
+        assertEquals(0, pubSub.publish("news.sport.1", "gone"));
+    }
+
+    @Test
+    @DisplayName("An empty command should be taken as dealt with and get no reply")
+    public void testEmptyCommand() {
+        // Arrange
+        PubSub pubSub = new PubSub();
+        Subscriber subscriber = pubSub.newSubscriber(() -> { });
+        ReplyBuffer replies = new ReplyBuffer();
+
+        // Act
+        boolean handled = pubSub.execute(subscriber, new Object[0], replies);
+
+        // Assert
+        assertTrue(handled);
+        assertEquals(0, replies.toByteArray().length);
+    }
+
+    @Test
+    @DisplayName("A subscriber that stops reading should be cut off at its output limit without holding up the publisher")
+    public void testOutputLimit() {
+        // Arrange
+        PubSub pubSub = new PubSub(1024);
+        AtomicInteger wakeups = new AtomicInteger();
+        Subscriber slow = pubSub.newSubscriber(wakeups::incrementAndGet);
+        Subscriber fast = pubSub.newSubscriber(() -> { });
+        pubSub.execute(slow, new Object[]{"SUBSCRIBE", "events"}, new ReplyBuffer());
+        pubSub.execute(fast, new Object[]{"SUBSCRIBE", "events"}, new ReplyBuffer());
+        String payload = "x".repeat(100);
+
+        // Act
+        long receivers = 0;
+        for (int i = 0; i < 100; i++) {
+            receivers += pubSub.publish("events", payload);
+            // the fast subscriber keeps up
+            fast.pushReplies(new ReplyBuffer());
+            assertDoesNotThrow(() -> fast.flushTo(new ByteArrayOutputStream()));
+        }
+
+        // Assert
+        assertTrue(slow.isOverLimit());
+        assertFalse(fast.isOverLimit());
+        assertTrue(slow.getPendingBytes() <= 1024);
+        assertTrue(receivers > 100 && receivers < 200, "Queued for " + receivers);
+        assertEquals(2, wakeups.get());
+        assertThrows(IOException.class, () -> slow.flushTo(new ByteArrayOutputStream()));
+    }
+
+    @Test
+    @DisplayName("A subscribed connection should only be allowed the pub/sub commands, PING, QUIT and RESET until it unsubscribes")
+    public void testSubscribedContext() throws IOException {
+        // Arrange
+        PubSub pubSub = new PubSub();
+        Subscriber subscriber = pubSub.newSubscriber(() -> { });
+        ReplyBuffer replies = new ReplyBuffer();
+        replies.write("OK");
+
+        // Act
+        boolean before = pubSub.execute(subscriber, new Object[]{"GET", "key"}, new ReplyBuffer());
+        pubSub.execute(subscriber, new Object[]{"SUBSCRIBE", "a"}, replies);
+        String subscribed = output(subscriber, replies);
+        String refused = run(pubSub, subscriber, "GET", "key");
+        String ping = run(pubSub, subscriber, "PING");
+        boolean quit = pubSub.execute(subscriber, new Object[]{"QUIT"}, new ReplyBuffer());
+        String unsubscribed = run(pubSub, subscriber, "UNSUBSCRIBE");
+        String again = run(pubSub, subscriber, "UNSUBSCRIBE");
+        boolean after = pubSub.execute(subscriber, new Object[]{"GET", "key"}, new ReplyBuffer());
+
+        // Assert
+        assertFalse(before);
+        assertEquals("+OK\r\n*3\r\n$9\r\nsubscribe\r\n$1\r\na\r\n:1\r\n", subscribed);
+        assertTrue(refused.startsWith("-ERR Can't execute 'get'"));
+        assertEquals("*2\r\n$4\r\npong\r\n$0\r\n\r\n", ping);
+        assertFalse(quit);
+        assertEquals("*3\r\n$11\r\nunsubscribe\r\n$1\r\na\r\n:0\r\n", unsubscribed);
+        assertEquals("*3\r\n$11\r\nunsubscribe\r\n$-1\r\n:0\r\n", again);
+        assertFalse(after);
+        assertEquals(0, pubSub.channelCount());
+        assertTrue(run(pubSub, subscriber, "SUBSCRIBE").startsWith("-ERR wrong number of arguments"));
+    }
+}
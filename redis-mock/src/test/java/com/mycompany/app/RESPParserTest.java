@@ -62,4 +62,4 @@ public class RESPParserTest {
         String expected = "*3\r\n$3\r\nSET\r\n$3\r\nkey\r\n$5\r\nvalue\r\n";
         assertEquals(expected, result);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,240 @@
+package com.mycompany.app;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the binary snapshot format and SAVE/BGSAVE.
+ */
+public class RdbPersistenceTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Path rdbFile;
+    private RdbPersistence rdbPersistence;
+    private AofPersistence aofPersistence;
+    private ConcurrentHashMap<String, Object> dataStore;
+    private CommandExecutor commandExecutor;
+
+    @BeforeEach
+    void setUp() {
+        rdbFile = tempDir.resolve("dump.rdb");
+        rdbPersistence = new RdbPersistence(rdbFile.toString());
+        aofPersistence = new AofPersistence(tempDir.resolve("redis.aof").toString(), AppendFsync.NO);
+        dataStore = new ConcurrentHashMap<>();
+        commandExecutor = new CommandExecutor(dataStore, aofPersistence, rdbPersistence);
+    }
+
+    @AfterEach
+    void tearDown() {
+        aofPersistence.close();
+    }
+
+    @Test
+    @DisplayName("SAVE should write a snapshot that loads back to the same data")
+    public void testSaveAndLoad() {
+        // Arrange
+        commandExecutor.execute(new Object[]{"SET", "key", "value"});
+        commandExecutor.execute(new Object[]{"SET", "empty", ""});
+        commandExecutor.execute(new Object[]{"SET", "héllo", "wörld €"});
+        commandExecutor.execute(new Object[]{"SET", "big", "x".repeat(100_000)});
+
+        // Act
+        Object result = commandExecutor.execute(new Object[]{"SAVE"});
+        Map<String, Object> loaded = new HashMap<>();
+        long keys = new RdbPersistence(rdbFile.toString()).load(loaded);
+
+        // Assert
+        assertEquals("OK", result);
+        assertEquals(4, keys);
+        assertEquals(new HashMap<>(dataStore), loaded);
+        assertTrue((Long) commandExecutor.execute(new Object[]{"LASTSAVE"}) > 0);
+    }
+
+    @Test
+    @DisplayName("SAVE should round trip hashes and expiry times")
+    public void testSaveAndLoadHashes() {
+        // Arrange
+        commandExecutor.execute(new Object[]{"HSET", "small", "name", "ada", "city", "london"});
+        commandExecutor.execute(new Object[]{"HSET", "large", "field", "v".repeat(100)});
+        commandExecutor.execute(new Object[]{"PEXPIRE", "small", "100000"});
+
+        // Act
+        commandExecutor.execute(new Object[]{"SAVE"});
+        Map<String, Object> loaded = new HashMap<>();
+        Expires expires = new Expires();
+        new RdbPersistence(rdbFile.toString()).load(loaded, expires);
+
+        // Assert
+        RedisHash small = (RedisHash) loaded.get("small");
+        RedisHash large = (RedisHash) loaded.get("large");
+        assertArrayEquals(((RedisHash) dataStore.get("small")).toArray(), small.toArray());
+        assertEquals("listpack", small.encoding());
+        assertEquals("hashtable", large.encoding());
+        assertEquals("v".repeat(100), large.get("field"));
+        assertEquals(commandExecutor.getExpires().get("small"), expires.get("small"));
+    }
+
+    @Test
+    @DisplayName("SAVE should round trip lists of one chunk and of many")
+    public void testSaveAndLoadLists() {
+        // Arrange
+        commandExecutor.execute(new Object[]{"RPUSH", "small", "a", "b"});
+        for (int i = 0; i < 300; i++) {
+            commandExecutor.execute(new Object[]{"LPUSH", "large", "e" + i});
+        }
+
+        // Act
+        commandExecutor.execute(new Object[]{"SAVE"});
+        Map<String, Object> loaded = new HashMap<>();
+        new RdbPersistence(rdbFile.toString()).load(loaded);
+
+        // Assert
+        assertArrayEquals(new Object[]{"a", "b"}, ((RedisList) loaded.get("small")).toArray());
+        assertArrayEquals(((RedisList) dataStore.get("large")).toArray(), ((RedisList) loaded.get("large")).toArray());
+        assertEquals("quicklist", ((RedisList) loaded.get("large")).encoding());
+    }
+
+    @Test
+    @DisplayName("SAVE should round trip sorted sets in both encodings")
+    public void testSaveAndLoadSortedSets() {
+        // Arrange
+        commandExecutor.execute(new Object[]{"ZADD", "small", "1.5", "a", "-inf", "b"});
+        for (int i = 0; i < 200; i++) {
+            commandExecutor.execute(new Object[]{"ZADD", "large", String.valueOf(i), "m" + i});
+        }
+
+        // Act
+        commandExecutor.execute(new Object[]{"SAVE"});
+        Map<String, Object> loaded = new HashMap<>();
+        new RdbPersistence(rdbFile.toString()).load(loaded);
+
+        // Assert
+        RedisSortedSet small = (RedisSortedSet) loaded.get("small");
+        RedisSortedSet large = (RedisSortedSet) loaded.get("large");
+        assertEquals("listpack", small.encoding());
+        assertEquals(List.of(new RedisSortedSet.Entry("b", Double.NEGATIVE_INFINITY), new RedisSortedSet.Entry("a", 1.5)),
+                small.rangeByRank(0, 1, false));
+        assertEquals("skiplist", large.encoding());
+        assertEquals(200, large.size());
+        assertEquals(150, large.rank("m150", false));
+    }
+
+    @Test
+    @DisplayName("A snapshot should keep a hash as it was even if it is changed in place while saving")
+    public void testSnapshotOfHashIsPointInTime() {
+        // Arrange
+        commandExecutor.execute(new Object[]{"HSET", "hash", "f", "before"});
+        assertTrue(rdbPersistence.tryBeginSave());
+
+        // Act
+        commandExecutor.execute(new Object[]{"HSET", "hash", "f", "after", "g", "new"});
+        rdbPersistence.save(new HeapKeyspace(dataStore), commandExecutor.getExpires(), new KeyLocks());
+        Map<String, Object> loaded = new HashMap<>();
+        rdbPersistence.load(loaded);
+
+        // Assert
+        assertArrayEquals(new Object[]{"f", "before"}, ((RedisHash) loaded.get("hash")).toArray());
+    }
+
+    @Test
+    @DisplayName("A snapshot should hold the data as it was when it started")
+    public void testSnapshotIsPointInTime() {
+        // Arrange
+        commandExecutor.execute(new Object[]{"SET", "a", "before"});
+        commandExecutor.execute(new Object[]{"SET", "b", "before"});
+        assertTrue(rdbPersistence.tryBeginSave());
+
+        // Act
+        commandExecutor.execute(new Object[]{"SET", "a", "after"});
+        commandExecutor.execute(new Object[]{"SET", "c", "after"});
+        rdbPersistence.save(new HeapKeyspace(dataStore), commandExecutor.getExpires(), new KeyLocks());
+        Map<String, Object> loaded = new HashMap<>();
+        rdbPersistence.load(loaded);
+
+        // Assert
+        assertEquals(Map.of("a", "before", "b", "before"), loaded);
+        assertEquals("after", dataStore.get("a"));
+    }
+
+    @Test
+    @DisplayName("BGSAVE should not lose keys written while it runs")
+    public void testBackgroundSaveWithConcurrentWriters() throws Exception {
+        // Arrange
+        for (int i = 0; i < 20_000; i++) {
+            commandExecutor.execute(new Object[]{"SET", "key" + i, "old"});
+        }
+        Thread writer = new Thread(() -> {
+            for (int i = 0; i < 20_000; i++) {
+                commandExecutor.execute(new Object[]{"SET", "key" + i, "new"});
+            }
+        });
+
+        // Act
+        Object result = commandExecutor.execute(new Object[]{"BGSAVE"});
+        writer.start();
+        writer.join();
+        while (rdbPersistence.isSaving()) {
+            Thread.sleep(5);
+        }
+        Map<String, Object> loaded = new HashMap<>();
+        rdbPersistence.load(loaded);
+
+        // Assert
+        assertEquals("Background saving started", result);
+        assertEquals(20_000, loaded.size());
+        assertTrue(loaded.values().stream().allMatch("old"::equals), "Writes after BGSAVE started are not in the snapshot");
+    }
+
+    @Test
+    @DisplayName("Loading should reject a snapshot whose checksum does not match")
+    public void testCorruptSnapshot() throws Exception {
+        // Arrange
+        commandExecutor.execute(new Object[]{"SET", "key", "value"});
+        commandExecutor.execute(new Object[]{"SAVE"});
+        byte[] bytes = Files.readAllBytes(rdbFile);
+        bytes[10] ^= 1;
+        Files.write(rdbFile, bytes);
+
+        // Act and Assert
+        UncheckedIOException e = assertThrows(UncheckedIOException.class, () -> rdbPersistence.load(new HashMap<>()));
+        assertTrue(e.getCause().getMessage().contains("checksum"));
+    }
+
+    @Test
+    @DisplayName("Loading should reject a truncated snapshot")
+    public void testTruncatedSnapshot() throws Exception {
+        // Arrange
+        commandExecutor.execute(new Object[]{"SET", "key", "value"});
+        commandExecutor.execute(new Object[]{"SAVE"});
+        byte[] bytes = Files.readAllBytes(rdbFile);
+        Files.write(rdbFile, Arrays.copyOf(bytes, bytes.length - 3));
+
+        // Act and Assert
+        assertThrows(UncheckedIOException.class, () -> rdbPersistence.load(new HashMap<>()));
+    }
+
+    @Test
+    @DisplayName("Loading with no snapshot file should load nothing")
+    public void testLoadMissingFile() {
+        Map<String, Object> loaded = new HashMap<>();
+
+        assertEquals(0, rdbPersistence.load(loaded));
+        assertTrue(loaded.isEmpty());
+    }
+}
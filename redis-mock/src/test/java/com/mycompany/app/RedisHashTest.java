@@ -0,0 +1,79 @@
+package com.mycompany.app;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the packed and hashtable encodings of RedisHash.
+ */
+public class RedisHashTest {
+
+    @Test
+    @DisplayName("A small hash should stay packed and behave like a map")
+    public void testPackedHash() {
+        // Arrange
+        RedisHash hash = new RedisHash();
+        EncodingLimits limits = new EncodingLimits();
+
+        // Act
+        boolean added = hash.put("name", "ada", limits);
+        boolean replaced = !hash.put("name", "grace", limits);
+        hash.put("city", "london", limits);
+        boolean removed = hash.remove("name");
+
+        // Assert
+        assertTrue(added);
+        assertTrue(replaced);
+        assertTrue(removed);
+        assertFalse(hash.remove("name"));
+        assertEquals("listpack", hash.encoding());
+        assertEquals(1, hash.size());
+        assertEquals("london", hash.get("city"));
+        assertNull(hash.get("name"));
+        assertArrayEquals(new Object[]{"city", "london"}, hash.toArray());
+    }
+
+    @Test
+    @DisplayName("A hash should convert to a hashtable past the entry or value limit")
+    public void testConversion() {
+        // Arrange
+        EncodingLimits limits = new EncodingLimits().setHashMaxListpackEntries(4).setHashMaxListpackValue(8);
+        RedisHash many = new RedisHash();
+        RedisHash wide = new RedisHash();
+
+        // Act
+        for (int i = 0; i < 5; i++) {
+            many.put("f" + i, "v" + i, limits);
+        }
+        wide.put("f", "short", limits);
+        wide.put("g", "much too long", limits);
+
+        // Assert
+        assertEquals("hashtable", many.encoding());
+        assertEquals(5, many.size());
+        assertEquals("v0", many.get("f0"));
+        assertEquals("hashtable", wide.encoding());
+        assertEquals("short", wide.get("f"));
+    }
+
+    @Test
+    @DisplayName("A copy should not see later changes to the original")
+    public void testCopyIsIndependent() {
+        // Arrange
+        RedisHash hash = new RedisHash();
+        hash.put("f", "before", new EncodingLimits());
+
+        // Act
+        RedisHash copy = hash.copy();
+        hash.put("f", "after", new EncodingLimits());
+        hash.put("g", "new", new EncodingLimits());
+
+        // Assert
+        assertEquals("before", copy.get("f"));
+        assertEquals(1, copy.size());
+        assertNull(copy.get("g"));
+        assertEquals("after", hash.get("f"));
+    }
+}
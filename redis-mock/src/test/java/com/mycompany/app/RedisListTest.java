@@ -0,0 +1,148 @@
+package com.mycompany.app;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the chunked storage of RedisList.
+ */
+public class RedisListTest {
+
+    /**
+     * Builds a list of the elements e0, e1, ... pushed at the tail
+     * @param count The number of elements
+     * @return The list
+     */
+    private static RedisList filled(int count) {
+        RedisList list = new RedisList();
+        for (int i = 0; i < count; i++) {
+            list.pushLast("e" + i);
+        }
+        return list;
+    }
+
+    @Test
+    @DisplayName("Pushes and pops at both ends should behave like a deque")
+    public void testPushAndPop() {
+        // Arrange
+        RedisList list = new RedisList();
+
+        // Act
+        list.pushLast("b");
+        list.pushFirst("a");
+        list.pushLast("c");
+
+        // Assert
+        assertEquals(3, list.size());
+        assertEquals("a", list.peekFirst());
+        assertEquals("c", list.peekLast());
+        assertArrayEquals(new Object[]{"a", "b", "c"}, list.toArray());
+        assertEquals("a", list.popFirst());
+        assertEquals("c", list.popLast());
+        assertEquals("b", list.popLast());
+        assertNull(list.popFirst());
+        assertNull(list.peekLast());
+        assertEquals(0, list.size());
+    }
+
+    @Test
+    @DisplayName("A long list should be split into chunks and read back in order")
+    public void testChunks() {
+        // Arrange
+        RedisList small = filled(RedisList.CHUNK_SIZE);
+        RedisList large = new RedisList();
+
+        // Act
+        for (int i = 999; i >= 0; i--) {
+            large.pushFirst("e" + i);
+        }
+
+        // Assert
+        assertEquals("listpack", small.encoding());
+        assertEquals("quicklist", large.encoding());
+        assertEquals(1000, large.size());
+        assertArrayEquals(filled(1000).toArray(), large.toArray());
+        assertArrayEquals(new Object[]{"e126", "e127", "e128", "e129"}, large.range(126, 129));
+        assertArrayEquals(new Object[]{"e998", "e999"}, large.range(998, 999));
+    }
+
+    @Test
+    @DisplayName("Trimming should keep only the given range, dropping whole chunks")
+    public void testTrim() {
+        // Arrange
+        RedisList list = filled(1000);
+        RedisList emptied = filled(10);
+        long before = list.estimatedSize();
+
+        // Act
+        list.trim(300, 309);
+        emptied.trim(5, 4);
+
+        // Assert
+        assertArrayEquals(filled(310).range(300, 309), list.toArray());
+        assertEquals("listpack", list.encoding());
+        assertTrue(list.estimatedSize() < before / 10);
+        assertEquals(0, emptied.size());
+        assertNull(emptied.peekFirst());
+    }
+
+    @Test
+    @DisplayName("The list should stay consistent with a deque through random operations")
+    public void testRandomOperations() {
+        // Arrange
+        RedisList list = new RedisList();
+        ArrayDeque<String> expected = new ArrayDeque<>();
+        Random random = new Random(7);
+
+        // Act
+        for (int i = 0; i < 20_000; i++) {
+            String element = "v" + i;
+            // pushes outnumber pops so the list grows across many chunks
+            switch (random.nextInt(6)) {
+                case 0, 1 -> {
+                    list.pushFirst(element);
+                    expected.addFirst(element);
+                }
+                case 2, 3 -> {
+                    list.pushLast(element);
+                    expected.addLast(element);
+                }
+                case 4 -> assertEquals(expected.pollFirst(), list.popFirst());
+                default -> assertEquals(expected.pollLast(), list.popLast());
+            }
+        }
+
+        // Assert
+        assertEquals(expected.size(), list.size());
+        assertArrayEquals(expected.toArray(), list.toArray());
+        List<String> elements = new ArrayList<>(expected);
+        assertArrayEquals(elements.subList(500, 1500).toArray(), list.range(500, 1499));
+        assertArrayEquals(elements.subList(elements.size() - 3, elements.size()).toArray(),
+                list.range(elements.size() - 3, elements.size() - 1));
+    }
+
+    @Test
+    @DisplayName("A copy should not change when the original does")
+    public void testCopy() {
+        // Arrange
+        RedisList list = filled(300);
+
+        // Act
+        RedisList copy = list.copy();
+        list.popFirst();
+        list.pushLast("new");
+
+        // Assert
+        assertEquals(300, copy.size());
+        assertEquals("e0", copy.peekFirst());
+        assertEquals("e299", copy.peekLast());
+        assertEquals(copy.estimatedSize(), filled(300).estimatedSize());
+    }
+}
@@ -6,36 +6,48 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.DisplayName;
 
 import java.io.BufferedReader;
+import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.fail;
 
 /**
  * Unit test for the Redis mock server based on the plan in GEMINI.md.
- *
- * Note: This test requires the RedisServer to be running. It is designed
- * to fail until the server implementation is complete.
+ * The server is started in a background thread in blocking mode with a throwaway AOF file.
  */
 public class RedisServerTest {
 
     private static final String HOST = "localhost";
     private static final int PORT = 6379;
 
+    private static RedisServer server;
+    private static Path aofDir;
+
     @BeforeAll
-    public static void setup() {
-        // TODO: Start the RedisServer in a background thread.
-        // For now, this test assumes the server is started externally.
-        System.out.println("Starting tests... Assumes RedisServer is running on " + HOST + ":" + PORT);
+    public static void setup() throws IOException, InterruptedException {
+        aofDir = Files.createTempDirectory("redis-server-test");
+        ServerConfig config = new ServerConfig()
+                .setPort(PORT)
+                .setAofFile(aofDir.resolve("redis.aof").toString());
+        server = new RedisServer(config);
+        new Thread(server::start, "redis-server-test").start();
+        server.awaitStarted(5, TimeUnit.SECONDS);
+        System.out.println("Starting tests... RedisServer is running on " + HOST + ":" + PORT);
     }
 
     @AfterAll
-    public static void tearDown() {
-        // TODO: Stop the server thread.
+    public static void tearDown() throws IOException {
+        server.stop();
+        Files.deleteIfExists(aofDir.resolve("redis.aof"));
+        Files.deleteIfExists(aofDir);
         System.out.println("Tests finished.");
     }
 
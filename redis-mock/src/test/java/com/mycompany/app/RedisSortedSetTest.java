@@ -0,0 +1,185 @@
+package com.mycompany.app;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the packed and skiplist encodings of RedisSortedSet.
+ */
+public class RedisSortedSetTest {
+
+    private static final RedisSortedSet.ScoreRange ALL =
+            new RedisSortedSet.ScoreRange(Double.NEGATIVE_INFINITY, false, Double.POSITIVE_INFINITY, false);
+
+    /**
+     * Fills a sorted set with members m0, m1, ... scored 0, 10, 20, ...
+     * @param limits The encoding limits to add under
+     * @param count The number of members
+     * @return The sorted set
+     */
+    private static RedisSortedSet filled(EncodingLimits limits, int count) {
+        RedisSortedSet zset = new RedisSortedSet();
+        for (int i = count - 1; i >= 0; i--) {
+            zset.add("m" + i, i * 10, limits);
+        }
+        return zset;
+    }
+
+    @Test
+    @DisplayName("A small sorted set should stay packed and keep its members in score order")
+    public void testPackedSortedSet() {
+        // Arrange
+        RedisSortedSet zset = new RedisSortedSet();
+        EncodingLimits limits = new EncodingLimits();
+
+        // Act
+        boolean added = zset.add("b", 2, limits);
+        zset.add("a", 2, limits);
+        zset.add("c", 1, limits);
+        boolean updated = !zset.add("c", 3, limits);
+        boolean removed = zset.remove("a");
+
+        // Assert
+        assertTrue(added);
+        assertTrue(updated);
+        assertTrue(removed);
+        assertFalse(zset.remove("a"));
+        assertEquals("listpack", zset.encoding());
+        assertEquals(2, zset.size());
+        assertEquals(3.0, zset.score("c"));
+        assertNull(zset.score("a"));
+        assertEquals(List.of(new RedisSortedSet.Entry("b", 2), new RedisSortedSet.Entry("c", 3)), zset.rangeByRank(0, 1, false));
+        assertEquals(1, zset.rank("c", false));
+        assertEquals(0, zset.rank("c", true));
+        assertEquals(-1, zset.rank("a", false));
+    }
+
+    @Test
+    @DisplayName("Members with equal scores should be ordered by member")
+    public void testTiesOrderedByMember() {
+        // Arrange
+        EncodingLimits limits = new EncodingLimits().setZsetMaxListpackEntries(2);
+        RedisSortedSet packed = new RedisSortedSet();
+        RedisSortedSet skiplist = new RedisSortedSet();
+
+        // Act
+        for (String member : new String[]{"c", "a", "b"}) {
+            packed.add(member, 1, new EncodingLimits());
+            skiplist.add(member, 1, limits);
+        }
+
+        // Assert
+        assertTrue(packed.isPacked());
+        assertFalse(skiplist.isPacked());
+        for (RedisSortedSet zset : new RedisSortedSet[]{packed, skiplist}) {
+            assertEquals(List.of("a", "b", "c"), zset.rangeByRank(0, 2, false).stream().map(RedisSortedSet.Entry::member).toList());
+        }
+    }
+
+    @Test
+    @DisplayName("A sorted set should convert to a skiplist past the entry or value limit")
+    public void testConversion() {
+        // Arrange
+        EncodingLimits limits = new EncodingLimits().setZsetMaxListpackEntries(4).setZsetMaxListpackValue(8);
+        RedisSortedSet wide = new RedisSortedSet();
+
+        // Act
+        RedisSortedSet many = filled(limits, 5);
+        wide.add("short", 1, limits);
+        wide.add("a much longer member", 2, limits);
+
+        // Assert
+        assertEquals("skiplist", many.encoding());
+        assertEquals("skiplist", wide.encoding());
+        assertEquals(5, many.size());
+        assertEquals(40.0, many.score("m4"));
+        assertEquals(List.of(new RedisSortedSet.Entry("short", 1), new RedisSortedSet.Entry("a much longer member", 2)),
+                wide.rangeByRank(0, 1, false));
+    }
+
+    @Test
+    @DisplayName("Both encodings should answer rank and range queries the same way")
+    public void testEncodingsAgree() {
+        // Arrange
+        RedisSortedSet packed = filled(new EncodingLimits(), 100);
+        RedisSortedSet skiplist = filled(new EncodingLimits().setZsetMaxListpackEntries(1), 100);
+        RedisSortedSet.ScoreRange range = new RedisSortedSet.ScoreRange(100, true, 500, false);
+
+        // Assert
+        assertTrue(packed.isPacked());
+        assertFalse(skiplist.isPacked());
+        for (RedisSortedSet zset : new RedisSortedSet[]{packed, skiplist}) {
+            assertEquals(37, zset.rank("m37", false));
+            assertEquals(62, zset.rank("m37", true));
+            assertEquals(List.of(new RedisSortedSet.Entry("m10", 100), new RedisSortedSet.Entry("m11", 110)), zset.rangeByRank(10, 11, false));
+            assertEquals(List.of(new RedisSortedSet.Entry("m89", 890), new RedisSortedSet.Entry("m88", 880)), zset.rangeByRank(10, 11, true));
+            assertEquals(40, zset.rangeByScore(range, false, 0, -1).size());
+            assertEquals(new RedisSortedSet.Entry("m11", 110), zset.rangeByScore(range, false, 0, -1).get(0));
+            assertEquals(List.of(new RedisSortedSet.Entry("m13", 130), new RedisSortedSet.Entry("m14", 140)),
+                    zset.rangeByScore(range, false, 2, 2));
+            assertEquals(List.of(new RedisSortedSet.Entry("m49", 490), new RedisSortedSet.Entry("m48", 480)),
+                    zset.rangeByScore(range, true, 1, 2));
+            assertTrue(zset.rangeByScore(new RedisSortedSet.ScoreRange(5, false, 5, false), false, 0, -1).isEmpty());
+            assertTrue(zset.rangeByScore(new RedisSortedSet.ScoreRange(100, true, 100, false), false, 0, -1).isEmpty());
+        }
+    }
+
+    @Test
+    @DisplayName("The skiplist should stay consistent with a sorted map through random adds and removes")
+    public void testRandomOperations() {
+        // Arrange
+        EncodingLimits limits = new EncodingLimits().setZsetMaxListpackEntries(0);
+        RedisSortedSet zset = new RedisSortedSet();
+        TreeMap<String, Double> expected = new TreeMap<>();
+        Random random = new Random(42);
+
+        // Act
+        for (int i = 0; i < 5_000; i++) {
+            String member = "m" + random.nextInt(500);
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(member) != null, zset.remove(member));
+            } else {
+                double score = random.nextInt(50);
+                assertEquals(expected.put(member, score) == null, zset.add(member, score, limits));
+            }
+        }
+
+        // Assert
+        List<RedisSortedSet.Entry> sorted = expected.entrySet().stream()
+                .map(entry -> new RedisSortedSet.Entry(entry.getKey(), entry.getValue()))
+                .sorted((a, b) -> a.score() != b.score() ? Double.compare(a.score(), b.score()) : a.member().compareTo(b.member()))
+                .toList();
+        assertEquals(sorted, zset.rangeByScore(ALL, false, 0, -1));
+        assertEquals(sorted, zset.rangeByRank(0, sorted.size() - 1, false));
+        for (int rank = 0; rank < sorted.size(); rank += 7) {
+            assertEquals(rank, zset.rank(sorted.get(rank).member(), false));
+        }
+    }
+
+    @Test
+    @DisplayName("A copy should not change when the original does")
+    public void testCopy() {
+        // Arrange
+        EncodingLimits limits = new EncodingLimits().setZsetMaxListpackEntries(2);
+        RedisSortedSet packed = filled(new EncodingLimits(), 2);
+        RedisSortedSet skiplist = filled(limits, 3);
+
+        // Act
+        RedisSortedSet packedCopy = packed.copy();
+        RedisSortedSet skiplistCopy = skiplist.copy();
+        packed.add("m0", 99, limits);
+        skiplist.remove("m1");
+
+        // Assert
+        assertEquals(0.0, packedCopy.score("m0"));
+        assertEquals(3, skiplistCopy.size());
+        assertEquals(1, skiplistCopy.rank("m1", false));
+        assertEquals(packedCopy.estimatedSize(), filled(new EncodingLimits(), 2).copy().estimatedSize());
+    }
+}
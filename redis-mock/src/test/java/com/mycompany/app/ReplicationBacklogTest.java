@@ -0,0 +1,89 @@
+package com.mycompany.app;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for the circular buffer holding the latest part of the replication stream.
+ */
+public class ReplicationBacklogTest {
+
+    /**
+     * Encodes a string as stream bytes
+     * @param s The string
+     * @return Its bytes
+     */
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    @Test
+    @DisplayName("Should copy out everything from an offset while the backlog is not yet full")
+    public void testCopyFromBeforeWrapping() {
+        // Arrange
+        ReplicationBacklog backlog = new ReplicationBacklog(16, 100);
+
+        // Act
+        backlog.append(bytes("abcdef"), 0, 6);
+
+        // Assert
+        assertEquals(100, backlog.getStartOffset());
+        assertEquals(106, backlog.getEndOffset());
+        assertArrayEquals(bytes("cdef"), backlog.copyFrom(102));
+        assertArrayEquals(new byte[0], backlog.copyFrom(106));
+    }
+
+    @Test
+    @DisplayName("Should keep only the newest bytes once the stream wraps around the ring")
+    public void testWrapAround() {
+        // Arrange
+        ReplicationBacklog backlog = new ReplicationBacklog(8, 0);
+
+        // Act
+        backlog.append(bytes("0123456"), 0, 7);
+        backlog.append(bytes("xxABCDEyy"), 2, 5);
+
+        // Assert
+        assertEquals(4, backlog.getStartOffset());
+        assertEquals(12, backlog.getEndOffset());
+        assertArrayEquals(bytes("456ABCDE"), backlog.copyFrom(4));
+        assertArrayEquals(bytes("CDE"), backlog.copyFrom(9));
+    }
+
+    @Test
+    @DisplayName("Should keep the tail of an append larger than the whole backlog")
+    public void testAppendLargerThanBacklog() {
+        // Arrange
+        ReplicationBacklog backlog = new ReplicationBacklog(4, 3);
+
+        // Act
+        backlog.append(bytes("abcdefghij"), 0, 10);
+
+        // Assert
+        assertEquals(9, backlog.getStartOffset());
+        assertArrayEquals(bytes("ghij"), backlog.copyFrom(9));
+    }
+
+    @Test
+    @DisplayName("Should refuse offsets that have been overwritten or not yet written")
+    public void testCovers() {
+        // Arrange
+        ReplicationBacklog backlog = new ReplicationBacklog(4, 0);
+        backlog.append(bytes("abcdef"), 0, 6);
+
+        // Act & Assert
+        assertFalse(backlog.covers(1));
+        assertTrue(backlog.covers(2));
+        assertTrue(backlog.covers(6));
+        assertFalse(backlog.covers(7));
+        assertThrows(IllegalArgumentException.class, () -> backlog.copyFrom(1));
+    }
+}
@@ -0,0 +1,265 @@
+package com.mycompany.app;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Integration tests for master-replica replication.
+ * Each test starts several servers on free loopback ports, each with its own throwaway files, and
+ * points some of them at the others with REPLICAOF.
+ */
+public class ReplicationTest {
+
+    private static final long WAIT_MILLIS = 10_000;
+
+    @TempDir
+    Path tempDir;
+
+    private final List<RedisServer> servers = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        for (RedisServer server : servers) {
+            server.stop();
+        }
+    }
+
+    /**
+     * Starts a server on a free port
+     * @param name The name its files are given
+     * @param mode How it handles connections
+     * @return The server, already listening
+     */
+    private RedisServer startServer(String name, ServerMode mode) throws InterruptedException {
+        ServerConfig config = new ServerConfig()
+                .setPort(0)
+                .setMode(mode)
+                .setAofFile(tempDir.resolve(name + ".aof").toString())
+                .setRdbFile(tempDir.resolve(name + ".rdb").toString());
+        RedisServer server = new RedisServer(config);
+        servers.add(server);
+        new Thread(server::start, "replication-test-" + name).start();
+        server.awaitStarted(5, TimeUnit.SECONDS);
+        return server;
+    }
+
+    /**
+     * Sends one command on a new connection and reads its reply
+     * @param server The server
+     * @param args The command and its arguments
+     * @return The first line of the reply, or the bulk string's value
+     */
+    private String send(RedisServer server, String... args) throws IOException {
+        try (Socket socket = new Socket("localhost", server.awaitStarted(1, TimeUnit.SECONDS))) {
+            socket.setSoTimeout(2000);
+            socket.getOutputStream().write(RESPParser.encodeCommand(args));
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            String line = in.readLine();
+            if (!line.startsWith("$")) {
+                return line;
+            }
+            int length = Integer.parseInt(line.substring(1));
+            if (length < 0) {
+                return null;
+            }
+            char[] value = new char[length];
+            int read = 0;
+            while (read < length) {
+                read += in.read(value, read, length - read);
+            }
+            return new String(value);
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Polls until a condition holds, failing the test if it does not within the wait
+     * @param description What is waited for
+     * @param condition The condition
+     */
+    private void awaitTrue(String description, Supplier<Boolean> condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + WAIT_MILLIS;
+        while (!condition.get()) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("Timed out waiting until " + description);
+            }
+            Thread.sleep(20);
+        }
+    }
+
+    /**
+     * Polls a key on a server until it has a value
+     * @param server The server
+     * @param key The key
+     * @param expected The value waited for
+     */
+    private void awaitValue(RedisServer server, String key, String expected) throws InterruptedException {
+        awaitTrue(key + " is " + expected, () -> {
+            try {
+                return expected.equals(send(server, "GET", key));
+            } catch (IOException e) {
+                return false;
+            }
+        });
+    }
+
+    /**
+     * Reads one field of a server's INFO
+     * @param server The server
+     * @param field The field name
+     * @return The field's value
+     */
+    private String info(RedisServer server, String field) throws IOException {
+        for (String line : send(server, "INFO").split("\r\n")) {
+            if (line.startsWith(field + ":")) {
+                return line.substring(field.length() + 1);
+            }
+        }
+        throw new AssertionError("INFO has no " + field);
+    }
+
+    /**
+     * Points a replica at a master
+     * @param replica The replica
+     * @param master The master
+     */
+    private void replicate(RedisServer replica, RedisServer master) throws IOException, InterruptedException {
+        assertEquals("+OK", send(replica, "REPLICAOF", "127.0.0.1", Integer.toString(master.awaitStarted(1, TimeUnit.SECONDS))));
+    }
+
+    @Test
+    @DisplayName("Should send a new replica the data set the master already holds, then stream later writes")
+    public void testFullSyncThenStream() throws IOException, InterruptedException {
+        // Arrange
+        RedisServer master = startServer("master", ServerMode.NIO);
+        RedisServer replica = startServer("replica", ServerMode.VIRTUAL);
+        send(master, "SET", "before", "1");
+        send(master, "HSET", "hash", "field", "value");
+
+        // Act
+        replicate(replica, master);
+        send(master, "SET", "after", "2");
+
+        // Assert
+        awaitValue(replica, "after", "2");
+        assertEquals("1", send(replica, "GET", "before"));
+        assertEquals("value", send(replica, "HGET", "hash", "field"));
+        assertEquals("slave", info(replica, "role"));
+        assertEquals("up", info(replica, "master_link_status"));
+        assertEquals(info(master, "master_repl_offset"), info(replica, "master_repl_offset"));
+        assertEquals("1", info(master, "sync_full"));
+    }
+
+    @Test
+    @DisplayName("Should refuse writes from a replica's own clients but still serve reads")
+    public void testReplicaIsReadOnly() throws IOException, InterruptedException {
+        // Arrange
+        RedisServer master = startServer("master", ServerMode.NIO);
+        RedisServer replica = startServer("replica", ServerMode.NIO);
+        replicate(replica, master);
+        send(master, "SET", "key", "value");
+        awaitValue(replica, "key", "value");
+
+        // Act
+        String reply = send(replica, "SET", "key", "other");
+
+        // Assert
+        assertTrue(reply.startsWith("-READONLY"), reply);
+        assertEquals("value", send(replica, "GET", "key"));
+    }
+
+    @Test
+    @DisplayName("Should pass the stream down a chain of replicas unchanged")
+    public void testChainedReplicas() throws IOException, InterruptedException {
+        // Arrange
+        RedisServer master = startServer("master", ServerMode.VIRTUAL);
+        RedisServer middle = startServer("middle", ServerMode.NIO);
+        RedisServer leaf = startServer("leaf", ServerMode.VIRTUAL);
+        replicate(middle, master);
+        awaitTrue("the middle replica is in sync", () -> {
+            try {
+                return info(middle, "master_link_status").equals("up");
+            } catch (IOException e) {
+                return false;
+            }
+        });
+        replicate(leaf, middle);
+
+        // Act
+        send(master, "RPUSH", "list", "a", "b", "c");
+        send(master, "SET", "key", "value");
+
+        // Assert
+        awaitValue(leaf, "key", "value");
+        assertEquals(":3", send(leaf, "LLEN", "list"));
+        assertEquals(info(master, "master_repl_offset"), info(leaf, "master_repl_offset"));
+        assertEquals(info(master, "master_replid"), info(leaf, "master_replid"));
+    }
+
+    @Test
+    @DisplayName("Should resume a replica that reconnects from the backlog instead of a full resync")
+    public void testPartialResyncAfterReconnect() throws IOException, InterruptedException {
+        // Arrange
+        RedisServer master = startServer("master", ServerMode.NIO);
+        RedisServer replica = startServer("replica", ServerMode.NIO);
+        replicate(replica, master);
+        send(master, "SET", "first", "1");
+        awaitValue(replica, "first", "1");
+        MasterLink link = replica.getReplication().getMasterLink();
+
+        // Act
+        link.dropConnection();
+        send(master, "SET", "second", "2");
+        send(master, "INCR", "counter");
+
+        // Assert
+        awaitValue(replica, "second", "2");
+        assertEquals("1", send(replica, "GET", "counter"));
+        awaitTrue("the master counts a partial resync", () -> {
+            try {
+                return info(master, "sync_partial_ok").equals("1");
+            } catch (IOException e) {
+                return false;
+            }
+        });
+        assertEquals("1", info(master, "sync_full"));
+    }
+
+    @Test
+    @DisplayName("Should become a writable master again after REPLICAOF NO ONE, keeping the replicated data")
+    public void testReplicaOfNoOne() throws IOException, InterruptedException {
+        // Arrange
+        RedisServer master = startServer("master", ServerMode.NIO);
+        RedisServer replica = startServer("replica", ServerMode.VIRTUAL);
+        replicate(replica, master);
+        send(master, "SET", "key", "value");
+        awaitValue(replica, "key", "value");
+
+        // Act
+        String reply = send(replica, "REPLICAOF", "NO", "ONE");
+
+        // Assert
+        assertEquals("+OK", reply);
+        assertEquals("master", info(replica, "role"));
+        assertEquals("+OK", send(replica, "SET", "key", "changed"));
+        assertEquals("value", send(master, "GET", "key"));
+    }
+}
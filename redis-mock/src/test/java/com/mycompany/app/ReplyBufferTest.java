@@ -0,0 +1,90 @@
+package com.mycompany.app;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the ReplyBuffer encoder.
+ */
+public class ReplyBufferTest {
+
+    /**
+     * Encodes a single reply
+     * @param data The value to encode
+     * @return The encoded bytes as UTF-8 text
+     */
+    private String encode(Object data) {
+        ReplyBuffer buffer = new ReplyBuffer();
+        buffer.write(data);
+        return new String(buffer.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    @DisplayName("Should encode constant replies as simple strings")
+    public void testConstantReplies() {
+        assertEquals("+OK\r\n", encode("OK"));
+        assertEquals("+PONG\r\n", encode("PONG"));
+        assertEquals("$-1\r\n", encode(null));
+    }
+
+    @Test
+    @DisplayName("Should size bulk strings by their UTF-8 byte length")
+    public void testNonAsciiBulkLength() {
+        String value = "héllo €";
+
+        String encoded = encode(value);
+
+        assertEquals("$10\r\nhéllo €\r\n", encoded);
+    }
+
+    @Test
+    @DisplayName("Should encode integers, errors and nested arrays")
+    public void testOtherReplyTypes() {
+        assertEquals(":42\r\n", encode(42L));
+        assertEquals(":-12345\r\n", encode(-12345L));
+        assertEquals(":1234567890123\r\n", encode(1234567890123L));
+        assertEquals("-ERR boom\r\n", encode(new Exception("ERR boom")));
+        assertEquals("*3\r\n$1\r\na\r\n$-1\r\n*1\r\n:7\r\n", encode(new Object[]{"a", null, new Object[]{7L}}));
+    }
+
+    @Test
+    @DisplayName("Should reuse the same buffer across flushes")
+    public void testFlushAndReuse() throws IOException {
+        ReplyBuffer buffer = new ReplyBuffer();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        buffer.write("OK");
+        buffer.write("value");
+        buffer.flushTo(out);
+        buffer.write("PONG");
+        buffer.flushTo(out);
+
+        assertEquals("+OK\r\n$5\r\nvalue\r\n+PONG\r\n", out.toString(StandardCharsets.UTF_8));
+        assertEquals(0, buffer.pending());
+    }
+
+    @Test
+    @DisplayName("Should grow for replies larger than the initial buffer")
+    public void testLargeReply() {
+        String value = "x".repeat(100_000);
+
+        String encoded = encode(value);
+
+        assertEquals("$100000\r\n" + value + "\r\n", encoded);
+    }
+
+    @Test
+    @DisplayName("Should encode integer-encoded values as bulk strings of their digits")
+    public void testIntegerValueIsBulk() {
+        assertEquals("$1\r\n7\r\n", encode(IntegerValue.of(7)));
+        assertEquals("$6\r\n-12345\r\n", encode(IntegerValue.of(-12345)));
+        assertEquals("$20\r\n-9223372036854775808\r\n", encode(IntegerValue.of(Long.MIN_VALUE)));
+        assertEquals("*2\r\n$2\r\n42\r\n:42\r\n", encode(new Object[]{IntegerValue.of(42), 42L}));
+    }
+}
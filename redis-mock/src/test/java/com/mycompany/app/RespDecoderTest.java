@@ -0,0 +1,104 @@
+package com.mycompany.app;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the incremental RespDecoder.
+ * Buffers are filled the way connections fill them: written to, flipped, decoded and compacted.
+ */
+public class RespDecoderTest {
+
+    /**
+     * Appends bytes to a buffer in write mode
+     * @param buffer The buffer to append to
+     * @param text The bytes to append, as ISO-8859-1 text so any byte value can be written
+     */
+    private void append(ByteBuffer buffer, String text) {
+        buffer.put(text.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    @Test
+    @DisplayName("Should decode a command into argument slices")
+    public void testDecodeCommand() throws IOException {
+        RespDecoder decoder = new RespDecoder();
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        append(buffer, "*2\r\n$3\r\nget\r\n$3\r\nkey\r\n");
+        buffer.flip();
+
+        RespCommand command = decoder.decode(buffer);
+
+        assertNotNull(command);
+        assertEquals(2, command.argCount());
+        assertTrue(command.argEqualsIgnoreCase(0, "GET"));
+        assertEquals("key", command.argString(1));
+        assertArrayEquals(new Object[]{"get", "key"}, command.toArray());
+        assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    @DisplayName("Should skip empty multibulks and decode the command after them")
+    public void testSkipsEmptyMultibulk() throws IOException {
+        RespDecoder decoder = new RespDecoder();
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        append(buffer, "*0\r\n*-1\r\n*1\r\n$4\r\nPING\r\n*0\r\n");
+        buffer.flip();
+
+        RespCommand command = decoder.decode(buffer);
+
+        assertNotNull(command);
+        assertEquals(1, command.argCount());
+        assertTrue(command.argEqualsIgnoreCase(0, "PING"));
+        assertNull(decoder.decode(buffer));
+        assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    @DisplayName("Should resume a command split across reads after the buffer is compacted")
+    public void testResumesPartialCommand() throws IOException {
+        RespDecoder decoder = new RespDecoder();
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        append(buffer, "*1\r\n$4\r\nPING\r\n*3\r\n$3\r\nSET\r\n$1\r\nk\r\n$5\r\nhel");
+        buffer.flip();
+
+        assertTrue(decoder.decode(buffer).argEqualsIgnoreCase(0, "PING"));
+        assertNull(decoder.decode(buffer));
+        buffer.compact();
+        append(buffer, "lo\r\n");
+        buffer.flip();
+        RespCommand command = decoder.decode(buffer);
+
+        assertNotNull(command);
+        assertArrayEquals(new Object[]{"SET", "k", "hello"}, command.toArray());
+        assertNull(decoder.decode(buffer));
+    }
+
+    @Test
+    @DisplayName("Should keep bulk strings binary safe")
+    public void testBinarySafeValue() throws IOException {
+        RespDecoder decoder = new RespDecoder();
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        append(buffer, "*2\r\n$3\r\nSET\r\n$4\r\n\r\n\u0000ÿ\r\n");
+        buffer.flip();
+
+        RespCommand command = decoder.decode(buffer);
+
+        assertArrayEquals(new byte[]{'\r', '\n', 0, (byte) 0xff}, command.argBytes(1));
+    }
+
+    @Test
+    @DisplayName("Should reject frames that are not arrays of bulk strings")
+    public void testRejectsInvalidFrames() {
+        ByteBuffer inline = ByteBuffer.wrap("PING\r\n".getBytes(StandardCharsets.US_ASCII));
+        ByteBuffer badLength = ByteBuffer.wrap("*1\r\n$x\r\n".getBytes(StandardCharsets.US_ASCII));
+
+        assertThrows(IOException.class, () -> new RespDecoder().decode(inline));
+        assertThrows(IOException.class, () -> new RespDecoder().decode(badLength));
+    }
+}
@@ -0,0 +1,203 @@
+package com.mycompany.app;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.IntConsumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for SCAN, KEYS, HSCAN and ZSCAN, run through the CommandExecutor over a partitioned heap keyspace.
+ */
+@ExtendWith(MockitoExtension.class)
+public class ScanCommandsTest {
+
+    @Mock
+    private AofPersistence mockAofPersistence;
+
+    @Mock
+    private RdbPersistence mockRdbPersistence;
+
+    private CommandExecutor commandExecutor;
+
+    @BeforeEach
+    void setUp() {
+        commandExecutor = new CommandExecutor(new HeapKeyspace(), mockAofPersistence, mockRdbPersistence);
+    }
+
+    /**
+     * Walks a whole scan, running an action between calls
+     * @param command The scan command, with "0" where the cursor goes
+     * @param cursorIndex The index of the cursor in the command
+     * @param between Called after each call with the number of calls made so far
+     * @return Every element returned, in order
+     */
+    private List<Object> walk(Object[] command, int cursorIndex, IntConsumer between) {
+        List<Object> elements = new ArrayList<>();
+        String cursor = "0";
+        int calls = 0;
+        do {
+            command[cursorIndex] = cursor;
+            Object[] reply = (Object[]) commandExecutor.execute(command.clone());
+            cursor = (String) reply[0];
+            elements.addAll(List.of((Object[]) reply[1]));
+            between.accept(++calls);
+        } while (!cursor.equals("0"));
+        return elements;
+    }
+
+    @Test
+    @DisplayName("SCAN should return every key present throughout in bounded steps, while keys are added and removed")
+    public void testScanNeverMissesAKey() {
+        // Arrange
+        for (int i = 0; i < 20_000; i++) {
+            commandExecutor.execute(new Object[]{"SET", "stable:" + i, "value"});
+            commandExecutor.execute(new Object[]{"SET", "gone:" + i, "value"});
+        }
+        int calls = 0;
+        int largest = 0;
+
+        // Act
+        List<Object> keys = new ArrayList<>();
+        String cursor = "0";
+        do {
+            Object[] reply = (Object[]) commandExecutor.execute(new Object[]{"SCAN", cursor, "COUNT", "20"});
+            cursor = (String) reply[0];
+            Object[] step = (Object[]) reply[1];
+            keys.addAll(List.of(step));
+            largest = Math.max(largest, step.length);
+            commandExecutor.execute(new Object[]{"DEL", "gone:" + calls});
+            commandExecutor.execute(new Object[]{"SET", "added:" + calls++, "value"});
+        } while (!cursor.equals("0"));
+
+        // Assert
+        Set<Object> seen = new HashSet<>(keys);
+        for (int i = 0; i < 20_000; i++) {
+            assertTrue(seen.contains("stable:" + i), "stable:" + i + " was missed");
+        }
+        assertTrue(calls > 100, "The walk took " + calls + " calls");
+        assertTrue(largest < 200, "A step returned " + largest + " keys");
+    }
+
+    @Test
+    @DisplayName("SCAN should filter by MATCH and TYPE and leave out expired keys")
+    public void testScanFilters() {
+        // Arrange
+        commandExecutor.execute(new Object[]{"SET", "user:1", "ada"});
+        commandExecutor.execute(new Object[]{"SET", "user:2", "grace"});
+        commandExecutor.execute(new Object[]{"SET", "order:1", "book"});
+        commandExecutor.execute(new Object[]{"HSET", "user:3", "name", "alan"});
+        commandExecutor.execute(new Object[]{"RPUSH", "queue", "job"});
+        commandExecutor.execute(new Object[]{"SET", "user:old", "gone"});
+        commandExecutor.getExpires().set("user:old", 1);
+
+        // Act
+        Set<Object> users = new HashSet<>(walk(new Object[]{"SCAN", null, "MATCH", "user:*"}, 1, calls -> { }));
+        Set<Object> hashes = new HashSet<>(walk(new Object[]{"SCAN", null, "TYPE", "hash"}, 1, calls -> { }));
+        Set<Object> stringUsers = new HashSet<>(walk(new Object[]{"SCAN", null, "MATCH", "user:*", "TYPE", "STRING"}, 1, calls -> { }));
+        Set<Object> all = new HashSet<>(walk(new Object[]{"SCAN", null, "COUNT", "1000"}, 1, calls -> { }));
+
+        // Assert
+        assertEquals(Set.of("user:1", "user:2", "user:3"), users);
+        assertEquals(Set.of("user:3"), hashes);
+        assertEquals(Set.of("user:1", "user:2"), stringUsers);
+        assertEquals(Set.of("user:1", "user:2", "user:3", "order:1", "queue"), all);
+        assertEquals(0, commandExecutor.getExpires().size());
+        assertEquals(Set.of("user:1", "user:2", "user:3"), Set.of((Object[]) commandExecutor.execute(new Object[]{"KEYS", "user:?"})));
+        assertEquals(5, ((Object[]) commandExecutor.execute(new Object[]{"KEYS", "*"})).length);
+    }
+
+    @Test
+    @DisplayName("HSCAN should walk a large hash in steps without missing a field, and return a packed hash whole")
+    public void testHscan() {
+        // Arrange
+        for (int i = 0; i < 2_000; i++) {
+            commandExecutor.execute(new Object[]{"HSET", "big", "field:" + i, "value:" + i});
+        }
+        commandExecutor.execute(new Object[]{"HSET", "small", "a", "1", "b", "2"});
+
+        // Act
+        List<Object> entries = walk(new Object[]{"HSCAN", "big", null, "COUNT", "50"}, 2, calls -> {
+            // churn the hash so it grows and shrinks during the walk
+            for (int i = 0; i < 100; i++) {
+                commandExecutor.execute(new Object[]{"HSET", "big", "extra:" + calls + ":" + i, "x"});
+            }
+            for (int i = 0; i < 100 && calls > 1; i++) {
+                commandExecutor.execute(new Object[]{"HDEL", "big", "extra:" + (calls - 1) + ":" + i});
+            }
+        });
+        Object[] small = (Object[]) commandExecutor.execute(new Object[]{"HSCAN", "small", "0", "MATCH", "a"});
+        Object[] noValues = (Object[]) commandExecutor.execute(new Object[]{"HSCAN", "small", "0", "NOVALUES"});
+
+        // Assert
+        Set<String> fields = new HashSet<>();
+        for (int i = 0; i < entries.size(); i += 2) {
+            String field = (String) entries.get(i);
+            fields.add(field);
+            if (field.startsWith("field:")) {
+                assertEquals("value:" + field.substring(6), entries.get(i + 1));
+            }
+        }
+        for (int i = 0; i < 2_000; i++) {
+            assertTrue(fields.contains("field:" + i), "field:" + i + " was missed");
+        }
+        assertEquals("0", small[0]);
+        assertArrayEquals(new Object[]{"a", "1"}, (Object[]) small[1]);
+        assertEquals(Set.of("a", "b"), Set.of((Object[]) noValues[1]));
+        assertArrayEquals(new Object[]{"0", new Object[0]}, (Object[]) commandExecutor.execute(new Object[]{"HSCAN", "missing", "0"}));
+    }
+
+    @Test
+    @DisplayName("ZSCAN should walk a large sorted set in steps and return members with their scores")
+    public void testZscan() {
+        // Arrange
+        for (int i = 0; i < 1_000; i++) {
+            commandExecutor.execute(new Object[]{"ZADD", "board", String.valueOf(i), "player:" + i});
+        }
+        commandExecutor.execute(new Object[]{"ZADD", "small", "1.5", "ada"});
+
+        // Act
+        List<Object> entries = walk(new Object[]{"ZSCAN", "board", null, "MATCH", "player:1*"}, 2, calls -> { });
+        Object[] small = (Object[]) commandExecutor.execute(new Object[]{"ZSCAN", "small", "0"});
+
+        // Assert
+        Set<Object> members = new HashSet<>();
+        for (int i = 0; i < entries.size(); i += 2) {
+            String member = (String) entries.get(i);
+            assertTrue(member.startsWith("player:1"));
+            assertEquals(member.substring(7), entries.get(i + 1));
+            members.add(member);
+        }
+        assertEquals(111, members.size());
+        assertArrayEquals(new Object[]{"0", new Object[]{"ada", "1.5"}}, small);
+    }
+
+    @Test
+    @DisplayName("The scan commands should refuse bad cursors, bad options and keys of another type")
+    public void testErrors() {
+        // Arrange
+        commandExecutor.execute(new Object[]{"SET", "string", "value"});
+        commandExecutor.execute(new Object[]{"HSET", "hash", "a", "1"});
+
+        // Act and Assert
+        for (Object[] command : new Object[][]{
+                {"SCAN", "x"}, {"SCAN", "-1"}, {"SCAN", "0", "COUNT", "0"}, {"SCAN", "0", "COUNT", "many"},
+                {"SCAN", "0", "MATCH"}, {"SCAN", "0", "NOVALUES"}, {"HSCAN", "hash", "0", "TYPE", "hash"},
+                {"ZSCAN", "hash", "0", "NOVALUES"}, {"HSCAN", "hash", "bad"}}) {
+            assertInstanceOf(Exception.class, commandExecutor.execute(command), List.of(command).toString());
+        }
+        Object wrongType = commandExecutor.execute(new Object[]{"ZSCAN", "hash", "0"});
+        assertEquals(CommandExecutor.WRONGTYPE, ((Exception) wrongType).getMessage());
+        wrongType = commandExecutor.execute(new Object[]{"HSCAN", "string", "0"});
+        assertEquals(CommandExecutor.WRONGTYPE, ((Exception) wrongType).getMessage());
+    }
+}
@@ -0,0 +1,403 @@
+package com.mycompany.app;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for the ShardedExecutor, with its AOF and snapshot segments in a temporary directory.
+ */
+public class ShardedExecutorTest {
+
+    @TempDir
+    Path tempDir;
+
+    private ShardedExecutor executor;
+
+    @AfterEach
+    void tearDown() {
+        if (executor != null) {
+            executor.stop();
+        }
+    }
+
+    /**
+     * Builds a configuration with the given shard count and files in the temporary directory
+     * @param shards The shard count
+     * @return The configuration
+     */
+    private ServerConfig config(int shards) {
+        return new ServerConfig()
+                .setShards(shards)
+                .setAppendFsync(AppendFsync.NO)
+                .setAofFile(tempDir.resolve("redis.aof").toString())
+                .setRdbFile(tempDir.resolve("dump.rdb").toString());
+    }
+
+    /**
+     * Finds two keys owned by different shards
+     * @param sharded The executor
+     * @return The two keys
+     */
+    private static String[] keysOnTwoShards(ShardedExecutor sharded) {
+        String first = "key:0";
+        for (int i = 1; ; i++) {
+            String other = "key:" + i;
+            if (sharded.shardOf(other) != sharded.shardOf(first)) {
+                return new String[]{first, other};
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Commands should be run by the shard owning their key, each shard logging to its own segment")
+    public void testCommandsRouteToOwningShard() throws Exception {
+        // Arrange
+        executor = new ShardedExecutor(config(4));
+        executor.load();
+
+        // Act
+        for (int i = 0; i < 100; i++) {
+            executor.execute(new Object[]{"SET", "key:" + i, "value:" + i});
+        }
+        Object reply = executor.execute(new Object[]{"GET", "key:42"});
+        executor.stop();
+        executor = null;
+
+        // Assert
+        assertEquals("value:42", reply);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(Files.size(tempDir.resolve("redis.aof." + i)) > 0, "Segment " + i + " is empty");
+        }
+    }
+
+    @Test
+    @DisplayName("SCAN should walk every shard in turn and KEYS should gather the keys of all of them")
+    public void testScanAcrossShards() {
+        // Arrange
+        executor = new ShardedExecutor(config(4));
+        executor.load();
+        for (int i = 0; i < 500; i++) {
+            executor.execute(new Object[]{"SET", "key:" + i, "value"});
+        }
+
+        // Act
+        Set<Object> scanned = new HashSet<>();
+        String cursor = "0";
+        int calls = 0;
+        do {
+            Object[] reply = (Object[]) executor.execute(new Object[]{"SCAN", cursor, "COUNT", "100"});
+            cursor = (String) reply[0];
+            scanned.addAll(List.of((Object[]) reply[1]));
+            calls++;
+        } while (!cursor.equals("0"));
+        Object[] keys = (Object[]) executor.execute(new Object[]{"KEYS", "key:1?"});
+
+        // Assert
+        assertEquals(500, scanned.size());
+        assertTrue(calls >= 4, "The walk took " + calls + " calls");
+        assertEquals(10, keys.length);
+        assertInstanceOf(Exception.class, executor.execute(new Object[]{"SCAN", "nope"}));
+    }
+
+    @Test
+    @DisplayName("DEL over keys of several shards should be split by shard and the counts added up")
+    public void testMultiKeyCommandIsSplit() {
+        // Arrange
+        executor = new ShardedExecutor(config(4));
+        executor.load();
+        String[] keys = keysOnTwoShards(executor);
+        executor.execute(new Object[]{"SET", keys[0], "a"});
+        executor.execute(new Object[]{"SET", keys[1], "b"});
+
+        // Act
+        Object deleted = executor.execute(new Object[]{"DEL", keys[0], keys[1], "missing"});
+
+        // Assert
+        assertEquals(2L, deleted);
+        assertNull(executor.execute(new Object[]{"GET", keys[0]}));
+        assertNull(executor.execute(new Object[]{"GET", keys[1]}));
+    }
+
+    @Test
+    @DisplayName("INFO should add up the shards' keyspace and errors should come back from the shards")
+    public void testInfoAndErrors() {
+        // Arrange
+        executor = new ShardedExecutor(config(3));
+        executor.load();
+        for (int i = 0; i < 30; i++) {
+            executor.execute(new Object[]{"SET", "key:" + i, "value", "EX", "100"});
+        }
+
+        // Act
+        String info = (String) executor.execute(new Object[]{"INFO"});
+        Object unknown = executor.execute(new Object[]{"NOPE"});
+        Object arity = executor.execute(new Object[]{"GET"});
+
+        // Assert
+        assertTrue(info.contains("db0:keys=30,expires=30\r\n"), info);
+        assertTrue(info.contains("aof_enabled:1\r\n"), info);
+        assertTrue(info.contains("# Sharding\r\nshards:3\r\n"), info);
+        assertInstanceOf(Exception.class, unknown);
+        assertEquals("ERR wrong number of arguments for 'GET' command", ((Exception) arity).getMessage());
+    }
+
+    @Test
+    @DisplayName("Data should survive a restart, including one with a different shard count")
+    public void testRestartWithDifferentShardCount() {
+        // Arrange
+        executor = new ShardedExecutor(config(4));
+        executor.load();
+        for (int i = 0; i < 200; i++) {
+            executor.execute(new Object[]{"SET", "key:" + i, "value:" + i});
+        }
+        executor.execute(new Object[]{"INCRBY", "counter", "5"});
+        executor.stop();
+
+        // Act
+        executor = new ShardedExecutor(config(4));
+        executor.load();
+        Object sameCount = executor.execute(new Object[]{"GET", "key:7"});
+        executor.execute(new Object[]{"INCRBY", "counter", "5"});
+        executor.stop();
+        executor = new ShardedExecutor(config(2));
+        executor.load();
+
+        // Assert
+        assertEquals("value:7", sameCount);
+        for (int i = 0; i < 200; i++) {
+            assertEquals("value:" + i, executor.execute(new Object[]{"GET", "key:" + i}));
+        }
+        assertEquals("10", String.valueOf(executor.execute(new Object[]{"GET", "counter"})));
+        assertFalse(Files.exists(tempDir.resolve("redis.aof.2")));
+        assertFalse(Files.exists(tempDir.resolve("redis.aof.3")));
+    }
+
+    @Test
+    @DisplayName("Concurrent clients writing to every shard should all have their writes applied")
+    public void testConcurrentClients() throws Exception {
+        // Arrange
+        executor = new ShardedExecutor(config(4));
+        executor.load();
+        ExecutorService clients = Executors.newFixedThreadPool(8);
+        List<Future<?>> done = new ArrayList<>();
+
+        // Act
+        for (int c = 0; c < 8; c++) {
+            done.add(clients.submit(() -> {
+                for (int i = 0; i < 500; i++) {
+                    executor.execute(new Object[]{"INCR", "counter:" + (i % 20)});
+                }
+            }));
+        }
+        for (Future<?> future : done) {
+            future.get();
+        }
+        clients.shutdown();
+
+        // Assert
+        for (int i = 0; i < 20; i++) {
+            assertEquals("200", String.valueOf(executor.execute(new Object[]{"GET", "counter:" + i})));
+        }
+    }
+
+    @Test
+    @DisplayName("MGET and EXISTS over several shards should be split and put back in key order, MSET and MSETNX run on every shard together")
+    public void testMultiKeyReadsAndWritesAcrossShards() {
+        // Arrange
+        executor = new ShardedExecutor(config(4));
+        executor.load();
+        String[] keys = keysOnTwoShards(executor);
+
+        // Act
+        Object set = executor.execute(new Object[]{"MSET", keys[0], "a", keys[1], "b"});
+        Object values = executor.execute(new Object[]{"MGET", keys[1], "missing", keys[0]});
+        Object exists = executor.execute(new Object[]{"EXISTS", keys[0], keys[1], keys[0]});
+        Object refused = executor.execute(new Object[]{"MSETNX", "missing", "c", keys[1], "d"});
+        Object setNx = executor.execute(new Object[]{"MSETNX", "new:0", "e", "new:1", "f", "new:2", "g"});
+
+        // Assert
+        assertEquals("OK", set);
+        assertArrayEquals(new Object[]{"b", null, "a"}, (Object[]) values);
+        assertEquals(3L, exists);
+        assertEquals(0L, refused);
+        assertEquals(0L, executor.execute(new Object[]{"EXISTS", "missing"}));
+        assertEquals(1L, setNx);
+        assertArrayEquals(new Object[]{"e", "f", "g"}, (Object[]) executor.execute(new Object[]{"MGET", "new:0", "new:1", "new:2"}));
+    }
+
+    @Test
+    @DisplayName("Keys with the same hash tag should share a shard, and other multi-key commands over several shards be refused")
+    public void testHashTagsKeepKeysTogether() {
+        // Arrange
+        executor = new ShardedExecutor(config(3));
+        executor.load();
+        String[] keys = keysOnTwoShards(executor);
+
+        executor.execute(new Object[]{"RPUSH", "{t}1", "x"});
+
+        // Act
+        Object tagged = executor.execute(new Object[]{"BLPOP", "{t}2", "{t}1", "0"});
+        Object crossShard = executor.execute(new Object[]{"BLPOP", keys[0], keys[1], "0"});
+
+        // Assert
+        for (int i = 0; i < 20; i++) {
+            assertEquals(executor.shardOf("{t}0"), executor.shardOf("{t}" + i));
+        }
+        assertEquals(executor.shardOf("a{t}b"), executor.shardOf("{t}"));
+        assertArrayEquals(new Object[]{"{t}1", "x"}, (Object[]) tagged);
+        assertTrue(((Exception) crossShard).getMessage().startsWith("ERR keys in request are on different shards"));
+    }
+
+    @Test
+    @DisplayName("Concurrent MSETs over the same shards should all complete, each one seen whole")
+    public void testConcurrentCoordinatedWrites() throws Exception {
+        // Arrange
+        executor = new ShardedExecutor(config(4));
+        executor.load();
+        String[] keys = keysOnTwoShards(executor);
+        ExecutorService clients = Executors.newFixedThreadPool(8);
+
+        // Act
+        List<Future<Object>> replies = new ArrayList<>();
+        for (int i = 0; i < 2_000; i++) {
+            String value = Integer.toString(i);
+            // alternate the key order so the shards are named in both orders
+            Object[] command = i % 2 == 0
+                    ? new Object[]{"MSET", keys[0], value, keys[1], value}
+                    : new Object[]{"MSET", keys[1], value, keys[0], value};
+            replies.add(clients.submit(() -> executor.execute(command)));
+        }
+        for (Future<Object> reply : replies) {
+            assertEquals("OK", reply.get(10, TimeUnit.SECONDS));
+        }
+        clients.shutdown();
+
+        // Assert
+        Object[] values = (Object[]) executor.execute(new Object[]{"MGET", keys[0], keys[1]});
+        assertEquals(values[0], values[1]);
+    }
+
+    @Test
+    @DisplayName("PING, COMMAND and unknown commands should be answered without waiting on a shard")
+    public void testKeylessCommandsSkipTheShards() {
+        // Arrange
+        executor = new ShardedExecutor(config(2));
+        executor.load();
+        // with the shard threads gone, anything queued to a shard would never be answered
+        executor.stop();
+
+        // Act
+        Object ping = assertTimeoutPreemptively(Duration.ofSeconds(5), () -> executor.execute(new Object[]{"PING"}));
+        Object count = assertTimeoutPreemptively(Duration.ofSeconds(5), () -> executor.execute(new Object[]{"COMMAND", "COUNT"}));
+        Object unknown = assertTimeoutPreemptively(Duration.ofSeconds(5), () -> executor.execute(new Object[]{"NOSUCH"}));
+        Object arity = assertTimeoutPreemptively(Duration.ofSeconds(5), () -> executor.execute(new Object[]{"GET"}));
+
+        // Assert
+        assertEquals("PONG", ping);
+        assertInstanceOf(Long.class, count);
+        assertEquals("ERR unknown command 'NOSUCH'", ((Exception) unknown).getMessage());
+        assertTrue(((Exception) arity).getMessage().startsWith("ERR wrong number of arguments"));
+    }
+
+    @Test
+    @DisplayName("A connection should get a deferred reply rather than wait for a shard that has not answered yet")
+    public void testConnectionDoesNotWaitForShard() throws Exception {
+        // Arrange
+        executor = new ShardedExecutor(config(2));
+        executor.load();
+        RespCommand get = new RespDecoder().decode(ByteBuffer.wrap(RESPParser.encodeCommand(new Object[]{"GET", "key"})));
+        CommandSpec spec = executor.lookup(get);
+        // with the shard threads gone nothing queued to a shard is answered
+        executor.stop();
+
+        // Act
+        Object reply = assertTimeoutPreemptively(Duration.ofSeconds(5), () -> executor.execute(spec, get.toArray(spec), false));
+
+        // Assert
+        DeferredReply deferred = assertInstanceOf(DeferredReply.class, reply);
+        assertFalse(deferred.isDone());
+    }
+
+    @Test
+    @DisplayName("Pipelined commands over NIO should be answered in order while the reactor waits for no shard")
+    public void testNioPipelineOverShards() throws Exception {
+        // Arrange
+        executor = new ShardedExecutor(config(4));
+        executor.load();
+        String[] keys = keysOnTwoShards(executor);
+        NioServer server = new NioServer(0, 1, executor);
+        Thread serverThread = new Thread(server::start, "nio-sharded-test");
+        serverThread.start();
+        Object[][] commands = {
+                {"SET", keys[0], "a"},
+                {"MSET", keys[0], "b", keys[1], "c"},
+                {"MGET", keys[0], keys[1]},
+                {"PING"}
+        };
+        ByteArrayOutputStream pipeline = new ByteArrayOutputStream();
+        for (Object[] command : commands) {
+            pipeline.write(RESPParser.encodeCommand(command));
+        }
+        String expected = "+OK\r\n+OK\r\n*2\r\n$1\r\nb\r\n$1\r\nc\r\n+PONG\r\n";
+
+        // Act
+        String replies;
+        try (Socket socket = new Socket("localhost", server.getLocalPort())) {
+            socket.setSoTimeout(2000);
+            socket.getOutputStream().write(pipeline.toByteArray());
+            replies = new String(socket.getInputStream().readNBytes(expected.length()), StandardCharsets.UTF_8);
+        } finally {
+            server.stop();
+            serverThread.join(5000);
+        }
+
+        // Assert
+        assertEquals(expected, replies);
+    }
+
+    @Test
+    @DisplayName("A blocking pop should park on its shard without holding up the shard's other commands")
+    public void testBlockingPop() throws Exception {
+        // Arrange
+        executor = new ShardedExecutor(config(2));
+        String[] keys = keysOnTwoShards(executor);
+
+        // Act
+        Object blocked = executor.execute(new Object[]{"BLPOP", keys[0], "0"});
+        Object crossSlot = executor.execute(new Object[]{"BLPOP", keys[0], keys[1], "0"});
+        executor.execute(new Object[]{"SET", "other", "value"});
+        executor.execute(new Object[]{"RPUSH", keys[0], "job"});
+
+        // Assert
+        DeferredReply reply = assertInstanceOf(DeferredReply.class, blocked);
+        assertArrayEquals(new Object[]{keys[0], "job"}, (Object[]) reply.await());
+        assertInstanceOf(Exception.class, crossSlot);
+        assertEquals(0L, executor.execute(new Object[]{"LLEN", keys[0]}));
+    }
+}
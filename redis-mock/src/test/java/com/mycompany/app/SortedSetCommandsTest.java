@@ -0,0 +1,179 @@
+package com.mycompany.app;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for the sorted set commands, run through the CommandExecutor with the AOF mocked.
+ */
+@ExtendWith(MockitoExtension.class)
+public class SortedSetCommandsTest {
+
+    private ConcurrentHashMap<String, Object> dataStore;
+
+    @Mock
+    private AofPersistence mockAofPersistence;
+
+    private CommandExecutor commandExecutor;
+
+    @BeforeEach
+    void setUp() {
+        dataStore = new ConcurrentHashMap<>();
+        commandExecutor = new CommandExecutor(dataStore, mockAofPersistence);
+    }
+
+    @Test
+    @DisplayName("ZADD should count new members and ZSCORE, ZCARD, ZRANK and ZRANGE should read them back")
+    public void testAddAndRead() {
+        // Act
+        Object added = commandExecutor.execute(new Object[]{"ZADD", "board", "10", "ada", "5", "grace", "7.5", "alan"});
+        Object updated = commandExecutor.execute(new Object[]{"ZADD", "board", "1", "ada"});
+
+        // Assert
+        assertEquals(3L, added);
+        assertEquals(0L, updated);
+        assertEquals("1", commandExecutor.execute(new Object[]{"ZSCORE", "board", "ada"}));
+        assertEquals("7.5", commandExecutor.execute(new Object[]{"ZSCORE", "board", "alan"}));
+        assertNull(commandExecutor.execute(new Object[]{"ZSCORE", "board", "missing"}));
+        assertEquals(3L, commandExecutor.execute(new Object[]{"ZCARD", "board"}));
+        assertEquals(2L, commandExecutor.execute(new Object[]{"ZRANK", "board", "alan"}));
+        assertNull(commandExecutor.execute(new Object[]{"ZRANK", "board", "missing"}));
+        assertArrayEquals(new Object[]{"ada", "grace", "alan"}, (Object[]) commandExecutor.execute(new Object[]{"ZRANGE", "board", "0", "-1"}));
+        assertArrayEquals(new Object[]{"alan", "7.5", "grace", "5"},
+                (Object[]) commandExecutor.execute(new Object[]{"ZRANGE", "board", "0", "1", "REV", "WITHSCORES"}));
+        assertArrayEquals(new Object[0], (Object[]) commandExecutor.execute(new Object[]{"ZRANGE", "board", "5", "10"}));
+        assertEquals("listpack", commandExecutor.execute(new Object[]{"OBJECT", "ENCODING", "board"}));
+        verify(mockAofPersistence, times(2)).logCommand(any());
+    }
+
+    @Test
+    @DisplayName("ZADD should honour NX, XX, GT, LT and CH")
+    public void testAddOptions() {
+        // Arrange
+        commandExecutor.execute(new Object[]{"ZADD", "z", "5", "a"});
+
+        // Act and Assert
+        assertEquals(0L, commandExecutor.execute(new Object[]{"ZADD", "z", "NX", "9", "a"}));
+        assertEquals("5", commandExecutor.execute(new Object[]{"ZSCORE", "z", "a"}));
+        assertEquals(0L, commandExecutor.execute(new Object[]{"ZADD", "z", "XX", "1", "b"}));
+        assertNull(commandExecutor.execute(new Object[]{"ZSCORE", "z", "b"}));
+        assertEquals(2L, commandExecutor.execute(new Object[]{"ZADD", "z", "GT", "CH", "6", "a", "1", "b"}));
+        assertEquals(0L, commandExecutor.execute(new Object[]{"ZADD", "z", "GT", "CH", "2", "a"}));
+        assertEquals(1L, commandExecutor.execute(new Object[]{"ZADD", "z", "LT", "CH", "2", "a"}));
+        assertEquals("2", commandExecutor.execute(new Object[]{"ZSCORE", "z", "a"}));
+        assertEquals(0L, commandExecutor.execute(new Object[]{"ZADD", "missing", "XX", "1", "a"}));
+        assertFalse(dataStore.containsKey("missing"));
+        assertInstanceOf(Exception.class, commandExecutor.execute(new Object[]{"ZADD", "z", "NX", "XX", "1", "a"}));
+        assertInstanceOf(Exception.class, commandExecutor.execute(new Object[]{"ZADD", "z", "NX", "GT", "1", "a"}));
+        assertInstanceOf(Exception.class, commandExecutor.execute(new Object[]{"ZADD", "z", "1", "a", "2"}));
+        assertInstanceOf(Exception.class, commandExecutor.execute(new Object[]{"ZADD", "z", "nan", "a"}));
+    }
+
+    @Test
+    @DisplayName("ZINCRBY and ZADD INCR should add to scores and be logged as a plain ZADD")
+    public void testIncrement() {
+        // Act
+        Object first = commandExecutor.execute(new Object[]{"ZINCRBY", "z", "2.5", "a"});
+        Object second = commandExecutor.execute(new Object[]{"ZINCRBY", "z", "-1", "a"});
+        Object incr = commandExecutor.execute(new Object[]{"ZADD", "z", "INCR", "10", "a"});
+        Object blocked = commandExecutor.execute(new Object[]{"ZADD", "z", "NX", "INCR", "10", "a"});
+
+        // Assert
+        assertEquals("2.5", first);
+        assertEquals("1.5", second);
+        assertEquals("11.5", incr);
+        assertNull(blocked);
+        verify(mockAofPersistence).logCommand(new Object[]{"ZADD", "z", "1.5", "a"});
+        verify(mockAofPersistence).logCommand(new Object[]{"ZADD", "z", "11.5", "a"});
+        verify(mockAofPersistence, times(3)).logCommand(any());
+        assertInstanceOf(Exception.class, commandExecutor.execute(new Object[]{"ZINCRBY", "z", "abc", "a"}));
+        commandExecutor.execute(new Object[]{"ZADD", "z", "inf", "b"});
+        assertInstanceOf(Exception.class, commandExecutor.execute(new Object[]{"ZINCRBY", "z", "-inf", "b"}));
+        assertEquals("inf", commandExecutor.execute(new Object[]{"ZSCORE", "z", "b"}));
+    }
+
+    @Test
+    @DisplayName("ZRANGEBYSCORE and ZRANGE BYSCORE should honour exclusive bounds, LIMIT and REV")
+    public void testRangeByScore() {
+        // Arrange
+        for (int i = 1; i <= 10; i++) {
+            commandExecutor.execute(new Object[]{"ZADD", "z", String.valueOf(i), "m" + i});
+        }
+
+        // Act and Assert
+        assertArrayEquals(new Object[]{"m3", "m4", "m5"}, (Object[]) commandExecutor.execute(new Object[]{"ZRANGEBYSCORE", "z", "(2", "5"}));
+        assertArrayEquals(new Object[]{"m4", "4", "m5", "5"},
+                (Object[]) commandExecutor.execute(new Object[]{"ZRANGEBYSCORE", "z", "-inf", "+inf", "WITHSCORES", "LIMIT", "3", "2"}));
+        assertArrayEquals(new Object[]{"m9", "m8"},
+                (Object[]) commandExecutor.execute(new Object[]{"ZRANGE", "z", "(10", "-inf", "BYSCORE", "REV", "LIMIT", "0", "2"}));
+        assertArrayEquals(new Object[0], (Object[]) commandExecutor.execute(new Object[]{"ZRANGEBYSCORE", "z", "6", "5"}));
+        assertInstanceOf(Exception.class, commandExecutor.execute(new Object[]{"ZRANGEBYSCORE", "z", "a", "5"}));
+        assertInstanceOf(Exception.class, commandExecutor.execute(new Object[]{"ZRANGE", "z", "0", "1", "LIMIT", "0", "1"}));
+    }
+
+    @Test
+    @DisplayName("ZREM should remove members and the key with its last member")
+    public void testRemove() {
+        // Arrange
+        commandExecutor.execute(new Object[]{"ZADD", "z", "1", "a", "2", "b"});
+
+        // Act
+        Object first = commandExecutor.execute(new Object[]{"ZREM", "z", "a", "missing"});
+        Object none = commandExecutor.execute(new Object[]{"ZREM", "z", "missing"});
+        Object last = commandExecutor.execute(new Object[]{"ZREM", "z", "b"});
+
+        // Assert
+        assertEquals(1L, first);
+        assertEquals(0L, none);
+        assertEquals(1L, last);
+        assertFalse(dataStore.containsKey("z"));
+        assertEquals(0L, commandExecutor.execute(new Object[]{"ZCARD", "z"}));
+        assertEquals(0, commandExecutor.getUsedMemory());
+        verify(mockAofPersistence, times(3)).logCommand(any());
+    }
+
+    @Test
+    @DisplayName("A sorted set should convert to a skiplist past the configured limit and count the conversion")
+    public void testConversion() {
+        // Arrange
+        commandExecutor.getEncodingLimits().setZsetMaxListpackEntries(4);
+
+        // Act
+        for (int i = 0; i < 6; i++) {
+            commandExecutor.execute(new Object[]{"ZADD", "z", String.valueOf(i), "m" + i});
+        }
+
+        // Assert
+        assertEquals("skiplist", commandExecutor.execute(new Object[]{"OBJECT", "ENCODING", "z"}));
+        assertEquals(4L, commandExecutor.execute(new Object[]{"ZRANK", "z", "m4"}));
+        assertTrue(((String) commandExecutor.execute(new Object[]{"INFO"})).contains("zset_encoding_conversions:1"));
+    }
+
+    @Test
+    @DisplayName("Sorted set commands should refuse keys holding another type")
+    public void testWrongType() {
+        // Arrange
+        commandExecutor.execute(new Object[]{"SET", "string", "value"});
+        commandExecutor.execute(new Object[]{"ZADD", "z", "1", "a"});
+
+        // Act and Assert
+        for (Object[] command : new Object[][]{
+                {"ZADD", "string", "1", "a"}, {"ZINCRBY", "string", "1", "a"}, {"ZREM", "string", "a"},
+                {"ZSCORE", "string", "a"}, {"ZCARD", "string"}, {"ZRANK", "string", "a"},
+                {"ZRANGE", "string", "0", "-1"}, {"ZRANGEBYSCORE", "string", "0", "1"}}) {
+            Object reply = commandExecutor.execute(command);
+            assertInstanceOf(Exception.class, reply);
+            assertEquals(CommandExecutor.WRONGTYPE, ((Exception) reply).getMessage());
+        }
+        assertInstanceOf(Exception.class, commandExecutor.execute(new Object[]{"GET", "z"}));
+    }
+}
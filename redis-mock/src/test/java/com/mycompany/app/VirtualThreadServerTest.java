@@ -0,0 +1,135 @@
+package com.mycompany.app;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Integration tests for the virtual thread server.
+ * Each test starts a server capped at two clients on a free port.
+ */
+public class VirtualThreadServerTest {
+
+    @TempDir
+    Path tempDir;
+
+    private VirtualThreadServer server;
+    private Thread acceptThread;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        AofPersistence aofPersistence = new AofPersistence(tempDir.resolve("virtual.aof").toString());
+        CommandExecutor commandExecutor = new CommandExecutor(new ConcurrentHashMap<>(), aofPersistence);
+        server = new VirtualThreadServer(0, 2, commandExecutor);
+        acceptThread = new Thread(server::start, "virtual-server-test");
+        acceptThread.start();
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        server.stop(5, TimeUnit.SECONDS);
+        acceptThread.join(5000);
+    }
+
+    /**
+     * Waits until the server reports the given number of connected clients
+     * @param expected The client count to wait for
+     */
+    private void awaitConnectedClients(int expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        while (server.getConnectedClients() != expected && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(expected, server.getConnectedClients());
+    }
+
+    /**
+     * Reads exactly the given number of bytes from the socket
+     * @param in The socket input stream
+     * @param length The number of bytes expected
+     * @return The bytes decoded as UTF-8
+     */
+    private String readExactly(InputStream in, int length) throws IOException {
+        return new String(in.readNBytes(length), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    @DisplayName("Should answer PING from a virtual thread handler")
+    public void testPing() throws IOException {
+        try (Socket socket = new Socket("localhost", server.getLocalPort())) {
+            socket.setSoTimeout(2000);
+            socket.getOutputStream().write("*1\r\n$4\r\nPING\r\n".getBytes(StandardCharsets.UTF_8));
+
+            assertEquals("+PONG\r\n", readExactly(socket.getInputStream(), 7));
+        }
+    }
+
+    @Test
+    @DisplayName("An empty multibulk should be skipped without breaking the connection")
+    public void testEmptyMultibulk() throws IOException {
+        try (Socket socket = new Socket("localhost", server.getLocalPort())) {
+            socket.setSoTimeout(2000);
+            socket.getOutputStream().write("*0\r\n*1\r\n$4\r\nPING\r\n".getBytes(StandardCharsets.UTF_8));
+
+            assertEquals("+PONG\r\n", readExactly(socket.getInputStream(), 7));
+        }
+    }
+
+    @Test
+    @DisplayName("Should reject clients beyond the connection cap")
+    public void testRejectsClientsOverCap() throws Exception {
+        try (Socket first = new Socket("localhost", server.getLocalPort());
+             Socket second = new Socket("localhost", server.getLocalPort())) {
+            awaitConnectedClients(2);
+
+            try (Socket third = new Socket("localhost", server.getLocalPort())) {
+                third.setSoTimeout(2000);
+                String expected = "-ERR max number of clients reached\r\n";
+                assertEquals(expected, readExactly(third.getInputStream(), expected.length()));
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Stopping should drain idle connections and release their slots")
+    public void testStopDrainsConnections() throws Exception {
+        try (Socket idle = new Socket("localhost", server.getLocalPort())) {
+            awaitConnectedClients(1);
+
+            assertTrue(server.stop(5, TimeUnit.SECONDS), "Idle handlers should finish once input is shut down");
+            assertEquals(0, server.getConnectedClients());
+        }
+    }
+
+    @Test
+    @DisplayName("A subscriber should get its confirmation, then messages published from another connection")
+    public void testPublishSubscribe() throws Exception {
+        try (Socket subscriber = new Socket("localhost", server.getLocalPort());
+             Socket publisher = new Socket("localhost", server.getLocalPort())) {
+            subscriber.setSoTimeout(2000);
+            publisher.setSoTimeout(2000);
+            subscriber.getOutputStream().write("*2\r\n$9\r\nSUBSCRIBE\r\n$5\r\ncache\r\n".getBytes(StandardCharsets.UTF_8));
+            String confirmation = "*3\r\n$9\r\nsubscribe\r\n$5\r\ncache\r\n:1\r\n";
+            assertEquals(confirmation, readExactly(subscriber.getInputStream(), confirmation.length()));
+
+            publisher.getOutputStream().write("*3\r\n$7\r\nPUBLISH\r\n$5\r\ncache\r\n$4\r\nuser\r\n".getBytes(StandardCharsets.UTF_8));
+
+            assertEquals(":1\r\n", readExactly(publisher.getInputStream(), 4));
+            String message = "*3\r\n$7\r\nmessage\r\n$5\r\ncache\r\n$4\r\nuser\r\n";
+            assertEquals(message, readExactly(subscriber.getInputStream(), message.length()));
+        }
+    }
+}